@@ -0,0 +1,208 @@
+package com.netflix.evcache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.netflix.evcache.EVCacheLatch.Policy;
+
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * A non-blocking interface to an Ephemeral Volatile Cache. Every call returns
+ * a {@link CompletableFuture} that is completed from the callbacks of the
+ * memcached operations, so no thread is parked while the operations are in
+ * flight. Zone fallback, throttling and events behave the same as for the
+ * blocking calls of {@link EVCache}.
+ *
+ * <h3>Example</h3>
+ * <blockquote>
+ *
+ * <pre>
+ * AsyncEVCache myCache = builder.setAppName("EVCACHE").setCachePrefix("Test").setDefaultTTL(3600).buildAsync();
+ * myCache.setAsync("name", "John Doe").thenCompose(success -&gt; myCache.&lt;String&gt; getAsync("name")).thenAccept(System.out::println);
+ * </pre>
+ *
+ * </blockquote>
+ *
+ * If exception propagation is enabled for the app the futures are completed
+ * exceptionally with an {@link EVCacheException}, otherwise failures complete
+ * the futures with the same value the blocking call would have returned.
+ */
+public interface AsyncEVCache {
+
+    /**
+     * Retrieve the value for the given key using the default Transcoder.
+     *
+     * @param key
+     *            key to get. Ensure the key is properly encoded and does not
+     *            contain whitespace or control characters. The max length of the key (including prefix)
+     *            is 250 characters.
+     * @return a future completed with the value for the given key (null if
+     *         there is none)
+     */
+    <T> CompletableFuture<T> getAsync(String key);
+
+    /**
+     * Retrieve the value for the given key using the specified Transcoder for
+     * deserialization.
+     *
+     * @param key
+     *            key to get. Ensure the key is properly encoded and does not
+     *            contain whitespace or control characters. The max length of the key (including prefix)
+     *            is 250 characters.
+     * @param tc
+     *            the Transcoder to deserialize the data
+     * @return a future completed with the value for the given key (null if
+     *         there is none)
+     */
+    <T> CompletableFuture<T> getAsync(String key, Transcoder<T> tc);
+
+    /**
+     * Retrieve the values for the given keys using the default Transcoder.
+     * Keys missing from the server group that was read are fetched from all
+     * the other server groups at the same time.
+     *
+     * @param keys
+     *            the keys to get
+     * @return a future completed with a map of the keys to their values. A key
+     *         that was not found maps to null.
+     */
+    <T> CompletableFuture<Map<String, T>> getBulkAsync(Collection<String> keys);
+
+    /**
+     * Retrieve the values for the given keys using the specified Transcoder
+     * for deserialization.
+     *
+     * @param keys
+     *            the keys to get
+     * @param tc
+     *            the Transcoder to deserialize the data
+     * @return a future completed with a map of the keys to their values. A key
+     *         that was not found maps to null.
+     */
+    <T> CompletableFuture<Map<String, T>> getBulkAsync(Collection<String> keys, Transcoder<T> tc);
+
+    /**
+     * Set the value for the given key in all the server groups using the
+     * default Transcoder and TTL.
+     *
+     * @param key
+     *            the key under which this object should be added.
+     * @param value
+     *            the object to store
+     * @return a future completed with true once the value is stored in all but
+     *         one of the server groups, false if that failed or timed out
+     */
+    <T> CompletableFuture<Boolean> setAsync(String key, T value);
+
+    /**
+     * Set the value for the given key in all the server groups using the
+     * default Transcoder.
+     *
+     * @param key
+     *            the key under which this object should be added.
+     * @param value
+     *            the object to store
+     * @param timeToLive
+     *            the expiration of this object i.e. less than 30 days in
+     *            seconds or the exact expiry time as UNIX time
+     * @return a future completed with true once the value is stored in all but
+     *         one of the server groups, false if that failed or timed out
+     */
+    <T> CompletableFuture<Boolean> setAsync(String key, T value, int timeToLive);
+
+    /**
+     * Set the value for the given key in all the server groups.
+     *
+     * @param key
+     *            the key under which this object should be added.
+     * @param value
+     *            the object to store
+     * @param tc
+     *            the Transcoder to serialize the data
+     * @param timeToLive
+     *            the expiration of this object i.e. less than 30 days in
+     *            seconds or the exact expiry time as UNIX time
+     * @param policy
+     *            the number of server groups that have to store the value
+     *            before the future is completed
+     * @return a future completed with true once the value is stored in the
+     *         server groups required by the policy, false if that failed or
+     *         timed out
+     */
+    <T> CompletableFuture<Boolean> setAsync(String key, T value, Transcoder<T> tc, int timeToLive, Policy policy);
+
+    /**
+     * Remove the given key from all the server groups.
+     *
+     * @param key
+     *            the key to delete
+     * @return a future completed with true once the key is deleted from all
+     *         but one of the server groups, false if that failed or timed out
+     */
+    CompletableFuture<Boolean> deleteAsync(String key);
+
+    /**
+     * Remove the given key from all the server groups.
+     *
+     * @param key
+     *            the key to delete
+     * @param policy
+     *            the number of server groups the key has to be deleted from
+     *            before the future is completed
+     * @return a future completed with true once the key is deleted from the
+     *         server groups required by the policy, false if that failed or
+     *         timed out
+     */
+    CompletableFuture<Boolean> deleteAsync(String key, Policy policy);
+
+    /**
+     * Reset the expiration of the given key in all the server groups.
+     *
+     * @param key
+     *            the key to touch
+     * @param timeToLive
+     *            the new expiration of this object i.e. less than 30 days in
+     *            seconds or the exact expiry time as UNIX time
+     * @return a future completed with true once the key is touched in all but
+     *         one of the server groups, false if that failed or timed out
+     */
+    CompletableFuture<Boolean> touchAsync(String key, int timeToLive);
+
+    /**
+     * Reset the expiration of the given key in all the server groups.
+     *
+     * @param key
+     *            the key to touch
+     * @param timeToLive
+     *            the new expiration of this object i.e. less than 30 days in
+     *            seconds or the exact expiry time as UNIX time
+     * @param policy
+     *            the number of server groups the key has to be touched in
+     *            before the future is completed
+     * @return a future completed with true once the key is touched in the
+     *         server groups required by the policy, false if that failed or
+     *         timed out
+     */
+    CompletableFuture<Boolean> touchAsync(String key, int timeToLive, Policy policy);
+
+    /**
+     * Increment the given counter in all the server groups. If the server
+     * groups return different values the largest one is written back to the
+     * others, as is done by {@link EVCache#incr(String, long, long, int)}.
+     *
+     * @param key
+     *            the key
+     * @param by
+     *            the amount to increment
+     * @param defaultVal
+     *            the default value (if the counter does not exist)
+     * @param timeToLive
+     *            the expiration of this object i.e. less than 30 days in
+     *            seconds or the exact expiry time as UNIX time
+     * @return a future completed with the new value, or -1 if the counter
+     *         could not be incremented
+     */
+    CompletableFuture<Long> incrAsync(String key, long by, long defaultVal, int timeToLive);
+}
@@ -3,6 +3,13 @@ package com.netflix.evcache;
 import com.google.common.annotations.VisibleForTesting;
 import com.netflix.evcache.EVCacheLatch.Policy;
 import com.netflix.evcache.pool.EVCacheClientPoolManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -263,6 +270,60 @@ public interface EVCache {
     <T> EVCacheLatch set(String key, T value, Transcoder<T> tc, int timeToLive, EVCacheLatch.Policy policy)
             throws EVCacheException;
 
+    /**
+     * Set the bytes read from the given stream, until its end, in the EVCACHE
+     * regardless of any existing value. The bytes are stored as chunks of
+     * the key as they are read and the chunks are followed by their metadata,
+     * so the value is never held in memory as a whole. The value can be read
+     * with {@link #getStream(String, OutputStream)} or as a byte array with
+     * <code>get</code>. Chunking has to be enabled for the app.
+     *
+     * @param key
+     *            the key under which this object should be added. Ensure the
+     *            key is properly encoded and does not contain whitespace or
+     *            control characters. The max length of the key (including prefix)
+     *            is 250 characters.
+     * @param in
+     *            the stream to read the value from. It is not closed.
+     * @param timeToLive
+     *            the expiration of this object i.e. less than 30 days in
+     *            seconds or the exact expiry time as UNIX time
+     * @param policy
+     *            The Latch will be returned based on the Policy. The Latch can
+     *            then be used to await until the count down has reached to 0 or
+     *            the specified time has elapsed.
+     * @return EVCacheLatch which will encompasses the writes of the metadata
+     * @throws EVCacheException
+     *             in the rare circumstance where queue is too full to accept
+     *             any more requests, the stream could not be read or chunking
+     *             is not enabled for the app
+     */
+    default EVCacheLatch setStream(String key, InputStream in, int timeToLive, EVCacheLatch.Policy policy) throws EVCacheException {
+        // implementations that do not stream the chunks set the whole value
+        if ((null == key) || (null == in)) throw new IllegalArgumentException();
+        final ByteArrayOutputStream value = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        try {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                value.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new EVCacheException("Exception reading the data for key : " + key, e);
+        }
+        return set(key, value.toByteArray(), (Transcoder<byte[]>) null, timeToLive, policy);
+    }
+
+    /**
+     * Set the bytes read from the given channel, until its end, in the
+     * EVCACHE regardless of any existing value.
+     *
+     * @see #setStream(String, InputStream, int, EVCacheLatch.Policy)
+     */
+    default EVCacheLatch setStream(String key, ReadableByteChannel channel, int timeToLive, EVCacheLatch.Policy policy) throws EVCacheException {
+        if (null == channel) throw new IllegalArgumentException();
+        return setStream(key, Channels.newInputStream(channel), timeToLive, policy);
+    }
+
     /**
      * Replace an existing object in the EVCACHE using the default Transcoder &
      * default TTL. If the object does not exist in EVCACHE then the value is
@@ -509,6 +570,51 @@ public interface EVCache {
      */
     <T> T get(String key, Transcoder<T> tc) throws EVCacheException;
 
+    /**
+     * Write the value for the given key, which must be a byte array, to the
+     * given stream. The chunks of a value set with
+     * {@link #setStream(String, InputStream, int, EVCacheLatch.Policy)} are
+     * fetched a few at a time and written in order, so the value is never
+     * held in memory as a whole.
+     *
+     * @param key
+     *            key to get. Ensure the key is properly encoded and does not
+     *            contain whitespace or control characters. The max length of the key (including prefix)
+     *            is 250 characters.
+     * @param out
+     *            the stream to write the value to. It is not closed.
+     * @return true if the value was written, false if there is no value for
+     *         the key and nothing was written.
+     * @throws EVCacheException
+     *             if the value could not be read or written. As a part of
+     *             the value may have been written, it is thrown whether or
+     *             not the app throws exceptions and what was written should
+     *             be discarded.
+     */
+    default boolean getStream(String key, OutputStream out) throws EVCacheException {
+        // implementations that do not stream the chunks get the whole value
+        if ((null == key) || (null == out)) throw new IllegalArgumentException();
+        final byte[] value = this.<byte[]> get(key);
+        if (value == null) return false;
+        try {
+            out.write(value);
+        } catch (IOException e) {
+            throw new EVCacheException("Exception writing the data for key : " + key, e);
+        }
+        return true;
+    }
+
+    /**
+     * Write the value for the given key, which must be a byte array, to the
+     * given channel.
+     *
+     * @see #getStream(String, OutputStream)
+     */
+    default boolean getStream(String key, WritableByteChannel channel) throws EVCacheException {
+        if (null == channel) throw new IllegalArgumentException();
+        return getStream(key, Channels.newOutputStream(channel));
+    }
+
     /**
      * Retrieve the value for the given a key using the specified Transcoder for
      * deserialization.
@@ -1347,5 +1453,13 @@ public interface EVCache {
             return new EVCacheImpl(
                 _appName, _cachePrefix, _ttl, _transcoder, _serverGroupRetry, _enableExceptionThrowing, _poolManager);
         }
+
+        /**
+         * Returns a newly created {@code AsyncEVCache} based on the contents of
+         * the {@code Builder}.
+         */
+        public AsyncEVCache buildAsync() {
+            return (AsyncEVCache) build();
+        }
     }
 }
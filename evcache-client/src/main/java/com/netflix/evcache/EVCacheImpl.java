@@ -2,18 +2,32 @@ package com.netflix.evcache;
 
 import static com.netflix.evcache.util.Sneaky.sneakyThrow;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +50,7 @@ import com.netflix.evcache.pool.EVCacheClientPool;
 import com.netflix.evcache.pool.EVCacheClientPoolManager;
 import com.netflix.evcache.pool.EVCacheClientUtil;
 import com.netflix.evcache.pool.EVCacheValue;
+import com.netflix.evcache.pool.EVCacheValueTranscoder;
 import com.netflix.evcache.util.EVCacheConfig;
 import com.netflix.evcache.util.KeyHasher;
 import com.netflix.servo.annotations.DataSourceType;
@@ -44,10 +59,14 @@ import com.netflix.spectator.api.DistributionSummary;
 
 import net.spy.memcached.CachedData;
 import net.spy.memcached.MemcachedClientIF;
+import net.spy.memcached.internal.ListenableFuture;
+import net.spy.memcached.internal.OperationCompletionListener;
+import net.spy.memcached.internal.OperationFuture;
 import net.spy.memcached.transcoders.Transcoder;
 import rx.Observable;
 import rx.Scheduler;
 import rx.Single;
+import rx.schedulers.Schedulers;
 
 /**
  * An implementation of a ephemeral volatile cache.
@@ -60,7 +79,7 @@ import rx.Single;
 @edu.umd.cs.findbugs.annotations.SuppressFBWarnings({ "PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS", "WMI_WRONG_MAP_ITERATOR",
     "DB_DUPLICATE_BRANCHES", "REC_CATCH_EXCEPTION",
 "RCN_REDUNDANT_NULLCHECK_OF_NONNULL_VALUE" })
-final public class EVCacheImpl implements EVCache {
+final public class EVCacheImpl implements EVCache, AsyncEVCache {
 
     private static Logger log = LoggerFactory.getLogger(EVCacheImpl.class);
 
@@ -78,18 +97,23 @@ final public class EVCacheImpl implements EVCache {
     private final ChainedDynamicProperty.BooleanProperty _throwExceptionFP, _zoneFallbackFP, _useInMemoryCache;
     private final DynamicBooleanProperty _bulkZoneFallbackFP;
     private final DynamicBooleanProperty _bulkPartialZoneFallbackFP;
+    private final ChainedDynamicProperty.BooleanProperty _bulkPartialZoneFallbackConcurrentFP;
     private final Stats stats;
     private EVCacheInMemoryCache<?> cache;
+    private final EVCacheReadHedger readHedger;
+    private final EVCacheSingleFlight singleFlight;
     private EVCacheClientUtil clientUtil = null;
 
     private final DynamicBooleanProperty hashKey;
     private final DynamicStringProperty hashingAlgo;
-    private final EVCacheTranscoder evcacheValueTranscoder;
+    private volatile KeyHasher keyHasher;
+    private final EVCacheValueTranscoder evcacheValueTranscoder;
 
     private final EVCacheClientPoolManager _poolManager;
     private DistributionSummary setTTLSummary, replaceTTLSummary, touchTTLSummary, setDataSizeSummary, replaceDataSizeSummary, appendDataSizeSummary;
     private Counter touchCounter;
     private final ChainedDynamicProperty.BooleanProperty _eventsUsingLatchFP, autoHashKeys;
+    private final ChainedDynamicProperty.IntProperty _streamWriteWindow;
 
     EVCacheImpl(String appName, String cacheName, int timeToLive, Transcoder<?> transcoder, boolean enableZoneFallback,
             boolean throwException, EVCacheClientPoolManager poolManager) {
@@ -110,14 +134,19 @@ final public class EVCacheImpl implements EVCache {
         _zoneFallbackFP = config.getChainedBooleanProperty(_metricName + ".fallback.zone", _appName + ".fallback.zone", Boolean.TRUE, null);
         _bulkZoneFallbackFP = config.getDynamicBooleanProperty(_appName + ".bulk.fallback.zone", Boolean.TRUE);
         _bulkPartialZoneFallbackFP = config.getDynamicBooleanProperty(_appName+ ".bulk.partial.fallback.zone", Boolean.TRUE);
+        _bulkPartialZoneFallbackConcurrentFP = config.getChainedBooleanProperty(_appName + ".bulk.partial.fallback.concurrent", "evcache.bulk.partial.fallback.concurrent", Boolean.FALSE, null);
         _useInMemoryCache = config.getChainedBooleanProperty(_appName + ".use.inmemory.cache", "evcache.use.inmemory.cache", Boolean.FALSE, null);
         _eventsUsingLatchFP = config.getChainedBooleanProperty(_appName + ".events.using.latch", "evcache.events.using.latch", Boolean.FALSE, null);
+        _streamWriteWindow = config.getChainedIntProperty(_appName + ".stream.write.window", "evcache.stream.write.window", 8, null);
 
         this.hashKey = config.getDynamicBooleanProperty(appName + ".hash.key", Boolean.FALSE);
         this.hashingAlgo = config.getDynamicStringProperty(appName + ".hash.algo", "siphash24");
+        this.keyHasher = KeyHasher.getKeyHasher(hashingAlgo.get());
+        this.hashingAlgo.addCallback(() -> keyHasher = KeyHasher.getKeyHasher(hashingAlgo.get()));
         this.autoHashKeys = config.getChainedBooleanProperty(_appName + ".auto.hash.keys", "evcache.auto.hash.keys", Boolean.FALSE, null);
-        this.evcacheValueTranscoder = new EVCacheTranscoder();
-        evcacheValueTranscoder.setCompressionThreshold(Integer.MAX_VALUE);
+        this.evcacheValueTranscoder = new EVCacheValueTranscoder(_appName);
+        this.readHedger = new EVCacheReadHedger(appName, poolManager.getEVCacheScheduledExecutor());
+        this.singleFlight = new EVCacheSingleFlight(appName);
 
         _pool.pingServers();
     }
@@ -141,9 +170,9 @@ final public class EVCacheImpl implements EVCache {
 
         final String hashedKey;
         if(hashKey.get()) {
-            hashedKey = KeyHasher.getHashedKey(canonicalKey, hashingAlgo.get());
+            hashedKey = keyHasher.getHashedKey(canonicalKey);
         } else if(autoHashKeys.get() && canonicalKey.length() > MemcachedClientIF.MAX_KEY_LENGTH) {
-            hashedKey = KeyHasher.getHashedKey(canonicalKey, hashingAlgo.get());
+            hashedKey = keyHasher.getHashedKey(canonicalKey);
         } else {
             hashedKey = null;
         }
@@ -242,11 +271,92 @@ final public class EVCacheImpl implements EVCache {
         }
     }
 
+    EVCacheClientPoolManager getPoolManager() {
+        return _poolManager;
+    }
+
     private <T> EVCacheInMemoryCache<T> getInMemoryCache(Transcoder<T> tc) {
         if (cache == null) cache = _poolManager.createInMemoryCache(_appName, tc, this);
         return (EVCacheInMemoryCache<T>) cache;
     }
 
+    /*
+     * Updates the entry the in-memory cache may hold for the key once a write
+     * of the key was sent, or drops it if the value is null.
+     */
+    private <T> void writeInMemory(EVCacheKey evcKey, T value, Transcoder<T> tc) {
+        final EVCacheInMemoryCache<T> cache = (EVCacheInMemoryCache<T>) this.cache;
+        if (cache != null) cache.write(evcKey, value, tc);
+    }
+
+    /*
+     * Updates the entry of the key again once the write completed on all the
+     * futures of the latch, see writeInMemoryOnComplete.
+     */
+    private <T> void writeInMemoryOnComplete(EVCacheKey evcKey, T value, Transcoder<T> tc, EVCacheLatch latch) {
+        final List<Future<Boolean>> futures = (latch == null) ? null : latch.getAllFutures();
+        writeInMemoryOnComplete(evcKey, value, tc, (futures == null) ? Collections.<Future<Boolean>> emptyList() : new ArrayList<Future<Boolean>>(futures));
+    }
+
+    /*
+     * Updates the entry of the key again once the write completed on all the
+     * given futures, with the value if all of them succeeded, as a load may
+     * have read the older value while the write was in flight. The key is
+     * then published to the other instances of the app.
+     */
+    private <T> void writeInMemoryOnComplete(EVCacheKey evcKey, T value, Transcoder<T> tc, List<Future<Boolean>> futures) {
+        if (this.cache == null && !_useInMemoryCache.get()) return;
+        final List<CompletableFuture<Boolean>> completions = new ArrayList<CompletableFuture<Boolean>>(futures.size());
+        for (Future<Boolean> future : futures) {
+            final CompletableFuture<Boolean> completion = new CompletableFuture<Boolean>();
+            if (future instanceof ListenableFuture) {
+                // the write futures are listened to for their completion
+                @SuppressWarnings("unchecked")
+                final ListenableFuture<Boolean, OperationCompletionListener> listenable = (ListenableFuture<Boolean, OperationCompletionListener>) future;
+                listenable.addListener(f -> completion.complete(isSuccess(f)));
+                if (future.isDone()) completion.complete(isSuccess(future));
+            } else {
+                completion.complete(isSuccess(future));
+            }
+            completions.add(completion);
+        }
+        CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[completions.size()])).thenRun(() -> {
+            boolean success = !completions.isEmpty();
+            for (CompletableFuture<Boolean> completion : completions) {
+                success &= completion.join().booleanValue();
+            }
+            writeInMemoryCompleted(evcKey, success ? value : null, tc);
+        });
+    }
+
+    /*
+     * Updates the entry of the key once a write of it completed, or drops it
+     * if the value is null, and publishes the key.
+     */
+    private <T> void writeInMemoryCompleted(EVCacheKey evcKey, T value, Transcoder<T> tc) {
+        final EVCacheInMemoryCache<T> cache = (EVCacheInMemoryCache<T>) this.cache;
+        if (cache != null) cache.writeCompleted(evcKey, value, tc);
+    }
+
+    private static boolean isSuccess(Future<?> future) {
+        try {
+            return future.isDone() && Boolean.TRUE.equals(future.get());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /*
+     * Returns the Transcoder a get with the given Transcoder decodes the data
+     * with.
+     */
+    <T> Transcoder<T> getTranscoder(Transcoder<T> tc) {
+        if (tc != null) return tc;
+        if (_transcoder != null) return (Transcoder<T>) _transcoder;
+        final EVCacheClient client = _pool.getEVCacheClientForRead();
+        return (client == null) ? null : (Transcoder<T>) client.getTranscoder();
+    }
+
     public <T> T get(String key) throws EVCacheException {
         return this.get(key, (Transcoder<T>) _transcoder);
     }
@@ -267,11 +377,11 @@ final public class EVCacheImpl implements EVCache {
             try {
                 value = (T) getInMemoryCache(tc).get(evcKey);
             } catch (ExecutionException e) {
+                if(e.getCause() instanceof DataNotFoundException) {
+                    return null;
+                }
                 final boolean throwExc = doThrowException();
                 if(throwExc) {
-                    if(e.getCause() instanceof DataNotFoundException) {
-                        return null;
-                    }
                     if(e.getCause() instanceof EVCacheException) {
                         if (log.isDebugEnabled() && shouldLog()) log.debug("ExecutionException while getting data from InMemory Cache", e);
                         throw (EVCacheException)e.getCause();
@@ -285,7 +395,92 @@ final public class EVCacheImpl implements EVCache {
         return doGet(evcKey, tc);
     }
 
+    public boolean getStream(String key, OutputStream out) throws EVCacheException {
+        if ((null == key) || (null == out)) throw new IllegalArgumentException();
+
+        EVCacheClient client = _pool.getEVCacheClientForRead();
+        if (client == null) {
+            increment("NULL_CLIENT");
+            throw new EVCacheException("Could not find a client to get the data APP " + _appName);
+        }
+
+        final EVCacheKey evcKey = getEVCacheKey(key);
+        final Operation op = EVCacheMetricsFactory.getOperation(_metricName, Call.GET, stats, Operation.TYPE.MILLI);
+        try {
+            boolean found = client.getStream(evcKey.getDerivedKey(), out);
+            if (!found && hasZoneFallback()) {
+                // nothing was written, the value can be read from another zone
+                final List<EVCacheClient> fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
+                for (int i = 0; fbClients != null && !found && i < fbClients.size(); i++) {
+                    client = fbClients.get(i);
+                    found = client.getStream(evcKey.getDerivedKey(), out);
+                    increment(client.getServerGroupName(), _cacheName, "RETRY_" + (found ? "HIT" : "MISS"));
+                }
+            }
+            if (found) {
+                stats.cacheHit(Call.GET);
+            } else {
+                stats.cacheMiss(Call.GET);
+                if (log.isInfoEnabled() && shouldLog()) log.info("GET_STREAM : APP " + _appName + " ; cache miss for key : " + evcKey);
+            }
+            return found;
+        } catch (EVCacheException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new EVCacheException("Exception streaming data for APP " + _appName + ", key = " + evcKey, ex);
+        } finally {
+            op.stop();
+            if (log.isDebugEnabled() && shouldLog()) log.debug("GET_STREAM : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + evcKey);
+        }
+    }
+
     <T> T doGet(EVCacheKey evcKey , Transcoder<T> tc) throws EVCacheException {
+        if (!singleFlight.isEnabled()) return fetch(evcKey, tc);
+        final EVCacheSingleFlight.Flight<T> flight = singleFlight.start(evcKey.getCanonicalKey(), tc);
+        if (flight == null) return fetch(evcKey, tc);
+        if (!flight.isLeader()) {
+            final T data = awaitFlight(flight, evcKey.getKey());
+            if (data != null) {
+                stats.cacheHit(Call.GET);
+            } else {
+                stats.cacheMiss(Call.GET);
+            }
+            return data;
+        }
+
+        T data = null;
+        Throwable failure = null;
+        try {
+            data = fetch(evcKey, tc);
+            return data;
+        } catch (EVCacheException | RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            flight.complete(data, failure);
+        }
+    }
+
+    /*
+     * Waits for the get of the key that is already in flight.
+     */
+    private <T> T awaitFlight(EVCacheSingleFlight.Flight<T> flight, String key) throws EVCacheException {
+        increment("SINGLE_FLIGHT_SHARED");
+        try {
+            return flight.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            if (!doThrowException()) return null;
+            throw new EVCacheException("Interrupted waiting for the get of APP " + _appName + ", key = " + key, ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = unwrap(ex.getCause());
+            if (!doThrowException()) return null;
+            if (cause instanceof EVCacheException) throw (EVCacheException) cause;
+            throw new EVCacheException("Exception getting data for APP " + _appName + ", key = " + key, cause);
+        }
+    }
+
+    private <T> T fetch(EVCacheKey evcKey , Transcoder<T> tc) throws EVCacheException {
         final boolean throwExc = doThrowException();
         EVCacheClient client = _pool.getEVCacheClientForRead();
         if (client == null) {
@@ -315,11 +510,26 @@ final public class EVCacheImpl implements EVCache {
         try {
             final boolean hasZF = hasZoneFallback();
             boolean throwEx = hasZF ? false : throwExc;
-            T data = getData(client, evcKey, tc, throwEx, hasZF);
+            List<EVCacheClient> fbClients = null;
+            EVCacheReadHedger.HedgedGet<Object> hedgedGet = null;
+            if (hasZF && readHedger.isEnabled()) {
+                fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
+                hedgedGet = getDataHedged(client, (fbClients == null || fbClients.isEmpty()) ? null : fbClients.get(0), evcKey, tc);
+            }
+            T data;
+            int fbStart = 0;
+            if (hedgedGet != null) {
+                data = getData(hedgedGet, evcKey, tc);
+                // the first fallback server group was already tried by the hedged read
+                if (hedgedGet.isHedged()) fbStart = 1;
+                client = hedgedGet.getClient();
+            } else {
+                data = getData(client, evcKey, tc, throwEx, hasZF);
+            }
             if (data == null && hasZF) {
-                final List<EVCacheClient> fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
-                if (fbClients != null && !fbClients.isEmpty()) {
-                    for (int i = 0; i < fbClients.size(); i++) {
+                if (fbClients == null) fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
+                if (fbClients != null && fbClients.size() > fbStart) {
+                    for (int i = fbStart; i < fbClients.size(); i++) {
                         final EVCacheClient fbClient = fbClients.get(i);
                         if(i >= fbClients.size() - 1) throwEx = throwExc;
                         if (event != null) {
@@ -449,25 +659,58 @@ final public class EVCacheImpl implements EVCache {
         });
     }
 
+    /*
+     * Starts a hedged get of the key from the given client and the hedge
+     * client. Returns null if the get cannot be hedged.
+     */
+    private <T> EVCacheReadHedger.HedgedGet<Object> getDataHedged(EVCacheClient client, EVCacheClient hedgeClient, EVCacheKey evcKey, Transcoder<T> tc) {
+        try {
+            final Transcoder<Object> transcoder;
+            if(evcKey.getHashKey() != null) {
+                transcoder = (Transcoder<Object>)(Transcoder<?>)evcacheValueTranscoder;
+            } else {
+                transcoder = (Transcoder<Object>)(tc == null ? _transcoder : tc);
+            }
+            return readHedger.get(client, hedgeClient, evcKey, transcoder);
+        } catch (Exception ex) {
+            if (log.isDebugEnabled() && shouldLog()) log.debug("Exception while starting hedged get for APP " + _appName + ", key : " + evcKey, ex);
+            return null;
+        }
+    }
+
+    private <T> T getData(EVCacheReadHedger.HedgedGet<Object> hedgedGet, EVCacheKey evcKey, Transcoder<T> tc) {
+        try {
+            final Object obj = hedgedGet.get(false);
+            if(evcKey.getHashKey() != null) return decodeEVCacheValue(hedgedGet.getClient(), obj, tc);
+            return (T)obj;
+        } catch (Exception ex) {
+            if (log.isDebugEnabled() && shouldLog()) log.debug("Exception while getting data for APP " + _appName + ", key : " + evcKey, ex);
+            return null;
+        }
+    }
+
+    private <T> T decodeEVCacheValue(EVCacheClient client, Object obj, Transcoder<T> tc) {
+        if(obj != null && obj instanceof EVCacheValue) {
+            final EVCacheValue val = (EVCacheValue)obj;
+            if(tc == null) {
+                return (T)val.decode(client.getTranscoder());
+            } else {
+                return val.decode(tc);
+            }
+        } else {
+            return null;
+        }
+    }
+
     private <T> T getData(EVCacheClient client, EVCacheKey evcKey, Transcoder<T> tc, boolean throwException, boolean hasZF) throws Exception {
         if (client == null) return null;
         try {
             if(evcKey.getHashKey() != null) {
-                final Object obj = client.get(evcKey.getHashKey(), evcacheValueTranscoder, throwException, hasZF);
-                if(obj != null && obj instanceof EVCacheValue) {
-                    final EVCacheValue val = (EVCacheValue)obj;
-                    final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
-                    if(tc == null) {
-                        return (T)client.getTranscoder().decode(cd);
-                    } else {
-                        return tc.decode(cd);
-                    }
-                } else {
-                    return null;
-                }
+                final Object obj = client.get(evcKey, evcacheValueTranscoder, throwException, hasZF);
+                return decodeEVCacheValue(client, obj, tc);
             } else { 
                 if(tc == null && _transcoder != null) tc = (Transcoder<T>)_transcoder;
-                return client.get(evcKey.getCanonicalKey(), tc, throwException, hasZF);
+                return client.get(evcKey, tc, throwException, hasZF);
             }
         } catch (EVCacheConnectException ex) {
             if (log.isDebugEnabled() && shouldLog()) log.debug("EVCacheConnectException while getting data for APP " + _appName + ", key : " + evcKey + "; hasZF : " + hasZF, ex);
@@ -499,7 +742,7 @@ final public class EVCacheImpl implements EVCache {
             return Single.error(new IllegalArgumentException("Not supported"));
         } else { 
             if(tc == null && _transcoder != null) tc = (Transcoder<T>)_transcoder;
-            return client.get(evcKey.getCanonicalKey(), tc, throwException, hasZF, scheduler).onErrorReturn(ex -> {
+            return client.get(evcKey, tc, throwException, hasZF, scheduler).onErrorReturn(ex -> {
                 if (ex instanceof EVCacheReadQueueException) {
                     if (log.isDebugEnabled() && shouldLog()) log.debug("EVCacheReadQueueException while getting data for APP " + _appName + ", key : " + evcKey + "; hasZF : " + hasZF, ex);
                     if (!throwException || hasZF) return null;
@@ -617,10 +860,10 @@ final public class EVCacheImpl implements EVCache {
             try {
                 value = (T) getInMemoryCache(tc).get(evcKey);
             } catch (ExecutionException e) {
+                if(e.getCause() instanceof DataNotFoundException) {
+                    return null;
+                }
                 if(throwExc) {
-                    if(e.getCause() instanceof DataNotFoundException) {
-                        return null;
-                    }
                     if(e.getCause() instanceof EVCacheException) {
                         if (log.isDebugEnabled() && shouldLog()) log.debug("ExecutionException while getting data from InMemory Cache", e);
                         throw (EVCacheException)e.getCause();
@@ -828,13 +1071,8 @@ final public class EVCacheImpl implements EVCache {
         final EVCacheFuture[] futures = new EVCacheFuture[clients.length];
         int index = 0;
         for (EVCacheClient client : clients) {
-            if(evcKey.getHashKey() != null) {
-                final Future<Boolean> future = client.touch(evcKey.getHashKey(), timeToLive, latch);
-                futures[index++] = new EVCacheFuture(future, evcKey.getCanonicalKey(), _appName, client.getServerGroup());
-            } else {
-                final Future<Boolean> future = client.touch(evcKey.getCanonicalKey(), timeToLive, latch);
-                futures[index++] = new EVCacheFuture(future, evcKey.getCanonicalKey(), _appName, client.getServerGroup());
-            }
+            final Future<Boolean> future = client.touch(evcKey, timeToLive, latch);
+            futures[index++] = new EVCacheFuture(future, evcKey.getCanonicalKey(), _appName, client.getServerGroup());
         }
         return futures;
     }
@@ -879,7 +1117,7 @@ final public class EVCacheImpl implements EVCache {
         try {
 
             if(evcKey.getHashKey() != null) {
-                final Future<Object> objFuture = client.asyncGet(evcKey.getHashKey(), evcacheValueTranscoder, throwExc, false);
+                final Future<Object> objFuture = client.asyncGet(evcKey, evcacheValueTranscoder, throwExc, false);
                 r = new Future<T> () {
 
                     @Override
@@ -905,15 +1143,14 @@ final public class EVCacheImpl implements EVCache {
                     private T getFromObj(Object obj) {
                         if(obj != null && obj instanceof EVCacheValue) {
                             final EVCacheValue val = (EVCacheValue)obj;
-                            final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                             if(tc == null) {
                                 if(_transcoder == null) {
-                                    return (T)client.getTranscoder().decode(cd);
+                                    return (T)val.decode(client.getTranscoder());
                                 } else {
-                                    return (T)_transcoder.decode(cd);
+                                    return (T)val.decode(_transcoder);
                                 }
                             } else {
-                                return tc.decode(cd);
+                                return val.decode(tc);
                             }
                         } else {
                             return null;
@@ -927,7 +1164,7 @@ final public class EVCacheImpl implements EVCache {
                     }
                 };
             } else { 
-                r = client.asyncGet(evcKey.getCanonicalKey(), tc == null ? (Transcoder<T>)_transcoder : tc, throwExc, false);
+                r = client.asyncGet(evcKey, tc == null ? (Transcoder<T>)_transcoder : tc, throwExc, false);
             }
             if (event != null) endEvent(event);
         } catch (Exception ex) {
@@ -942,55 +1179,59 @@ final public class EVCacheImpl implements EVCache {
         return r;
     }
 
-    private <T> Map<EVCacheKey, T> getBulkData(EVCacheClient client, Collection<EVCacheKey> evcacheKeys, Transcoder<T> tc, boolean throwException, boolean hasZF) throws Exception {
-        try {
-            boolean hasHashedKey = false;
-            final Map<String, EVCacheKey> keyMap = new HashMap<String, EVCacheKey>(evcacheKeys.size() * 2);
-            for(EVCacheKey evcKey : evcacheKeys) {
-                String key = evcKey.getCanonicalKey();
-                if(evcKey.getHashKey() != null) {
-                    if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", key [" + key + "], has been hashed [" + evcKey.getHashKey() + "]");
-                    key = evcKey.getHashKey();
-                    hasHashedKey = true;
+    private Map<String, EVCacheKey> getBulkKeyMap(Collection<EVCacheKey> evcacheKeys) {
+        final Map<String, EVCacheKey> keyMap = new HashMap<String, EVCacheKey>(evcacheKeys.size() * 2);
+        for(EVCacheKey evcKey : evcacheKeys) {
+            String key = evcKey.getCanonicalKey();
+            if(evcKey.getHashKey() != null) {
+                if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", key [" + key + "], has been hashed [" + evcKey.getHashKey() + "]");
+                key = evcKey.getHashKey();
+            }
+            keyMap.put(key, evcKey);
+        }
+        return keyMap;
+    }
+
+    private boolean hasHashedKey(Collection<EVCacheKey> evcacheKeys) {
+        for(EVCacheKey evcKey : evcacheKeys) {
+            if(evcKey.getHashKey() != null) return true;
+        }
+        return false;
+    }
+
+    private <T> Map<EVCacheKey, T> decodeBulkData(EVCacheClient client, Map<String, ?> objMap, Map<String, EVCacheKey> keyMap, boolean hasHashedKey, Transcoder<T> tc) {
+        final Map<EVCacheKey, T> retMap = new HashMap<EVCacheKey, T>((int)(objMap.size()/0.75) + 1);
+        for (Map.Entry<String, ?> i : objMap.entrySet()) {
+            final Object obj = i.getValue(); 
+            final EVCacheKey evcKey = keyMap.get(i.getKey());
+            if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", key [" + i.getKey() + "] EVCacheKey " + evcKey);
+            if(hasHashedKey && obj instanceof EVCacheValue) {
+                if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", The value for key [" + i.getKey() + "] is EVCache Value");
+                final EVCacheValue val = (EVCacheValue)obj;
+                final T tVal; 
+                if(tc == null) {
+                    tVal = (T)val.decode(client.getTranscoder());
+                } else {
+                    tVal = val.decode(tc);
                 }
-                keyMap.put(key, evcKey);
+                retMap.put(evcKey, tVal);
+            } else {
+                retMap.put(evcKey, (T)obj);
             }
-            if(hasHashedKey) {
+        }
+        return retMap;
+    }
+
+    private <T> Map<EVCacheKey, T> getBulkData(EVCacheClient client, Collection<EVCacheKey> evcacheKeys, Transcoder<T> tc, boolean throwException, boolean hasZF) throws Exception {
+        try {
+            final Map<String, EVCacheKey> keyMap = getBulkKeyMap(evcacheKeys);
+            if(hasHashedKey(evcacheKeys)) {
                 final Map<String, Object> objMap = client.getBulk(keyMap.keySet(), evcacheValueTranscoder, throwException, hasZF);
-                final Map<EVCacheKey, T> retMap = new HashMap<EVCacheKey, T>((int)(objMap.size()/0.75) + 1);
-                for (Map.Entry<String, Object> i : objMap.entrySet()) {
-                    final Object obj = i.getValue(); 
-                    if(obj instanceof EVCacheValue) {
-                        if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", The value for key [" + i.getKey() + "] is EVCache Value");
-                        final EVCacheValue val = (EVCacheValue)obj;
-                        final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
-                        final T tVal; 
-                        if(tc == null) {
-                            tVal = (T)client.getTranscoder().decode(cd);
-                        } else {
-                            tVal = tc.decode(cd);
-                        }
-                        final EVCacheKey evcKey = keyMap.get(i.getKey());
-                        if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", key [" + i.getKey() + "] EVCacheKey " + evcKey);
-                        retMap.put(evcKey, tVal);
-                    } else {
-                        final EVCacheKey evcKey = keyMap.get(i.getKey());
-                        if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", key [" + i.getKey() + "] EVCacheKey " + evcKey);
-                        retMap.put(evcKey, (T)obj);
-                    }
-                }
-                return retMap;
-                
+                return decodeBulkData(client, objMap, keyMap, true, tc);
             } else { 
                 if(tc == null && _transcoder != null) tc = (Transcoder<T>)_transcoder;
                 final Map<String, T> objMap = client.getBulk(keyMap.keySet(), tc, throwException, hasZF);
-                final Map<EVCacheKey, T> retMap = new HashMap<EVCacheKey, T>((int)(objMap.size()/0.75) + 1);
-                for (Map.Entry<String, T> i : objMap.entrySet()) {
-                    final EVCacheKey evcKey = keyMap.get(i.getKey());
-                    if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", key [" + i.getKey() + "] EVCacheKey " + evcKey);
-                    retMap.put(evcKey, i.getValue());
-                }
-                return retMap;
+                return decodeBulkData(client, objMap, keyMap, false, tc);
             }
         } catch (Exception ex) {
             if (log.isDebugEnabled() && shouldLog()) log.debug("Exception while getBulk data for APP " + _appName + ", key : " + evcacheKeys, ex);
@@ -999,6 +1240,74 @@ final public class EVCacheImpl implements EVCache {
         }
     }
 
+    private <T> CompletableFuture<Map<EVCacheKey, T>> getBulkDataAsync(EVCacheClient client, Collection<EVCacheKey> evcacheKeys, Transcoder<T> tc, boolean throwException, boolean hasZF) {
+        final Map<String, EVCacheKey> keyMap = getBulkKeyMap(evcacheKeys);
+        final boolean hasHashedKey = hasHashedKey(evcacheKeys);
+        final Transcoder<T> transcoder = (tc == null && _transcoder != null) ? (Transcoder<T>) _transcoder : tc;
+        final Transcoder<Object> bulkTranscoder = hasHashedKey ? (Transcoder<Object>) (Transcoder<?>) evcacheValueTranscoder : (Transcoder<Object>) transcoder;
+        final CompletableFuture<Map<EVCacheKey, T>> future = new CompletableFuture<Map<EVCacheKey, T>>();
+        client.getBulk(keyMap.keySet(), bulkTranscoder, throwException, hasZF, Schedulers.computation()).subscribe(
+                objMap -> {
+                    try {
+                        future.complete(decodeBulkData(client, objMap, keyMap, hasHashedKey, transcoder));
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                },
+                e -> {
+                    if (log.isDebugEnabled() && shouldLog()) log.debug("Exception while getBulk data for APP " + _appName + ", keys : " + evcacheKeys + ", Server Group : " + client.getServerGroupName(), e);
+                    if (!throwException || hasZF) {
+                        future.complete(Collections.<EVCacheKey, T> emptyMap());
+                    } else {
+                        future.completeExceptionally(e);
+                    }
+                });
+        return future;
+    }
+
+    /*
+     * Sends the keys to all the given clients at once and merges the values
+     * into a copy of retMap as they arrive. The returned future is completed
+     * as soon as all the keys are found, all the clients have answered or the
+     * bulk read timeout has expired.
+     */
+    private <T> CompletableFuture<Map<EVCacheKey, T>> getBulkFallbackDataAsync(List<EVCacheClient> clients, List<EVCacheKey> evcacheKeys, Transcoder<T> tc, Map<EVCacheKey, T> retMap) {
+        final int expected = retMap.size() + evcacheKeys.size();
+        final Map<EVCacheKey, T> merged = new HashMap<EVCacheKey, T>(retMap);
+        final CompletableFuture<Map<EVCacheKey, T>> future = new CompletableFuture<Map<EVCacheKey, T>>();
+        final AtomicInteger pending = new AtomicInteger(clients.size());
+        final ScheduledFuture<?> deadline = _poolManager.getEVCacheScheduledExecutor().schedule(() -> {
+            synchronized (merged) {
+                if (future.isDone()) return;
+                increment("BULK_GET-PARTIAL_RETRY-DEADLINE_EXCEEDED");
+                if (log.isDebugEnabled() && shouldLog()) log.debug("Fallback for APP " + _appName + " did not complete within the bulk read timeout, keys found : " + (merged.size() - retMap.size()) + " of " + evcacheKeys.size());
+                future.complete(merged);
+            }
+        }, _pool.getBulkReadTimeout().get().intValue(), TimeUnit.MILLISECONDS);
+
+        for (EVCacheClient client : clients) {
+            getBulkDataAsync(client, evcacheKeys, tc, false, true).whenComplete((fbRetMap, e) -> {
+                final boolean last = (pending.decrementAndGet() == 0);
+                synchronized (merged) {
+                    if (future.isDone()) return;
+                    if (log.isDebugEnabled() && shouldLog()) log.debug("Fallback for APP " + _appName + ", key [" + evcacheKeys + "], Fallback Server Group : " + client.getServerGroupName());
+                    if (fbRetMap != null) {
+                        for (Map.Entry<EVCacheKey, T> i : fbRetMap.entrySet()) {
+                            if (merged.containsKey(i.getKey())) continue;
+                            merged.put(i.getKey(), i.getValue());
+                            if (log.isDebugEnabled() && shouldLog()) log.debug("Fallback for APP " + _appName + ", key [" + i.getKey() + (log.isTraceEnabled() ? "], Value [" + i.getValue(): "]"));
+                        }
+                    }
+                    if (last || merged.size() >= expected) {
+                        deadline.cancel(false);
+                        future.complete(merged);
+                    }
+                }
+            });
+        }
+        return future;
+    }
+
     public <T> Map<String, T> getBulk(Collection<String> keys, Transcoder<T> tc) throws EVCacheException {
         return getBulk(keys, tc, false, 0);
     }
@@ -1010,6 +1319,119 @@ final public class EVCacheImpl implements EVCache {
 
     private <T> Map<String, T> getBulk(Collection<String> keys, Transcoder<T> tc, boolean touch, int ttl)
             throws EVCacheException {
+        if (keys != null && _useInMemoryCache.get()) return getBulkInMemory(keys, tc, touch, ttl);
+        return getBulkRemote(keys, tc, touch, ttl);
+    }
+
+    private <T> Map<String, T> getBulkRemote(Collection<String> keys, Transcoder<T> tc, boolean touch, int ttl)
+            throws EVCacheException {
+        if (!touch && keys != null && singleFlight.isBulkEnabled()) return getBulkShared(keys, tc);
+        return doGetBulk(keys, tc, touch, ttl);
+    }
+
+    /*
+     * Serves the keys held by the in-memory cache, or remembered by it as not
+     * found, and gets the others from EVCache, adding them to the in-memory
+     * cache. Like the bulk get, the keys that were not found are returned
+     * with a null value.
+     */
+    private <T> Map<String, T> getBulkInMemory(Collection<String> keys, Transcoder<T> tc, boolean touch, int ttl)
+            throws EVCacheException {
+        final EVCacheInMemoryCache<T> cache = getInMemoryCache(tc);
+        final Map<String, T> served = new HashMap<String, T>();
+        final Map<String, EVCacheKey> fetchKeys = new LinkedHashMap<String, EVCacheKey>();
+        boolean hit = false;
+        for (String key : keys) {
+            if (served.containsKey(key) || fetchKeys.containsKey(key)) continue;
+            final EVCacheKey evcKey = getEVCacheKey(key);
+            final T value = cache.getIfPresent(evcKey);
+            if (value != null) {
+                served.put(key, value);
+                hit = true;
+                if (touch) {
+                    try {
+                        touchData(evcKey, ttl);
+                    } catch (Exception e) {
+                        if (doThrowException()) throw new EVCacheException("Exception executing getBulkAndTouch APP " + _appName + ", key = " + evcKey, e);
+                    }
+                }
+            } else if (cache.isMiss(evcKey.getCanonicalKey())) {
+                served.put(key, null);
+            } else {
+                fetchKeys.put(key, evcKey);
+            }
+        }
+        increment("BULK_GET-INMEMORY-" + (fetchKeys.isEmpty() ? "HIT" : (hit ? "PARTIAL" : "MISS")));
+        if (fetchKeys.isEmpty()) return served;
+
+        final long[] versions = new long[fetchKeys.size()];
+        int i = 0;
+        for (EVCacheKey evcKey : fetchKeys.values()) {
+            versions[i++] = cache.getVersion(evcKey.getCanonicalKey());
+        }
+        final Map<String, T> fetched = getBulkRemote(fetchKeys.keySet(), tc, touch, ttl);
+        if (fetched == null) return hit ? served : null;
+        i = 0;
+        for (Map.Entry<String, EVCacheKey> entry : fetchKeys.entrySet()) {
+            final T value = fetched.get(entry.getKey());
+            if (value == null) {
+                cache.putMiss(entry.getValue().getCanonicalKey(), versions[i]);
+            } else {
+                cache.putIfCurrent(entry.getValue(), value, versions[i]);
+            }
+            i++;
+        }
+        if (served.isEmpty()) return fetched;
+        final Map<String, T> retMap = new HashMap<String, T>(fetched);
+        retMap.putAll(served);
+        return retMap;
+    }
+
+    /*
+     * Shares the flights of the keys that are already in flight and gets the
+     * others in bulk, leading their flights.
+     */
+    private <T> Map<String, T> getBulkShared(Collection<String> keys, Transcoder<T> tc) throws EVCacheException {
+        final List<String> fetchKeys = new ArrayList<String>(keys.size());
+        final Map<String, EVCacheSingleFlight.Flight<T>> led = new HashMap<String, EVCacheSingleFlight.Flight<T>>();
+        final Map<String, EVCacheSingleFlight.Flight<T>> followed = new HashMap<String, EVCacheSingleFlight.Flight<T>>();
+        for (String key : keys) {
+            if (led.containsKey(key) || followed.containsKey(key)) continue;
+            final EVCacheSingleFlight.Flight<T> flight = singleFlight.start(getEVCacheKey(key).getCanonicalKey(), tc);
+            if (flight == null) {
+                fetchKeys.add(key);
+            } else if (flight.isLeader()) {
+                led.put(key, flight);
+                fetchKeys.add(key);
+            } else {
+                followed.put(key, flight);
+            }
+        }
+
+        Map<String, T> retMap = null;
+        Throwable failure = null;
+        try {
+            retMap = fetchKeys.isEmpty() ? Collections.<String, T> emptyMap() : doGetBulk(fetchKeys, tc, false, 0);
+        } catch (EVCacheException | RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            for (Map.Entry<String, EVCacheSingleFlight.Flight<T>> entry : led.entrySet()) {
+                entry.getValue().complete((retMap == null) ? null : retMap.get(entry.getKey()), failure);
+            }
+        }
+        if (followed.isEmpty()) return retMap;
+
+        // the bulk get returns null when it failed without throwing
+        final Map<String, T> sharedMap = (retMap == null) ? new HashMap<String, T>() : new HashMap<String, T>(retMap);
+        for (Map.Entry<String, EVCacheSingleFlight.Flight<T>> entry : followed.entrySet()) {
+            sharedMap.put(entry.getKey(), awaitFlight(entry.getValue(), entry.getKey()));
+        }
+        return sharedMap;
+    }
+
+    private <T> Map<String, T> doGetBulk(Collection<String> keys, Transcoder<T> tc, boolean touch, int ttl)
+            throws EVCacheException {
         if (null == keys) throw new IllegalArgumentException();
         if (keys.isEmpty()) return Collections.<String, T> emptyMap();
 
@@ -1094,7 +1516,23 @@ final public class EVCacheImpl implements EVCache {
                     }
 
                     fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
-                    if (fbClients != null && !fbClients.isEmpty()) {
+                    if (fbClients != null && fbClients.size() > 1 && _bulkPartialZoneFallbackConcurrentFP.get()) {
+                        if (event != null) {
+                            try {
+                                if (shouldThrottle(event)) {
+                                    increment("THROTTLED");
+                                    if (throwExc) throw new EVCacheException("Request Throttled for app " + _appName + " & keys " + retryEVCacheKeys);
+                                    return null;
+                                }
+                            } catch(EVCacheException ex) {
+                                if(throwExc) throw ex;
+                                increment("THROTTLED");
+                                return null;
+                            }
+                        }
+                        retMap = getBulkFallbackDataAsync(fbClients, retryEVCacheKeys, tc, retMap).get();
+                        if (retMap.size() > initRetMapSize) increment(client.getServerGroupName(), _cacheName, "BULK_GET-PARTIAL_RETRY-" + (retMap.isEmpty() ? "MISS" : "HIT"));
+                    } else if (fbClients != null && !fbClients.isEmpty()) {
                         for (int ind = 0; ind < fbClients.size(); ind++) {
                             final EVCacheClient fbClient = fbClients.get(ind);
                             if (event != null) {
@@ -1134,59 +1572,7 @@ final public class EVCacheImpl implements EVCache {
                 }
             }
 
-            if (retMap == null || retMap.isEmpty()) {
-                if (log.isInfoEnabled() && shouldLog()) log.info("BULK : APP " + _appName + " ; Full cache miss for keys : " + keys);
-                if (event != null) event.setAttribute("status", "BMISS_ALL");
-
-                final Map<String, T> returnMap = new HashMap<String, T>();
-                if (retMap != null && retMap.isEmpty()) {
-                    for (String k : keys) {
-                        returnMap.put(k, null);
-                    }
-                }
-                stats.cacheMiss(Call.BULK);
-                /* If both Retry and first request fail Exit Immediately. */
-                increment(client.getServerGroupName(), _cacheName, "BULK_MISS");
-                if (event != null) endEvent(event);
-                return returnMap;
-            }
-
-            /* Decanonicalize the keys */
-            boolean partialHit = false;
-            final List<String> decanonicalHitKeys = new ArrayList<String>(retMap.size());
-            final Map<String, T> decanonicalR = new HashMap<String, T>((evcKeys.size() * 4) / 3 + 1);
-            for (Iterator<EVCacheKey> itr = evcKeys.iterator(); itr.hasNext();) {
-                final EVCacheKey key = itr.next();
-                final String deCanKey = key.getKey();
-                final T value = retMap.get(key);
-                if (value != null) {
-                    decanonicalR.put(deCanKey, value);
-                    if (touch) touchData(key, ttl);
-                    decanonicalHitKeys.add(deCanKey);
-                } else {
-                    partialHit = true;
-                    // this ensures the fallback was tried
-                    decanonicalR.put(deCanKey, null);
-                } 
-            }
-            if (!decanonicalR.isEmpty()) {
-                if (!partialHit) {
-                    stats.cacheHit(Call.BULK);
-                    increment(client.getServerGroupName(), _cacheName, "BULK_HIT");
-                    if (event != null) event.setAttribute("status", "BHIT");
-                } else {
-                    if (event != null) {
-                        event.setAttribute("status", "BHIT_PARTIAL");
-                        event.setAttribute("BHIT_PARTIAL_KEYS", decanonicalHitKeys);
-                    }
-                    increment(client.getServerGroupName(), _cacheName, "BULK_HIT_PARTIAL");
-                    if (log.isInfoEnabled() && shouldLog()) log.info("BULK_HIT_PARTIAL for APP " + _appName + ", keys in cache [" + decanonicalR + "], all keys [" + keys + "]");
-                }
-            }
-
-            if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", BULK : Data [" + decanonicalR + "]");
-            if (event != null) endEvent(event);
-            return decanonicalR;
+            return getBulkResult(keys, evcKeys, retMap, client, event, touch, ttl);
         } catch (net.spy.memcached.internal.CheckedOperationTimeoutException ex) {
             if (log.isDebugEnabled() && shouldLog()) log.debug("CheckedOperationTimeoutException getting bulk data for APP " + _appName + ", keys : " + evcKeys, ex);
             if (event != null) eventError(event, ex);
@@ -1204,6 +1590,66 @@ final public class EVCacheImpl implements EVCache {
         }
     }
 
+    /*
+     * Records the hits and misses of a bulk get and maps the values back to
+     * the keys they were requested with.
+     */
+    private <T> Map<String, T> getBulkResult(Collection<String> keys, Collection<EVCacheKey> evcKeys, Map<EVCacheKey, T> retMap, EVCacheClient client, EVCacheEvent event, boolean touch, int ttl) throws Exception {
+        if (retMap == null || retMap.isEmpty()) {
+            if (log.isInfoEnabled() && shouldLog()) log.info("BULK : APP " + _appName + " ; Full cache miss for keys : " + keys);
+            if (event != null) event.setAttribute("status", "BMISS_ALL");
+
+            final Map<String, T> returnMap = new HashMap<String, T>();
+            if (retMap != null && retMap.isEmpty()) {
+                for (String k : keys) {
+                    returnMap.put(k, null);
+                }
+            }
+            stats.cacheMiss(Call.BULK);
+            /* If both Retry and first request fail Exit Immediately. */
+            increment(client.getServerGroupName(), _cacheName, "BULK_MISS");
+            if (event != null) endEvent(event);
+            return returnMap;
+        }
+
+        /* Decanonicalize the keys */
+        boolean partialHit = false;
+        final List<String> decanonicalHitKeys = new ArrayList<String>(retMap.size());
+        final Map<String, T> decanonicalR = new HashMap<String, T>((evcKeys.size() * 4) / 3 + 1);
+        for (Iterator<EVCacheKey> itr = evcKeys.iterator(); itr.hasNext();) {
+            final EVCacheKey key = itr.next();
+            final String deCanKey = key.getKey();
+            final T value = retMap.get(key);
+            if (value != null) {
+                decanonicalR.put(deCanKey, value);
+                if (touch) touchData(key, ttl);
+                decanonicalHitKeys.add(deCanKey);
+            } else {
+                partialHit = true;
+                // this ensures the fallback was tried
+                decanonicalR.put(deCanKey, null);
+            } 
+        }
+        if (!decanonicalR.isEmpty()) {
+            if (!partialHit) {
+                stats.cacheHit(Call.BULK);
+                increment(client.getServerGroupName(), _cacheName, "BULK_HIT");
+                if (event != null) event.setAttribute("status", "BHIT");
+            } else {
+                if (event != null) {
+                    event.setAttribute("status", "BHIT_PARTIAL");
+                    event.setAttribute("BHIT_PARTIAL_KEYS", decanonicalHitKeys);
+                }
+                increment(client.getServerGroupName(), _cacheName, "BULK_HIT_PARTIAL");
+                if (log.isInfoEnabled() && shouldLog()) log.info("BULK_HIT_PARTIAL for APP " + _appName + ", keys in cache [" + decanonicalR + "], all keys [" + keys + "]");
+            }
+        }
+
+        if (log.isDebugEnabled() && shouldLog()) log.debug("APP " + _appName + ", BULK : Data [" + decanonicalR + "]");
+        if (event != null) endEvent(event);
+        return decanonicalR;
+    }
+
     public <T> Map<String, T> getBulk(Collection<String> keys) throws EVCacheException {
         return (this.getBulk(keys, (Transcoder<T>) _transcoder));
     }
@@ -1302,7 +1748,7 @@ final public class EVCacheImpl implements EVCache {
                         if (setDataSizeSummary != null) this.setDataSizeSummary.record(cd.getData().length);
                     }
                 }
-                final Future<Boolean> future = client.set(evcKey.getHashKey() == null ? evcKey.getCanonicalKey() : evcKey.getHashKey(), cd, timeToLive, latch);
+                final Future<Boolean> future = client.set(evcKey, cd, timeToLive, latch);
                 if (log.isDebugEnabled() && shouldLog()) log.debug("SET : APP " + _appName + ", Future " + future + " for key : " + evcKey);
             }
             if (event != null) {
@@ -1315,8 +1761,12 @@ final public class EVCacheImpl implements EVCache {
                     endEvent(event);
                 }
             }
+            writeInMemory(evcKey, value, tc);
+            writeInMemoryOnComplete(evcKey, value, tc, latch);
             return latch;
         } catch (Exception ex) {
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
             if (log.isDebugEnabled() && shouldLog()) log.debug("Exception setting the data for APP " + _appName + ", key : " + evcKey, ex);
             if (event != null) endEvent(event);
             if (!throwExc) return new EVCacheLatchImpl(policy, 0, _appName);
@@ -1327,6 +1777,126 @@ final public class EVCacheImpl implements EVCache {
         }
     }
 
+    public EVCacheLatch setStream(String key, InputStream in, int timeToLive, Policy policy) throws EVCacheException {
+        if ((null == key) || (null == in)) throw new IllegalArgumentException();
+
+        final boolean throwExc = doThrowException();
+        final EVCacheClient[] clients = _pool.getEVCacheClientForWrite();
+        if (clients.length == 0) {
+            increment("NULL_CLIENT");
+            if (throwExc) throw new EVCacheException("Could not find a client to set the data");
+            return new EVCacheLatchImpl(policy, 0, _appName); // Fast failure
+        }
+        for (EVCacheClient client : clients) {
+            // streamed values are always chunked, which only chunking server groups read
+            if (!client.getEnableChunking().get()) throw new EVCacheException("setStream is not supported as chunking is not enabled on server group " + client.getServerGroupName() + " of APP " + _appName);
+        }
+
+        final EVCacheKey evcKey = getEVCacheKey(key);
+        final String derivedKey = evcKey.getDerivedKey();
+        final Operation op = EVCacheMetricsFactory.getOperation(_metricName, Call.SET, stats, Operation.TYPE.MILLI);
+        final EVCacheLatchImpl latch = new EVCacheLatchImpl(policy == null ? Policy.ALL_MINUS_1 : policy, clients.length - _pool.getWriteOnlyEVCacheClients().length, _appName);
+        final boolean[] failed = new boolean[clients.length];
+        int chunks = 1;
+        try {
+            int chunkSize = Integer.MAX_VALUE;
+            for (EVCacheClient client : clients) {
+                chunkSize = Math.min(chunkSize, client.getChunkDataSize(derivedKey));
+            }
+
+            // a chunk is read in the buffer of the write it waited for
+            final int window = Math.max(1, _streamWriteWindow.get());
+            final byte[][] buffers = new byte[window][];
+            final Deque<Future<Boolean>[]> inFlight = new ArrayDeque<Future<Boolean>[]>(window);
+            final Checksum checksum = new CRC32();
+            int length = chunkSize, lastChunk = 0;
+            while (length == chunkSize) {
+                final int slot = chunks % window;
+                if (inFlight.size() == window && !awaitChunks(inFlight.poll(), failed)) buffers[slot] = null;
+                if (buffers[slot] == null) buffers[slot] = new byte[chunkSize];
+                final byte[] buffer = buffers[slot];
+                length = read(in, buffer);
+                if (length == 0) break;
+
+                checksum.update(buffer, 0, length);
+                // an array of a generic type can only be created raw
+                @SuppressWarnings({ "unchecked", "rawtypes" })
+                final Future<Boolean>[] futures = new Future[clients.length];
+                for (int i = 0; i < clients.length; i++) {
+                    if (!failed[i]) futures[i] = clients[i].setChunk(derivedKey, chunks, buffer, length, timeToLive);
+                }
+                inFlight.add(futures);
+                lastChunk = length;
+                chunks++;
+            }
+            while (!inFlight.isEmpty()) {
+                awaitChunks(inFlight.poll(), failed);
+            }
+            if (chunks == 1) {
+                // an empty value is not chunked
+                return set(key, new byte[0], (Transcoder<byte[]>) null, timeToLive, policy);
+            }
+
+            for (int i = 0; i < clients.length; i++) {
+                if (failed[i]) {
+                    increment(clients[i].getServerGroupName(), _cacheName, "STREAM_CHUNK_FAILURE");
+                    clients[i].abortChunks(derivedKey, chunks, latch);
+                } else {
+                    clients[i].setChunkMetadata(derivedKey, chunks, chunkSize, lastChunk, checksum.getValue(), timeToLive, latch);
+                }
+            }
+            if (log.isDebugEnabled() && shouldLog()) log.debug("SET_STREAM : APP " + _appName + ", " + (chunks - 1) + " chunks of " + chunkSize + " bytes for key : " + evcKey);
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
+            return latch;
+        } catch (Exception ex) {
+            for (EVCacheClient client : clients) {
+                client.abortChunks(derivedKey, chunks, null);
+            }
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
+            if (log.isDebugEnabled() && shouldLog()) log.debug("Exception streaming the data for APP " + _appName + ", key : " + evcKey, ex);
+            if (ex instanceof InterruptedException) Thread.currentThread().interrupt();
+            if (!throwExc) return new EVCacheLatchImpl(policy, 0, _appName);
+            throw new EVCacheException("Exception streaming data for APP " + _appName + ", key : " + evcKey, ex);
+        } finally {
+            op.stop();
+            if (log.isDebugEnabled() && shouldLog()) log.debug("SET_STREAM : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + evcKey);
+        }
+    }
+
+    /*
+     * Waits for the writes of a chunk and marks the clients that failed.
+     * Returns false if a write is not done, its buffer can then not be
+     * reused.
+     */
+    private boolean awaitChunks(Future<Boolean>[] futures, boolean[] failed) throws InterruptedException {
+        boolean done = true;
+        for (int i = 0; i < futures.length; i++) {
+            if (futures[i] == null) continue;
+            try {
+                if (!futures[i].get(_pool.getOperationTimeout().get(), TimeUnit.MILLISECONDS).booleanValue()) failed[i] = true;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (log.isDebugEnabled() && shouldLog()) log.debug("Exception writing a chunk for APP " + _appName, e);
+                failed[i] = true;
+                done = done && futures[i].isDone();
+            }
+        }
+        return done;
+    }
+
+    private static int read(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            final int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) break;
+            length += read;
+        }
+        return length;
+    }
+
     public <T> EVCacheFuture[] append(String key, T value, int timeToLive) throws EVCacheException {
         return this.append(key, value, null, timeToLive);
     }
@@ -1361,6 +1931,7 @@ final public class EVCacheImpl implements EVCache {
         }
 
         final Operation op = EVCacheMetricsFactory.getOperation(_metricName, Call.APPEND, stats, Operation.TYPE.MILLI);
+        final List<Future<Boolean>> writes = new ArrayList<Future<Boolean>>(clients.length);
         try {
             final EVCacheFuture[] futures = new EVCacheFuture[clients.length];
             CachedData cd = null;
@@ -1380,6 +1951,7 @@ final public class EVCacheImpl implements EVCache {
                     }
                 }
                 final Future<Boolean> future = client.append(evcKey.getHashKey() == null ? evcKey.getCanonicalKey() : evcKey.getHashKey(), cd);
+                writes.add(future);
                 futures[index++] = new EVCacheFuture(future, key, _appName, client.getServerGroup());
             }
             if (event != null) {
@@ -1396,6 +1968,8 @@ final public class EVCacheImpl implements EVCache {
             throw new EVCacheException("Exception setting data for APP " + _appName + ", key : " + evcKey, ex);
         } finally {
             op.stop();
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, writes);
             if (log.isDebugEnabled() && shouldLog()) log.debug("APPEND : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + evcKey);
         }
     }
@@ -1467,7 +2041,7 @@ final public class EVCacheImpl implements EVCache {
         final EVCacheLatchImpl latch = new EVCacheLatchImpl(policy == null ? Policy.ALL_MINUS_1 : policy, clients.length - _pool.getWriteOnlyEVCacheClients().length, _appName);
         try {
             for (int i = 0; i < clients.length; i++) {
-                Future<Boolean> future = clients[i].delete(evcKey.getHashKey() == null ? evcKey.getCanonicalKey() : evcKey.getHashKey(), latch);
+                Future<Boolean> future = clients[i].delete(evcKey, latch);
                 if (log.isDebugEnabled() && shouldLog()) log.debug("DELETE : APP " + _appName + ", Future " + future + " for key : " + evcKey);
             }
 
@@ -1487,6 +2061,8 @@ final public class EVCacheImpl implements EVCache {
             throw new EVCacheException("Exception while deleting the data for APP " + _appName + ", key : " + key, ex);
         } finally {
             op.stop();
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
             if (log.isDebugEnabled() && shouldLog()) log.debug("DELETE : APP " + _appName + " Took " + op.getDuration() + " milliSec for key : " + key);
         }
     }
@@ -1567,6 +2143,7 @@ final public class EVCacheImpl implements EVCache {
             throw new EVCacheException("Exception incrementing value for APP " + _appName + ", key : " + key, ex);
         } finally {
             op.stop();
+            writeInMemoryCompleted(evcKey, null, null);
             if (log.isDebugEnabled() && shouldLog()) log.debug("INCR : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + key + " with value as " + currentValue);
         }
     }
@@ -1645,6 +2222,7 @@ final public class EVCacheImpl implements EVCache {
             throw new EVCacheException("Exception decrementing value for APP " + _appName + ", key : " + key, ex);
         } finally {
             op.stop();
+            writeInMemoryCompleted(evcKey, null, null);
             if (log.isDebugEnabled() && shouldLog()) log.debug("DECR : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + key + " with value " + currentValue);
         }
     }
@@ -1722,7 +2300,7 @@ final public class EVCacheImpl implements EVCache {
                         if (replaceDataSizeSummary != null) this.replaceDataSizeSummary.record(cd.getData().length);
                     }
                 }
-                final Future<Boolean> future = client.replace(evcKey.getHashKey() == null ? evcKey.getCanonicalKey() : evcKey.getHashKey(), cd, timeToLive, latch);
+                final Future<Boolean> future = client.replace(evcKey, cd, timeToLive, latch);
                 futures[index++] = new EVCacheFuture(future, key, _appName, client.getServerGroup());
             }
             if (event != null) {
@@ -1736,8 +2314,12 @@ final public class EVCacheImpl implements EVCache {
                     endEvent(event);
                 }
             }
+            writeInMemory(evcKey, value, tc);
+            writeInMemoryOnComplete(evcKey, value, tc, latch);
             return latch;
         } catch (Exception ex) {
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
             if (log.isDebugEnabled() && shouldLog()) log.debug("Exception setting the data for APP " + _appName + ", key : " + evcKey, ex);
             if (event != null) eventError(event, ex);
             if (!throwExc) return new EVCacheLatchImpl(policy, 0, _appName);
@@ -1808,7 +2390,7 @@ final public class EVCacheImpl implements EVCache {
                         if (appendDataSizeSummary != null) this.appendDataSizeSummary.record(cd.getData().length);
                     }
                 }
-                final Future<Boolean> future = client.appendOrAdd(evcKey.getHashKey() == null ? evcKey.getCanonicalKey() : evcKey.getHashKey(), cd, timeToLive, latch);
+                final Future<Boolean> future = client.appendOrAdd(evcKey, cd, timeToLive, latch);
                 if (log.isDebugEnabled() && shouldLog()) log.debug("APPEND_OR_ADD : APP " + _appName + ", Future " + future + " for key : " + evcKey);
             }
             if (event != null) {
@@ -1829,6 +2411,8 @@ final public class EVCacheImpl implements EVCache {
             throw new EVCacheException("Exception while appendOrAdd data for APP " + _appName + ", key : " + evcKey, ex);
         } finally {
             op.stop();
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
             if (log.isDebugEnabled() && shouldLog()) log.debug("APPEND_OR_ADD : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + evcKey);
         }
     }
@@ -1902,7 +2486,7 @@ final public class EVCacheImpl implements EVCache {
                 }
             }
             if(clientUtil == null) clientUtil = new EVCacheClientUtil(_pool);
-            latch = clientUtil.add(evcKey.getHashKey() == null ? evcKey.getCanonicalKey() : evcKey.getHashKey(), cd, timeToLive, policy);
+            latch = clientUtil.add(evcKey, cd, timeToLive, policy);
             if (event != null) {
                 event.setTTL(timeToLive);
                 event.setCachedData(cd);
@@ -1923,8 +2507,427 @@ final public class EVCacheImpl implements EVCache {
             throw new EVCacheException("Exception adding data for APP " + _appName + ", key : " + evcKey, ex);
         } finally {
             op.stop();
+            writeInMemory(evcKey, null, null);
+            writeInMemoryOnComplete(evcKey, null, null, latch);
             if (log.isDebugEnabled() && shouldLog()) log.debug("ADD : APP " + _appName + ", Took " + op.getDuration() + " milliSec for key : " + evcKey);
         }
     }
 
-}
\ No newline at end of file
+    private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /*
+     * Runs a blocking read on the bounded blocking executor. The EVCache
+     * executor cannot be used as its threads complete the operations the
+     * read waits for. If the queue is full the read fails right away.
+     */
+    private <T> CompletableFuture<T> supplyBlocking(Callable<T> read) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        try {
+            _poolManager.getEVCacheBlockingExecutor().execute(() -> {
+                try {
+                    future.complete(read.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            increment("BLOCKING_READ_REJECTED");
+            future.completeExceptionally(new EVCacheException("Too many blocking reads queued for APP " + _appName, e));
+        }
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+    }
+
+    public <T> CompletableFuture<T> getAsync(String key) {
+        return this.getAsync(key, (Transcoder<T>) _transcoder);
+    }
+
+    public <T> CompletableFuture<T> getAsync(String key, Transcoder<T> tc) {
+        if (null == key) return failedFuture(new IllegalArgumentException("Key cannot be null"));
+        final EVCacheKey evcKey = getEVCacheKey(key);
+        if (_useInMemoryCache.get()) {
+            final T value = (T) getInMemoryCache(tc).getIfPresent(evcKey);
+            if (value != null) return CompletableFuture.completedFuture(value);
+            // the in-memory cache loads missing values synchronously
+            final CompletableFuture<T> future = supplyBlocking(() -> get(key, tc));
+            return doThrowException() ? future : future.exceptionally(ex -> null);
+        }
+
+        if (singleFlight.isEnabled()) {
+            final EVCacheSingleFlight.Flight<T> flight = singleFlight.start(evcKey.getCanonicalKey(), tc);
+            if (flight != null) {
+                if (!flight.isLeader()) {
+                    increment("SINGLE_FLIGHT_SHARED");
+                    return flight.share();
+                }
+                final CompletableFuture<T> future = doGetAsync(evcKey, tc);
+                future.whenComplete(flight::complete);
+                return future;
+            }
+        }
+        return doGetAsync(evcKey, tc);
+    }
+
+    private <T> CompletableFuture<T> doGetAsync(EVCacheKey evcKey, Transcoder<T> tc) {
+        final boolean throwExc = doThrowException();
+        final EVCacheClient client = _pool.getEVCacheClientForRead();
+        if (client == null) {
+            increment("NULL_CLIENT");
+            if (throwExc) return failedFuture(new EVCacheException("Could not find a client to get the data APP " + _appName));
+            return CompletableFuture.completedFuture(null); // Fast failure
+        }
+
+        final EVCacheEvent event = createEVCacheEvent(Collections.singletonList(client), Call.GET);
+        if (event != null) {
+            event.setEVCacheKeys(Arrays.asList(evcKey));
+            try {
+                if (shouldThrottle(event)) {
+                    increment("THROTTLED");
+                    if (throwExc) return failedFuture(new EVCacheException("Request Throttled for app " + _appName + " & key " + evcKey));
+                    return CompletableFuture.completedFuture(null);
+                }
+            } catch(EVCacheException ex) {
+                if(throwExc) return failedFuture(ex);
+                increment("THROTTLED");
+                return CompletableFuture.completedFuture(null);
+            }
+            startEvent(event);
+        }
+
+        final Operation op = EVCacheMetricsFactory.getOperation(_metricName, Call.GET, stats, Operation.TYPE.MILLI);
+        final boolean hasZF = hasZoneFallback();
+        return getDataAsync(client, evcKey, tc, hasZF ? false : throwExc, hasZF).thenCompose(data -> {
+            if (data != null || !hasZF) return CompletableFuture.completedFuture(data);
+            final List<EVCacheClient> fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
+            if (fbClients == null || fbClients.isEmpty()) return CompletableFuture.completedFuture(data);
+            return getFallbackDataAsync(fbClients, 0, evcKey, tc, throwExc, event).whenComplete((fbData, ex) -> {
+                if (ex == null) increment(client.getServerGroupName(), _cacheName, "RETRY_" + ((fbData == null) ? "MISS" : "HIT"));
+            });
+        }).handle((data, ex) -> {
+            op.stop();
+            if (ex != null) {
+                final Throwable cause = unwrap(ex);
+                if (event != null) eventError(event, cause);
+                if (!throwExc) return null;
+                if (cause instanceof EVCacheException) throw new CompletionException(cause);
+                if (cause instanceof net.spy.memcached.internal.CheckedOperationTimeoutException) {
+                    throw new CompletionException(new EVCacheException("CheckedOperationTimeoutException getting data for APP " + _appName + ", key = "
+                            + evcKey
+                            + ".\nYou can set the following property to increase the timeout " + _appName
+                            + ".EVCacheClientPool.readTimeout=<timeout in milli-seconds>", cause));
+                }
+                throw new CompletionException(new EVCacheException("Exception getting data for APP " + _appName + ", key = " + evcKey, cause));
+            }
+            if (data != null) {
+                stats.cacheHit(Call.GET);
+                if (event != null) event.setAttribute("status", "GHIT");
+            } else {
+                stats.cacheMiss(Call.GET);
+                if (event != null) event.setAttribute("status", "GMISS");
+                if (log.isInfoEnabled() && shouldLog()) log.info("GET : APP " + _appName + " ; cache miss for key : " + evcKey);
+            }
+            if (log.isDebugEnabled() && shouldLog()) log.debug("GET : APP " + _appName + ", key [" + evcKey + (log.isTraceEnabled() ? "], Value [" + data : "") + "], Took " + op.getDuration() + " milliSec.");
+            if (event != null) endEvent(event);
+            return data;
+        });
+    }
+
+    /*
+     * Tries the fallback clients one after the other, starting with the one
+     * at the given index, until one of them returns a value.
+     */
+    private <T> CompletableFuture<T> getFallbackDataAsync(List<EVCacheClient> fbClients, int index, EVCacheKey evcKey, Transcoder<T> tc, boolean throwExc, EVCacheEvent event) {
+        final EVCacheClient fbClient = fbClients.get(index);
+        final boolean last = (index >= fbClients.size() - 1);
+        if (event != null) {
+            try {
+                if (shouldThrottle(event)) {
+                    increment("THROTTLED");
+                    if (throwExc) return failedFuture(new EVCacheException("Request Throttled for app " + _appName + " & key " + evcKey));
+                    return CompletableFuture.completedFuture(null);
+                }
+            } catch(EVCacheException ex) {
+                if(throwExc) return failedFuture(ex);
+                increment("THROTTLED");
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+        return getDataAsync(fbClient, evcKey, tc, last ? throwExc : false, !last).thenCompose(data -> {
+            if (log.isDebugEnabled() && shouldLog()) log.debug("Retry for APP " + _appName + ", key [" + evcKey + (log.isTraceEnabled() ? "], Value [" + data : "") + "], ServerGroup : " + fbClient.getServerGroup());
+            if (data != null || last) return CompletableFuture.completedFuture(data);
+            return getFallbackDataAsync(fbClients, index + 1, evcKey, tc, throwExc, event);
+        });
+    }
+
+    /*
+     * Gets the value from the client without blocking. Clients that cannot
+     * read the key using a single operation, like chunked ones, are read
+     * using the blocking get on the blocking executor.
+     */
+    private <T> CompletableFuture<T> getDataAsync(EVCacheClient client, EVCacheKey evcKey, Transcoder<T> tc, boolean throwException, boolean hasZF) {
+        if (!client.isAsyncGetSupported()) {
+            final CompletableFuture<T> future = supplyBlocking(() -> getData(client, evcKey, tc, throwException, hasZF));
+            if (throwException && !hasZF) return future;
+            return future.exceptionally(ex -> null);
+        }
+        try {
+            final Transcoder<Object> transcoder;
+            if(evcKey.getHashKey() != null) {
+                transcoder = (Transcoder<Object>)(Transcoder<?>)evcacheValueTranscoder;
+            } else {
+                transcoder = (Transcoder<Object>)(tc == null ? _transcoder : tc);
+            }
+            final EVCacheOperationFuture<Object> future = (EVCacheOperationFuture<Object>) client.asyncGet(evcKey, transcoder, throwException, hasZF);
+            if (future == null) return CompletableFuture.completedFuture(null);
+            return future.toCompletableFuture(client.getReadTimeout().get().intValue(), TimeUnit.MILLISECONDS, throwException, hasZF, _poolManager.getEVCacheScheduledExecutor())
+                    .thenApply(obj -> (evcKey.getHashKey() != null) ? decodeEVCacheValue(client, obj, tc) : (T) obj);
+        } catch (Exception ex) {
+            if (log.isDebugEnabled() && shouldLog()) log.debug("Exception while getting data for APP " + _appName + ", key : " + evcKey + "; hasZF : " + hasZF, ex);
+            if (!throwException || hasZF) return CompletableFuture.completedFuture(null);
+            return failedFuture(ex);
+        }
+    }
+
+    public <T> CompletableFuture<Map<String, T>> getBulkAsync(Collection<String> keys) {
+        return this.getBulkAsync(keys, (Transcoder<T>) _transcoder);
+    }
+
+    public <T> CompletableFuture<Map<String, T>> getBulkAsync(Collection<String> keys, Transcoder<T> tc) {
+        if (null == keys) return failedFuture(new IllegalArgumentException());
+        if (keys.isEmpty()) return CompletableFuture.completedFuture(Collections.<String, T> emptyMap());
+
+        final boolean throwExc = doThrowException();
+        final EVCacheClient client = _pool.getEVCacheClientForRead();
+        if (client == null) {
+            increment("NULL_CLIENT");
+            if (throwExc) return failedFuture(new EVCacheException("Could not find a client to get the data in bulk"));
+            return CompletableFuture.completedFuture(Collections.<String, T> emptyMap());// Fast failure
+        }
+
+        final List<EVCacheKey> evcKeys = new ArrayList<EVCacheKey>(keys.size());
+        for (String k : keys) {
+            evcKeys.add(getEVCacheKey(k));
+        }
+        final EVCacheEvent event = createEVCacheEvent(Collections.singletonList(client), Call.BULK);
+        if (event != null) {
+            event.setEVCacheKeys(evcKeys);
+            try {
+                if (shouldThrottle(event)) {
+                    increment("THROTTLED");
+                    if (throwExc) return failedFuture(new EVCacheException("Request Throttled for app " + _appName + " & keys " + keys));
+                    return CompletableFuture.completedFuture(Collections.<String, T> emptyMap());
+                }
+            } catch(EVCacheException ex) {
+                if(throwExc) return failedFuture(ex);
+                increment("THROTTLED");
+                return CompletableFuture.completedFuture(Collections.<String, T> emptyMap());
+            }
+            startEvent(event);
+        }
+
+        final Operation op = EVCacheMetricsFactory.getOperation(_metricName, Call.BULK, stats, Operation.TYPE.MILLI);
+        final boolean hasZF = hasZoneFallbackForBulk();
+        increment(client.getServerGroupName(), _cacheName, "BULK_GET");
+        return getBulkDataAsync(client, evcKeys, tc, hasZF ? false : throwExc, hasZF).thenCompose(retMap -> {
+            if (!hasZF || retMap.size() >= evcKeys.size()) return CompletableFuture.completedFuture(retMap);
+            // the missing keys are read from all the other server groups at once
+            if (!retMap.isEmpty() && !_bulkPartialZoneFallbackFP.get()) return CompletableFuture.completedFuture(retMap);
+            final List<EVCacheClient> fbClients = _pool.getEVCacheClientsForReadExcluding(client.getServerGroup());
+            if (fbClients == null || fbClients.isEmpty()) return CompletableFuture.completedFuture(retMap);
+            if (event != null) {
+                try {
+                    if (shouldThrottle(event)) {
+                        increment("THROTTLED");
+                        return CompletableFuture.completedFuture(retMap);
+                    }
+                } catch(EVCacheException ex) {
+                    increment("THROTTLED");
+                    return CompletableFuture.completedFuture(retMap);
+                }
+            }
+            final List<EVCacheKey> retryEVCacheKeys = new ArrayList<EVCacheKey>(evcKeys.size() - retMap.size());
+            for (EVCacheKey key : evcKeys) {
+                if (!retMap.containsKey(key)) retryEVCacheKeys.add(key);
+            }
+            final String retry = retMap.isEmpty() ? "BULK_GET-FULL_RETRY-" : "BULK_GET-PARTIAL_RETRY-";
+            final int initRetMapSize = retMap.size();
+            return getBulkFallbackDataAsync(fbClients, retryEVCacheKeys, tc, retMap).whenComplete((fbRetMap, ex) -> {
+                if (ex == null) increment(client.getServerGroupName(), _cacheName, retry + ((fbRetMap.size() > initRetMapSize) ? "HIT" : "MISS"));
+            });
+        }).handle((retMap, ex) -> {
+            op.stop();
+            try {
+                if (ex != null) throw unwrap(ex);
+                return getBulkResult(keys, evcKeys, retMap, client, event, false, 0);
+            } catch (Throwable t) {
+                if (log.isDebugEnabled() && shouldLog()) log.debug("Exception getting bulk data for APP " + _appName + ", keys = " + evcKeys, t);
+                if (event != null) eventError(event, t);
+                if (!throwExc) return Collections.<String, T> emptyMap();
+                if (t instanceof EVCacheException) throw new CompletionException(t);
+                throw new CompletionException(new EVCacheException("Exception getting bulk data for APP " + _appName + ", keys = " + evcKeys, t));
+            }
+        });
+    }
+
+    public <T> CompletableFuture<Boolean> setAsync(String key, T value) {
+        return this.setAsync(key, value, (Transcoder<T>) _transcoder, _timeToLive, Policy.ALL_MINUS_1);
+    }
+
+    public <T> CompletableFuture<Boolean> setAsync(String key, T value, int timeToLive) {
+        return this.setAsync(key, value, (Transcoder<T>) _transcoder, timeToLive, Policy.ALL_MINUS_1);
+    }
+
+    public <T> CompletableFuture<Boolean> setAsync(String key, T value, Transcoder<T> tc, int timeToLive, Policy policy) {
+        try {
+            return toCompletableFuture(set(key, value, tc, timeToLive, policy));
+        } catch (EVCacheException ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String key) {
+        return this.deleteAsync(key, Policy.ALL_MINUS_1);
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String key, Policy policy) {
+        try {
+            return toCompletableFuture(delete(key, policy));
+        } catch (EVCacheException ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    public CompletableFuture<Boolean> touchAsync(String key, int timeToLive) {
+        return this.touchAsync(key, timeToLive, Policy.ALL_MINUS_1);
+    }
+
+    public CompletableFuture<Boolean> touchAsync(String key, int timeToLive, Policy policy) {
+        try {
+            return toCompletableFuture(touch(key, timeToLive, policy));
+        } catch (EVCacheException ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    /*
+     * Completes the future of the latch with false if the operations are not
+     * done within the operation timeout.
+     */
+    private CompletableFuture<Boolean> toCompletableFuture(EVCacheLatch latch) {
+        if (!(latch instanceof EVCacheLatchImpl)) return CompletableFuture.completedFuture(Boolean.FALSE);
+        final CompletableFuture<Boolean> future = ((EVCacheLatchImpl) latch).getCompletableFuture();
+        if (future.isDone()) return future;
+        final ScheduledFuture<?> timeout = _poolManager.getEVCacheScheduledExecutor().schedule(() -> future.complete(Boolean.FALSE), _pool.getOperationTimeout().get(), TimeUnit.MILLISECONDS);
+        future.whenComplete((status, ex) -> timeout.cancel(false));
+        return future;
+    }
+
+    public CompletableFuture<Long> incrAsync(String key, long by, long defaultVal, int timeToLive) {
+        if ((null == key) || by < 0 || defaultVal < 0 || timeToLive < 0) return failedFuture(new IllegalArgumentException());
+
+        final boolean throwExc = doThrowException();
+        final EVCacheClient[] clients = _pool.getEVCacheClientForWrite();
+        if (clients.length == 0) {
+            increment("NULL_CLIENT");
+            if (log.isDebugEnabled() && shouldLog()) log.debug("INCR : " + _metricName + ":NULL_CLIENT");
+            if (throwExc) return failedFuture(new EVCacheException("Could not find a client to incr the data"));
+            return CompletableFuture.completedFuture(Long.valueOf(-1));
+        }
+
+        final EVCacheKey evcKey = getEVCacheKey(key);
+        final EVCacheEvent event = createEVCacheEvent(Arrays.asList(clients), Call.INCR);
+        if (event != null) {
+            event.setEVCacheKeys(Arrays.asList(evcKey));
+            try {
+                if (shouldThrottle(event)) {
+                    increment("THROTTLED");
+                    if (throwExc) return failedFuture(new EVCacheException("Request Throttled for app " + _appName + " & key " + key));
+                    return CompletableFuture.completedFuture(Long.valueOf(-1));
+                }
+            } catch(EVCacheException ex) {
+                if(throwExc) return failedFuture(ex);
+                increment("THROTTLED");
+                return CompletableFuture.completedFuture(Long.valueOf(-1));
+            }
+            startEvent(event);
+        }
+
+        final Operation op = EVCacheMetricsFactory.getOperation(_metricName, Call.INCR, stats, Operation.TYPE.MILLI);
+        final String memcachedKey = (evcKey.getHashKey() == null) ? evcKey.getCanonicalKey() : evcKey.getHashKey();
+        final List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>(clients.length);
+        for (int i = 0; i < clients.length; i++) {
+            futures.add(incrData(clients[i], memcachedKey, by, defaultVal, timeToLive));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).handle((v, ex) -> {
+            op.stop();
+            try {
+                if (ex != null) throw unwrap(ex);
+                long currentValue = -1;
+                final long[] vals = new long[clients.length];
+                for (int i = 0; i < clients.length; i++) {
+                    vals[i] = futures.get(i).join().longValue();
+                    if (vals[i] != -1 && currentValue < vals[i]) currentValue = vals[i];
+                }
+                if (currentValue != -1) {
+                    CachedData cd = null;
+                    for (int i = 0; i < vals.length; i++) {
+                        if (vals[i] == -1) {
+                            if (log.isDebugEnabled()) log.debug("INCR : APP " + _appName + "; Zone " + clients[i].getZone()
+                                    + " had a value = -1 so setting it to current value = " + currentValue + " for key : " + key);
+                            clients[i].asyncIncr(memcachedKey, 0, currentValue, timeToLive);
+                        } else if (vals[i] != currentValue) {
+                            if(cd == null) cd = clients[i].getTranscoder().encode(String.valueOf(currentValue));
+                            if (log.isDebugEnabled()) log.debug("INCR : APP " + _appName + "; Zone " + clients[i].getZone()
+                                    + " had a value of " + vals[i] + " so setting it to current value = " + currentValue + " for key : " + key);
+                            clients[i].set(memcachedKey, cd, timeToLive);
+                        }
+                    }
+                }
+                if (event != null) endEvent(event);
+                if (log.isDebugEnabled()) log.debug("INCR : APP " + _appName + " returning value = " + currentValue + " for key : " + key + ", Took " + op.getDuration() + " milliSec");
+                return Long.valueOf(currentValue);
+            } catch (Throwable t) {
+                if (log.isDebugEnabled() && shouldLog()) log.debug("Exception incrementing the value for APP " + _appName + ", key : " + key, t);
+                if (event != null) eventError(event, t);
+                if (!throwExc) return Long.valueOf(-1);
+                throw new CompletionException(new EVCacheException("Exception incrementing value for APP " + _appName + ", key : " + key, t));
+            }
+        });
+    }
+
+    /*
+     * Increments the key on the given client, the future is completed with -1
+     * if that fails or is not done within the operation timeout.
+     */
+    private CompletableFuture<Long> incrData(EVCacheClient client, String key, long by, long defaultVal, int timeToLive) {
+        final CompletableFuture<Long> future = new CompletableFuture<Long>();
+        try {
+            final OperationFuture<Long> opFuture = client.asyncIncr(key, by, defaultVal, timeToLive);
+            final ScheduledFuture<?> timeout = _poolManager.getEVCacheScheduledExecutor().schedule(() -> {
+                if (future.complete(Long.valueOf(-1))) opFuture.cancel();
+            }, _pool.getOperationTimeout().get(), TimeUnit.MILLISECONDS);
+            opFuture.addListener(f -> {
+                timeout.cancel(false);
+                Long val = null;
+                try {
+                    val = (Long) f.get();
+                } catch (Exception ex) {
+                    if (log.isDebugEnabled() && shouldLog()) log.debug("Exception incrementing the value for APP " + _appName + ", key : " + key + " on " + client.getServerGroupName(), ex);
+                }
+                future.complete((val == null) ? Long.valueOf(-1) : val);
+            });
+        } catch (Exception ex) {
+            if (log.isDebugEnabled() && shouldLog()) log.debug("Exception incrementing the value for APP " + _appName + ", key : " + key + " on " + client.getServerGroupName(), ex);
+            future.complete(Long.valueOf(-1));
+        }
+        return future;
+    }
+
+}
@@ -1,31 +1,36 @@
 package com.netflix.evcache;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
-import com.google.common.cache.LoadingCache;
-import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.evcache.invalidation.EVCacheInvalidationBus;
+import com.netflix.evcache.invalidation.EVCacheInvalidationTransport;
 import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.pool.EVCacheClientPoolManager;
 import com.netflix.evcache.util.EVCacheConfig;
+import com.netflix.evcache.util.OffHeapCache;
+import com.netflix.evcache.util.WTinyLfuCache;
 import com.netflix.servo.DefaultMonitorRegistry;
 import com.netflix.servo.MonitorRegistry;
 import com.netflix.servo.annotations.DataSourceType;
@@ -34,6 +39,7 @@ import com.netflix.servo.monitor.MonitorConfig;
 import com.netflix.servo.monitor.MonitorConfig.Builder;
 import com.netflix.servo.tag.Tag;
 
+import net.spy.memcached.CachedData;
 import net.spy.memcached.transcoders.Transcoder;
 
 /**
@@ -41,17 +47,70 @@ import net.spy.memcached.transcoders.Transcoder;
  * helpful when the same key is repeatedly requested from EVCache within a short
  * duration. This can be turned on dynamically and can relive pressure on
  * EVCache Server instances.
+ * <p>
+ * Entries are kept by a {@link WTinyLfuCache}, so a burst of keys that are
+ * read once does not push out the keys that are read all the time. The cache
+ * is bounded by the number of entries or, if
+ * <code>&lt;app&gt;.inmemory.cache.max.bytes</code> is set, by the estimated
+ * size of the keys and values. Changes to the size and expiry properties are
+ * applied to the cache in place.
+ * <p>
+ * If <code>&lt;app&gt;.inmemory.cache.offheap</code> is set the raw data is
+ * kept in an {@link OffHeapCache} instead and is decoded on every hit. Its
+ * capacity is the max bytes or, if that is not set, the cache size times
+ * 1KB. The off-heap entries expire after the access duration, if set, counted
+ * from when they were written.
+ * <p>
+ * If <code>&lt;app&gt;.inmemory.negative.cache.duration.ms</code> is set the
+ * keys that were not found are remembered for that long, up to
+ * <code>&lt;app&gt;.inmemory.negative.cache.size</code> keys, and gets of them
+ * are not sent to EVCache.
+ * <p>
+ * Writes of a key through {@link EVCacheImpl} drop its entry and its miss or,
+ * if <code>&lt;app&gt;.inmemory.update.on.write</code> is set, replace the
+ * entry with the value written. Every write gives the key a new local
+ * version, and a value that was read before the latest write of its key is
+ * not added, so a load or refresh in flight cannot bring back an older
+ * value. The key gets a new version again once the write completed, as a
+ * load may have read the older value while the write was in flight. The
+ * versions are kept per stripe of keys, a write of a key also keeps the
+ * values of the other keys of its stripe that are in flight out.
+ * <p>
+ * If <code>&lt;app&gt;.inmemory.invalidation.enabled</code> is set the keys
+ * are also published on an {@link EVCacheInvalidationBus} once their writes
+ * completed, and the keys the other instances of the app write are dropped
+ * as they arrive.
  */
 public class EVCacheInMemoryCache<T> {
 
     private static final Logger log = LoggerFactory.getLogger(EVCacheInMemoryCache.class);
+    private static final int ENTRY_OVERHEAD = 96; // The approximate heap used by an entry besides its key and value
+    private static final int UNKNOWN_VALUE_SIZE = 1024; // Used as the size of values that cannot be encoded
+    private static final Transcoder<CachedData> RAW = new RawTranscoder();
+    private static final int VERSION_STRIPES = 256; // Keys in the same stripe share their local version
     private final ChainedDynamicProperty.IntProperty _cacheDuration; // The key will be cached for this long
     private final DynamicIntProperty _refreshDuration, _exireAfterAccessDuration;
     private final DynamicIntProperty _cacheSize; // This many items will be cached
+    private final DynamicLongProperty _maxBytes; // If set the items will be bounded by their size instead of their count
+    private final DynamicBooleanProperty _offHeap; // If set the data is kept off heap
+    private final DynamicIntProperty _negativeDuration; // Keys that were not found will be remembered for this long
+    private final DynamicIntProperty _negativeSize; // This many keys that were not found will be remembered
+    private final DynamicBooleanProperty _updateOnWrite; // If set writes of a key replace its entry instead of dropping it
+    private final DynamicBooleanProperty _invalidation; // If set writes are sent to the other instances of the app
     private final DynamicIntProperty _poolSize; // This many threads will be initialized to fetch data from evcache async
     private final String appName;
 
-    private LoadingCache<EVCacheKey, T> cache;
+    private final WTinyLfuCache<String, Entry<T>> cache;
+    private final WTinyLfuCache<String, Boolean> negatives;
+    private final AtomicLong writeVersion = new AtomicLong();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final ExecutionException cachedMiss;
+    private final ConcurrentHashMap<String, CompletableFuture<T>> loads = new ConcurrentHashMap<String, CompletableFuture<T>>();
+    private final LongAdder loadSuccessCount = new LongAdder(), loadExceptionCount = new LongAdder(), totalLoadTime = new LongAdder();
+    private volatile boolean weighByBytes;
+    private volatile OffHeapCache offHeap = null;
+    private long offHeapCapacity = 0;
+    private volatile EVCacheInvalidationBus bus = null;
     private ExecutorService pool = null;
 
     private final Transcoder<T> tc;
@@ -62,22 +121,53 @@ public class EVCacheInMemoryCache<T> {
         this.tc = tc;
         this.impl = impl;
 
-        final Runnable setupCache = new Runnable() {
+        final Runnable setupExpiry = new Runnable() {
             public void run() {
-                setupCache();
+                setupExpiry();
+            }
+        };
+        final Runnable setupSize = new Runnable() {
+            public void run() {
+                setupSize();
             }
         };
 
-        this._cacheDuration = EVCacheConfig.getInstance().getChainedIntProperty(appName + ".inmemory.cache.duration.ms", appName + ".inmemory.expire.after.write.duration.ms", 0, setupCache);
+        this._cacheDuration = EVCacheConfig.getInstance().getChainedIntProperty(appName + ".inmemory.cache.duration.ms", appName + ".inmemory.expire.after.write.duration.ms", 0, setupExpiry);
 
         this._exireAfterAccessDuration = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".inmemory.expire.after.access.duration.ms", 0);
-        this._exireAfterAccessDuration.addCallback(setupCache);
+        this._exireAfterAccessDuration.addCallback(setupExpiry);
 
         this._refreshDuration = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".inmemory.refresh.after.write.duration.ms", 0);
-        this._refreshDuration.addCallback(setupCache);
+        this._refreshDuration.addCallback(setupExpiry);
 
         this._cacheSize = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".inmemory.cache.size", 100);
-        this._cacheSize.addCallback(setupCache);
+        this._cacheSize.addCallback(setupSize);
+
+        this._maxBytes = EVCacheConfig.getInstance().getDynamicLongProperty(appName + ".inmemory.cache.max.bytes", 0);
+        this._maxBytes.addCallback(setupSize);
+
+        this._offHeap = EVCacheConfig.getInstance().getDynamicBooleanProperty(appName + ".inmemory.cache.offheap", Boolean.FALSE);
+        this._offHeap.addCallback(setupSize);
+
+        final Runnable setupNegatives = new Runnable() {
+            public void run() {
+                setupNegatives();
+            }
+        };
+        this._negativeDuration = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".inmemory.negative.cache.duration.ms", 0);
+        this._negativeDuration.addCallback(setupNegatives);
+
+        this._negativeSize = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".inmemory.negative.cache.size", 1000);
+        this._negativeSize.addCallback(setupNegatives);
+
+        this._updateOnWrite = EVCacheConfig.getInstance().getDynamicBooleanProperty(appName + ".inmemory.update.on.write", Boolean.FALSE);
+
+        this._invalidation = EVCacheConfig.getInstance().getDynamicBooleanProperty(appName + ".inmemory.invalidation.enabled", Boolean.FALSE);
+        this._invalidation.addCallback(new Runnable() {
+            public void run() {
+                setupInvalidation();
+            }
+        });
 
         this._poolSize = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".thread.pool.size", 5);
         this._poolSize.addCallback(new Runnable() {
@@ -86,7 +176,27 @@ public class EVCacheInMemoryCache<T> {
             }
         });
 
-        setupCache();
+        initRefreshPool();
+        this.weighByBytes = _maxBytes.get() > 0;
+        this.cache = new WTinyLfuCache<String, Entry<T>>(getMaximumWeight(), new WTinyLfuCache.Weigher<String, Entry<T>>() {
+            public int weigh(String canonicalKey, Entry<T> entry) {
+                return weighByBytes ? estimateSize(canonicalKey, entry.value) : 1;
+            }
+        }, new WTinyLfuCache.Refresher<String, Entry<T>>() {
+            public void refresh(String canonicalKey, Entry<T> entry) {
+                pool.execute(new Runnable() {
+                    public void run() {
+                        reload(entry);
+                    }
+                });
+            }
+        });
+        this.negatives = new WTinyLfuCache<String, Boolean>(Math.max(0, _negativeSize.get()), (canonicalKey, miss) -> 1, null);
+        this.cachedMiss = new ExecutionException(new DataNotFoundException("Data for the key was not found in EVCache recently"));
+        setupSize();
+        setupExpiry();
+        setupNegatives();
+        setupInvalidation();
         setupMonitoring(appName);
     }
 
@@ -104,6 +214,29 @@ public class EVCacheInMemoryCache<T> {
         }
     }
 
+    /**
+     * Subscribes to the invalidations of the app on the transport of the pool
+     * manager, or drops the subscription once they are disabled. The pool
+     * manager calls it again when a transport is set, so the subscription
+     * moves to the new transport.
+     */
+    public synchronized void setupInvalidation() {
+        final EVCacheInvalidationBus oldBus = bus;
+        final EVCacheClientPoolManager poolManager = impl.getPoolManager();
+        final EVCacheInvalidationTransport transport = _invalidation.get() ? poolManager.getInvalidationTransport() : null;
+        if (oldBus != null) {
+            if (oldBus.getTransport() == transport) return;
+            bus = null;
+            oldBus.close();
+        }
+        if (!_invalidation.get()) return;
+        if (transport == null) {
+            log.warn("No invalidation transport, the writes of " + appName + " are not sent to its other instances until one is set");
+            return;
+        }
+        bus = new EVCacheInvalidationBus(appName, transport, poolManager.getEVCacheScheduledExecutor(), this::delete);
+    }
+
     private void register(Monitor<?> monitor) {
         final MonitorRegistry registry = DefaultMonitorRegistry.getInstance();
         if (registry.isRegistered(monitor)) registry.unregister(monitor);
@@ -116,81 +249,191 @@ public class EVCacheInMemoryCache<T> {
         return builder.build();
     }
 
-    private void setupCache() {
+    private long getMaximumWeight() {
+        if (_maxBytes.get() > 0) return _maxBytes.get();
+        return (_cacheSize.get() > 0) ? _cacheSize.get() : Long.MAX_VALUE;
+    }
+
+    private synchronized void setupSize() {
+        if (_offHeap.get()) {
+            final long capacity = (_maxBytes.get() > 0) ? _maxBytes.get() : (long) Math.max(1, _cacheSize.get()) * UNKNOWN_VALUE_SIZE;
+            if (offHeap == null || capacity != offHeapCapacity) {
+                // direct memory cannot be resized, the entries are dropped
+                final OffHeapCache newOffHeap = new OffHeapCache(capacity);
+                setupExpiry(newOffHeap);
+                offHeapCapacity = capacity;
+                offHeap = newOffHeap;
+                cache.invalidateAll();
+            }
+        } else {
+            offHeap = null;
+        }
+
+        final boolean byBytes = _maxBytes.get() > 0;
+        if (byBytes != weighByBytes) {
+            // the weights of the cached entries are in the other unit
+            weighByBytes = byBytes;
+            cache.invalidateAll();
+        }
+        cache.setMaximumWeight(getMaximumWeight());
+    }
+
+    private void setupExpiry() {
+        if (_exireAfterAccessDuration.get() > 0) {
+            cache.setExpireAfterAccessNanos(TimeUnit.MILLISECONDS.toNanos(_exireAfterAccessDuration.get()));
+            cache.setExpireAfterWriteNanos(0);
+        } else {
+            cache.setExpireAfterAccessNanos(0);
+            cache.setExpireAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, _cacheDuration.get().intValue())));
+        }
+        cache.setRefreshAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, _refreshDuration.get())));
+        final OffHeapCache offHeap = this.offHeap;
+        if (offHeap != null) setupExpiry(offHeap);
+    }
+
+    private void setupExpiry(OffHeapCache offHeap) {
+        final int expireDuration = (_exireAfterAccessDuration.get() > 0) ? _exireAfterAccessDuration.get() : _cacheDuration.get().intValue();
+        offHeap.setExpireAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, expireDuration)));
+        offHeap.setRefreshAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, _refreshDuration.get())));
+    }
+
+    private void setupNegatives() {
+        final int duration = _negativeDuration.get();
+        if (duration <= 0) negatives.invalidateAll();
+        negatives.setExpireAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(0, duration)));
+        negatives.setMaximumWeight(Math.max(0, _negativeSize.get()));
+    }
+
+    private static int versionStripe(String canonicalKey) {
+        return canonicalKey.hashCode() & (VERSION_STRIPES - 1);
+    }
+
+    /*
+     * Estimates the heap used by an entry. Values that are not bytes or
+     * strings are measured by their encoded size.
+     */
+    private int estimateSize(String canonicalKey, T value) {
+        int size;
+        if (value instanceof byte[]) {
+            size = ((byte[]) value).length;
+        } else if (value instanceof String) {
+            size = ((String) value).length() * 2;
+        } else if (value instanceof CachedData) {
+            size = ((CachedData) value).getData().length;
+        } else if (tc != null) {
+            try {
+                size = tc.encode(value).getData().length;
+            } catch (Exception e) {
+                size = UNKNOWN_VALUE_SIZE;
+            }
+        } else {
+            size = UNKNOWN_VALUE_SIZE;
+        }
+        return ENTRY_OVERHEAD + canonicalKey.length() * 2 + size;
+    }
+
+    private <V> V load(EVCacheKey key, Transcoder<V> transcoder) throws EVCacheException {
         try {
-            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
-            if(_cacheSize.get() > 0) {
-                builder = builder.maximumSize(_cacheSize.get());
-            }
-            if(_exireAfterAccessDuration.get() > 0) {
-                builder = builder.expireAfterAccess(_exireAfterAccessDuration.get(), TimeUnit.MILLISECONDS);
-            } else if(_cacheDuration.get().intValue() > 0) {
-                builder = builder.expireAfterWrite(_cacheDuration.get(), TimeUnit.MILLISECONDS);
-            }  
-
-            if(_refreshDuration.get() > 0) {
-                builder = builder.refreshAfterWrite(_refreshDuration.get(), TimeUnit.MILLISECONDS);
-            }
-            initRefreshPool();
-            final LoadingCache<EVCacheKey, T> newCache = builder.build(
-                    new CacheLoader<EVCacheKey, T>() {
-                        public T load(EVCacheKey key) throws EVCacheException { 
-                            try {
-                                final T t = impl.doGet(key, tc);
-                                if(t == null) throw new  DataNotFoundException("Data for key : " + key + " could not be loaded as it was not found in EVCache");
-                                return t;
-                            } catch (DataNotFoundException e) {
-                                throw e;
-                            } catch (EVCacheException e) {
-                                log.error("EVCacheException while loading key -> {}", key, e);
-                                throw e;
-                            } catch (Exception e) {
-                                log.error("Exception while loading key -> {}", key, e);
-                                throw new EVCacheException("key : " + key + " could not be loaded", e);
-                            }
-                        }
-
-                        public ListenableFuture<T> reload(final EVCacheKey key, T prev) {
-                            ListenableFutureTask<T> task = ListenableFutureTask.create(new Callable<T>() {
-                                public T call() {
-                                    try {
-                                        T t = load(key);
-                                        if(t == null) {
-                                            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-NotFound");
-                                            return prev;
-                                        } else {
-                                            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-Success");
-                                        }
-                                        return t;
-                                    } catch (EVCacheException e) {
-                                        log.error("EVCacheException while reloading key -> {}", key, e);
-                                        EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-Fail");
-                                        return prev;
-                                    }
-                                }
-                            });
-                            pool.execute(task);
-                            return task;
-                        }
-                    });
-            if(cache != null) newCache.putAll(cache.asMap());
-            final Cache<EVCacheKey, T> currentCache = this.cache;
-            this.cache = newCache;
-            if(currentCache != null) {
-                currentCache.invalidateAll();
-                currentCache.cleanUp();
-            }
+            final V t = impl.doGet(key, transcoder);
+            if(t == null) throw new  DataNotFoundException("Data for key : " + key + " could not be loaded as it was not found in EVCache");
+            return t;
+        } catch (DataNotFoundException e) {
+            throw e;
+        } catch (EVCacheException e) {
+            log.error("EVCacheException while loading key -> {}", key, e);
+            throw e;
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            log.error("Exception while loading key -> {}", key, e);
+            throw new EVCacheException("key : " + key + " could not be loaded", e);
         }
     }
 
-    private LoadingCache<EVCacheKey, T> getCache() {
+    /*
+     * Loads the key into the cache. Concurrent loads of the same key wait for
+     * the first one.
+     */
+    private T loadAndPut(EVCacheKey key, OffHeapCache offHeap) throws ExecutionException {
+        final String canonicalKey = key.getCanonicalKey();
+        if (isMiss(canonicalKey)) throw cachedMiss;
+        final CompletableFuture<T> loading = new CompletableFuture<T>();
+        final CompletableFuture<T> existing = loads.putIfAbsent(canonicalKey, loading);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExecutionException(e);
+            }
+        }
+
+        final long version = getVersion(canonicalKey);
+        final long start = System.nanoTime();
+        try {
+            final T t;
+            if (offHeap == null) {
+                t = load(key, tc);
+                putIfCurrent(key, t, version);
+            } else {
+                final CachedData cd = load(key, RAW);
+                putIfCurrent(canonicalKey, cd, version, offHeap);
+                t = decode(cd);
+            }
+            loadSuccessCount.increment();
+            loading.complete(t);
+            return t;
+        } catch (DataNotFoundException e) {
+            putMiss(canonicalKey, version);
+            loadExceptionCount.increment();
+            loading.completeExceptionally(e);
+            throw new ExecutionException(e);
+        } catch (EVCacheException e) {
+            loadExceptionCount.increment();
+            loading.completeExceptionally(e);
+            throw new ExecutionException(e);
+        } finally {
+            totalLoadTime.add(System.nanoTime() - start);
+            loads.remove(canonicalKey, loading);
+        }
+    }
+
+    private void reload(Entry<T> entry) {
+        final long version = getVersion(entry.key.getCanonicalKey());
+        try {
+            putIfCurrent(entry.key, load(entry.key, tc), version);
+            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-Success");
+        } catch (DataNotFoundException e) {
+            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-NotFound");
+        } catch (EVCacheException e) {
+            log.error("EVCacheException while reloading key -> {}", entry.key, e);
+            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-Fail");
+        }
+    }
+
+    private void reload(EVCacheKey key, OffHeapCache offHeap) {
+        final long version = getVersion(key.getCanonicalKey());
+        try {
+            putIfCurrent(key.getCanonicalKey(), load(key, RAW), version, offHeap);
+            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-Success");
+        } catch (DataNotFoundException e) {
+            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-NotFound");
+        } catch (EVCacheException e) {
+            log.error("EVCacheException while reloading key -> {}", key, e);
+            EVCacheMetricsFactory.increment(appName, null, null, "EVCacheInMemoryCache" + "-" + appName + "-Reload-Fail");
+        }
+    }
+
+    private T decode(CachedData cd) {
+        return impl.getTranscoder(tc).decode(cd);
+    }
+
+    private WTinyLfuCache<String, Entry<T>> getCache() {
         return cache;
     }
 
     private CacheStats getStats() {
-        return cache.stats();
+        final OffHeapCache offHeap = this.offHeap;
+        if (offHeap != null) return new CacheStats(offHeap.hitCount(), offHeap.missCount(), loadSuccessCount.sum(), loadExceptionCount.sum(), totalLoadTime.sum(), offHeap.evictionCount());
+        return new CacheStats(cache.hitCount(), cache.missCount(), loadSuccessCount.sum(), loadExceptionCount.sum(), totalLoadTime.sum(), cache.evictionCount());
     }
 
     private void setupMonitoring(final String appName) {
@@ -204,6 +447,7 @@ public class EVCacheInMemoryCache<T> {
             @Override
             public Number getValue() {
                 if (getCache() == null) return Long.valueOf(0);
+                if (offHeap != null) return Long.valueOf(offHeap.size());
                 return Long.valueOf(getCache().size());
             }
 
@@ -218,6 +462,77 @@ public class EVCacheInMemoryCache<T> {
             }
         });
 
+        register(new Monitor<Number>() {
+            final MonitorConfig config;
+
+            {
+                config = getMonitorConfig(appName, "weight", DataSourceType.GAUGE);
+            }
+
+            @Override
+            public Number getValue() {
+                if (getCache() == null) return Long.valueOf(0);
+                if (offHeap != null) return Long.valueOf(offHeap.weightedSize());
+                return Long.valueOf(getCache().weightedSize());
+            }
+
+            @Override
+            public Number getValue(int pollerIndex) {
+                return getValue();
+            }
+
+            @Override
+            public MonitorConfig getConfig() {
+                return config;
+            }
+        });
+
+        register(new Monitor<Number>() {
+            final MonitorConfig config;
+
+            {
+                config = getMonitorConfig(appName, "negativeSize", DataSourceType.GAUGE);
+            }
+
+            @Override
+            public Number getValue() {
+                return Long.valueOf(negatives.size());
+            }
+
+            @Override
+            public Number getValue(int pollerIndex) {
+                return getValue();
+            }
+
+            @Override
+            public MonitorConfig getConfig() {
+                return config;
+            }
+        });
+
+        register(new Monitor<Number>() {
+            final MonitorConfig config;
+
+            {
+                config = getMonitorConfig(appName, "negativeHits", DataSourceType.COUNTER);
+            }
+
+            @Override
+            public Number getValue() {
+                return Long.valueOf(negatives.hitCount());
+            }
+
+            @Override
+            public Number getValue(int pollerIndex) {
+                return getValue();
+            }
+
+            @Override
+            public MonitorConfig getConfig() {
+                return config;
+            }
+        });
+
         register(new Monitor<Number>() {
             final MonitorConfig config;
 
@@ -484,27 +799,192 @@ public class EVCacheInMemoryCache<T> {
     }
 
     public T get(EVCacheKey key) throws ExecutionException {
-        if (cache == null) return null;
-        final T val = cache.get(key);
+        final OffHeapCache offHeap = this.offHeap;
+        T val = getIfPresent(key, offHeap);
+        if (val == null) val = loadAndPut(key, offHeap);
         if (log.isDebugEnabled()) log.debug("GET : appName : " + appName + "; Key : " + key + "; val : " + val);
         return val;
     }
 
+    /**
+     * Returns the value of the key if it is cached, without loading it.
+     */
+    public T getIfPresent(EVCacheKey key) {
+        return getIfPresent(key, this.offHeap);
+    }
+
+    private T getIfPresent(EVCacheKey key, OffHeapCache offHeap) {
+        if (offHeap == null) {
+            final Entry<T> entry = cache.getIfPresent(key.getCanonicalKey());
+            return (entry == null) ? null : entry.value;
+        }
+        final CachedData cd = offHeap.get(key.getCanonicalKey(), (_refreshDuration.get() > 0) ? () -> pool.execute(() -> reload(key, offHeap)) : null);
+        return (cd == null) ? null : decode(cd);
+    }
+
+    /*
+     * Returns true if the key is remembered as not found.
+     */
+    boolean isMiss(String canonicalKey) {
+        return _negativeDuration.get() > 0 && negatives.getIfPresent(canonicalKey) != null;
+    }
+
+    /*
+     * Returns the local version of the key, which is the version of the last
+     * write of a key of its stripe. It is taken before the key is read and
+     * passed to putIfCurrent or putMiss with what was read.
+     */
+    long getVersion(String canonicalKey) {
+        return versions.get(versionStripe(canonicalKey));
+    }
+
+    private boolean isCurrent(String canonicalKey, long version) {
+        return versions.get(versionStripe(canonicalKey)) == version;
+    }
+
+    private long newVersion(String canonicalKey) {
+        final long version = writeVersion.incrementAndGet();
+        versions.accumulateAndGet(versionStripe(canonicalKey), version, Math::max);
+        return version;
+    }
+
+    /*
+     * Adds the value read at the given version. The version is checked after
+     * the value is added, so either a write that raced with it drops the
+     * value or the value is dropped here.
+     */
+    void putIfCurrent(EVCacheKey key, T value, long version) {
+        final String canonicalKey = key.getCanonicalKey();
+        final OffHeapCache offHeap = this.offHeap;
+        if (offHeap != null) {
+            putIfCurrent(canonicalKey, impl.getTranscoder(tc).encode(value), version, offHeap);
+            return;
+        }
+        cache.put(canonicalKey, new Entry<T>(key, value));
+        if (!isCurrent(canonicalKey, version)) cache.invalidate(canonicalKey);
+    }
+
+    private void putIfCurrent(String canonicalKey, CachedData cd, long version, OffHeapCache offHeap) {
+        offHeap.put(canonicalKey, cd);
+        if (!isCurrent(canonicalKey, version)) offHeap.invalidate(canonicalKey);
+    }
+
+    /*
+     * Remembers that the key was not found at the given version.
+     */
+    void putMiss(String canonicalKey, long version) {
+        if (_negativeDuration.get() <= 0) return;
+        negatives.put(canonicalKey, Boolean.TRUE);
+        if (!isCurrent(canonicalKey, version)) negatives.invalidate(canonicalKey);
+    }
+
     public void put(EVCacheKey key, T value) {
-        if (cache == null) return;
-        cache.put(key, value);
+        final OffHeapCache offHeap = this.offHeap;
+        if (offHeap == null) {
+            cache.put(key.getCanonicalKey(), new Entry<T>(key, value));
+        } else {
+            offHeap.put(key.getCanonicalKey(), impl.getTranscoder(tc).encode(value));
+        }
+        negatives.invalidate(key.getCanonicalKey());
         if (log.isDebugEnabled()) log.debug("PUT : appName : " + appName + "; Key : " + key + "; val : " + value);
     }
 
+    /**
+     * Removes the entry of the given canonical key. Loads of the key that
+     * are in progress do not add it back.
+     */
     public void delete(String key) {
-        if (cache == null) return;
+        newVersion(key);
+        final OffHeapCache offHeap = this.offHeap;
+        if (offHeap != null) offHeap.invalidate(key);
         cache.invalidate(key);
+        negatives.invalidate(key);
         if (log.isDebugEnabled()) log.debug("DEL : appName : " + appName + "; Key : " + key);
     }
 
+    /**
+     * Called once a write of the key was sent to EVCache. Gives the key a new
+     * version and drops its entry and its miss. If updates on write are
+     * enabled and the value, written with the given Transcoder, is not null
+     * it becomes the entry of the key instead. The value is kept as is, the
+     * writer should not modify it afterwards.
+     */
+    public void write(EVCacheKey key, T value, Transcoder<T> writeTc) {
+        final long version = update(key, value, writeTc);
+        if (log.isDebugEnabled()) log.debug("WRITE : appName : " + appName + "; Key : " + key + "; version : " + version);
+    }
+
+    /**
+     * Called once a write of the key completed, with the value written if it
+     * succeeded or null. A load that read the key while the write was in
+     * flight may have added the older value under the version given when
+     * the write was sent, so the key gets a new version again, and the entry
+     * is dropped or replaced as in {@link #write(EVCacheKey, Object, Transcoder)}.
+     * The key is then published to the other instances of the app.
+     */
+    public void writeCompleted(EVCacheKey key, T value, Transcoder<T> writeTc) {
+        final long version = update(key, value, writeTc);
+        final EVCacheInvalidationBus bus = this.bus;
+        if (bus != null) bus.publish(key.getCanonicalKey());
+        if (log.isDebugEnabled()) log.debug("WRITE_COMPLETED : appName : " + appName + "; Key : " + key + "; version : " + version);
+    }
+
+    private long update(EVCacheKey key, T value, Transcoder<T> writeTc) {
+        final String canonicalKey = key.getCanonicalKey();
+        final long version = newVersion(canonicalKey);
+        negatives.invalidate(canonicalKey);
+        if (value != null && _updateOnWrite.get() && impl.getTranscoder(writeTc) == impl.getTranscoder(tc)) {
+            putIfCurrent(key, value, version);
+        } else {
+            final OffHeapCache offHeap = this.offHeap;
+            if (offHeap != null) offHeap.invalidate(canonicalKey);
+            cache.invalidate(canonicalKey);
+        }
+        return version;
+    }
+
+    /**
+     * Returns the entries kept on heap, the entries kept off heap are not
+     * included.
+     */
     public Map<EVCacheKey, T> getAll() {
-        if (cache == null) return Collections.<EVCacheKey, T>emptyMap();
-        return cache.asMap();
+        final Map<String, Entry<T>> entries = cache.asMap();
+        final Map<EVCacheKey, T> all = new HashMap<EVCacheKey, T>(entries.size() * 4 / 3 + 1);
+        for (Entry<T> entry : entries.values()) {
+            all.put(entry.key, entry.value);
+        }
+        return all;
+    }
+
+    private static final class Entry<T> {
+        private final EVCacheKey key;
+        private final T value;
+
+        private Entry(EVCacheKey key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /*
+     * Hands out the data as read from EVCache, so it can be kept off heap.
+     */
+    private static final class RawTranscoder implements Transcoder<CachedData> {
+        public boolean asyncDecode(CachedData d) {
+            return false;
+        }
+
+        public CachedData encode(CachedData o) {
+            return o;
+        }
+
+        public CachedData decode(CachedData d) {
+            return d;
+        }
+
+        public int getMaxSize() {
+            return CachedData.MAX_SIZE;
+        }
     }
 
     public static final class DataNotFoundException extends EVCacheException {
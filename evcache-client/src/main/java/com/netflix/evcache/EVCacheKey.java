@@ -1,10 +1,18 @@
 package com.netflix.evcache;
 
+import net.spy.memcached.HashAlgorithm;
+
 public class EVCacheKey {
     private final String key;
     private final String canonicalKey;
     private final String hashKey;
 
+    /*
+     * The ketama hash of the derived key. It is computed on first use and
+     * shared by all the server groups the key is written to or read from.
+     */
+    private volatile KetamaHash ketamaHash;
+
     public EVCacheKey(String key, String canonicalKey, String hashKey) {
         super();
         this.key = key;
@@ -24,9 +32,53 @@ public class EVCacheKey {
         return hashKey;
     }
 
+    /**
+     * @return the key that is stored in memcached. This is the hashKey if the
+     *         key was hashed else the canonicalKey.
+     */
+    public String getDerivedKey() {
+        return hashKey == null ? canonicalKey : hashKey;
+    }
+
+    /**
+     * Returns the hash of the given key (the derived key or the part of it
+     * that is used for hashing) using the given algorithm. The hash is
+     * computed once and reused as long as the same algorithm and key are
+     * asked for. The last two are remembered so a continuum that is being
+     * migrated between two algorithms does not recompute them.
+     */
+    public long getKetamaHash(HashAlgorithm algorithm, String hashedKey) {
+        final KetamaHash kh = ketamaHash;
+        if (kh != null) {
+            if (kh.matches(algorithm, hashedKey)) return kh.hash;
+            if (kh.previous != null && kh.previous.matches(algorithm, hashedKey)) return kh.previous.hash;
+        }
+
+        final long hash = algorithm.hash(hashedKey);
+        ketamaHash = new KetamaHash(algorithm, hashedKey, hash, kh == null ? null : new KetamaHash(kh.algorithm, kh.hashedKey, kh.hash, null));
+        return hash;
+    }
+
     @Override
     public String toString() {
         return "EVCacheKey [key=" + key + ", canonicalKey=" + canonicalKey + (hashKey != null ? ", hashKey=" + hashKey + "]" : "]");
     }
 
-}
\ No newline at end of file
+    private static final class KetamaHash {
+        private final HashAlgorithm algorithm;
+        private final String hashedKey;
+        private final long hash;
+        private final KetamaHash previous;
+
+        private KetamaHash(HashAlgorithm algorithm, String hashedKey, long hash, KetamaHash previous) {
+            this.algorithm = algorithm;
+            this.hashedKey = hashedKey;
+            this.hash = hash;
+            this.previous = previous;
+        }
+
+        private boolean matches(HashAlgorithm algorithm, String hashedKey) {
+            return this.algorithm == algorithm && (this.hashedKey == hashedKey || this.hashedKey.equals(hashedKey));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.netflix.evcache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.operation.EVCacheOperationFuture;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.ServerGroup;
+import com.netflix.evcache.util.EVCacheConfig;
+import com.netflix.evcache.util.LatencyHistogram;
+
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * Hedges single key reads across server groups. The get is sent to the
+ * primary server group and, if it has not answered within the configured
+ * percentile of the latencies seen from that server group, also to the next
+ * server group. The hedge is sent by a task on the scheduled executor, the
+ * caller only waits for the value. The first value returned wins and the
+ * other operation is cancelled. Only the latencies of the reads of the
+ * primary server group that completed are recorded, not of those that were
+ * cancelled.
+ * <p>
+ * To make sure hedging does not add to an overload the number of hedged reads
+ * is limited to a percentage of the reads. Every read adds that percentage
+ * to a budget and every hedged read takes a full read out of it.
+ */
+class EVCacheReadHedger {
+
+    private static final Logger log = LoggerFactory.getLogger(EVCacheReadHedger.class);
+
+    // the number of latencies needed before a server group is hedged
+    private static final int MIN_SAMPLES = 100;
+    private static final long PERCENTILE_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // a hedged read costs 100 credits, at most this many hedged reads can be saved up
+    private static final long MAX_BUDGET = 10 * 100;
+
+    private final String appName;
+    private final ScheduledExecutorService scheduler;
+    private final ChainedDynamicProperty.BooleanProperty enabled;
+    private final ChainedDynamicProperty.IntProperty percentile, budgetPercent, minDelay;
+    private final ConcurrentHashMap<ServerGroup, ServerGroupLatency> latencies = new ConcurrentHashMap<ServerGroup, ServerGroupLatency>();
+    private final AtomicLong budget = new AtomicLong();
+
+    EVCacheReadHedger(String appName, ScheduledExecutorService scheduler) {
+        this.appName = appName;
+        this.scheduler = scheduler;
+        final EVCacheConfig config = EVCacheConfig.getInstance();
+        this.enabled = config.getChainedBooleanProperty(appName + ".hedge.reads", "evcache.hedge.reads", Boolean.FALSE, null);
+        this.percentile = config.getChainedIntProperty(appName + ".hedge.percentile", "evcache.hedge.percentile", 95, null);
+        this.budgetPercent = config.getChainedIntProperty(appName + ".hedge.budget.percent", "evcache.hedge.budget.percent", 5, null);
+        this.minDelay = config.getChainedIntProperty(appName + ".hedge.min.delay.micros", "evcache.hedge.min.delay.micros", 200, null);
+    }
+
+    boolean isEnabled() {
+        return enabled.get().booleanValue();
+    }
+
+    /**
+     * Starts the get on the given client and hedges it to the hedge client if
+     * needed. Returns null if the client cannot read the key using a single
+     * operation, the caller should then do a regular get.
+     */
+    <T> HedgedGet<T> get(EVCacheClient client, EVCacheClient hedgeClient, EVCacheKey evcKey, Transcoder<T> tc) throws Exception {
+        if (!client.isAsyncGetSupported()) return null;
+        final ServerGroupLatency latency = getLatency(client.getServerGroup());
+        final long hedgeDelay = latency.getHedgeDelay();
+
+        final long start = System.nanoTime();
+        final EVCacheOperationFuture<T> primary = (EVCacheOperationFuture<T>) client.asyncGet(evcKey, tc, false, true);
+        if (primary == null) return null;
+        deposit();
+
+        final HedgedGet<T> get = new HedgedGet<T>(client, primary, start, client.getReadTimeout().get().intValue());
+        primary.addListener((EVCacheGetOperationListener<T>) future -> {
+            // a read cancelled because the hedge won would make the latencies look shorter
+            if (!future.isCancelled()) latency.record(System.nanoTime() - start);
+            get.complete(future);
+        });
+        if (hedgeDelay < 0 || hedgeClient == null || !hedgeClient.isAsyncGetSupported()) return get;
+        get.schedule(scheduler.schedule(() -> hedge(get, client, hedgeClient, evcKey, tc), hedgeDelay, TimeUnit.NANOSECONDS));
+        return get;
+    }
+
+    /*
+     * Sends the get to the hedge client unless the primary operation already
+     * completed.
+     */
+    private <T> void hedge(HedgedGet<T> get, EVCacheClient client, EVCacheClient hedgeClient, EVCacheKey evcKey, Transcoder<T> tc) {
+        if (get.isDone()) return;
+        if (!withdraw()) {
+            EVCacheMetricsFactory.increment(appName, null, client.getServerGroupName(), appName + "-HEDGE_BUDGET_EXHAUSTED");
+            return;
+        }
+        try {
+            final EVCacheOperationFuture<T> hedge = (EVCacheOperationFuture<T>) hedgeClient.asyncGet(evcKey, tc, false, true);
+            if (hedge == null) return;
+            if (!get.hedge(hedgeClient, hedge)) {
+                hedge.cancel();
+                return;
+            }
+            EVCacheMetricsFactory.increment(appName, null, client.getServerGroupName(), appName + "-HEDGED_READ");
+            hedge.addListener((EVCacheGetOperationListener<T>) future -> get.complete(future));
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) log.debug("Exception hedging the get of key " + evcKey + " to " + hedgeClient.getServerGroup(), e);
+        }
+    }
+
+    private ServerGroupLatency getLatency(ServerGroup serverGroup) {
+        ServerGroupLatency latency = latencies.get(serverGroup);
+        if (latency == null) {
+            latency = new ServerGroupLatency();
+            final ServerGroupLatency existing = latencies.putIfAbsent(serverGroup, latency);
+            if (existing != null) latency = existing;
+        }
+        return latency;
+    }
+
+    private void deposit() {
+        final long credits = budgetPercent.get().longValue();
+        long current;
+        do {
+            current = budget.get();
+            if (current >= MAX_BUDGET) return;
+        } while (!budget.compareAndSet(current, Math.min(MAX_BUDGET, current + credits)));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < 100) return false;
+        } while (!budget.compareAndSet(current, current - 100));
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "EVCacheReadHedger [appName=" + appName + ", enabled=" + enabled.get() + ", percentile=" + percentile.get()
+                + ", budgetPercent=" + budgetPercent.get() + ", budget=" + budget.get() + ", latencies=" + latencies + "]";
+    }
+
+    /*
+     * The latencies of a server group and the hedge delay computed from them.
+     */
+    private final class ServerGroupLatency {
+        private final LatencyHistogram histogram = new LatencyHistogram(10, TimeUnit.SECONDS);
+        private volatile long hedgeDelay = -1;
+        private volatile long computedAt = System.nanoTime();
+
+        private void record(long nanos) {
+            histogram.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /*
+         * Returns the hedge delay in nanos or -1 if not enough latencies have
+         * been recorded yet.
+         */
+        private long getHedgeDelay() {
+            final long now = System.nanoTime();
+            if (now - computedAt > PERCENTILE_REFRESH_NANOS) {
+                computedAt = now;
+                if (histogram.getCount() < MIN_SAMPLES) {
+                    hedgeDelay = -1;
+                } else {
+                    final long delay = histogram.getPercentile(percentile.get().intValue(), TimeUnit.NANOSECONDS);
+                    hedgeDelay = Math.max(delay, TimeUnit.MICROSECONDS.toNanos(minDelay.get().intValue()));
+                }
+                if (log.isDebugEnabled()) log.debug("APP " + appName + "; hedge delay : " + hedgeDelay + " nanos; " + histogram);
+            }
+            return hedgeDelay;
+        }
+
+        @Override
+        public String toString() {
+            return histogram.toString();
+        }
+    }
+
+    /**
+     * A get that was sent to one or two server groups. The first operation
+     * to return a value wins.
+     */
+    final class HedgedGet<T> {
+        private final EVCacheClient client;
+        private final EVCacheOperationFuture<T> primary;
+        private final long start;
+        private final long timeoutNanos;
+        private EVCacheClient hedgeClient;
+        private EVCacheOperationFuture<T> hedge;
+        private EVCacheOperationFuture<T> winner;
+        private ScheduledFuture<?> scheduledHedge;
+        private int started = 1, completed = 0;
+
+        private HedgedGet(EVCacheClient client, EVCacheOperationFuture<T> primary, long start, int timeoutMillis) {
+            this.client = client;
+            this.primary = primary;
+            this.start = start;
+            this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        private synchronized void schedule(ScheduledFuture<?> scheduledHedge) {
+            this.scheduledHedge = scheduledHedge;
+        }
+
+        /*
+         * Adds the hedge operation, unless the get is already done.
+         */
+        private synchronized boolean hedge(EVCacheClient hedgeClient, EVCacheOperationFuture<T> hedge) {
+            if (isDone()) return false;
+            this.hedgeClient = hedgeClient;
+            this.hedge = hedge;
+            started++;
+            return true;
+        }
+
+        private synchronized void complete(EVCacheOperationFuture<T> future) {
+            completed++;
+            if (winner == null) {
+                T value = null;
+                try {
+                    value = future.get();
+                } catch (Exception e) {
+                    if (log.isDebugEnabled()) log.debug("Exception getting data for key " + future.getKey() + " from " + future.getServerGroup(), e);
+                }
+                if (value != null) winner = future;
+            }
+            notifyAll();
+        }
+
+        private synchronized boolean isDone() {
+            return winner != null || completed >= started;
+        }
+
+        /*
+         * Waits up to the given nanos for a value or all the operations to
+         * complete.
+         */
+        private synchronized boolean await(long nanos) throws InterruptedException {
+            final long end = System.nanoTime() + nanos;
+            long remaining = nanos;
+            while (!isDone() && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                remaining = end - System.nanoTime();
+            }
+            return isDone();
+        }
+
+        /**
+         * Returns true if the get was also sent to the hedge server group.
+         */
+        synchronized boolean isHedged() {
+            return hedge != null;
+        }
+
+        /**
+         * Returns the client whose value is returned by {@link #get(boolean)}.
+         */
+        synchronized EVCacheClient getClient() {
+            return (winner != null && winner == hedge) ? hedgeClient : client;
+        }
+
+        /**
+         * Waits for the first value within the read timeout of the primary
+         * server group and cancels the operation that lost, or the hedge if it
+         * was not sent yet. If neither operation returned a value the result
+         * of the primary operation is returned.
+         */
+        T get(boolean throwException) throws Exception {
+            final long remaining = timeoutNanos - (System.nanoTime() - start);
+            await(remaining);
+            final EVCacheOperationFuture<T> result;
+            synchronized (this) {
+                if (scheduledHedge != null) scheduledHedge.cancel(false);
+                result = (winner != null) ? winner : primary;
+                if (hedge != null) {
+                    if (result != primary && !primary.isDone()) primary.cancel();
+                    if (result != hedge && !hedge.isDone()) hedge.cancel();
+                }
+            }
+            if (result == hedge) EVCacheMetricsFactory.increment(appName, null, hedgeClient.getServerGroupName(), appName + "-HEDGE_WIN");
+            return result.get(Math.max(0, timeoutNanos - (System.nanoTime() - start)), TimeUnit.NANOSECONDS, throwException, true);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.netflix.evcache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.util.EVCacheConfig;
+
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * Collapses concurrent gets of the same key. The first caller for a key
+ * becomes the leader of the flight and does the get, the callers that arrive
+ * while it is in flight follow it and are handed the value the leader
+ * decoded. The value is shared by all the callers of a flight, so this should
+ * only be enabled for apps that do not modify the values they get.
+ * <p>
+ * A flight is only joined by gets using the same Transcoder, gets using
+ * another Transcoder for a key that is in flight go to the server.
+ */
+class EVCacheSingleFlight {
+
+    private final ChainedDynamicProperty.BooleanProperty enabled, bulkEnabled;
+    private final ConcurrentHashMap<String, Flight<?>> flights = new ConcurrentHashMap<String, Flight<?>>();
+
+    EVCacheSingleFlight(String appName) {
+        final EVCacheConfig config = EVCacheConfig.getInstance();
+        this.enabled = config.getChainedBooleanProperty(appName + ".single.flight.gets", "evcache.single.flight.gets", Boolean.FALSE, null);
+        this.bulkEnabled = config.getChainedBooleanProperty(appName + ".single.flight.bulk", "evcache.single.flight.bulk", Boolean.FALSE, null);
+    }
+
+    boolean isEnabled() {
+        return enabled.get().booleanValue();
+    }
+
+    /**
+     * Returns true if the keys of bulk gets share the flights of single gets
+     * and other bulk gets.
+     */
+    boolean isBulkEnabled() {
+        return isEnabled() && bulkEnabled.get().booleanValue();
+    }
+
+    /**
+     * Starts or joins the flight of the given canonical key. Returns null if
+     * the key is in flight using another Transcoder.
+     */
+    <T> Flight<T> start(String canonicalKey, Transcoder<T> tc) {
+        Flight<?> existing = flights.get(canonicalKey);
+        if (existing == null) {
+            final Flight<T> flight = new Flight<T>(canonicalKey, tc, true);
+            existing = flights.putIfAbsent(canonicalKey, flight);
+            if (existing == null) return flight;
+        }
+        if (existing.tc != tc) return null;
+        // the flight decodes with the same Transcoder, so its value is a T
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<T> future = (CompletableFuture<T>) existing.future;
+        return new Flight<T>(canonicalKey, tc, false, future);
+    }
+
+    /**
+     * The get of a key as seen by one of its callers.
+     */
+    final class Flight<T> {
+        private final String canonicalKey;
+        private final Transcoder<T> tc;
+        private final boolean leader;
+        private final CompletableFuture<T> future;
+
+        private Flight(String canonicalKey, Transcoder<T> tc, boolean leader) {
+            this(canonicalKey, tc, leader, new CompletableFuture<T>());
+        }
+
+        private Flight(String canonicalKey, Transcoder<T> tc, boolean leader, CompletableFuture<T> future) {
+            this.canonicalKey = canonicalKey;
+            this.tc = tc;
+            this.leader = leader;
+            this.future = future;
+        }
+
+        boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Waits for the result of the leader.
+         */
+        T await() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        /**
+         * Returns a future completed with the result of the leader.
+         */
+        CompletableFuture<T> share() {
+            return future.thenApply(value -> value);
+        }
+
+        /**
+         * Ends the flight of the leader. The callers that arrive after this
+         * start a new flight.
+         */
+        void complete(T value, Throwable t) {
+            if (!leader) return;
+            flights.remove(canonicalKey, this);
+            if (t == null) {
+                future.complete(value);
+            } else {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -1,25 +1,165 @@
 package com.netflix.evcache;
 
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.codec.CompressionCodecs;
+import com.netflix.evcache.codec.DictionaryCompressionCodec;
+import com.netflix.evcache.codec.EVCacheCompressionCodec;
+import com.netflix.evcache.codec.GzipCompressionCodec;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
 import com.netflix.evcache.util.EVCacheConfig;
 
 import net.spy.memcached.CachedData;
 import net.spy.memcached.transcoders.SerializingTranscoder;
 
+/**
+ * Compresses the values larger than the compression threshold with the
+ * codec of the app, <code>&lt;app&gt;.compression.codec</code>. The id of
+ * the codec is kept in the flags so any value is decompressed with the codec
+ * it was written with. GZIP, the codec of older clients, is the default.
+ * <p>
+ * The compression achieved is sampled by class and size of the values, and
+ * the values that save less than
+ * <code>&lt;app&gt;.compression.min.savings.percent</code> are not
+ * compressed, except for a few that keep the sample current.
+ * <p>
+ * When the app has a trained dictionary, see
+ * {@link DictionaryCompressionCodec}, the values larger than
+ * <code>&lt;app&gt;.compression.dictionary.threshold</code> are compressed
+ * with it instead, and its version is kept in the flags.
+ */
 public class EVCacheTranscoder extends SerializingTranscoder {
+    private static final Logger log = LoggerFactory.getLogger(EVCacheTranscoder.class);
+
+    private static final int COMPRESSED = 2;
+    private static final int CODEC_SHIFT = 2;
+    private static final int CODEC_MASK = CompressionCodecs.MAX_ID << CODEC_SHIFT;
+    private static final int DICTIONARY_SHIFT = 5;
+    private static final int DICTIONARY_MASK = DictionaryCompressionCodec.MAX_VERSION << DICTIONARY_SHIFT;
+
+    private static final int MAX_SAMPLED_CLASSES = 256;
+    private static final int MIN_SAMPLES = 16;
+    private static final int SAMPLE_INTERVAL = 64;
+
+    // whether the slice decode of the class is not shadowed by an override of decode(CachedData)
+    private static final ClassValue<Boolean> SLICE_DECODING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                final Class<?> whole = type.getMethod("decode", CachedData.class).getDeclaringClass();
+                final Class<?> slice = type.getMethod("decode", int.class, byte[].class, int.class, int.class).getDeclaringClass();
+                return Boolean.valueOf(whole.isAssignableFrom(slice));
+            } catch (NoSuchMethodException e) {
+                return Boolean.FALSE;
+            }
+        }
+    };
+
+    private final String appName;
+    private final ChainedDynamicProperty.StringProperty codecName;
+    private final ChainedDynamicProperty.IntProperty level, threshold, minSavings, dictionaryThreshold;
+    private final DictionaryCompressionCodec dictionary;
+    private final ConcurrentHashMap<Class<?>, CompressionStats[]> stats = new ConcurrentHashMap<Class<?>, CompressionStats[]>();
+    private volatile int fixedThreshold = -1;
 
     public EVCacheTranscoder() {
-        this(EVCacheConfig.getInstance().getDynamicIntProperty("default.evcache.max.data.size", Integer.MAX_VALUE).get());
+        this((String) null);
     }
 
     public EVCacheTranscoder(int max) {
-        this(max, EVCacheConfig.getInstance().getDynamicIntProperty("default.evcache.compression.threshold", 120).get());
+        this(null, max);
     }
 
     public EVCacheTranscoder(int max, int compressionThreshold) {
-        super(max);
+        this(null, max);
         setCompressionThreshold(compressionThreshold);
     }
 
+    public EVCacheTranscoder(String appName) {
+        this(appName, EVCacheConfig.getInstance().getDynamicIntProperty("default.evcache.max.data.size", Integer.MAX_VALUE).get());
+    }
+
+    public EVCacheTranscoder(String appName, int max) {
+        super(max);
+        // the compression of spymemcached is replaced by the codecs
+        super.setCompressionThreshold(Integer.MAX_VALUE);
+        this.appName = appName;
+        final String prefix = (appName == null) ? "default.evcache" : appName;
+        final EVCacheConfig config = EVCacheConfig.getInstance();
+        this.codecName = config.getChainedStringProperty(prefix + ".compression.codec", "default.evcache.compression.codec", GzipCompressionCodec.NAME, null);
+        this.level = config.getChainedIntProperty(prefix + ".compression.level", "default.evcache.compression.level", -1, null);
+        this.threshold = config.getChainedIntProperty(prefix + ".compression.threshold", "default.evcache.compression.threshold", 120, null);
+        this.minSavings = config.getChainedIntProperty(prefix + ".compression.min.savings.percent", "default.evcache.compression.min.savings.percent", 10, null);
+        this.dictionaryThreshold = config.getChainedIntProperty(prefix + ".compression.dictionary.threshold", "default.evcache.compression.dictionary.threshold", 32, null);
+        this.dictionary = DictionaryCompressionCodec.getInstance(prefix);
+    }
+
+    /**
+     * Sets a threshold that is used instead of the
+     * <code>&lt;app&gt;.compression.threshold</code> property.
+     */
+    @Override
+    public void setCompressionThreshold(int to) {
+        this.fixedThreshold = to;
+    }
+
+    private int getThreshold(int dictionaryVersion) {
+        final int fixed = fixedThreshold;
+        if (fixed >= 0) return fixed;
+        return (dictionaryVersion > 0) ? dictionaryThreshold.get() : threshold.get();
+    }
+
+    /**
+     * Returns the dictionary codec of the app, whose dictionaries can also be
+     * set directly.
+     */
+    public DictionaryCompressionCodec getDictionaryCodec() {
+        return dictionary;
+    }
+
+    private EVCacheCompressionCodec getCodec() {
+        final EVCacheCompressionCodec codec = CompressionCodecs.get(codecName.get());
+        return (codec == null) ? CompressionCodecs.get(GzipCompressionCodec.ID) : codec;
+    }
+
+    /**
+     * Serializes the value before it is compressed.
+     */
+    protected CachedData encodeValue(Object o) {
+        return super.encode(o);
+    }
+
+    /**
+     * Deserializes the value once it is decompressed.
+     */
+    protected Object decodeValue(CachedData d) {
+        return super.decode(d);
+    }
+
+    /**
+     * Deserializes the value in the slice of the array. Strings are read from
+     * the slice, other values are copied out of it.
+     */
+    protected Object decodeValue(int flags, byte[] data, int offset, int length) {
+        if (offset == 0 && length == data.length) return decodeValue(new CachedData(flags, data, Integer.MAX_VALUE));
+        if (flags == 0) {
+            try {
+                return new String(data, offset, length, charset);
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return decodeValue(new CachedData(flags, Arrays.copyOfRange(data, offset, offset + length), Integer.MAX_VALUE));
+    }
+
     @Override
     public boolean asyncDecode(CachedData d) {
         return super.asyncDecode(d);
@@ -27,13 +167,120 @@ public class EVCacheTranscoder extends SerializingTranscoder {
 
     @Override
     public Object decode(CachedData d) {
-        return super.decode(d);
+        if ((d.getFlags() & COMPRESSED) == 0) return decodeValue(d);
+        return decode(d.getFlags(), d.getData(), 0, d.getData().length);
+    }
+
+    /**
+     * Returns true if {@link #decode(int, byte[], int, int)} decodes values
+     * the way {@link #decode(CachedData)} does, which is not the case when a
+     * subclass overrides only the latter.
+     */
+    public boolean decodesSlices() {
+        return SLICE_DECODING.get(getClass()).booleanValue();
+    }
+
+    /**
+     * Decodes the value with the given flags that is the slice of the array,
+     * without copying it first.
+     */
+    public Object decode(int flags, byte[] data, int offset, int length) {
+        if ((flags & COMPRESSED) == 0) return decodeValue(flags, data, offset, length);
+
+        final int id = (flags & CODEC_MASK) >>> CODEC_SHIFT;
+        if (id == DictionaryCompressionCodec.ID) return decodeWithDictionary(flags, data, offset, length);
+        final EVCacheCompressionCodec codec = CompressionCodecs.get(id);
+        if (codec == null) {
+            EVCacheMetricsFactory.increment((appName == null ? "" : appName + "-") + "UNKNOWN_COMPRESSION_CODEC");
+            if (log.isWarnEnabled()) log.warn("No compression codec with id " + id + " to decompress the data with flags " + flags);
+            return null;
+        }
+        final byte[] decompressed;
+        try {
+            decompressed = codec.decompress(data, offset, length, getMaxSize());
+        } catch (IOException e) {
+            log.warn("IOException decompressing data with the " + codec.getName() + " codec", e);
+            return null;
+        }
+        return decodeValue(new CachedData(flags & ~(COMPRESSED | CODEC_MASK), decompressed, Integer.MAX_VALUE));
+    }
+
+    private Object decodeWithDictionary(int flags, byte[] data, int offset, int length) {
+        final int version = (flags & DICTIONARY_MASK) >>> DICTIONARY_SHIFT;
+        final byte[] decompressed;
+        try {
+            decompressed = dictionary.decompress(data, offset, length, version, getMaxSize());
+        } catch (IOException e) {
+            EVCacheMetricsFactory.increment((appName == null ? "" : appName + "-") + "DICTIONARY_DECOMPRESSION_ERROR");
+            log.warn("IOException decompressing data with the compression dictionary " + version, e);
+            return null;
+        }
+        return decodeValue(new CachedData(flags & ~(COMPRESSED | CODEC_MASK | DICTIONARY_MASK), decompressed, Integer.MAX_VALUE));
     }
 
     @Override
     public CachedData encode(Object o) {
         if (o != null && o instanceof CachedData) return (CachedData) o;
-        return super.encode(o);
+        final CachedData cd = encodeValue(o);
+        final byte[] data = cd.getData();
+        final int dictionaryVersion = dictionary.getVersion();
+        if (data.length <= getThreshold(dictionaryVersion)) return cd;
+
+        final CompressionStats stats = getStats(o.getClass(), data.length);
+        if (stats != null && !stats.shouldCompress(minSavings.get())) return cd;
+        final byte[] compressed;
+        final int compressedFlags;
+        if (dictionaryVersion > 0) {
+            compressed = dictionary.compress(data, level.get(), dictionaryVersion);
+            compressedFlags = COMPRESSED | (DictionaryCompressionCodec.ID << CODEC_SHIFT) | (dictionaryVersion << DICTIONARY_SHIFT);
+        } else {
+            final EVCacheCompressionCodec codec = getCodec();
+            compressed = codec.compress(data, level.get());
+            compressedFlags = COMPRESSED | (codec.getId() << CODEC_SHIFT);
+        }
+        if (stats != null) stats.record(data.length, (compressed == null) ? data.length : compressed.length);
+        if (compressed == null || compressed.length >= data.length) return cd;
+        return new CachedData(cd.getFlags() | compressedFlags, compressed, getMaxSize());
     }
 
-}
\ No newline at end of file
+    /*
+     * Returns the compression of the values of the class whose size is in the
+     * same power of two, or null if too many classes are sampled.
+     */
+    private CompressionStats getStats(Class<?> type, int length) {
+        CompressionStats[] byLength = stats.get(type);
+        if (byLength == null) {
+            if (stats.size() >= MAX_SAMPLED_CLASSES) return null;
+            byLength = stats.computeIfAbsent(type, t -> {
+                final CompressionStats[] s = new CompressionStats[Integer.SIZE + 1];
+                for (int i = 0; i < s.length; i++) {
+                    s[i] = new CompressionStats();
+                }
+                return s;
+            });
+        }
+        return byLength[Integer.SIZE - Integer.numberOfLeadingZeros(length)];
+    }
+
+    /*
+     * A moving average of the percentage saved by compression. Races between
+     * threads only lose a sample.
+     */
+    private static final class CompressionStats {
+        private volatile double savings;
+        private volatile int samples;
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        boolean shouldCompress(int minSavings) {
+            if (samples < MIN_SAMPLES || savings >= minSavings) return true;
+            return skipped.incrementAndGet() % SAMPLE_INTERVAL == 0;
+        }
+
+        void record(int length, int compressedLength) {
+            final double saved = 100.0 * (length - compressedLength) / length;
+            final int n = samples;
+            savings = (n == 0) ? saved : savings + (saved - savings) / Math.min(n + 1, MIN_SAMPLES);
+            if (n < MIN_SAMPLES) samples = n + 1;
+        }
+    }
+}
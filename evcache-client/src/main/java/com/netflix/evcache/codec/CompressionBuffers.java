@@ -0,0 +1,27 @@
+package com.netflix.evcache.codec;
+
+/**
+ * The array each thread compresses into before the result is copied to an
+ * array of its size, so the output is not grown or allocated twice.
+ */
+final class CompressionBuffers {
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    private CompressionBuffers() {
+    }
+
+    /**
+     * Returns an array of at least the given size, owned by the calling
+     * thread until its next call.
+     */
+    static byte[] get(int size) {
+        final byte[] buffer = buffers.get();
+        if (buffer.length >= size) return buffer;
+        if (size > MAX_RETAINED_SIZE) return new byte[size];
+        final byte[] larger = new byte[Math.max(size, Math.min(MAX_RETAINED_SIZE, buffer.length * 2))];
+        buffers.set(larger);
+        return larger;
+    }
+}
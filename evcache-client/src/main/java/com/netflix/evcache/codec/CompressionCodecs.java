@@ -0,0 +1,72 @@
+package com.netflix.evcache.codec;
+
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The registry of the compression codecs, by id and by name. GZIP and
+ * Deflate are built in, other codecs such as LZ4 can be registered or found
+ * on the classpath as {@link ServiceLoader} services of
+ * {@link EVCacheCompressionCodec}.
+ */
+public final class CompressionCodecs {
+    private static final Logger log = LoggerFactory.getLogger(CompressionCodecs.class);
+
+    /**
+     * The largest id of a codec, ids are kept in three bits of the flags.
+     */
+    public static final int MAX_ID = 7;
+
+    private static final AtomicReferenceArray<EVCacheCompressionCodec> byId = new AtomicReferenceArray<EVCacheCompressionCodec>(MAX_ID + 1);
+    private static final ConcurrentHashMap<String, EVCacheCompressionCodec> byName = new ConcurrentHashMap<String, EVCacheCompressionCodec>();
+
+    static {
+        register(new GzipCompressionCodec());
+        register(new DeflateCompressionCodec());
+        try {
+            for (EVCacheCompressionCodec codec : ServiceLoader.load(EVCacheCompressionCodec.class)) {
+                register(codec);
+            }
+        } catch (Throwable t) {
+            log.error("Exception loading the compression codecs", t);
+        }
+    }
+
+    private CompressionCodecs() {
+    }
+
+    /**
+     * Registers the codec. The codec that was registered with the same id,
+     * if any, is replaced, so its values are then decompressed with the new
+     * one. The id of {@link DictionaryCompressionCodec} is reserved.
+     */
+    public static synchronized void register(EVCacheCompressionCodec codec) {
+        final int id = codec.getId();
+        if (id < 0 || id > MAX_ID) throw new IllegalArgumentException("The id of codec " + codec.getName() + " is not between 0 and " + MAX_ID + " : " + id);
+        if (id == DictionaryCompressionCodec.ID) throw new IllegalArgumentException("The id " + id + " of codec " + codec.getName() + " is reserved for dictionary compression");
+        final EVCacheCompressionCodec previous = byId.getAndSet(id, codec);
+        if (previous != null) byName.remove(previous.getName().toLowerCase(), previous);
+        byName.put(codec.getName().toLowerCase(), codec);
+        if (log.isDebugEnabled()) log.debug("Registered the compression codec " + codec.getName() + " with id " + id);
+    }
+
+    /**
+     * Returns the codec with the given id or null if there is none.
+     */
+    public static EVCacheCompressionCodec get(int id) {
+        if (id < 0 || id > MAX_ID) return null;
+        return byId.get(id);
+    }
+
+    /**
+     * Returns the codec with the given name, ignoring case, or null if there
+     * is none.
+     */
+    public static EVCacheCompressionCodec get(String name) {
+        return (name == null) ? null : byName.get(name.toLowerCase());
+    }
+}
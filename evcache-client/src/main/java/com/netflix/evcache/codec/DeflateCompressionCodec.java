@@ -0,0 +1,106 @@
+package com.netflix.evcache.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw Deflate at a level from 1 (fastest) to 9 (smallest). The compressed
+ * data is the length of the data followed by the Deflate stream, so it is
+ * inflated in a single array of the right size. The deflaters and inflaters
+ * are kept by thread as they are costly to create.
+ */
+public class DeflateCompressionCodec implements EVCacheCompressionCodec {
+    public static final String NAME = "deflate";
+    public static final int ID = 1;
+
+    private static final int MAX_RATIO = 1032;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int level) {
+        if (data.length <= 4) return null;
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION ? Deflater.DEFAULT_COMPRESSION : level);
+        deflater.setInput(data);
+        deflater.finish();
+
+        // the output that would not be smaller than the data is not written
+        final byte[] out = CompressionBuffers.get(data.length);
+        writeLength(out, data.length);
+        int length = 4;
+        while (!deflater.finished() && length < data.length) {
+            length += deflater.deflate(out, length, data.length - length);
+        }
+        if (!deflater.finished()) return null;
+        return Arrays.copyOf(out, length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        return decompress(data, 0, data.length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int dataLength) throws IOException {
+        return decompress(data, offset, dataLength, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int dataLength, int maxLength) throws IOException {
+        if (dataLength < 4) throw new IOException("Deflate data of " + dataLength + " bytes is too short");
+        final int length = readLength(data, offset);
+        if (!isValidLength(length, dataLength - 4, maxLength)) throw new IOException("Invalid Deflate data length " + length);
+        final byte[] out = new byte[length];
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset + 4, dataLength - 4);
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                final int inflated = inflater.inflate(out, n, length - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += inflated;
+            }
+            if (n != length || !inflater.finished()) throw new IOException("Inflated " + n + " bytes of " + length);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid Deflate data", e);
+        }
+        return out;
+    }
+
+    /*
+     * The length read from the data is checked before the output is
+     * allocated, so corrupt data is a miss instead of a huge allocation.
+     * Deflate does not expand a stream more than about 1032 times.
+     */
+    static boolean isValidLength(int length, int streamLength, int maxLength) {
+        return length >= 0 && length <= maxLength && length <= (streamLength + 1L) * MAX_RATIO;
+    }
+
+    static void writeLength(byte[] out, int length) {
+        out[0] = (byte) (length >>> 24);
+        out[1] = (byte) (length >>> 16);
+        out[2] = (byte) (length >>> 8);
+        out[3] = (byte) length;
+    }
+
+    static int readLength(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+}
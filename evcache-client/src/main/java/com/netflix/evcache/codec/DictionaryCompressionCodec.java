@@ -0,0 +1,220 @@
+package com.netflix.evcache.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.evcache.util.EVCacheConfig;
+
+/**
+ * Raw Deflate primed with a dictionary trained from values of the app, see
+ * {@link DictionaryTrainer}. Small values that share structure, such as JSON
+ * records, compress much better as their common strings are found in the
+ * dictionary.
+ * <p>
+ * The dictionary of version <code>n</code>, from 1 to {@link #MAX_VERSION},
+ * is read at startup, and when the property changes, from the file or
+ * classpath resource given by
+ * <code>&lt;app&gt;.compression.dictionary.&lt;n&gt;</code>. Values are
+ * compressed with the version given by
+ * <code>&lt;app&gt;.compression.dictionary.version</code>, 0 to not use a
+ * dictionary. The version is kept in the flags of the value, so the
+ * dictionaries of older versions have to stay until their values expire.
+ */
+public class DictionaryCompressionCodec {
+    private static final Logger log = LoggerFactory.getLogger(DictionaryCompressionCodec.class);
+
+    /**
+     * The codec id kept in the flags of the values compressed with a
+     * dictionary.
+     */
+    public static final int ID = 2;
+    public static final int MAX_VERSION = 7;
+
+    /**
+     * Deflate only refers to the last 32 KB of the dictionary.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final String appName;
+    private final AtomicReferenceArray<byte[]> dictionaries = new AtomicReferenceArray<byte[]>(MAX_VERSION + 1);
+    private final ChainedDynamicProperty.IntProperty version;
+
+    private static final ConcurrentHashMap<String, DictionaryCompressionCodec> codecs = new ConcurrentHashMap<String, DictionaryCompressionCodec>();
+
+    /**
+     * Returns the codec of the app. It is shared by all the transcoders of
+     * the app so its dictionaries are read and watched only once.
+     */
+    public static DictionaryCompressionCodec getInstance(String appName) {
+        return codecs.computeIfAbsent(appName, DictionaryCompressionCodec::new);
+    }
+
+    private DictionaryCompressionCodec(String appName) {
+        this.appName = appName;
+        final EVCacheConfig config = EVCacheConfig.getInstance();
+        this.version = config.getChainedIntProperty(appName + ".compression.dictionary.version", "default.evcache.compression.dictionary.version", 0, null);
+        for (int i = 1; i <= MAX_VERSION; i++) {
+            final int v = i;
+            final DynamicStringProperty location = config.getDynamicStringProperty(appName + ".compression.dictionary." + v, null);
+            location.addCallback(() -> load(v, location.get()));
+            load(v, location.get());
+        }
+    }
+
+    private void load(int v, String location) {
+        if (location == null || location.isEmpty()) {
+            dictionaries.set(v, null);
+            return;
+        }
+        try {
+            setDictionary(v, read(location));
+            if (log.isInfoEnabled()) log.info("Loaded the compression dictionary " + v + " of app " + appName + " from " + location);
+        } catch (IOException e) {
+            log.error("Could not load the compression dictionary " + v + " of app " + appName + " from " + location, e);
+        }
+    }
+
+    private static byte[] read(String location) throws IOException {
+        final Path path = Paths.get(location);
+        if (Files.isReadable(path)) return Files.readAllBytes(path);
+        try (InputStream in = DictionaryCompressionCodec.class.getClassLoader().getResourceAsStream(location)) {
+            if (in == null) throw new IOException("No file or resource " + location);
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            int r;
+            while ((r = in.read(buf)) > 0) {
+                bos.write(buf, 0, r);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    /**
+     * Sets the dictionary of the given version, only its last
+     * {@link #MAX_DICTIONARY_SIZE} bytes are kept.
+     */
+    public void setDictionary(int v, byte[] dictionary) {
+        if (v < 1 || v > MAX_VERSION) throw new IllegalArgumentException("The version of a dictionary is between 1 and " + MAX_VERSION + " : " + v);
+        final byte[] dict = (dictionary.length > MAX_DICTIONARY_SIZE) ? Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length) : dictionary;
+        dictionaries.set(v, dict);
+    }
+
+    /**
+     * Returns the version to compress with, or 0 if there is none or its
+     * dictionary is not loaded.
+     */
+    public int getVersion() {
+        final int v = version.get();
+        if (v < 1 || v > MAX_VERSION || dictionaries.get(v) == null) return 0;
+        return v;
+    }
+
+    /**
+     * Compresses the data with the dictionary of the given version. Returns
+     * null if the data does not get smaller.
+     */
+    public byte[] compress(byte[] data, int level, int v) {
+        final byte[] dictionary = dictionaries.get(v);
+        if (dictionary == null) return null;
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setLevel(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION ? Deflater.DEFAULT_COMPRESSION : level);
+        deflater.setDictionary(dictionary);
+        deflater.setInput(data);
+        deflater.finish();
+
+        // the output that would not be smaller than the data is not written
+        final byte[] out = CompressionBuffers.get(data.length);
+        int length = writeLength(out, data.length);
+        if (length >= data.length) return null;
+        while (!deflater.finished() && length < data.length) {
+            length += deflater.deflate(out, length, data.length - length);
+        }
+        if (!deflater.finished()) return null;
+        return Arrays.copyOf(out, length);
+    }
+
+    public byte[] decompress(byte[] data, int v) throws IOException {
+        return decompress(data, 0, data.length, v);
+    }
+
+    /**
+     * Decompresses the data in the slice of the array with the dictionary of
+     * the given version.
+     */
+    public byte[] decompress(byte[] data, int start, int dataLength, int v) throws IOException {
+        return decompress(data, start, dataLength, v, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decompresses the data in the slice of the array with the dictionary of
+     * the given version and fails, before allocating the output, if it would
+     * be larger than maxLength bytes.
+     */
+    public byte[] decompress(byte[] data, int start, int dataLength, int v, int maxLength) throws IOException {
+        final byte[] dictionary = (v < 1 || v > MAX_VERSION) ? null : dictionaries.get(v);
+        if (dictionary == null) throw new IOException("The compression dictionary " + v + " of app " + appName + " is not loaded");
+        final int end = start + dataLength;
+        int length = 0, offset = start;
+        for (int shift = 0; ; shift += 7) {
+            if (offset >= end || shift > 28) throw new IOException("Invalid length of dictionary compressed data");
+            final int b = data[offset++];
+            length |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        if (!DeflateCompressionCodec.isValidLength(length, end - offset, maxLength)) throw new IOException("Invalid length " + length + " of dictionary compressed data");
+
+        final byte[] out = new byte[length];
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setDictionary(dictionary);
+        inflater.setInput(data, offset, end - offset);
+        try {
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                final int inflated = inflater.inflate(out, n, length - n);
+                if (inflated == 0 && inflater.needsInput()) break;
+                n += inflated;
+            }
+            if (n != length) throw new IOException("Inflated " + n + " bytes of " + length);
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid dictionary compressed data", e);
+        }
+        return out;
+    }
+
+    /*
+     * Writes the length as a varint, as the values are small. Returns the
+     * number of bytes written or more than the size of the array if it does
+     * not fit.
+     */
+    private static int writeLength(byte[] out, int length) {
+        int offset = 0;
+        while ((length & ~0x7f) != 0) {
+            if (offset >= out.length) return out.length + 1;
+            out[offset++] = (byte) ((length & 0x7f) | 0x80);
+            length >>>= 7;
+        }
+        if (offset >= out.length) return out.length + 1;
+        out[offset++] = (byte) length;
+        return offset;
+    }
+}
@@ -0,0 +1,145 @@
+package com.netflix.evcache.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trains the dictionary of {@link DictionaryCompressionCodec} offline from
+ * sampled values of an app.
+ * <p>
+ * The strings found in many samples are kept, the most common ones last as
+ * Deflate refers to the end of the dictionary with shorter distances. From
+ * the command line :
+ * 
+ * <pre>
+ * java com.netflix.evcache.codec.DictionaryTrainer &lt;dictionary file&gt; &lt;size&gt; &lt;sample file or directory&gt;...
+ * </pre>
+ * 
+ * where each sample file holds one value.
+ */
+public final class DictionaryTrainer {
+
+    /**
+     * The length of the strings counted in the samples.
+     */
+    private static final int GRAM = 8;
+
+    private DictionaryTrainer() {
+    }
+
+    /**
+     * Returns a dictionary of at most the given size, up to
+     * {@link DictionaryCompressionCodec#MAX_DICTIONARY_SIZE}, built from the
+     * strings common to the samples.
+     */
+    public static byte[] train(List<byte[]> samples, int size) {
+        size = Math.min(size, DictionaryCompressionCodec.MAX_DICTIONARY_SIZE);
+        if (size <= 0 || samples.isEmpty()) return new byte[0];
+
+        // the number of samples each string of GRAM bytes is found in
+        final Map<Long, Integer> frequencies = new HashMap<Long, Integer>();
+        final Set<Long> seen = new HashSet<Long>();
+        for (byte[] sample : samples) {
+            seen.clear();
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                final Long gram = gram(sample, i);
+                if (seen.add(gram)) frequencies.merge(gram, 1, Integer::sum);
+            }
+        }
+
+        // the runs of common strings become the segments of the dictionary,
+        // scored by how often and how many bytes they would save
+        final int minFrequency = Math.max(2, samples.size() / 100);
+        final Map<ByteBuffer, Long> segments = new HashMap<ByteBuffer, Long>();
+        for (byte[] sample : samples) {
+            int i = 0;
+            while (i + GRAM <= sample.length) {
+                final int frequency = frequencies.get(gram(sample, i));
+                if (frequency < minFrequency) {
+                    i++;
+                    continue;
+                }
+                final int start = i;
+                int min = frequency;
+                while (i + 1 + GRAM <= sample.length) {
+                    final int next = frequencies.get(gram(sample, i + 1));
+                    if (next < minFrequency) break;
+                    min = Math.min(min, next);
+                    i++;
+                }
+                final int end = i + GRAM;
+                segments.merge(ByteBuffer.wrap(Arrays.copyOfRange(sample, start, end)), (long) min * (end - start), Long::sum);
+                i = end;
+            }
+        }
+
+        final List<Map.Entry<ByteBuffer, Long>> ranked = new ArrayList<Map.Entry<ByteBuffer, Long>>(segments.entrySet());
+        ranked.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        // filled from the end so the best segments are the closest
+        final byte[] dictionary = new byte[size];
+        int start = size;
+        for (Map.Entry<ByteBuffer, Long> entry : ranked) {
+            final byte[] segment = entry.getKey().array();
+            if (segment.length > start) continue;
+            if (indexOf(dictionary, start, segment) >= 0) continue;
+            start -= segment.length;
+            System.arraycopy(segment, 0, dictionary, start, segment.length);
+            if (start < GRAM) break;
+        }
+        return Arrays.copyOfRange(dictionary, start, size);
+    }
+
+    private static Long gram(byte[] data, int offset) {
+        long gram = 0;
+        for (int i = 0; i < GRAM; i++) {
+            gram = (gram << 8) | (data[offset + i] & 0xff);
+        }
+        return Long.valueOf(gram);
+    }
+
+    private static int indexOf(byte[] data, int from, byte[] segment) {
+        outer: for (int i = from; i + segment.length <= data.length; i++) {
+            for (int j = 0; j < segment.length; j++) {
+                if (data[i + j] != segment[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage : DictionaryTrainer <dictionary file> <size> <sample file or directory>...");
+            System.exit(1);
+        }
+        final List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 2; i < args.length; i++) {
+            read(new File(args[i]), samples);
+        }
+        final byte[] dictionary = train(samples, Integer.parseInt(args[1]));
+        Files.write(new File(args[0]).toPath(), dictionary);
+        System.out.println("Wrote a dictionary of " + dictionary.length + " bytes trained from " + samples.size() + " samples to " + args[0]);
+    }
+
+    private static void read(File file, List<byte[]> samples) throws IOException {
+        if (file.isDirectory()) {
+            final File[] files = file.listFiles();
+            if (files == null) return;
+            for (File f : files) {
+                read(f, samples);
+            }
+        } else {
+            samples.add(Files.readAllBytes(file.toPath()));
+        }
+    }
+}
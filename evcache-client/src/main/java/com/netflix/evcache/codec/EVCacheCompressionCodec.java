@@ -0,0 +1,57 @@
+package com.netflix.evcache.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A compression algorithm for the values written by
+ * {@link com.netflix.evcache.EVCacheTranscoder}. The id of the codec is kept
+ * in the flags of a compressed value so that it is decompressed with the
+ * codec it was compressed with, whatever the codec the app is set to.
+ * <p>
+ * Codecs are registered with {@link CompressionCodecs}, either directly or
+ * as a {@link java.util.ServiceLoader} service of this interface.
+ */
+public interface EVCacheCompressionCodec {
+
+    /**
+     * Returns the id kept in the flags of the values compressed by this
+     * codec, from 0 to {@link CompressionCodecs#MAX_ID}. 0 is the GZIP
+     * compression of older clients and 1 is Deflate.
+     */
+    int getId();
+
+    /**
+     * Returns the name the codec is chosen by with the
+     * <code>&lt;app&gt;.compression.codec</code> property.
+     */
+    String getName();
+
+    /**
+     * Compresses the data at the given level, whose meaning is up to the
+     * codec, -1 is its default level. Returns null if the data does not get
+     * smaller.
+     */
+    byte[] compress(byte[] data, int level);
+
+    byte[] decompress(byte[] data) throws IOException;
+
+    /**
+     * Decompresses the data in the slice of the array. Codecs override it to
+     * read the slice without copying it first.
+     */
+    default byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        return decompress(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
+    /**
+     * Decompresses the data in the slice of the array and fails if it is
+     * larger than maxLength bytes. Codecs that know the length before
+     * decompressing override it to fail before allocating the output.
+     */
+    default byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+        final byte[] out = decompress(data, offset, length);
+        if (out.length > maxLength) throw new IOException("Decompressed " + out.length + " bytes, more than the max of " + maxLength);
+        return out;
+    }
+}
@@ -0,0 +1,91 @@
+package com.netflix.evcache.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The GZIP compression of spymemcached, which older clients read and write.
+ * The level is ignored. The same bytes as a GZIPOutputStream are written,
+ * with a Deflater reused by each thread.
+ */
+public class GzipCompressionCodec implements EVCacheCompressionCodec {
+    public static final String NAME = "gzip";
+    public static final int ID = 0;
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int TRAILER_LENGTH = 8;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<CRC32> checksums = ThreadLocal.withInitial(CRC32::new);
+
+    @Override
+    public int getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] data, int level) {
+        // the output has to be smaller than the data
+        final int limit = data.length - TRAILER_LENGTH - 1;
+        if (limit <= HEADER.length) return null;
+        final byte[] out = CompressionBuffers.get(data.length);
+        System.arraycopy(HEADER, 0, out, 0, HEADER.length);
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        int length = HEADER.length;
+        while (!deflater.finished() && length < limit) {
+            length += deflater.deflate(out, length, limit - length);
+        }
+        if (!deflater.finished()) return null;
+
+        final CRC32 crc = checksums.get();
+        crc.reset();
+        crc.update(data, 0, data.length);
+        writeIntLE(out, length, (int) crc.getValue());
+        writeIntLE(out, length + 4, data.length);
+        return Arrays.copyOf(out, length + TRAILER_LENGTH);
+    }
+
+    private static void writeIntLE(byte[] out, int offset, int value) {
+        out[offset] = (byte) value;
+        out[offset + 1] = (byte) (value >>> 8);
+        out[offset + 2] = (byte) (value >>> 16);
+        out[offset + 3] = (byte) (value >>> 24);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        return decompress(data, 0, data.length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        return decompress(data, offset, length, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length, int maxLength) throws IOException {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream(length * 2);
+        try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+            final byte[] buf = new byte[8192];
+            int r;
+            while ((r = gis.read(buf)) > 0) {
+                if (bos.size() + r > maxLength) throw new IOException("GZIP data inflates to more than the max of " + maxLength + " bytes");
+                bos.write(buf, 0, r);
+            }
+        }
+        return bos.toByteArray();
+    }
+}
@@ -14,6 +14,7 @@ import com.netflix.config.ChainedDynamicProperty;
 import com.netflix.config.DynamicIntProperty;
 import com.netflix.evcache.EVCacheTranscoder;
 import com.netflix.evcache.pool.EVCacheClientPoolManager;
+import com.netflix.evcache.pool.EVCacheHashAlgorithm;
 import com.netflix.evcache.pool.EVCacheKetamaNodeLocatorConfiguration;
 import com.netflix.evcache.pool.EVCacheNodeLocator;
 import com.netflix.evcache.pool.ServerGroup;
@@ -30,6 +31,7 @@ import net.spy.memcached.MemcachedNode;
 import net.spy.memcached.NodeLocator;
 import net.spy.memcached.ops.Operation;
 import net.spy.memcached.protocol.binary.EVCacheNodeImpl;
+import net.spy.memcached.protocol.binary.EVCacheWriteOperationQueue;
 import net.spy.memcached.transcoders.Transcoder;
 
 public class BaseConnectionFactory extends BinaryConnectionFactory {
@@ -59,8 +61,25 @@ public class BaseConnectionFactory extends BinaryConnectionFactory {
         this.name = appName + "-" + serverGroup.getName() + "-" + id;
     }
 
+    /**
+     * The hash algorithm used for the continuum can be set per app or server
+     * group (KETAMA_HASH, MURMUR3_HASH, XXHASH64_HASH or any
+     * {@link DefaultHashAlgorithm}). When moving a live cluster to another
+     * algorithm set the previous one as the migrate.from algorithm so reads
+     * that miss on the new node are retried on the node used by it. This
+     * covers single, bulk, async, hedged and batched reads of values that are
+     * neither chunked nor hashed; touch and incr/decr only use the new node.
+     * While migrating, each write also deletes the key from the previous node
+     * if it differs, so remove the property once the old data has expired.
+     */
     public NodeLocator createLocator(List<MemcachedNode> list) {
-        this.locator = new EVCacheNodeLocator(appName, serverGroup, list, DefaultHashAlgorithm.KETAMA_HASH,
+        final String algorithm = EVCacheConfig.getInstance().getChainedStringProperty("EVCacheNodeLocator." + appName + "." + serverGroup.getName() + ".hash.algorithm",
+                "EVCacheNodeLocator." + appName + ".hash.algorithm", DefaultHashAlgorithm.KETAMA_HASH.name(), null).get();
+        final String previousAlgorithm = EVCacheConfig.getInstance().getChainedStringProperty("EVCacheNodeLocator." + appName + "." + serverGroup.getName() + ".hash.algorithm.migrate.from",
+                "EVCacheNodeLocator." + appName + ".hash.algorithm.migrate.from", "", null).get();
+        final HashAlgorithm hashAlgorithm = EVCacheHashAlgorithm.getHashAlgorithm(algorithm, DefaultHashAlgorithm.KETAMA_HASH);
+        final HashAlgorithm previousHashAlgorithm = EVCacheHashAlgorithm.getHashAlgorithm(previousAlgorithm, null);
+        this.locator = new EVCacheNodeLocator(appName, serverGroup, list, hashAlgorithm, previousHashAlgorithm,
                 new EVCacheKetamaNodeLocatorConfiguration(appName, serverGroup, poolManager));
         return locator;
     }
@@ -109,11 +128,11 @@ public class BaseConnectionFactory extends BinaryConnectionFactory {
     }
 
     public BlockingQueue<Operation> createWriteOperationQueue() {
-        return super.createWriteOperationQueue();
+        return new EVCacheWriteOperationQueue();
     }
 
     public Transcoder<Object> getDefaultTranscoder() {
-        return new EVCacheTranscoder();
+        return new EVCacheTranscoder(appName);
     }
 
     public FailureMode getFailureMode() {
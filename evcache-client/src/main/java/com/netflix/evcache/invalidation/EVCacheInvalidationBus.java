@@ -0,0 +1,213 @@
+package com.netflix.evcache.invalidation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.util.EVCacheConfig;
+import com.netflix.servo.monitor.Counter;
+
+/**
+ * Tells the other instances of an app which keys were written, so they can
+ * drop them from their in-memory cache.
+ * <p>
+ * The keys published within <code>&lt;app&gt;.inmemory.invalidation.window.ms</code>
+ * (default 10) of the first one are sent together and a key written more than
+ * once in the window is sent once. Each message holds up to 32KB of keys and
+ * is deflated. Messages carry the id of the bus that sent them, so a bus
+ * ignores its own messages when the transport hands them back.
+ */
+public class EVCacheInvalidationBus implements EVCacheInvalidationTransport.Receiver {
+
+    private static final Logger log = LoggerFactory.getLogger(EVCacheInvalidationBus.class);
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 1 + 8; // version, sender id
+    static final int MAX_BATCH_BYTES = 32 * 1024;
+
+    private final String appName;
+    private final long senderId = UUID.randomUUID().getLeastSignificantBits();
+    private final EVCacheInvalidationTransport transport;
+    private final ScheduledExecutorService executor;
+    private final Consumer<String> invalidator;
+    private final DynamicIntProperty _window;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Counter publishedKeys, sentMessages, receivedKeys, failures;
+
+    /**
+     * Subscribes to the invalidations of the app. The keys other instances
+     * publish are passed to the invalidator on the thread of the transport.
+     */
+    public EVCacheInvalidationBus(String appName, EVCacheInvalidationTransport transport, ScheduledExecutorService executor, Consumer<String> invalidator) {
+        this.appName = appName;
+        this.transport = transport;
+        this.executor = executor;
+        this.invalidator = invalidator;
+        this._window = EVCacheConfig.getInstance().getDynamicIntProperty(appName + ".inmemory.invalidation.window.ms", 10);
+        this.publishedKeys = EVCacheMetricsFactory.getCounter(appName, null, "EVCacheInvalidationBus-" + appName + "-PublishedKeys", null);
+        this.sentMessages = EVCacheMetricsFactory.getCounter(appName, null, "EVCacheInvalidationBus-" + appName + "-SentMessages", null);
+        this.receivedKeys = EVCacheMetricsFactory.getCounter(appName, null, "EVCacheInvalidationBus-" + appName + "-ReceivedKeys", null);
+        this.failures = EVCacheMetricsFactory.getCounter(appName, null, "EVCacheInvalidationBus-" + appName + "-Failures", null);
+        transport.subscribe(appName, this);
+    }
+
+    /**
+     * Queues the invalidation of the key, it is sent once the window of the
+     * first queued key ends.
+     */
+    public void publish(String canonicalKey) {
+        pending.add(canonicalKey);
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flush, Math.max(0, _window.get()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void flush() {
+        // keys queued from here on are sent by the next flush
+        flushScheduled.set(false);
+        final List<String> keys = new ArrayList<String>(pending.size());
+        for (Iterator<String> it = pending.iterator(); it.hasNext();) {
+            keys.add(it.next());
+            it.remove();
+        }
+        if (keys.isEmpty()) return;
+        publishedKeys.increment(keys.size());
+        for (byte[] message : encode(senderId, keys)) {
+            try {
+                transport.publish(appName, message);
+                sentMessages.increment();
+            } catch (Exception e) {
+                failures.increment();
+                log.error("Could not publish the invalidation of keys of " + appName, e);
+            }
+        }
+    }
+
+    @Override
+    public void receive(byte[] message) {
+        final List<String> keys;
+        try {
+            keys = decode(senderId, message);
+        } catch (Exception e) {
+            failures.increment();
+            log.error("Could not decode an invalidation message of " + appName, e);
+            return;
+        }
+        if (keys == null) return;
+        receivedKeys.increment(keys.size());
+        for (String key : keys) {
+            invalidator.accept(key);
+        }
+        if (log.isDebugEnabled()) log.debug("INVALIDATE : appName : " + appName + "; keys : " + keys);
+    }
+
+    public EVCacheInvalidationTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Stops receiving invalidations and sends the ones that are queued.
+     */
+    public void close() {
+        transport.unsubscribe(appName);
+        flush();
+    }
+
+    /*
+     * Splits the keys in messages of at most MAX_BATCH_BYTES of keys before
+     * they are deflated. Keys are written as their length and UTF-8 bytes.
+     */
+    static List<byte[]> encode(long senderId, List<String> keys) {
+        final List<byte[]> messages = new ArrayList<byte[]>(1);
+        final ByteBuffer batch = ByteBuffer.allocate(MAX_BATCH_BYTES);
+        for (String key : keys) {
+            final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            if (2 + bytes.length > MAX_BATCH_BYTES) {
+                log.warn("Not publishing the invalidation of a key of " + bytes.length + " bytes");
+                continue;
+            }
+            if (2 + bytes.length > batch.remaining()) {
+                messages.add(deflate(senderId, batch));
+                batch.clear();
+            }
+            batch.putShort((short) bytes.length).put(bytes);
+        }
+        if (batch.position() > 0) messages.add(deflate(senderId, batch));
+        return messages;
+    }
+
+    private static byte[] deflate(long senderId, ByteBuffer batch) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(batch.array(), 0, batch.position());
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + batch.position() / 2);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).put(VERSION).putLong(senderId);
+            out.write(header.array(), 0, HEADER_SIZE);
+            final byte[] buf = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /*
+     * Returns the keys of the message or null if it was sent by the given
+     * sender.
+     */
+    static List<String> decode(long senderId, byte[] message) throws IOException {
+        final ByteBuffer header = ByteBuffer.wrap(message);
+        if (message.length < HEADER_SIZE || header.get() != VERSION) throw new IOException("Unknown invalidation message");
+        if (header.getLong() == senderId) return null;
+
+        final byte[] batch = new byte[MAX_BATCH_BYTES + 1];
+        final int length;
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(message, HEADER_SIZE, message.length - HEADER_SIZE);
+            length = inflater.inflate(batch);
+            if (!inflater.finished()) throw new IOException("Invalidation message is larger than " + MAX_BATCH_BYTES + " bytes");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        final List<String> keys = new ArrayList<String>();
+        final ByteBuffer buf = ByteBuffer.wrap(batch, 0, length);
+        while (buf.remaining() >= 2) {
+            final int keyLength = buf.getShort() & 0xffff;
+            if (keyLength > buf.remaining()) throw new IOException("Truncated invalidation message");
+            keys.add(new String(batch, buf.position(), keyLength, StandardCharsets.UTF_8));
+            buf.position(buf.position() + keyLength);
+        }
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        return "EVCacheInvalidationBus [appName=" + appName + ", pending=" + pending.size() + ", transport=" + transport + "]";
+    }
+}
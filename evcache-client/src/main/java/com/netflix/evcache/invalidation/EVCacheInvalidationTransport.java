@@ -0,0 +1,30 @@
+package com.netflix.evcache.invalidation;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries the invalidation messages of an app between the instances of the
+ * app. The messages are opaque to the transport, they are built and read by
+ * {@link EVCacheInvalidationBus}. A transport may deliver a message to the
+ * instance that sent it, and it may drop messages.
+ */
+public interface EVCacheInvalidationTransport extends Closeable {
+
+    /**
+     * Sends the message to the instances that subscribed to the app.
+     */
+    void publish(String appName, byte[] message) throws IOException;
+
+    /**
+     * Passes the messages of the app to the receiver, replacing the receiver
+     * the app had, if any.
+     */
+    void subscribe(String appName, Receiver receiver);
+
+    void unsubscribe(String appName);
+
+    interface Receiver {
+        void receive(byte[] message);
+    }
+}
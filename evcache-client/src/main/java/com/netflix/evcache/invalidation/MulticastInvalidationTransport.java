@@ -0,0 +1,116 @@
+package com.netflix.evcache.invalidation;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the invalidation messages as UDP datagrams to a multicast group. Each
+ * datagram starts with the name of the app, so all the apps of an instance
+ * share the group and a single receiving thread. Messages are not
+ * acknowledged or resent, a message that is lost leaves the entries to
+ * expire.
+ */
+public class MulticastInvalidationTransport implements EVCacheInvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(MulticastInvalidationTransport.class);
+    public static final int MAX_DATAGRAM_SIZE = 65507;
+
+    private final InetSocketAddress group;
+    private final NetworkInterface networkInterface;
+    private final MulticastSocket socket;
+    private final Map<String, Receiver> receivers = new ConcurrentHashMap<String, Receiver>();
+    private final Thread receiverThread;
+    private volatile boolean closed = false;
+
+    /**
+     * Joins the group on the given network interface, or on the default one
+     * if it is null. The time to live bounds the number of hops the
+     * datagrams are sent across.
+     */
+    public MulticastInvalidationTransport(InetAddress groupAddress, int port, NetworkInterface networkInterface, int timeToLive) throws IOException {
+        if (!groupAddress.isMulticastAddress()) throw new IllegalArgumentException(groupAddress + " is not a multicast address");
+        this.group = new InetSocketAddress(groupAddress, port);
+        this.networkInterface = networkInterface;
+        this.socket = new MulticastSocket(port);
+        socket.setTimeToLive(timeToLive);
+        if (networkInterface != null) socket.setNetworkInterface(networkInterface);
+        socket.joinGroup(group, networkInterface);
+
+        this.receiverThread = new Thread(this::receive, "EVCacheInvalidation-" + groupAddress.getHostAddress() + ":" + port);
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    @Override
+    public void publish(String appName, byte[] message) throws IOException {
+        final byte[] app = appName.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buf = ByteBuffer.allocate(2 + app.length + message.length);
+        buf.putShort((short) app.length).put(app).put(message);
+        if (buf.capacity() > MAX_DATAGRAM_SIZE) throw new IOException("Invalidation message of " + buf.capacity() + " bytes does not fit in a datagram");
+        socket.send(new DatagramPacket(buf.array(), buf.capacity(), group));
+    }
+
+    @Override
+    public void subscribe(String appName, Receiver receiver) {
+        receivers.put(appName, receiver);
+    }
+
+    @Override
+    public void unsubscribe(String appName) {
+        receivers.remove(appName);
+    }
+
+    private void receive() {
+        final byte[] bytes = new byte[MAX_DATAGRAM_SIZE];
+        while (!closed) {
+            final DatagramPacket packet = new DatagramPacket(bytes, bytes.length);
+            try {
+                socket.receive(packet);
+                final ByteBuffer buf = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+                if (buf.remaining() < 2) continue;
+                final int appLength = buf.getShort() & 0xffff;
+                if (appLength > buf.remaining()) continue;
+                final String appName = new String(bytes, buf.position(), appLength, StandardCharsets.UTF_8);
+                final Receiver receiver = receivers.get(appName);
+                if (receiver == null) continue;
+                final int start = buf.position() + appLength;
+                receiver.receive(Arrays.copyOfRange(bytes, start, packet.getOffset() + packet.getLength()));
+            } catch (SocketException e) {
+                if (!closed) log.error("Stopped receiving invalidations from " + group, e);
+                return;
+            } catch (Exception e) {
+                log.error("Could not process an invalidation from " + packet.getSocketAddress(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            socket.leaveGroup(group, networkInterface);
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) log.debug("Could not leave " + group, e);
+        }
+        socket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MulticastInvalidationTransport [group=" + group + ", apps=" + receivers.keySet() + "]";
+    }
+}
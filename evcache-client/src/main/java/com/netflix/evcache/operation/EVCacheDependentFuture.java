@@ -0,0 +1,136 @@
+package com.netflix.evcache.operation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spy.memcached.internal.OperationCompletionListener;
+import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.ops.OperationStatus;
+import net.spy.memcached.ops.StatusCode;
+
+/**
+ * The future of a write that is issued only once the writes it depends on
+ * have all succeeded. If one of them fails the write is not issued and the
+ * future completes with <code>false</code>.
+ */
+public class EVCacheDependentFuture extends OperationFuture<Boolean> implements OperationCompletionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(EVCacheDependentFuture.class);
+
+    private final CountDownLatch latch;
+    private final AtomicReference<Boolean> objRef;
+    private final OperationFuture<Boolean>[] dependencies;
+    private final Callable<OperationFuture<Boolean>> write;
+    private final AtomicInteger remaining;
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private volatile OperationFuture<Boolean> writeFuture;
+    private volatile boolean cancelled;
+
+    public EVCacheDependentFuture(String key, OperationFuture<Boolean>[] dependencies, Callable<OperationFuture<Boolean>> write, long opTimeout, ExecutorService service) {
+        this(key, new CountDownLatch(1), new AtomicReference<Boolean>(null), dependencies, write, opTimeout, service);
+    }
+
+    private EVCacheDependentFuture(String key, CountDownLatch latch, AtomicReference<Boolean> objRef, OperationFuture<Boolean>[] dependencies, Callable<OperationFuture<Boolean>> write, long opTimeout, ExecutorService service) {
+        super(key, latch, objRef, opTimeout, service);
+        this.latch = latch;
+        this.objRef = objRef;
+        this.dependencies = dependencies;
+        this.write = write;
+        this.remaining = new AtomicInteger(dependencies.length);
+        if (dependencies.length == 0) {
+            issueWrite();
+        } else {
+            for (OperationFuture<Boolean> dependency : dependencies) {
+                dependency.addListener(this);
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(OperationFuture<?> future) throws Exception {
+        final OperationStatus status = future.getStatus();
+        if (!(status.isSuccess() && succeeded(future))) {
+            complete(Boolean.FALSE, status);
+        } else if (remaining.decrementAndGet() == 0) {
+            issueWrite();
+        }
+    }
+
+    private static boolean succeeded(OperationFuture<?> future) {
+        try {
+            return Boolean.TRUE.equals(future.get());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void issueWrite() {
+        if (completed.get()) return;
+        try {
+            writeFuture = write.call();
+            writeFuture.addListener(new OperationCompletionListener() {
+                @Override
+                public void onComplete(OperationFuture<?> future) throws Exception {
+                    final OperationStatus status = future.getStatus();
+                    complete(status.isSuccess() && succeeded(future), status);
+                }
+            });
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) log.debug("Could not issue the write of key " + getKey(), e);
+            complete(Boolean.FALSE, new OperationStatus(false, e.getMessage(), StatusCode.ERR_INTERNAL));
+        }
+    }
+
+    private void complete(Boolean value, OperationStatus status) {
+        if (!completed.compareAndSet(false, true)) return;
+        set(value, status);
+        latch.countDown();
+        signalComplete();
+    }
+
+    @Override
+    @Deprecated
+    public boolean cancel(boolean ign) {
+        return cancel();
+    }
+
+    @Override
+    public boolean cancel() {
+        cancelled = true;
+        for (OperationFuture<Boolean> dependency : dependencies) {
+            dependency.cancel();
+        }
+        final OperationFuture<Boolean> future = writeFuture;
+        if (future != null) future.cancel();
+        complete(Boolean.FALSE, new OperationStatus(false, "Cancelled", StatusCode.CANCELLED));
+        return true;
+    }
+
+    @Override
+    public Boolean get(long duration, TimeUnit units) throws InterruptedException, TimeoutException, ExecutionException {
+        if (!latch.await(duration, units)) {
+            throw new TimeoutException("Timed out waiting for the write of key " + getKey());
+        }
+        return objRef.get();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+}
@@ -2,10 +2,12 @@ package com.netflix.evcache.operation;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +42,8 @@ public class EVCacheLatchImpl implements EVCacheLatch, Runnable {
     private int failureCount = 0;
     private ScheduledFuture<?> scheduledFuture;
     private final long startTimeMS;
+    private final AtomicInteger releaseCount = new AtomicInteger(), releaseSuccessCount = new AtomicInteger();
+    private final CompletableFuture<Boolean> completableFuture = new CompletableFuture<Boolean>();
 
     public EVCacheLatchImpl(Policy policy, int _count, String appName) {
         this.policy = policy;
@@ -49,6 +53,7 @@ public class EVCacheLatchImpl implements EVCacheLatch, Runnable {
         this.expectedCompleteCount = policyToCount(policy, _count);
         this.latch = new CountDownLatch(expectedCompleteCount);
         this.startTimeMS = System.currentTimeMillis();
+        if (expectedCompleteCount == 0) completableFuture.complete(Boolean.valueOf(totalFutureCount > 0));
 
         if (log.isDebugEnabled()) log.debug("Number of Futures = " + _count + "; Number of Futures that need to completed for Latch to be released = " + this.expectedCompleteCount);
     }
@@ -190,6 +195,28 @@ public class EVCacheLatchImpl implements EVCacheLatch, Runnable {
         }
     }
     
+    /**
+     * Returns a future that is completed when the operations required by the
+     * policy have completed. It is completed with true if all of them were
+     * successful.
+     */
+    public CompletableFuture<Boolean> getCompletableFuture() {
+        return completableFuture;
+    }
+
+    private void release(OperationFuture<?> future) {
+        boolean success = false;
+        try {
+            success = future.isDone() && Boolean.TRUE.equals(future.get());
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) log.debug(e.getMessage(), e);
+        }
+        if (success) releaseSuccessCount.incrementAndGet();
+        if (releaseCount.incrementAndGet() == expectedCompleteCount) {
+            completableFuture.complete(Boolean.valueOf(releaseSuccessCount.get() >= expectedCompleteCount));
+        }
+    }
+
     public void setEVCacheEvent(EVCacheEvent e) {
         this.evcacheEvent = e;
     }
@@ -205,6 +232,7 @@ public class EVCacheLatchImpl implements EVCacheLatch, Runnable {
         if (log.isDebugEnabled()) log.debug("BEGIN : onComplete - Calling Countdown. Completed Future = " + future + "; App : " + appName); 
         countDown();
         completeCount++;
+        release(future);
         if(getCompletedCount() >= getExpectedSuccessCount()) {
             final String cachePrefix = null;
             EVCacheMetricsFactory.getStatsTimer(getAppName(), cachePrefix, "LatchPolicyDuration").record(System.currentTimeMillis() - startTimeMS);
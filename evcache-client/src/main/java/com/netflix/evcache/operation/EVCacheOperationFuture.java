@@ -5,9 +5,12 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.util.List;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
@@ -168,8 +171,7 @@ public class EVCacheOperationFuture<T> extends OperationFuture<T> {
         if (log.isDebugEnabled()) log.debug("Retry status : " + status);
         if (!status) {
             // whenever timeout occurs, continuous timeout counter will increase by 1.
-            MemcachedConnection.opTimedOut(op);
-            if (op != null) op.timeOut();
+            timeOutOperation();
             TagList tags = null;
             if(op.getHandlingNode() instanceof EVCacheNodeImpl) {
             	tags = ((EVCacheNodeImpl)op.getHandlingNode()).getBaseTags();
@@ -228,8 +230,7 @@ public class EVCacheOperationFuture<T> extends OperationFuture<T> {
     public Single<T> get(long duration, TimeUnit units, boolean throwException, boolean hasZF, Scheduler scheduler) {
         return observe().timeout(duration, units, Single.create(subscriber -> {
             // whenever timeout occurs, continuous timeout counter will increase by 1.
-            MemcachedConnection.opTimedOut(op);
-            if (op != null) op.timeOut();
+            timeOutOperation();
             if (!hasZF) EVCacheMetricsFactory.getCounter(appName, null, serverGroup.getName(), appName + "-get-CheckedOperationTimeout", DataSourceType.COUNTER).increment();
             if (throwException) {
                 subscriber.onError(new CheckedOperationTimeoutException("Timed out waiting for operation", op));
@@ -248,6 +249,50 @@ public class EVCacheOperationFuture<T> extends OperationFuture<T> {
         );
     }
 
+    /**
+     * Returns a CompletableFuture that is completed from the operation
+     * callback, so no thread waits for the result. If the operation does not
+     * complete within the given duration it is timed out on the given
+     * executor the same way {@link #get(long, TimeUnit, boolean, boolean)}
+     * times it out.
+     */
+    public CompletableFuture<T> toCompletableFuture(long duration, TimeUnit units, boolean throwException, boolean hasZF, ScheduledExecutorService executor) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        final ScheduledFuture<?> timeout = executor.schedule(() -> {
+            if (future.isDone()) return;
+            // whenever timeout occurs, continuous timeout counter will increase by 1.
+            timeOutOperation();
+            if (!hasZF) EVCacheMetricsFactory.getCounter(appName, null, serverGroup.getName(), appName + "-get-CheckedOperationTimeout", DataSourceType.COUNTER).increment();
+            if (throwException) {
+                future.completeExceptionally(new CheckedOperationTimeoutException("Timed out waiting for operation", op));
+            } else {
+                future.complete(null);
+            }
+        }, duration, units);
+        addListener((EVCacheGetOperationListener<T>) f -> {
+            timeout.cancel(false);
+            if (future.isDone()) return;
+            MemcachedConnection.opSucceeded(op);
+            if (op != null && op.hasErrored() && throwException) {
+                future.completeExceptionally(new ExecutionException(op.getException()));
+            } else if (isCancelled() && throwException) {
+                future.completeExceptionally(new ExecutionException(new CancellationException("Cancelled")));
+            } else {
+                future.complete(objRef.get());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Counts the timeout against the node of the operation and times the
+     * operation out, once the caller stopped waiting for it.
+     */
+    protected void timeOutOperation() {
+        MemcachedConnection.opTimedOut(op);
+        if (op != null) op.timeOut();
+    }
+
     public void signalComplete() {
         super.signalComplete();
     }
@@ -260,8 +305,7 @@ public class EVCacheOperationFuture<T> extends OperationFuture<T> {
      * @return true if the operation has not yet been written to the network
      */
     public boolean cancel(boolean ign) {
-        if(log.isDebugEnabled()) log.debug("Operation cancelled", new Exception());
-      return super.cancel(ign);
+        return cancel();
     }
 
     /**
@@ -0,0 +1,107 @@
+package com.netflix.evcache.pool;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.netflix.evcache.pool.EVCacheClient.ChunkInfo;
+
+import net.spy.memcached.EVCacheMemcachedClient;
+
+/**
+ * Puts the chunks of a value back together as they are read. Each chunk is
+ * copied to its place in a buffer of the size of the value, and the checksum
+ * is updated as soon as all the chunks before it are in place. So no array is
+ * kept per chunk and the value is not read again to check it.
+ */
+class ChunkAssembler implements EVCacheMemcachedClient.DataReceiver {
+
+    private final ChunkInfo ci;
+    private final List<String> keys;
+    private final Map<String, Integer> indexes;
+    private final int lastChunkLength;
+    private final byte[] data;
+    private final boolean[] received;
+    private final CRC32 checksum = new CRC32();
+
+    // guarded by this
+    private int receivedCount = 0;
+    private int checksummed = 0;
+    private boolean malformed = false;
+    private boolean completed = false;
+
+    /**
+     * The keys are the keys of the chunks after the metadata, in order.
+     */
+    ChunkAssembler(ChunkInfo ci, List<String> keys) {
+        this.ci = ci;
+        this.keys = keys;
+        this.indexes = new HashMap<String, Integer>(keys.size() * 4 / 3 + 1);
+        for (int i = 0; i < keys.size(); i++) {
+            indexes.put(keys.get(i), Integer.valueOf(i));
+        }
+        this.lastChunkLength = (ci.getLastChunk() <= 0 || ci.getLastChunk() > ci.getChunkSize()) ? ci.getChunkSize() : ci.getLastChunk();
+        this.data = new byte[keys.isEmpty() ? 0 : (keys.size() - 1) * ci.getChunkSize() + lastChunkLength];
+        this.received = new boolean[keys.size()];
+    }
+
+    private int lengthOf(int index) {
+        return (index == received.length - 1) ? lastChunkLength : ci.getChunkSize();
+    }
+
+    /**
+     * Copies the chunk to its place. Chunks may be longer than expected, as
+     * older clients padded the last one, but not shorter.
+     */
+    @Override
+    public synchronized void receive(String key, int flags, byte[] val) {
+        if (completed) return;
+        final Integer index = indexes.get(key);
+        if (index == null || received[index.intValue()]) return;
+        final int i = index.intValue();
+        final int length = lengthOf(i);
+        if (val == null || val.length < length) {
+            malformed = true;
+            return;
+        }
+        System.arraycopy(val, 0, data, i * ci.getChunkSize(), length);
+        received[i] = true;
+        receivedCount++;
+        while (checksummed < received.length && received[checksummed]) {
+            checksum.update(data, checksummed * ci.getChunkSize(), lengthOf(checksummed));
+            checksummed++;
+        }
+    }
+
+    /**
+     * Stops taking chunks. Returns true if all the chunks were received.
+     */
+    synchronized boolean complete() {
+        completed = true;
+        return !malformed && received.length > 0 && receivedCount == received.length;
+    }
+
+    synchronized boolean isMalformed() {
+        return malformed;
+    }
+
+    /**
+     * Returns the checksum of the value, once all the chunks were received.
+     */
+    synchronized long getChecksum() {
+        return checksum.getValue();
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    ChunkInfo getChunkInfo() {
+        return ci;
+    }
+
+    List<String> getKeys() {
+        return keys;
+    }
+}
@@ -2,15 +2,19 @@ package com.netflix.evcache.pool;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.URLDecoder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -27,9 +31,9 @@ import org.slf4j.LoggerFactory;
 import com.netflix.config.ChainedDynamicProperty;
 import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicIntProperty;
-import com.netflix.discovery.shared.Pair;
 import com.netflix.evcache.EVCacheConnectException;
 import com.netflix.evcache.EVCacheException;
+import com.netflix.evcache.EVCacheKey;
 import com.netflix.evcache.EVCacheLatch;
 import com.netflix.evcache.EVCacheReadQueueException;
 import com.netflix.evcache.EVCacheTranscoder;
@@ -54,6 +58,7 @@ import net.spy.memcached.NodeLocator;
 import net.spy.memcached.internal.ListenableFuture;
 import net.spy.memcached.internal.OperationCompletionListener;
 import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.ops.StoreType;
 import net.spy.memcached.protocol.binary.EVCacheNodeImpl;
 import net.spy.memcached.transcoders.SerializingTranscoder;
 import net.spy.memcached.transcoders.Transcoder;
@@ -84,12 +89,12 @@ public class EVCacheClient {
 //    private final DynamicIntProperty operationTimeout;
     private final DynamicIntProperty maxReadQueueSize;
     private final DynamicBooleanProperty ignoreInactiveNodes;
-    private final ChainedDynamicProperty.BooleanProperty enableChunking;
+    private final ChainedDynamicProperty.BooleanProperty enableChunking, deleteChunkMetadata;
     private final DynamicBooleanProperty hashKeyByApp;
     private final DynamicBooleanProperty hashKeyByServerGroup;
-    private final ChainedDynamicProperty.IntProperty chunkSize, writeBlock;
+    private final ChainedDynamicProperty.IntProperty chunkSize, writeBlock, streamReadWindow;
     private final ChunkTranscoder chunkingTranscoder;
-    private final EVCacheTranscoder evcacheValueTranscoder;
+    private final EVCacheValueTranscoder evcacheValueTranscoder;
     private final SerializingTranscoder decodingTranscoder;
     private static final int SPECIAL_BYTEARRAY = (8 << 8);
     private final EVCacheClientPool pool;
@@ -97,6 +102,7 @@ public class EVCacheClient {
     private final ChainedDynamicProperty.BooleanProperty ignoreTouch;
     protected final TagList tags;
     private final ChainedDynamicProperty.StringProperty hashingAlgo;
+    private volatile KeyHasher keyHasher;
 
     EVCacheClient(String appName, String zone, int id, EVCacheServerGroupConfig config,
             List<InetSocketAddress> memcachedNodesInZone, int maxQueueSize, DynamicIntProperty maxReadQueueSize,
@@ -117,7 +123,11 @@ public class EVCacheClient {
         this.connectionFactory = pool.getEVCacheClientPoolManager().getConnectionFactoryProvider().getConnectionFactory(appName, id, serverGroup, pool.getEVCacheClientPoolManager());
         this.enableChunking = EVCacheConfig.getInstance().getChainedBooleanProperty(this.serverGroup.getName()+ ".chunk.data", appName + ".chunk.data", Boolean.FALSE, null);
         this.chunkSize = EVCacheConfig.getInstance().getChainedIntProperty(this.serverGroup.getName() + ".chunk.size", appName + ".chunk.size", 1180, null);
+        // apps whose keys never go from a chunked to an unchunked value can turn this off to
+        // drop the delete that is sent along with each unchunked write
+        this.deleteChunkMetadata = EVCacheConfig.getInstance().getChainedBooleanProperty(this.serverGroup.getName() + ".chunk.delete.metadata", appName + ".chunk.delete.metadata", Boolean.TRUE, null);
         this.writeBlock = EVCacheConfig.getInstance().getChainedIntProperty(appName + "." + this.serverGroup.getName() + ".write.block.duration", appName + ".write.block.duration", 25, null);
+        this.streamReadWindow = EVCacheConfig.getInstance().getChainedIntProperty(this.serverGroup.getName() + ".stream.read.window", appName + ".stream.read.window", 8, null);
         this.chunkingTranscoder = new ChunkTranscoder();
         this.maxWriteQueueSize = maxQueueSize;
         this.ignoreTouch = EVCacheConfig.getInstance().getChainedBooleanProperty(appName + "." + this.serverGroup.getName() + ".ignore.touch", appName + ".ignore.touch", false, null);
@@ -131,12 +141,12 @@ public class EVCacheClient {
         this.decodingTranscoder = new SerializingTranscoder(Integer.MAX_VALUE);
         decodingTranscoder.setCompressionThreshold(Integer.MAX_VALUE);
         
-        this.evcacheValueTranscoder = new EVCacheTranscoder();
-        evcacheValueTranscoder.setCompressionThreshold(Integer.MAX_VALUE);
+        this.evcacheValueTranscoder = new EVCacheValueTranscoder(appName);
 
         this.hashKeyByApp = EVCacheConfig.getInstance().getDynamicBooleanProperty(appName + ".hash.key", Boolean.FALSE);
         this.hashKeyByServerGroup = EVCacheConfig.getInstance().getDynamicBooleanProperty(this.serverGroup.getName() + ".hash.key", Boolean.FALSE);
         this.hashingAlgo = EVCacheConfig.getInstance().getChainedStringProperty(this.serverGroup.getName() + ".hash.algo", appName + ".hash.algo", "MD5", null);
+        this.keyHasher = KeyHasher.getKeyHasher(hashingAlgo.get());
     }
 
     private Collection<String> validateReadQueueSize(Collection<String> canonicalKeys) throws EVCacheException {
@@ -197,7 +207,10 @@ public class EVCacheClient {
     }
 
     private boolean validateNode(String key, boolean _throwException) throws EVCacheException, EVCacheConnectException {
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        return validateNode(evcacheMemcachedClient.getEVCacheNode(key), _throwException);
+    }
+
+    private boolean validateNode(MemcachedNode node, boolean _throwException) throws EVCacheException, EVCacheConnectException {
         // First check if the node is active
         if (node instanceof EVCacheNodeImpl) {
             final EVCacheNodeImpl evcNode = (EVCacheNodeImpl) node;
@@ -236,18 +249,14 @@ public class EVCacheClient {
             final Map<String, CachedData> metadataMap = evcacheMemcachedClient.asyncGetBulk(firstKeys, chunkingTranscoder, null, "GetChunkMetadataOperation")
                     .getSome(readTimeout.get(), TimeUnit.MILLISECONDS, false, false);
             if (metadataMap.containsKey(key)) {
+                if (metadataMap.containsKey(firstKey)) deleteStaleMetadata(key, firstKey);
                 return new ChunkDetails(null, null, false, metadataMap.get(key));
             } else if (metadataMap.containsKey(firstKey)) {
                 final ChunkInfo ci = getChunkInfo(firstKey, (String) decodingTranscoder.decode(metadataMap.get(
                         firstKey)));
                 if (ci == null) return null;
 
-                final List<String> keys = new ArrayList<>();
-                for (int i = 1; i < ci.getChunks(); i++) {
-                    final String prefix = (i < 10) ? "0" : "";
-                    keys.add(ci.getKey() + "_" + prefix + i);
-                }
-                return new ChunkDetails(keys, ci, true, null);
+                return new ChunkDetails(getChunkKeys(ci), ci, true, null);
             } else {
                 return null;
             }
@@ -268,24 +277,46 @@ public class EVCacheClient {
             .getSome(readTimeout.get(), TimeUnit.MILLISECONDS, false, false, scheduler)
             .map(metadataMap -> {
                 if (metadataMap.containsKey(key)) {
+                    if (metadataMap.containsKey(firstKey)) deleteStaleMetadata(key, firstKey);
                     return new ChunkDetails(null, null, false, metadataMap.get(key));
                 } else if (metadataMap.containsKey(firstKey)) {
                     final ChunkInfo ci = getChunkInfo(firstKey, (String) decodingTranscoder.decode(metadataMap.get(
                         firstKey)));
                     if (ci == null) return null;
 
-                    final List<String> keys = new ArrayList<>();
-                    for (int i = 1; i < ci.getChunks(); i++) {
-                        final String prefix = (i < 10) ? "0" : "";
-                        keys.add(ci.getKey() + "_" + prefix + i);
-                    }
-                    return new ChunkDetails(keys, ci, true, null);
+                    return new ChunkDetails(getChunkKeys(ci), ci, true, null);
                 } else {
                     return null;
                 }
             });
     }
 
+    /*
+     * Deletes the metadata of a chunked value that was replaced by an
+     * unchunked one whose delete of the metadata was lost. The unchunked
+     * value is read in its place. Both are also read while a chunked write
+     * is deleting the unchunked value, so the metadata is only deleted if it
+     * is provably older : both keys are on the same node, whose cas only
+     * grows, and the cas of the value is the larger. Otherwise the writes
+     * repair it. The delete is conditional on the cas of the metadata and
+     * the chunks are left to expire, as a newer chunked write may be storing
+     * its own.
+     */
+    private void deleteStaleMetadata(String key, String firstKey) {
+        if (evcacheMemcachedClient.getEVCacheNode(key) != evcacheMemcachedClient.getEVCacheNode(firstKey)) return;
+        final OperationFuture<CASValue<CachedData>> value = evcacheMemcachedClient.asyncGets(key, chunkingTranscoder);
+        final OperationFuture<CASValue<CachedData>> metadata = evcacheMemcachedClient.asyncGets(firstKey, chunkingTranscoder);
+        metadata.addListener(future -> {
+            // the value was read first from the same node
+            final CASValue<CachedData> valueCas = value.get(readTimeout.get(), TimeUnit.MILLISECONDS);
+            final CASValue<CachedData> metadataCas = metadata.get();
+            if (valueCas == null || metadataCas == null || valueCas.getCas() <= metadataCas.getCas()) return;
+            evcacheMemcachedClient.delete(firstKey, metadataCas.getCas());
+            EVCacheMetricsFactory.increment(appName + "-ORPHANED_CHUNKS");
+            if (log.isDebugEnabled()) log.debug("Deleted the stale chunk metadata of key : " + key);
+        });
+    }
+
     private <T> T assembleChunks(String key, boolean touch, int ttl, Transcoder<T> tc, boolean hasZF) {
         final Stopwatch operationDuration = EVCacheMetricsFactory.getStatsTimer(appName, serverGroup, "LatencyChunk").start();
         try {
@@ -298,65 +329,10 @@ public class EVCacheClient {
                         : tc);
                 return transcoder.decode((CachedData) cd.getData());
             } else {
-                final List<String> keys = cd.getChunkKeys();
-                final ChunkInfo ci = cd.getChunkInfo();
-
-                final Map<String, CachedData> dataMap = evcacheMemcachedClient.asyncGetBulk(keys, chunkingTranscoder, null, "GetChunksOperation")
+                final ChunkAssembler assembler = new ChunkAssembler(cd.getChunkInfo(), cd.getChunkKeys());
+                evcacheMemcachedClient.asyncGetBulk(assembler.getKeys(), assembler, "GetChunksOperation")
                         .getSome(readTimeout.get(), TimeUnit.MILLISECONDS, false, false);
-
-                if (dataMap.size() != ci.getChunks() - 1) {
-                    EVCacheMetricsFactory.increment(appName + "-INCORRECT_NUM_CHUNKS");
-                    return null;
-                }
-
-                final byte[] data = new byte[(ci.getChunks() - 2) * ci.getChunkSize() + (ci.getLastChunk() == 0 ? ci
-                        .getChunkSize() : ci.getLastChunk())];
-                int index = 0;
-                for (int i = 0; i < keys.size(); i++) {
-                    final String _key = keys.get(i);
-                    final CachedData _cd = dataMap.get(_key);
-                    if (log.isDebugEnabled()) log.debug("Chunk Key " + _key + "; Value : " + _cd);
-                    if (_cd == null) continue;
-
-                    final byte[] val = _cd.getData();
-
-                    // If we expect a chunk to be present and it is null then return null immediately.
-                    if (val == null) return null; 
-                    final int len = (i == keys.size() - 1) ? ((ci.getLastChunk() == 0 || ci.getLastChunk() > ci
-                            .getChunkSize()) ? ci.getChunkSize() : ci.getLastChunk())
-                            : val.length;
-                    if (len != ci.getChunkSize() && i != keys.size() - 1) {
-                        EVCacheMetricsFactory.increment(appName + "-INVALID_CHUNK_SIZE");
-                        if (log.isWarnEnabled()) log.warn("CHUNK_SIZE_ERROR : Chunks : " + ci.getChunks() + " ; "
-                                + "length : " + len + "; expectedLength : " + ci.getChunkSize() + " for key : " + _key);
-                    }
-                    if (len > 0) {
-                        try {
-                            System.arraycopy(val, 0, data, index, len);
-                        } catch (Exception e) {
-                            StringBuilder sb = new StringBuilder();
-                            sb.append("ArrayCopyError - Key : " + _key + "; final data Size : " + data.length
-                                    + "; copy array size : " + len + "; val size : " + val.length
-                                    + "; key index : " + i + "; copy from : " + index + "; ChunkInfo : " + ci + "\n");
-                            for (int j = 0; j < keys.size(); j++) {
-                                final String skey = keys.get(j);
-                                final byte[] sval = (byte[]) dataMap.get(skey).getData();
-                                sb.append(skey + "=" + sval.length + "\n");
-                            }
-                            if (log.isWarnEnabled()) log.warn(sb.toString(), e);
-                            throw e;
-                        }
-
-                        index += val.length;
-                        if (touch) evcacheMemcachedClient.touch(_key, ttl);
-                    }
-                }
-
-                final boolean checksumPass = checkCRCChecksum(data, ci, hasZF);
-                if (!checksumPass) return null;
-                final Transcoder<T> transcoder = (tc == null ? (Transcoder<T>) evcacheMemcachedClient.getTranscoder()
-                        : tc);
-                return transcoder.decode(new CachedData(ci.getFlags(), data, Integer.MAX_VALUE));
+                return assembleChunks(assembler, touch, ttl, tc, hasZF);
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -375,79 +351,43 @@ public class EVCacheClient {
                 final Transcoder<T> transcoder = (tc == null ? (Transcoder<T>) evcacheMemcachedClient.getTranscoder() : tc);
                 return Single.just(transcoder.decode((CachedData) cd.getData()));
             } else {
-                final List<String> keys = cd.getChunkKeys();
-                final ChunkInfo ci = cd.getChunkInfo();
-
-                return evcacheMemcachedClient.asyncGetBulk(keys, chunkingTranscoder, null, "GetChunksOperation")
+                final ChunkAssembler assembler = new ChunkAssembler(cd.getChunkInfo(), cd.getChunkKeys());
+                return evcacheMemcachedClient.asyncGetBulk(assembler.getKeys(), assembler, "GetChunksOperation")
                     .getSome(readTimeout.get(), TimeUnit.MILLISECONDS, false, false, scheduler)
-                    .map(dataMap -> {
-                        if (dataMap.size() != ci.getChunks() - 1) {
-                            EVCacheMetricsFactory.increment(appName + "-INCORRECT_NUM_CHUNKS");
-                            return null;
-                        }
-
-                        final byte[] data = new byte[(ci.getChunks() - 2) * ci.getChunkSize() + (ci.getLastChunk() == 0 ? ci
-                            .getChunkSize() : ci.getLastChunk())];
-                        int index = 0;
-                        for (int i = 0; i < keys.size(); i++) {
-                            final String _key = keys.get(i);
-                            final CachedData _cd = dataMap.get(_key);
-                            if (log.isDebugEnabled()) log.debug("Chunk Key " + _key + "; Value : " + _cd);
-                            if (_cd == null) continue;
-
-                            final byte[] val = _cd.getData();
-
-                            // If we expect a chunk to be present and it is null then return null immediately.
-                            if (val == null) return null;
-                            final int len = (i == keys.size() - 1) ? ((ci.getLastChunk() == 0 || ci.getLastChunk() > ci
-                                .getChunkSize()) ? ci.getChunkSize() : ci.getLastChunk())
-                                : val.length;
-                            if (len != ci.getChunkSize() && i != keys.size() - 1) {
-                                EVCacheMetricsFactory.increment(appName + "-INVALID_CHUNK_SIZE");
-                                if (log.isWarnEnabled()) log.warn("CHUNK_SIZE_ERROR : Chunks : " + ci.getChunks() + " ; "
-                                    + "length : " + len + "; expectedLength : " + ci.getChunkSize() + " for key : " + _key);
-                            }
-                            if (len > 0) {
-                                try {
-                                    System.arraycopy(val, 0, data, index, len);
-                                } catch (Exception e) {
-                                    StringBuilder sb = new StringBuilder();
-                                    sb.append("ArrayCopyError - Key : " + _key + "; final data Size : " + data.length
-                                        + "; copy array size : " + len + "; val size : " + val.length
-                                        + "; key index : " + i + "; copy from : " + index + "; ChunkInfo : " + ci + "\n");
-                                    for (int j = 0; j < keys.size(); j++) {
-                                        final String skey = keys.get(j);
-                                        final byte[] sval = (byte[]) dataMap.get(skey).getData();
-                                        sb.append(skey + "=" + sval.length + "\n");
-                                    }
-                                    if (log.isWarnEnabled()) log.warn(sb.toString(), e);
-                                    throw e;
-                                }
-
-                                System.arraycopy(val, 0, data, index, len);
-                                index += val.length;
-                                if (touch) evcacheMemcachedClient.touch(_key, ttl);
-                            }
-                        }
-
-                        final boolean checksumPass = checkCRCChecksum(data, ci, hasZF);
-                        if (!checksumPass) return null;
-                        final Transcoder<T> transcoder = (tc == null ? (Transcoder<T>) evcacheMemcachedClient.getTranscoder()
-                            : tc);
-                        return transcoder.decode(new CachedData(ci.getFlags(), data, Integer.MAX_VALUE));
-                    });
+                    .map(dataMap -> assembleChunks(assembler, touch, ttl, tc, hasZF));
             }
         }).doAfterTerminate(() ->
             operationDuration.stop()
         );
     }
 
-    private boolean checkCRCChecksum(byte[] data, final ChunkInfo ci, boolean hasZF) {
-        if (data == null || data.length == 0) return false;
+    /*
+     * Decodes the value of the chunks the assembler received, or returns null
+     * if a chunk is missing or the checksum does not match.
+     */
+    <T> T assembleChunks(ChunkAssembler assembler, boolean touch, int ttl, Transcoder<T> tc, boolean hasZF) {
+        final ChunkInfo ci = assembler.getChunkInfo();
+        if (!assembler.complete()) {
+            if (assembler.isMalformed()) {
+                EVCacheMetricsFactory.increment(appName + "-INVALID_CHUNK_SIZE");
+                if (log.isWarnEnabled()) log.warn("CHUNK_SIZE_ERROR : Chunks : " + ci.getChunks() + " ; expectedLength : " + ci.getChunkSize() + " for key : " + ci.getKey());
+            } else {
+                EVCacheMetricsFactory.increment(appName + "-INCORRECT_NUM_CHUNKS");
+            }
+            return null;
+        }
+        if (!checkCRCChecksum(assembler.getChecksum(), ci, hasZF)) return null;
+        if (touch) {
+            for (String key : assembler.getKeys()) {
+                evcacheMemcachedClient.touch(key, ttl);
+            }
+        }
+        final Transcoder<T> transcoder = (tc == null ? (Transcoder<T>) evcacheMemcachedClient.getTranscoder()
+                : tc);
+        return transcoder.decode(new CachedData(ci.getFlags(), assembler.getData(), Integer.MAX_VALUE));
+    }
 
-        final Checksum checksum = new CRC32();
-        checksum.update(data, 0, data.length);
-        final long currentChecksum = checksum.getValue();
+    private boolean checkCRCChecksum(long currentChecksum, final ChunkInfo ci, boolean hasZF) {
         final long expectedChecksum = ci.getChecksum();
         if (log.isDebugEnabled()) log.debug("CurrentChecksum : " + currentChecksum + "; ExpectedChecksum : "
                 + expectedChecksum + " for key : " + ci.getKey());
@@ -463,7 +403,22 @@ public class EVCacheClient {
         return true;
     }
 
-    private ChunkInfo getChunkInfo(String firstKey, String metadata) {
+    /*
+     * Returns the keys of the chunks after the metadata.
+     */
+    static List<String> getChunkKeys(ChunkInfo ci) {
+        final List<String> keys = new ArrayList<String>(Math.max(0, ci.getChunks() - 1));
+        for (int i = 1; i < ci.getChunks(); i++) {
+            keys.add(getChunkKey(ci.getKey(), i));
+        }
+        return keys;
+    }
+
+    static String getChunkKey(String key, int index) {
+        return key + ((index < 10) ? "_0" : "_") + index;
+    }
+
+    ChunkInfo getChunkInfo(String firstKey, String metadata) {
         if (metadata == null) return null;
         final String[] metaItems = metadata.split(":");
         if (metaItems.length != 5) return null;
@@ -492,79 +447,15 @@ public class EVCacheClient {
                 if (metadataMap.containsKey(key)) {
                     CachedData val = metadataMap.remove(key);
                     returnMap.put(key, tc.decode(val));
+                    if (metadataMap.remove(key + "_00") != null) deleteStaleMetadata(key, key + "_00");
                 }
             }
 
-            final List<String> allKeys = new ArrayList<>();
-            final Map<ChunkInfo, Pair<List<String>, byte[]>> responseMap = new HashMap<>();
-            for (Entry<String, CachedData> entry : metadataMap.entrySet()) {
-                final String firstKey = entry.getKey();
-                final String metadata = (String) decodingTranscoder.decode(entry.getValue());
-                if (metadata == null) continue;
-                final ChunkInfo ci = getChunkInfo(firstKey, metadata);
-                if (ci != null) {
-                    final List<String> ciKeys = new ArrayList<>();
-
-                    for (int i = 1; i < ci.getChunks(); i++) {
-                        final String prefix = (i < 10) ? "0" : "";
-                        final String _key = ci.getKey() + "_" + prefix + i;
-                        allKeys.add(_key);
-                        ciKeys.add(_key);
-                    }
-
-                    final byte[] data = new byte[(ci.getChunks() - 2) * ci.getChunkSize() + ci.getLastChunk()];
-                    responseMap.put(ci, new Pair<>(ciKeys, data));
-                }
-            }
-
-            final Map<String, CachedData> dataMap = evcacheMemcachedClient.asyncGetBulk(allKeys, chunkingTranscoder, null, "GetChunksOperation")
+            final Map<String, ChunkAssembler> assemblers = getChunkAssemblers(metadataMap);
+            final List<String> allKeys = new ArrayList<>(assemblers.keySet());
+            evcacheMemcachedClient.asyncGetBulk(allKeys, getChunkReceiver(assemblers), "GetChunksOperation")
                     .getSome(bulkReadTimeout.get(), TimeUnit.MILLISECONDS, false, false);
-
-            for (Entry<ChunkInfo, Pair<List<String>, byte[]>> entry : responseMap.entrySet()) {
-                final ChunkInfo ci = entry.getKey();
-                final Pair<List<String>, byte[]> pair = entry.getValue();
-                final List<String> ciKeys = pair.first();
-                byte[] data = pair.second();
-                int index = 0;
-                for (int i = 0; i < ciKeys.size(); i++) {
-                    final String _key = ciKeys.get(i);
-                    final CachedData cd = dataMap.get(_key);
-                    if (log.isDebugEnabled()) log.debug("Chunk Key " + _key + "; Value : " + cd);
-                    if (cd == null) continue;
-                    final byte[] val = cd.getData();
-
-                    if (val == null) {
-                        data = null;
-                        break;
-                    }
-                    final int len = (i == ciKeys.size() - 1) ? ((ci.getLastChunk() == 0 || ci.getLastChunk() > ci
-                            .getChunkSize()) ? ci.getChunkSize() : ci.getLastChunk())
-                            : val.length;
-                    try {
-                        System.arraycopy(val, 0, data, index, len);
-                    } catch (Exception e) {
-                        StringBuilder sb = new StringBuilder();
-                        sb.append("ArrayCopyError - Key : " + _key + "; final data Size : " + data.length
-                                + "; copy array size : " + len + "; val size : " + val.length
-                                + "; key index : " + i + "; copy from : " + index + "; ChunkInfo : " + ci + "\n");
-                        for (int j = 0; j < ciKeys.size(); j++) {
-                            final String skey = ciKeys.get(j);
-                            final byte[] sval = dataMap.get(skey).getData();
-                            sb.append(skey + "=" + sval.length + "\n");
-                        }
-                        if (log.isWarnEnabled()) log.warn(sb.toString(), e);
-                        throw e;
-                    }
-                    index += val.length;
-                }
-                final boolean checksumPass = checkCRCChecksum(data, ci, hasZF);
-                if (data != null && checksumPass) {
-                    final CachedData cd = new CachedData(ci.getFlags(), data, Integer.MAX_VALUE);
-                    returnMap.put(ci.getKey(), tc.decode(cd));
-                } else {
-                    returnMap.put(ci.getKey(), null);
-                }
-            }
+            assembleChunks(assemblers, returnMap, tc, hasZF);
             return returnMap;
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -592,80 +483,16 @@ public class EVCacheClient {
                     if (metadataMap.containsKey(key)) {
                         CachedData val = metadataMap.remove(key);
                         returnMap.put(key, tc.decode(val));
+                        if (metadataMap.remove(key + "_00") != null) deleteStaleMetadata(key, key + "_00");
                     }
                 }
 
-                final List<String> allKeys = new ArrayList<>();
-                final Map<ChunkInfo, Pair<List<String>, byte[]>> responseMap = new HashMap<>();
-                for (Entry<String, CachedData> entry : metadataMap.entrySet()) {
-                    final String firstKey = entry.getKey();
-                    final String metadata = (String) decodingTranscoder.decode(entry.getValue());
-                    if (metadata == null) continue;
-                    final ChunkInfo ci = getChunkInfo(firstKey, metadata);
-                    if (ci != null) {
-                        final List<String> ciKeys = new ArrayList<>();
-
-                        for (int i = 1; i < ci.getChunks(); i++) {
-                            final String prefix = (i < 10) ? "0" : "";
-                            final String _key = ci.getKey() + "_" + prefix + i;
-                            allKeys.add(_key);
-                            ciKeys.add(_key);
-                        }
-
-                        final byte[] data = new byte[(ci.getChunks() - 2) * ci.getChunkSize() + ci.getLastChunk()];
-                        responseMap.put(ci, new Pair<>(ciKeys, data));
-                    }
-                }
-
-                return evcacheMemcachedClient.asyncGetBulk(allKeys, chunkingTranscoder, null, "GetChunksOperation")
+                final Map<String, ChunkAssembler> assemblers = getChunkAssemblers(metadataMap);
+                final List<String> allKeys = new ArrayList<>(assemblers.keySet());
+                return evcacheMemcachedClient.asyncGetBulk(allKeys, getChunkReceiver(assemblers), "GetChunksOperation")
                     .getSome(bulkReadTimeout.get(), TimeUnit.MILLISECONDS, false, false, scheduler)
                     .map(dataMap -> {
-                        for (Entry<ChunkInfo, Pair<List<String>, byte[]>> entry : responseMap.entrySet()) {
-                            final ChunkInfo ci = entry.getKey();
-                            final Pair<List<String>, byte[]> pair = entry.getValue();
-                            final List<String> ciKeys = pair.first();
-                            byte[] data = pair.second();
-                            int index = 0;
-                            for (int i = 0; i < ciKeys.size(); i++) {
-                                final String _key = ciKeys.get(i);
-                                final CachedData cd = dataMap.get(_key);
-                                if (log.isDebugEnabled()) log.debug("Chunk Key " + _key + "; Value : " + cd);
-                                if (cd == null) continue;
-                                final byte[] val = cd.getData();
-
-                                if (val == null) {
-                                    data = null;
-                                    break;
-                                }
-                                final int len = (i == ciKeys.size() - 1) ? ((ci.getLastChunk() == 0 || ci.getLastChunk() > ci
-                                    .getChunkSize()) ? ci.getChunkSize() : ci.getLastChunk())
-                                    : val.length;
-                                try {
-                                    System.arraycopy(val, 0, data, index, len);
-                                } catch (Exception e) {
-                                    StringBuilder sb = new StringBuilder();
-                                    sb.append("ArrayCopyError - Key : " + _key + "; final data Size : " + data.length
-                                        + "; copy array size : " + len + "; val size : " + val.length
-                                        + "; key index : " + i + "; copy from : " + index + "; ChunkInfo : " + ci + "\n");
-                                    for (int j = 0; j < ciKeys.size(); j++) {
-                                        final String skey = ciKeys.get(j);
-                                        final byte[] sval = dataMap.get(skey).getData();
-                                        sb.append(skey + "=" + sval.length + "\n");
-                                    }
-                                    if (log.isWarnEnabled()) log.warn(sb.toString(), e);
-                                    throw e;
-                                }
-                                index += val.length;
-                            }
-                            final boolean checksumPass = checkCRCChecksum(data, ci, hasZF);
-                            if (data != null && checksumPass) {
-                                final CachedData cd = new CachedData(ci.getFlags(), data, Integer.MAX_VALUE);
-                                returnMap.put(ci.getKey(), tc.decode(cd));
-                            } else {
-                                returnMap.put(ci.getKey(), null);
-                            }
-                        }
-
+                        assembleChunks(assemblers, returnMap, tc, hasZF);
                         return returnMap;
                     });
             }).doAfterTerminate(() ->
@@ -673,12 +500,47 @@ public class EVCacheClient {
             );
     }
 
-    private CachedData[] createChunks(CachedData cd, String key) {
+    /*
+     * Maps the keys of the chunks of the keys whose metadata was read to the
+     * assembler of their value.
+     */
+    private Map<String, ChunkAssembler> getChunkAssemblers(Map<String, CachedData> metadataMap) {
+        final Map<String, ChunkAssembler> assemblers = new HashMap<>();
+        for (Entry<String, CachedData> entry : metadataMap.entrySet()) {
+            final String metadata = (String) decodingTranscoder.decode(entry.getValue());
+            if (metadata == null) continue;
+            final ChunkInfo ci = getChunkInfo(entry.getKey(), metadata);
+            if (ci == null) continue;
+            final ChunkAssembler assembler = new ChunkAssembler(ci, getChunkKeys(ci));
+            for (String key : assembler.getKeys()) {
+                assemblers.put(key, assembler);
+            }
+        }
+        return assemblers;
+    }
+
+    private static EVCacheMemcachedClient.DataReceiver getChunkReceiver(Map<String, ChunkAssembler> assemblers) {
+        return (key, flags, data) -> {
+            final ChunkAssembler assembler = assemblers.get(key);
+            if (assembler != null) assembler.receive(key, flags, data);
+        };
+    }
+
+    private <T> void assembleChunks(Map<String, ChunkAssembler> assemblers, Map<String, T> returnMap, Transcoder<T> tc, boolean hasZF) {
+        for (ChunkAssembler assembler : new HashSet<>(assemblers.values())) {
+            returnMap.put(assembler.getChunkInfo().getKey(), assembleChunks(assembler, false, 0, tc, hasZF));
+        }
+    }
+
+    /**
+     * Returns the number of bytes of data that are stored in each chunk of the
+     * key, the chunk size less the memcached overhead of an item.
+     */
+    public int getChunkDataSize(String key) {
         final int cSize = chunkSize.get();
         if ((key.length() + 3) > cSize) throw new IllegalArgumentException("The chunksize " + cSize
                 + " is smaller than the key size. Will not be able to proceed. key size = "
                 + key.length());
-        final int len = cd.getData().length;
 
         /* the format of headers in memcached */
         // Key size + 1 + Header( Flags (Characters Number) + Key (Characters Numbers) + 2 bytes ( \r\n ) + 4 bytes (2 spaces and 1 \r)) + Chunk Size + CAS Size
@@ -692,10 +554,19 @@ public class EVCacheClient {
         // + 8; // CAS
         final int overheadSize = key.length() + 71 + 3; 
         // 3 because we will suffix _00, _01 ... _99; 68 is the size of the memcached header
-        final int actualChunkSize = cSize - overheadSize;
+        return cSize - overheadSize;
+    }
+
+    /*
+     * Works out how the data of the key is split. The chunks are the slices
+     * of the data given by the returned ChunkInfo, the last one is not
+     * padded.
+     */
+    ChunkInfo createChunkInfo(CachedData cd, String key) {
+        final int actualChunkSize = getChunkDataSize(key);
+        final int len = cd.getData().length;
         int lastChunkSize = len % actualChunkSize;
         final int numOfChunks = len / actualChunkSize + ((lastChunkSize > 0) ? 1 : 0) + 1;
-        final CachedData[] chunkData = new CachedData[numOfChunks];
         if (lastChunkSize == 0) lastChunkSize = actualChunkSize;
 
         final long sTime = System.nanoTime();
@@ -703,32 +574,153 @@ public class EVCacheClient {
         checksum.update(cd.getData(), 0, len);
         final long checkSumValue = checksum.getValue();
 
-        int srcPos = 0;
         if (log.isDebugEnabled()) log.debug("Ths size of data is " + len + " ; we will create " + (numOfChunks - 1)
                 + " of " + actualChunkSize + " bytes. Checksum : "
                 + checkSumValue + "; Checksum Duration : " + (System.nanoTime() - sTime));
-        chunkData[0] = decodingTranscoder.encode(numOfChunks + ":" + actualChunkSize + ":" + lastChunkSize + ":" + cd
-                .getFlags() + ":" + checkSumValue);
-        for (int i = 1; i < numOfChunks; i++) {
-            int lengthOfArray = actualChunkSize;
-            if (srcPos + actualChunkSize > len) {
-                lengthOfArray = len - srcPos;
+        EVCacheMetricsFactory.getDistributionSummary(appName + "-ChunkData-NumberOfChunks", appName, serverGroup.getName()).record(numOfChunks);
+        EVCacheMetricsFactory.getDistributionSummary(appName + "-ChunkData-TotalSize", appName, serverGroup.getName()).record(len);
+
+        return new ChunkInfo(numOfChunks, actualChunkSize, lastChunkSize, cd.getFlags(), key, checkSumValue);
+    }
+
+    /*
+     * Returns the metadata stored at <key>_00.
+     */
+    CachedData getChunkMetadata(ChunkInfo ci) {
+        return decodingTranscoder.encode(ci.getChunks() + ":" + ci.getChunkSize() + ":" + ci.getLastChunk() + ":" + ci
+                .getFlags() + ":" + ci.getChecksum());
+    }
+
+    /*
+     * Stores the chunks of the value and then its metadata, once all the
+     * chunks are stored, so that a reader never finds the metadata of a value
+     * whose chunks are missing. The chunks are written from the data of the
+     * value, no array is created for them.
+     */
+    private EVCacheFutures storeChunks(StoreType storeType, String key, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) {
+        final ChunkInfo ci = createChunkInfo(value, key);
+        final byte[] data = value.getData();
+        final OperationFuture<Boolean>[] futures = new OperationFuture[ci.getChunks()];
+        final OperationFuture<Boolean>[] chunks = new OperationFuture[ci.getChunks() - 1];
+        for (int i = 1; i < ci.getChunks(); i++) {
+            final int offset = (i - 1) * ci.getChunkSize();
+            final int length = (i == ci.getChunks() - 1) ? data.length - offset : ci.getChunkSize();
+            futures[i] = chunks[i - 1] = evcacheMemcachedClient.store(storeType, getChunkKey(key, i), timeToLive, SPECIAL_BYTEARRAY, data, offset, length, null);
+        }
+        final CachedData metadata = getChunkMetadata(ci);
+        futures[0] = evcacheMemcachedClient.storeAfter(chunks, storeType, getChunkKey(key, 0), timeToLive, metadata.getFlags(), metadata.getData(), 0, metadata.getData().length);
+        return new EVCacheFutures(futures, key, appName, serverGroup, evcacheLatch);
+    }
+
+    /**
+     * Stores chunk <code>index</code> of a value that is written as a stream,
+     * the first <code>length</code> bytes of the given array. The array must
+     * not be changed until the returned future is done.
+     */
+    public Future<Boolean> setChunk(String key, int index, byte[] data, int length, int timeToLive) throws EVCacheException {
+        final String chunkKey = getChunkKey(key, index);
+        if (!ensureWriteQueueSize(evcacheMemcachedClient.getEVCacheNode(chunkKey), chunkKey)) return getDefaultFuture();
+        return evcacheMemcachedClient.store(StoreType.set, chunkKey, timeToLive, SPECIAL_BYTEARRAY, data, 0, length, null);
+    }
+
+    /**
+     * Stores the metadata of a value that was written as a stream once all
+     * its chunks are stored, and deletes the unchunked value of the key if
+     * there is one. The value reads back as a byte array.
+     */
+    public Future<Boolean> setChunkMetadata(String key, int chunks, int chunkSize, int lastChunk, long checksum, int timeToLive, EVCacheLatch evcacheLatch) throws EVCacheException {
+        final ChunkInfo ci = new ChunkInfo(chunks, chunkSize, lastChunk, SPECIAL_BYTEARRAY, key, checksum);
+        final String firstKey = getChunkKey(key, 0);
+        if (!ensureWriteQueueSize(evcacheMemcachedClient.getEVCacheNode(firstKey), firstKey)) return abortChunks(key, chunks, evcacheLatch);
+        // the unchunked value is deleted first, as it is read in place of the chunks until it is gone
+        evcacheMemcachedClient.delete(key);
+        return evcacheMemcachedClient.set(firstKey, timeToLive, getChunkMetadata(ci), chunkingTranscoder, evcacheLatch);
+    }
+
+    /**
+     * Deletes the metadata and the given number of chunks of a value whose
+     * stream could not be written and counts the write as failed.
+     */
+    public Future<Boolean> abortChunks(String key, int chunks, EVCacheLatch evcacheLatch) {
+        for (int i = 0; i < chunks; i++) {
+            evcacheMemcachedClient.delete(getChunkKey(key, i), null);
+        }
+        final ListenableFuture<Boolean, OperationCompletionListener> defaultFuture = (ListenableFuture<Boolean, OperationCompletionListener>) getDefaultFuture();
+        if (evcacheLatch != null && evcacheLatch instanceof EVCacheLatchImpl && !isInWriteOnly()) ((EVCacheLatchImpl) evcacheLatch).addFuture(defaultFuture);
+        return defaultFuture;
+    }
+
+    /**
+     * Writes the value of the key to the given stream and returns true, or
+     * returns false without writing anything if the key is not found. The
+     * value must be a byte array.
+     * <p>
+     * The chunks of a value that was stored uncompressed are fetched a few at
+     * a time, ahead of the one that is being written, so the value is never
+     * held in memory as a whole. As the chunks are written before the
+     * checksum of the value can be checked, an {@link EVCacheException} is
+     * thrown if a chunk is missing or the checksum does not match after a
+     * part of the value was written. The caller should then discard what
+     * was written.
+     */
+    public boolean getStream(String key, OutputStream out) throws EVCacheException, IOException {
+        final Stopwatch operationDuration = EVCacheMetricsFactory.getStatsTimer(appName, serverGroup, "LatencyChunkStream").start();
+        try {
+            final ChunkDetails<Object> cd = getChunkDetails(key);
+            if (cd == null) return false;
+            if (!cd.isChunked()) {
+                if (cd.getData() == null) return false;
+                return writeValue(key, evcacheMemcachedClient.getTranscoder().decode((CachedData) cd.getData()), out);
             }
-            byte[] dest = new byte[actualChunkSize];
-            System.arraycopy(cd.getData(), srcPos, dest, 0, lengthOfArray);
-            if (actualChunkSize > lengthOfArray) {
-                for (int j = lengthOfArray; j < actualChunkSize; j++) {
-                    dest[j] = Character.UNASSIGNED;// Adding filler data
-                }
+            final ChunkInfo ci = cd.getChunkInfo();
+            if (ci.getFlags() != SPECIAL_BYTEARRAY) {
+                // compressed and serialized values can only be decoded as a whole
+                final ChunkAssembler assembler = new ChunkAssembler(ci, cd.getChunkKeys());
+                evcacheMemcachedClient.asyncGetBulk(assembler.getKeys(), assembler, "GetChunksOperation")
+                        .getSome(readTimeout.get(), TimeUnit.MILLISECONDS, false, false);
+                return writeValue(key, assembleChunks(assembler, false, 0, null, false), out);
             }
-            srcPos += lengthOfArray;
-            //chunkData[i] = decodingTranscoder.encode(dest);
-            chunkData[i] = new CachedData(SPECIAL_BYTEARRAY, dest, Integer.MAX_VALUE);
+            return streamChunks(ci, cd.getChunkKeys(), out);
+        } catch (EVCacheException | IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EVCacheException("Exception getting the chunks of key : " + key, e);
+        } finally {
+            operationDuration.stop();
         }
-        EVCacheMetricsFactory.getDistributionSummary(appName + "-ChunkData-NumberOfChunks", appName, serverGroup.getName()).record(numOfChunks);
-        EVCacheMetricsFactory.getDistributionSummary(appName + "-ChunkData-TotalSize", appName, serverGroup.getName()).record(len);
+    }
 
-        return chunkData;
+    private boolean writeValue(String key, Object value, OutputStream out) throws EVCacheException, IOException {
+        if (value == null) return false;
+        if (!(value instanceof byte[])) throw new EVCacheException("The value of key : " + key + " is not a byte array but a " + value.getClass().getName());
+        out.write((byte[]) value);
+        return true;
+    }
+
+    private boolean streamChunks(ChunkInfo ci, List<String> keys, OutputStream out) throws Exception {
+        final int window = Math.max(1, streamReadWindow.get());
+        final Deque<Future<CachedData>> inFlight = new ArrayDeque<Future<CachedData>>(window);
+        final Checksum checksum = new CRC32();
+        int next = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            while (next < keys.size() && next <= i + window - 1) {
+                inFlight.add(evcacheMemcachedClient.asyncGet(keys.get(next++), chunkingTranscoder, null));
+            }
+            final CachedData chunk = inFlight.poll().get(readTimeout.get(), TimeUnit.MILLISECONDS);
+            final int expectedLength = (i == keys.size() - 1) ? ci.getLastChunk() : ci.getChunkSize();
+            // older clients padded the last chunk, so it may be longer
+            if (chunk == null || chunk.getData().length < expectedLength) {
+                EVCacheMetricsFactory.increment(appName + "-INCORRECT_NUM_CHUNKS");
+                if (i == 0) return false;
+                throw new EVCacheException("Chunk " + keys.get(i) + " is missing or shorter than " + expectedLength + " bytes after " + i + " chunks were written");
+            }
+            checksum.update(chunk.getData(), 0, expectedLength);
+            out.write(chunk.getData(), 0, expectedLength);
+        }
+        if (!checkCRCChecksum(checksum.getValue(), ci, false)) {
+            throw new EVCacheException("The checksum of the chunks of key : " + ci.getKey() + " does not match the metadata");
+        }
+        return true;
     }
 
     /** 
@@ -769,11 +761,20 @@ public class EVCacheClient {
         return evcacheMemcachedClient.incr(key, by, defaultVal, timeToLive);
     }
 
+    public OperationFuture<Long> asyncIncr(String key, long by, long defaultVal, int timeToLive) throws EVCacheException {
+        return evcacheMemcachedClient.asyncIncr(key, by, defaultVal, timeToLive);
+    }
+
     public long decr(String key, long by, long defaultVal, int timeToLive) throws EVCacheException {
         return evcacheMemcachedClient.decr(key, by, defaultVal, timeToLive);
     }
 
     public <T> T get(String key, Transcoder<T> tc, boolean _throwException, boolean hasZF, boolean chunked) throws Exception {
+        return get(new EVCacheKey(key, key, null), tc, _throwException, hasZF, chunked);
+    }
+
+    public <T> T get(EVCacheKey evcKey, Transcoder<T> tc, boolean _throwException, boolean hasZF, boolean chunked) throws Exception {
+        final String key = evcKey.getDerivedKey();
         if (chunked) {
             return assembleChunks(key, false, 0, tc, hasZF);
         } else if(shouldHashKey()) {
@@ -785,34 +786,49 @@ public class EVCacheClient {
                     EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-KEY_HASH_COLLISION");
                     return null;
                 }
-                final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                 if(tc == null) {
-                    return (T)evcacheMemcachedClient.getTranscoder().decode(cd);
+                    return (T)val.decode(evcacheMemcachedClient.getTranscoder());
                 } else {
-                    return tc.decode(cd);
+                    return val.decode(tc);
                 }
             } else {
                 return null;
             }
         } else {
-            return evcacheMemcachedClient.asyncGet(key, tc, null).get(readTimeout.get(),
+            final T value = evcacheMemcachedClient.asyncGet(key, tc, null, evcacheMemcachedClient.getEVCacheNode(evcKey)).get(readTimeout.get(),
                     TimeUnit.MILLISECONDS, _throwException, hasZF);
+            if (value != null) return value;
+
+            // while migrating the continuum the data may still be on the node given by the previous hash algorithm
+            final MemcachedNode previous = evcacheMemcachedClient.getPreviousEVCacheNode(evcKey);
+            if (previous == null) return null;
+            EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-HASH_MIGRATION_READ");
+            return evcacheMemcachedClient.asyncGet(key, tc, null, previous).get(readTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF);
         }
     }
 
     public <T> T get(String key, Transcoder<T> tc, boolean _throwException, boolean hasZF) throws Exception {
-        if (!validateNode(key, _throwException)) {
+        return get(new EVCacheKey(key, key, null), tc, _throwException, hasZF);
+    }
+
+    public <T> T get(EVCacheKey evcKey, Transcoder<T> tc, boolean _throwException, boolean hasZF) throws Exception {
+        if (!validateNode(evcacheMemcachedClient.getEVCacheNode(evcKey), _throwException)) {
             if(ignoreInactiveNodes.get()) {
                 EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-IGNORE_INACTIVE_NODES");
-                return pool.getEVCacheClientForReadExclude(serverGroup).get(key, tc, _throwException, hasZF, enableChunking.get());
+                return pool.getEVCacheClientForReadExclude(serverGroup).get(evcKey, tc, _throwException, hasZF, enableChunking.get());
             } else {
                 return null;
             }
         }
-        return get(key, tc, _throwException, hasZF, enableChunking.get());
+        return get(evcKey, tc, _throwException, hasZF, enableChunking.get());
     }
 
     public <T> Single<T> get(String key, Transcoder<T> tc, boolean _throwException, boolean hasZF, boolean chunked, Scheduler scheduler)  throws Exception {
+        return get(new EVCacheKey(key, key, null), tc, _throwException, hasZF, chunked, scheduler);
+    }
+
+    public <T> Single<T> get(EVCacheKey evcKey, Transcoder<T> tc, boolean _throwException, boolean hasZF, boolean chunked, Scheduler scheduler)  throws Exception {
+        final String key = evcKey.getDerivedKey();
         if (chunked) {
             return assembleChunks(key, _throwException, 0, tc, hasZF, scheduler);
         }  else if(shouldHashKey()) {
@@ -824,32 +840,42 @@ public class EVCacheClient {
                     EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-KEY_HASH_COLLISION");
                     return null;
                 }
-                final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                 if(tc == null) {
-                    return Single.just((T)evcacheMemcachedClient.getTranscoder().decode(cd));
+                    return Single.just((T)val.decode(evcacheMemcachedClient.getTranscoder()));
                 } else {
-                    return Single.just(tc.decode(cd));
+                    return Single.just(val.decode(tc));
                 }
             } else {
                 return null;
             }
         } else {
-            return evcacheMemcachedClient.asyncGet(key, tc, null)
+            final MemcachedNode previous = evcacheMemcachedClient.getPreviousEVCacheNode(evcKey);
+            final Single<T> value = evcacheMemcachedClient.asyncGet(key, tc, null, evcacheMemcachedClient.getEVCacheNode(evcKey))
                 .get(readTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF, scheduler);
+            if (previous == null) return value;
+            return value.flatMap(data -> {
+                if (data != null) return Single.just(data);
+                EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-HASH_MIGRATION_READ");
+                return evcacheMemcachedClient.asyncGet(key, tc, null, previous).get(readTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF, scheduler);
+            });
         }
     }
 
     public <T> Single<T> get(String key, Transcoder<T> tc, boolean _throwException, boolean hasZF, Scheduler scheduler) {
+        return get(new EVCacheKey(key, key, null), tc, _throwException, hasZF, scheduler);
+    }
+
+    public <T> Single<T> get(EVCacheKey evcKey, Transcoder<T> tc, boolean _throwException, boolean hasZF, Scheduler scheduler) {
         try {
-            if (!validateNode(key, _throwException)) {
+            if (!validateNode(evcacheMemcachedClient.getEVCacheNode(evcKey), _throwException)) {
                 if(ignoreInactiveNodes.get()) {
                     EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-IGNORE_INACTIVE_NODES");
-                    return pool.getEVCacheClientForReadExclude(serverGroup).get(key, tc, _throwException, hasZF, enableChunking.get(), scheduler);
+                    return pool.getEVCacheClientForReadExclude(serverGroup).get(evcKey, tc, _throwException, hasZF, enableChunking.get(), scheduler);
                 } else {
                     return Single.just(null);
                 }
             }
-            return get(key, tc, _throwException, hasZF, enableChunking.get(), scheduler);
+            return get(evcKey, tc, _throwException, hasZF, enableChunking.get(), scheduler);
         } catch (Throwable e) {
             return Single.error(e);
         }
@@ -885,11 +911,10 @@ public class EVCacheClient {
                     EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-KEY_HASH_COLLISION");
                     return null;
                 }
-                final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                 if(tc == null) {
-                    return (T)_client.getTranscoder().decode(cd);
+                    return (T)val.decode(_client.getTranscoder());
                 } else {
-                    return tc.decode(cd);
+                    return val.decode(tc);
                 }
             } else {
                 return null;
@@ -932,11 +957,10 @@ public class EVCacheClient {
                             EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-KEY_HASH_COLLISION");
                             return null;
                         }
-                        final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                         if(tc == null) {
-                            return Single.just((T)_client.getTranscoder().decode(cd));
+                            return Single.just((T)val.decode(_client.getTranscoder()));
                         } else {
-                            return Single.just(tc.decode(cd));
+                            return Single.just(val.decode(tc));
                         }
                     });                    
                 } else {
@@ -949,11 +973,10 @@ public class EVCacheClient {
                                 EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-KEY_HASH_COLLISION");
                                 return null;
                             }
-                            final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                             if(tc == null) {
-                                return Single.just((T)_client.getTranscoder().decode(cd));
+                                return Single.just((T)val.decode(_client.getTranscoder()));
                             } else {
-                                return Single.just(tc.decode(cd));
+                                return Single.just(val.decode(tc));
                             }
                         });
                     } else {
@@ -991,11 +1014,10 @@ public class EVCacheClient {
                         final Object obj = entry.getValue();
                         if(obj instanceof EVCacheValue) {
                             final EVCacheValue val = (EVCacheValue)obj;
-                            final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                             if(tc == null) {
-                                returnVal.put(val.getKey(), (T)evcacheMemcachedClient.getTranscoder().decode(cd));
+                                returnVal.put(val.getKey(), (T)val.decode(evcacheMemcachedClient.getTranscoder()));
                             } else {
-                                returnVal.put(val.getKey(), tc.decode(cd));
+                                returnVal.put(val.getKey(), val.decode(tc));
                             }
                         } else {
                             if (log.isDebugEnabled()) log.debug("Value for key : " + entry.getKey() + " is not EVCacheValue. val : " + obj);
@@ -1005,8 +1027,16 @@ public class EVCacheClient {
                     return Collections.<String, T> emptyMap();
                 }
             } else {
-                returnVal = evcacheMemcachedClient.asyncGetBulk(canonicalKeys, tc, null, "BulkOperation")
+                final Map<String, T> vals = evcacheMemcachedClient.asyncGetBulk(canonicalKeys, tc, null, "BulkOperation")
                         .getSome(bulkReadTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF);
+                final Collection<String> previousKeys = getKeysOnPreviousNodes(canonicalKeys, vals);
+                if (previousKeys.isEmpty()) {
+                    returnVal = vals;
+                } else {
+                    returnVal = (vals == null) ? new HashMap<String, T>() : new HashMap<String, T>(vals);
+                    returnVal.putAll(evcacheMemcachedClient.asyncGetBulkFromPreviousNodes(previousKeys, tc, "BulkOperation")
+                            .getSome(bulkReadTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF));
+                }
             }
         } catch (Exception e) {
             if (_throwException) throw e;
@@ -1036,11 +1066,10 @@ public class EVCacheClient {
                             final Object obj = entry.getValue();
                             if(obj instanceof EVCacheValue) {
                                 final EVCacheValue val = (EVCacheValue)obj;
-                                final CachedData cd = new CachedData(val.getFlags(), val.getValue(), CachedData.MAX_SIZE);
                                 if(tc == null) {
-                                    returnVal.put(val.getKey(), (T)evcacheMemcachedClient.getTranscoder().decode(cd));
+                                    returnVal.put(val.getKey(), (T)val.decode(evcacheMemcachedClient.getTranscoder()));
                                 } else {
-                                    returnVal.put(val.getKey(), tc.decode(cd));
+                                    returnVal.put(val.getKey(), val.decode(tc));
                                 }
                             } else {
                                 if (log.isDebugEnabled()) log.debug("Value for key : " + entry.getKey() + " is not EVCacheValue. val : " + obj);
@@ -1052,8 +1081,20 @@ public class EVCacheClient {
                     return Single.just(Collections.<String, T> emptyMap());
                 }
             } else {
-                return evcacheMemcachedClient.asyncGetBulk(canonicalKeys, tc, null, "BulkOperation")
+                final Single<Map<String, T>> vals = evcacheMemcachedClient.asyncGetBulk(canonicalKeys, tc, null, "BulkOperation")
                     .getSome(bulkReadTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF, scheduler);
+                if (!isMigrating()) return vals;
+                return vals.flatMap(r -> {
+                    final Collection<String> previousKeys = getKeysOnPreviousNodes(canonicalKeys, r);
+                    if (previousKeys.isEmpty()) return Single.just(r);
+                    return evcacheMemcachedClient.asyncGetBulkFromPreviousNodes(previousKeys, tc, "BulkOperation")
+                        .getSome(bulkReadTimeout.get(), TimeUnit.MILLISECONDS, _throwException, hasZF, scheduler)
+                        .map(previous -> {
+                            final Map<String, T> returnVal = new HashMap<String, T>(r);
+                            returnVal.putAll(previous);
+                            return returnVal;
+                        });
+                });
             }
         } catch (Throwable e) {
             return Single.error(e);
@@ -1081,6 +1122,10 @@ public class EVCacheClient {
         return _set(key, cd, timeToLive, evcacheLatch);
     }
 
+    public Future<Boolean> set(EVCacheKey evcKey, CachedData cd, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
+        return _set(evcKey, cd, timeToLive, evcacheLatch);
+    }
+
     @Deprecated
     public <T> Future<Boolean> set(String key, T value, int timeToLive) throws Exception {
         return set(key, value, timeToLive, null);
@@ -1098,7 +1143,12 @@ public class EVCacheClient {
     }
 
     private Future<Boolean> _set(String key, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        return _set(new EVCacheKey(key, key, null), value, timeToLive, evcacheLatch);
+    }
+
+    private Future<Boolean> _set(EVCacheKey evcKey, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
         if (!ensureWriteQueueSize(node, key)) {
             if (log.isInfoEnabled()) log.info("Node : " + node + " is not active. Failing fast and dropping the write event.");
             final ListenableFuture<Boolean, OperationCompletionListener> defaultFuture = (ListenableFuture<Boolean, OperationCompletionListener>) getDefaultFuture();
@@ -1111,29 +1161,26 @@ public class EVCacheClient {
 
             if (enableChunking.get()) {
                 if (dataSize > chunkSize.get()) {
-                    final CachedData[] cd = createChunks(value, key);
-                    final int len = cd.length;
-                    final OperationFuture<Boolean>[] futures = new OperationFuture[len];
-                    for (int i = 0; i < cd.length; i++) {
-                        final String prefix = (i < 10) ? "0" : "";
-                        futures[i] = evcacheMemcachedClient.set(key + "_" + prefix + i, timeToLive, cd[i], null, null);
-                    }
-                    // ensure we are deleting the unchunked key if it exists. 
+                    // ensure we are deleting the unchunked key if it exists, before the
+                    // chunks are written, as it is read in their place until it is gone.
                     // Ignore return value since it may not exist.
                     evcacheMemcachedClient.delete(key);
-                    return new EVCacheFutures(futures, key, appName, serverGroup, evcacheLatch);
+                    return storeChunks(StoreType.set, key, value, timeToLive, evcacheLatch);
                 } else {
-                    // delete all the chunks if they exist as the
-                    // data is moving from chunked to unchunked
-                    delete(key);
-                    return evcacheMemcachedClient.set(key, timeToLive, value, null, evcacheLatch);
+                    // the value is read in place of the chunks if they exist, dropping their
+                    // metadata is enough for them to not be read once the value is gone.
+                    // Metadata that is still found with the value is deleted when read if it
+                    // is provably older.
+                    if (deleteChunkMetadata.get()) evcacheMemcachedClient.delete(getChunkKey(key, 0), null);
+                    return evcacheMemcachedClient.set(key, timeToLive, value, null, evcacheLatch, node);
                 }
             } else if(shouldHashKey()) {
                 final String hKey = getHashedKey(key);
                 final CachedData cVal = getEVCacheValue(key, value, timeToLive);
                 return evcacheMemcachedClient.set(hKey, timeToLive, cVal, null, evcacheLatch);
             } else {
-                return evcacheMemcachedClient.set(key, timeToLive, value, null, evcacheLatch);
+                deleteFromPreviousNode(evcKey);
+                return evcacheMemcachedClient.set(key, timeToLive, value, null, evcacheLatch, node);
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -1141,21 +1188,79 @@ public class EVCacheClient {
         }
     }
 
+    /*
+     * While the continuum is being migrated to a new hash algorithm the
+     * writes go to the new node. Any copy on the node given by the previous
+     * algorithm is removed so reads falling back to it can not see stale data.
+     */
+    private void deleteFromPreviousNode(EVCacheKey evcKey) {
+        final MemcachedNode previous = evcacheMemcachedClient.getPreviousEVCacheNode(evcKey);
+        if (previous != null) evcacheMemcachedClient.delete(evcKey.getDerivedKey(), null, previous);
+    }
+
     protected CachedData getEVCacheValue(String key, CachedData cData, int timeToLive) {
         final EVCacheValue val = new EVCacheValue(key, cData.getData(), cData.getFlags(), timeToLive, System.currentTimeMillis());
         return evcacheValueTranscoder.encode(val);
     }
 
+    /**
+     * Returns true if a value can be read with a single
+     * {@link #asyncGet(EVCacheKey, Transcoder, boolean, boolean)}, i.e. values
+     * are not chunked, keys are not hashed by this server group and the
+     * continuum is not being migrated.
+     */
+    public boolean isAsyncGetSupported() {
+        if (enableChunking.get() || shouldHashKey()) return false;
+        return !isMigrating();
+    }
+
+    private boolean isMigrating() {
+        final NodeLocator locator = evcacheMemcachedClient.getNodeLocator();
+        return locator instanceof EVCacheNodeLocator && ((EVCacheNodeLocator) locator).isMigrating();
+    }
+
+    /*
+     * While migrating the continuum the keys that were not found may still be
+     * on the node given by the previous hash algorithm. Returns the ones for
+     * which that node is not the one that was already read.
+     */
+    private Collection<String> getKeysOnPreviousNodes(Collection<String> keys, Map<String, ?> found) {
+        if (!isMigrating() || (found != null && found.size() >= keys.size())) return Collections.<String> emptyList();
+        final List<String> previousKeys = new ArrayList<String>();
+        for (String key : keys) {
+            if (found != null && found.containsKey(key)) continue;
+            if (evcacheMemcachedClient.getPreviousEVCacheNode(new EVCacheKey(key, key, null)) != null) previousKeys.add(key);
+        }
+        if (!previousKeys.isEmpty()) EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-HASH_MIGRATION_BULK_READ");
+        return previousKeys;
+    }
+
     protected boolean shouldHashKey() {
         return (!hashKeyByApp.get() && hashKeyByServerGroup.get());
     }
     
     protected String getHashedKey(String key) {
-        return KeyHasher.getHashedKey(key, hashingAlgo.get());
+        /*
+         * Clients are replaced when the pool is refreshed, so instead of a
+         * property callback that would hold on to this client the hasher is
+         * resolved again only if the algorithm has changed.
+         */
+        KeyHasher hasher = keyHasher;
+        final String algo = hashingAlgo.get();
+        if (!hasher.getAlgorithm().equalsIgnoreCase(algo)) {
+            hasher = KeyHasher.getKeyHasher(algo);
+            keyHasher = hasher;
+        }
+        return hasher.getHashedKey(key);
     }
 
     public <T> Future<Boolean> appendOrAdd(String key, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        return appendOrAdd(new EVCacheKey(key, key, null), value, timeToLive, evcacheLatch);
+    }
+
+    public <T> Future<Boolean> appendOrAdd(EVCacheKey evcKey, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
         if (!ensureWriteQueueSize(node, key)) {
             if (log.isInfoEnabled()) log.info("Node : " + node + " is not active. Failing fast and dropping the write event.");
             final ListenableFuture<Boolean, OperationCompletionListener> defaultFuture = (ListenableFuture<Boolean, OperationCompletionListener>) getDefaultFuture();
@@ -1164,7 +1269,8 @@ public class EVCacheClient {
         }
 
         try {
-            return evcacheMemcachedClient.asyncAppendOrAdd(key, timeToLive, value, evcacheLatch);
+            deleteFromPreviousNode(evcKey);
+            return evcacheMemcachedClient.asyncAppendOrAdd(key, timeToLive, value, evcacheLatch, node);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
             throw e;
@@ -1175,6 +1281,10 @@ public class EVCacheClient {
         return _replace(key, cd, timeToLive, evcacheLatch);
     }
 
+    public Future<Boolean> replace(EVCacheKey evcKey, CachedData cd, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
+        return _replace(evcKey, cd, timeToLive, evcacheLatch);
+    }
+
     @Deprecated
     public <T> Future<Boolean> replace(String key, T value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
         final CachedData cd;
@@ -1187,7 +1297,12 @@ public class EVCacheClient {
     }
 
     private Future<Boolean> _replace(String key, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        return _replace(new EVCacheKey(key, key, null), value, timeToLive, evcacheLatch);
+    }
+
+    private Future<Boolean> _replace(EVCacheKey evcKey, CachedData value, int timeToLive, EVCacheLatch evcacheLatch) throws Exception {
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
         if (!ensureWriteQueueSize(node, key)) {
             if (log.isInfoEnabled()) log.info("Node : " + node + " is not active. Failing fast and dropping the replace event.");
             final ListenableFuture<Boolean, OperationCompletionListener> defaultFuture = (ListenableFuture<Boolean, OperationCompletionListener>) getDefaultFuture();
@@ -1198,20 +1313,14 @@ public class EVCacheClient {
         try {
             final int dataSize = ((CachedData) value).getData().length;
             if (enableChunking.get() && dataSize > chunkSize.get()) {
-                final CachedData[] cd = createChunks(value, key);
-                final int len = cd.length;
-                final OperationFuture<Boolean>[] futures = new OperationFuture[len];
-                for (int i = 0; i < cd.length; i++) {
-                    final String prefix = (i < 10) ? "0" : "";
-                    futures[i] = evcacheMemcachedClient.replace(key + "_" + prefix + i, timeToLive, cd[i], null, null);
-                }
-                return new EVCacheFutures(futures, key, appName, serverGroup, evcacheLatch);
+                return storeChunks(StoreType.replace, key, value, timeToLive, evcacheLatch);
             } else if(shouldHashKey()) {
                 final String hKey = getHashedKey(key);
                 final CachedData cVal = getEVCacheValue(key, value, timeToLive);
                 return evcacheMemcachedClient.replace(hKey, timeToLive, cVal, null, evcacheLatch);
             } else {
-                return evcacheMemcachedClient.replace(key, timeToLive, value, null, evcacheLatch);
+                deleteFromPreviousNode(evcKey);
+                return evcacheMemcachedClient.replace(key, timeToLive, value, null, evcacheLatch, node);
             }
         } catch (Exception e) {
             log.error(e.getMessage(), e);
@@ -1248,10 +1357,15 @@ public class EVCacheClient {
     */
 
     private Future<Boolean> _add(String key, int exp, CachedData value, EVCacheLatch latch) throws Exception {
+        return _add(new EVCacheKey(key, key, null), exp, value, latch);
+    }
+
+    private Future<Boolean> _add(EVCacheKey evcKey, int exp, CachedData value, EVCacheLatch latch) throws Exception {
         if (enableChunking.get()) throw new EVCacheException("This operation is not supported as chunking is enabled on this EVCacheClient.");
         if (addCounter == null) addCounter = EVCacheMetricsFactory.getCounter(serverGroup.getName() + "-AddCall");
 
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
         if (!ensureWriteQueueSize(node, key)) return getDefaultFuture();
 
         addCounter.increment();
@@ -1260,7 +1374,8 @@ public class EVCacheClient {
             final CachedData cVal = getEVCacheValue(key, value, exp);
             return evcacheMemcachedClient.add(hKey, exp, cVal, null, latch);
         } else {
-            return evcacheMemcachedClient.add(key, exp, value, null, latch);
+            deleteFromPreviousNode(evcKey);
+            return evcacheMemcachedClient.add(key, exp, value, null, latch, node);
         }
     }
 
@@ -1309,17 +1424,26 @@ public class EVCacheClient {
         return _add(key, exp, value, latch);
     }
 
+    public Future<Boolean> add(EVCacheKey evcKey, int exp, CachedData value, EVCacheLatch latch)  throws Exception {
+        return _add(evcKey, exp, value, latch);
+    }
+
     public <T> Future<Boolean> touch(String key, int timeToLive) throws Exception {
     	return touch(key, timeToLive, null);
     }
 
     public <T> Future<Boolean> touch(String key, int timeToLive, EVCacheLatch latch) throws Exception {
+        return touch(new EVCacheKey(key, key, null), timeToLive, latch);
+    }
+
+    public <T> Future<Boolean> touch(EVCacheKey evcKey, int timeToLive, EVCacheLatch latch) throws Exception {
     	if(ignoreTouch.get()) {
     		final ListenableFuture<Boolean, OperationCompletionListener> sf = new SuccessFuture();
     		if (latch != null && latch instanceof EVCacheLatchImpl && !isInWriteOnly()) ((EVCacheLatchImpl) latch).addFuture(sf);
     		return sf;
     	}
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
         if (!ensureWriteQueueSize(node, key)) {
             final ListenableFuture<Boolean, OperationCompletionListener> defaultFuture = (ListenableFuture<Boolean, OperationCompletionListener>) getDefaultFuture();
             if (latch != null && latch instanceof EVCacheLatchImpl && !isInWriteOnly()) ((EVCacheLatchImpl) latch).addFuture(defaultFuture);
@@ -1339,27 +1463,34 @@ public class EVCacheClient {
                 }
                 return new EVCacheFutures(futures, key, appName, serverGroup, latch);
             } else {
-                return evcacheMemcachedClient.touch(key, timeToLive, latch);
+                return evcacheMemcachedClient.touch(key, timeToLive, latch, node);
             }
         } else if(shouldHashKey()) {
             final String hKey = getHashedKey(key);
             return evcacheMemcachedClient.touch(hKey, timeToLive, latch);
         } else {
-            return evcacheMemcachedClient.touch(key, timeToLive, latch);
+            return evcacheMemcachedClient.touch(key, timeToLive, latch, node);
         }
     }
 
     public <T> Future<T> asyncGet(String key, Transcoder<T> tc, boolean _throwException, boolean hasZF)
             throws Exception {
+        return asyncGet(new EVCacheKey(key, key, null), tc, _throwException, hasZF);
+    }
+
+    public <T> Future<T> asyncGet(EVCacheKey evcKey, Transcoder<T> tc, boolean _throwException, boolean hasZF)
+            throws Exception {
         if (enableChunking.get()) throw new EVCacheException(
                 "This operation is not supported as chunking is enabled on this EVCacheClient.");
-        if (!validateNode(key, _throwException)) return null;
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
+        if (!validateNode(node, _throwException)) return null;
         if (tc == null) tc = (Transcoder<T>) getTranscoder();
         if(shouldHashKey()) {
             final String hKey = getHashedKey(key);
             return evcacheMemcachedClient.asyncGet(hKey, tc, null);
         } else {
-            return evcacheMemcachedClient.asyncGet(key, tc, null);
+            return evcacheMemcachedClient.asyncGet(key, tc, null, node);
         }
     }
 
@@ -1368,7 +1499,12 @@ public class EVCacheClient {
     }
 
     public Future<Boolean> delete(String key, EVCacheLatch latch) throws Exception {
-        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(key);
+        return delete(new EVCacheKey(key, key, null), latch);
+    }
+
+    public Future<Boolean> delete(EVCacheKey evcKey, EVCacheLatch latch) throws Exception {
+        final String key = evcKey.getDerivedKey();
+        final MemcachedNode node = evcacheMemcachedClient.getEVCacheNode(evcKey);
         if (!ensureWriteQueueSize(node, key)) {
             final ListenableFuture<Boolean, OperationCompletionListener> defaultFuture = (ListenableFuture<Boolean, OperationCompletionListener>) getDefaultFuture();
             if (latch != null && latch instanceof EVCacheLatchImpl && !isInWriteOnly()) ((EVCacheLatchImpl) latch).addFuture(defaultFuture);
@@ -1382,7 +1518,7 @@ public class EVCacheClient {
                 return evcacheMemcachedClient.delete(key + "_00", latch);
             }
             if (!cd.isChunked()) {
-                return evcacheMemcachedClient.delete(key, latch);
+                return evcacheMemcachedClient.delete(key, latch, node);
             } else {
                 final List<String> keys = cd.getChunkKeys();
                 OperationFuture<Boolean>[] futures = new OperationFuture[keys.size() + 1];
@@ -1396,7 +1532,8 @@ public class EVCacheClient {
             final String hKey = getHashedKey(key);
             return evcacheMemcachedClient.delete(hKey, latch);
         } else {
-            return evcacheMemcachedClient.delete(key, latch);
+            deleteFromPreviousNode(evcKey);
+            return evcacheMemcachedClient.delete(key, latch, node);
         }
     }
 
@@ -1,10 +1,13 @@
 package com.netflix.evcache.pool;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledFuture;
@@ -31,6 +34,8 @@ import com.netflix.evcache.EVCacheInMemoryCache;
 import com.netflix.evcache.connection.DefaultFactoryProvider;
 import com.netflix.evcache.connection.IConnectionFactoryProvider;
 import com.netflix.evcache.event.EVCacheEventListener;
+import com.netflix.evcache.invalidation.EVCacheInvalidationTransport;
+import com.netflix.evcache.invalidation.MulticastInvalidationTransport;
 import com.netflix.evcache.util.EVCacheConfig;
 
 import net.spy.memcached.transcoders.Transcoder;
@@ -79,6 +84,7 @@ public class EVCacheClientPoolManager {
     private final Map<EVCacheClientPool, ScheduledFuture<?>> scheduledTaskMap = new HashMap<EVCacheClientPool, ScheduledFuture<?>>();
     private final EVCacheScheduledExecutor asyncExecutor;
     private final EVCacheExecutor syncExecutor;
+    private final EVCacheExecutor blockingExecutor;
     private final DiscoveryClient discoveryClient;
     private final ApplicationInfoManager applicationInfoManager;
     private final List<EVCacheEventListener> evcacheEventListenerList;
@@ -95,6 +101,8 @@ public class EVCacheClientPoolManager {
         asyncExecutor.prestartAllCoreThreads();
         this.syncExecutor = new EVCacheExecutor(Runtime.getRuntime().availableProcessors(),Runtime.getRuntime().availableProcessors(), 30, TimeUnit.SECONDS, new ThreadPoolExecutor.CallerRunsPolicy(), "pool");
         syncExecutor.prestartAllCoreThreads();
+        final int blockingQueueSize = EVCacheConfig.getInstance().getDynamicIntProperty("EVCacheExecutor.blocking.queue.size", 1000).get();
+        this.blockingExecutor = new EVCacheExecutor(Runtime.getRuntime().availableProcessors(),2 * Runtime.getRuntime().availableProcessors(), 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(blockingQueueSize), new ThreadPoolExecutor.AbortPolicy(), "blocking");
 
         initAtStartup();
     }
@@ -215,9 +223,18 @@ public class EVCacheClientPoolManager {
     public void shutdown() {
         asyncExecutor.shutdown();
         syncExecutor.shutdown();
+        blockingExecutor.shutdown();
         for (EVCacheClientPool pool : poolMap.values()) {
             pool.shutdown();
         }
+        final EVCacheInvalidationTransport transport = invalidationTransport;
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                log.error("Could not close " + transport, e);
+            }
+        }
     }
 
     public boolean shouldLog(String appName) {
@@ -238,6 +255,16 @@ public class EVCacheClientPoolManager {
         return syncExecutor;
     }
 
+    /**
+     * Returns the bounded executor the async API runs its blocking reads on.
+     * They must not run on {@link #getEVCacheExecutor()}, whose threads
+     * complete the operations those reads wait for. Tasks are rejected once
+     * its queue is full.
+     */
+    public EVCacheExecutor getEVCacheBlockingExecutor() {
+        return blockingExecutor;
+    }
+
     private String getAppName(String _app) {
         _app = _app.toUpperCase();
         final String app = EVCacheConfig.getInstance().getDynamicStringProperty("EVCacheClientPoolManager." + _app + ".alias", _app).get().toUpperCase();
@@ -266,4 +293,56 @@ public class EVCacheClientPoolManager {
         return (EVCacheInMemoryCache<T>) inMemoryMap.get(appName);
     }
 
+    private volatile EVCacheInvalidationTransport invalidationTransport;
+    private boolean defaultInvalidationTransport = false;
+
+    /**
+     * Sets the transport the in-memory caches send the invalidation of the
+     * keys they write on. The in-memory caches that already subscribed to
+     * their invalidations move to it, and the multicast transport created
+     * by default, if any, is closed.
+     */
+    public void setInvalidationTransport(EVCacheInvalidationTransport transport) {
+        writeLock.lock();
+        try {
+            final EVCacheInvalidationTransport oldTransport;
+            synchronized (this) {
+                oldTransport = defaultInvalidationTransport ? invalidationTransport : null;
+                this.invalidationTransport = transport;
+                this.defaultInvalidationTransport = false;
+            }
+            for (EVCacheInMemoryCache<?> cache : inMemoryMap.values()) {
+                cache.setupInvalidation();
+            }
+            if (oldTransport != null && oldTransport != transport) oldTransport.close();
+        } catch (IOException e) {
+            log.error("Could not close the default invalidation transport", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the transport of the invalidations. Unless one was set, a
+     * {@link MulticastInvalidationTransport} on the group given by
+     * <code>evcache.inmemory.invalidation.multicast.address</code> and
+     * <code>.port</code> is created. Returns null if it cannot be created.
+     */
+    public synchronized EVCacheInvalidationTransport getInvalidationTransport() {
+        if (invalidationTransport != null) return invalidationTransport;
+        final EVCacheConfig config = EVCacheConfig.getInstance();
+        final String address = config.getDynamicStringProperty("evcache.inmemory.invalidation.multicast.address", "239.255.77.77").get();
+        final int port = config.getDynamicIntProperty("evcache.inmemory.invalidation.multicast.port", 7107).get();
+        final String interfaceName = config.getDynamicStringProperty("evcache.inmemory.invalidation.multicast.interface", "").get();
+        final int ttl = config.getDynamicIntProperty("evcache.inmemory.invalidation.multicast.ttl", 1).get();
+        try {
+            final NetworkInterface networkInterface = (interfaceName == null || interfaceName.isEmpty()) ? null : NetworkInterface.getByName(interfaceName);
+            invalidationTransport = new MulticastInvalidationTransport(InetAddress.getByName(address), port, networkInterface, ttl);
+            defaultInvalidationTransport = true;
+        } catch (IOException e) {
+            log.error("Could not join the invalidation group " + address + ":" + port, e);
+        }
+        return invalidationTransport;
+    }
+
 }
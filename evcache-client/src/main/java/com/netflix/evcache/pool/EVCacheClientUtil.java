@@ -16,6 +16,7 @@ import org.slf4j.LoggerFactory;
 
 import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicIntProperty;
+import com.netflix.evcache.EVCacheKey;
 import com.netflix.evcache.EVCacheLatch;
 import com.netflix.evcache.EVCacheLatch.Policy;
 import com.netflix.evcache.metrics.EVCacheMetricsFactory;
@@ -49,7 +50,12 @@ public class EVCacheClientUtil {
      * TODO : once metaget is available we need to get the remaining ttl from an existing entry and use it 
      */
     public EVCacheLatch add(String canonicalKey, CachedData cd, int timeToLive, Policy policy) throws Exception {
+        return add(new EVCacheKey(canonicalKey, canonicalKey, null), cd, timeToLive, policy);
+    }
+
+    public EVCacheLatch add(EVCacheKey evcKey, CachedData cd, int timeToLive, Policy policy) throws Exception {
         if (cd == null) return null; 
+        final String canonicalKey = evcKey.getDerivedKey();
         addDataSizeSummary.record(cd.getData().length);
         addTTLSummary.record(timeToLive);
         
@@ -58,7 +64,7 @@ public class EVCacheClientUtil {
 
         Boolean firstStatus = null;
         for (EVCacheClient client : clients) {
-            final Future<Boolean> f = client.add(canonicalKey, timeToLive, cd, latch);
+            final Future<Boolean> f = client.add(evcKey, timeToLive, cd, latch);
             if(log.isDebugEnabled()) log.debug("ADD : Op Submitted : APP " + _appName + ", key " + canonicalKey + "; future : " + f + "; client : " + client);
             boolean status = f.get().booleanValue();
             if(!status) { // most common case
@@ -68,7 +74,7 @@ public class EVCacheClientUtil {
                     }
                     return latch;
                 } else {
-                    return fixup(client, clients, canonicalKey, timeToLive, policy);
+                    return fixup(client, clients, evcKey, timeToLive, policy);
                 }
             }
             if(firstStatus == null) firstStatus = Boolean.valueOf(status);
@@ -76,14 +82,15 @@ public class EVCacheClientUtil {
         return latch;
     }
 
-    private EVCacheLatch fixup(EVCacheClient sourceClient, EVCacheClient[] destClients, String canonicalKey, int timeToLive, Policy policy) {
+    private EVCacheLatch fixup(EVCacheClient sourceClient, EVCacheClient[] destClients, EVCacheKey evcKey, int timeToLive, Policy policy) {
+        final String canonicalKey = evcKey.getDerivedKey();
         final EVCacheLatchImpl latch = new EVCacheLatchImpl(policy, destClients.length, _appName);
         try {
             final CachedData readData = sourceClient.getAndTouch(canonicalKey, ct, timeToLive, false, false);
 
             if(readData != null) {
                 for(EVCacheClient destClient : destClients) {
-                    destClient.set(canonicalKey, readData, timeToLive, latch);
+                    destClient.set(evcKey, readData, timeToLive, latch);
                 }
             }
             latch.await(_pool.getOperationTimeout().get(), TimeUnit.MILLISECONDS);
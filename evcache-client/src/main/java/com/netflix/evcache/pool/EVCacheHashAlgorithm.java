@@ -0,0 +1,178 @@
+package com.netflix.evcache.pool;
+
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.spy.memcached.DefaultHashAlgorithm;
+import net.spy.memcached.HashAlgorithm;
+
+/**
+ * Non cryptographic hash algorithms for the continuum in
+ * {@link EVCacheNodeLocator}. They are much cheaper than the MD5 used by
+ * {@link DefaultHashAlgorithm#KETAMA_HASH} and distribute keys just as well.
+ * Keys are hashed over their UTF-8 bytes.
+ */
+public enum EVCacheHashAlgorithm implements HashAlgorithm {
+
+    /**
+     * 32 bit murmur3 (x86 variant, seed 0).
+     */
+    MURMUR3_HASH {
+        public long hash(String k) {
+            return murmur3_32(k.getBytes(StandardCharsets.UTF_8)) & 0xffffffffL;
+        }
+    },
+
+    /**
+     * 64 bit xxHash (seed 0).
+     */
+    XXHASH64_HASH {
+        public long hash(String k) {
+            return xxhash64(k.getBytes(StandardCharsets.UTF_8));
+        }
+    };
+
+    private static final Logger log = LoggerFactory.getLogger(EVCacheHashAlgorithm.class);
+
+    /**
+     * Returns the algorithm with the given name. Both the algorithms defined
+     * here and the ones in {@link DefaultHashAlgorithm} are supported. If the
+     * name is unknown the given default is returned.
+     */
+    public static HashAlgorithm getHashAlgorithm(String name, HashAlgorithm defaultAlgorithm) {
+        if (name == null || name.isEmpty()) return defaultAlgorithm;
+        for (EVCacheHashAlgorithm alg : values()) {
+            if (alg.name().equalsIgnoreCase(name)) return alg;
+        }
+        for (DefaultHashAlgorithm alg : DefaultHashAlgorithm.values()) {
+            if (alg.name().equalsIgnoreCase(name)) return alg;
+        }
+        log.error("Unknown hash algorithm " + name + ". Will use " + defaultAlgorithm);
+        return defaultAlgorithm;
+    }
+
+    @SuppressWarnings("fallthrough")
+    static int murmur3_32(byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        final int len = data.length;
+        final int roundedEnd = len & 0xfffffffc;
+        int h1 = 0;
+
+        for (int i = 0; i < roundedEnd; i += 4) {
+            int k1 = (data[i] & 0xff) | ((data[i + 1] & 0xff) << 8) | ((data[i + 2] & 0xff) << 16) | (data[i + 3] << 24);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+
+        int k1 = 0;
+        switch (len & 0x03) {
+        case 3:
+            k1 = (data[roundedEnd + 2] & 0xff) << 16;
+            // fall through
+        case 2:
+            k1 |= (data[roundedEnd + 1] & 0xff) << 8;
+            // fall through
+        case 1:
+            k1 |= (data[roundedEnd] & 0xff);
+            k1 *= c1;
+            k1 = Integer.rotateLeft(k1, 15);
+            k1 *= c2;
+            h1 ^= k1;
+        }
+
+        h1 ^= len;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    static long xxhash64(byte[] data) {
+        final int len = data.length;
+        int i = 0;
+        long h64;
+
+        if (len >= 32) {
+            long v1 = PRIME64_1 + PRIME64_2;
+            long v2 = PRIME64_2;
+            long v3 = 0;
+            long v4 = -PRIME64_1;
+            final int limit = len - 32;
+            do {
+                v1 = round(v1, getLong(data, i));
+                v2 = round(v2, getLong(data, i + 8));
+                v3 = round(v3, getLong(data, i + 16));
+                v4 = round(v4, getLong(data, i + 24));
+                i += 32;
+            } while (i <= limit);
+
+            h64 = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h64 = mergeRound(h64, v1);
+            h64 = mergeRound(h64, v2);
+            h64 = mergeRound(h64, v3);
+            h64 = mergeRound(h64, v4);
+        } else {
+            h64 = PRIME64_5;
+        }
+
+        h64 += len;
+
+        while (i + 8 <= len) {
+            h64 ^= round(0, getLong(data, i));
+            h64 = Long.rotateLeft(h64, 27) * PRIME64_1 + PRIME64_4;
+            i += 8;
+        }
+        if (i + 4 <= len) {
+            h64 ^= (getInt(data, i) & 0xffffffffL) * PRIME64_1;
+            h64 = Long.rotateLeft(h64, 23) * PRIME64_2 + PRIME64_3;
+            i += 4;
+        }
+        while (i < len) {
+            h64 ^= (data[i] & 0xff) * PRIME64_5;
+            h64 = Long.rotateLeft(h64, 11) * PRIME64_1;
+            i++;
+        }
+
+        h64 ^= h64 >>> 33;
+        h64 *= PRIME64_2;
+        h64 ^= h64 >>> 29;
+        h64 *= PRIME64_3;
+        h64 ^= h64 >>> 32;
+        return h64;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL) | ((b[i + 1] & 0xffL) << 8) | ((b[i + 2] & 0xffL) << 16) | ((b[i + 3] & 0xffL) << 24)
+                | ((b[i + 4] & 0xffL) << 32) | ((b[i + 5] & 0xffL) << 40) | ((b[i + 6] & 0xffL) << 48) | ((b[i + 7] & 0xffL) << 56);
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return (b[i] & 0xff) | ((b[i + 1] & 0xff) << 8) | ((b[i + 2] & 0xff) << 16) | ((b[i + 3] & 0xff) << 24);
+    }
+}
@@ -1,8 +1,10 @@
 package com.netflix.evcache.pool;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -19,12 +21,26 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.EVCacheKey;
 import com.netflix.evcache.util.EVCacheConfig;
 
 public class EVCacheNodeLocator implements NodeLocator {
 
     private static Logger log = LoggerFactory.getLogger(EVCacheNodeLocator.class);
-    private TreeMap<Long, MemcachedNode> ketamaNodes;
+    /*
+     * The continuum is kept as a sorted array of hashes and a parallel array
+     * of nodes. Both are immutable once built and are swapped together as a
+     * single Ring reference when the node list changes.
+     */
+    private volatile Ring ketamaNodes;
+
+    /*
+     * While the continuum is being migrated to a new hash algorithm this is
+     * the continuum built with the previous algorithm. Writes go only to the
+     * nodes of the new continuum, reads that miss there can be retried on the
+     * node of the previous one. null when not migrating.
+     */
+    private volatile Ring previousKetamaNodes;
     private final String appName;
     private final ServerGroup serverGroup;
 
@@ -34,6 +50,7 @@ public class EVCacheNodeLocator implements NodeLocator {
     private final Collection<MemcachedNode> allNodes;
 
     private final HashAlgorithm hashingAlgorithm;
+    private final HashAlgorithm previousHashingAlgorithm;
     private final KetamaNodeLocatorConfiguration config;
 
     /**
@@ -49,9 +66,19 @@ public class EVCacheNodeLocator implements NodeLocator {
      * @param conf
      */
     public EVCacheNodeLocator(String appName, ServerGroup serverGroup, List<MemcachedNode> nodes, HashAlgorithm alg, KetamaNodeLocatorConfiguration conf) {
+        this(appName, serverGroup, nodes, alg, null, conf);
+    }
+
+    /**
+     * Create a new EVCacheNodeLocator that is migrating from the
+     * previousAlg to alg. If previousAlg is null or same as alg there is no
+     * migration.
+     */
+    public EVCacheNodeLocator(String appName, ServerGroup serverGroup, List<MemcachedNode> nodes, HashAlgorithm alg, HashAlgorithm previousAlg, KetamaNodeLocatorConfiguration conf) {
         super();
         this.allNodes = nodes;
         this.hashingAlgorithm = alg;
+        this.previousHashingAlgorithm = (previousAlg == alg) ? null : previousAlg;
         this.config = conf;
         this.appName = appName;
         this.serverGroup = serverGroup;
@@ -62,11 +89,13 @@ public class EVCacheNodeLocator implements NodeLocator {
         setKetamaNodes(nodes);
     }
 
-    private EVCacheNodeLocator(String appName, ServerGroup serverGroup, TreeMap<Long, MemcachedNode> smn, Collection<MemcachedNode> an, HashAlgorithm alg, KetamaNodeLocatorConfiguration conf) {
+    private EVCacheNodeLocator(String appName, ServerGroup serverGroup, Ring smn, Ring previousSmn, Collection<MemcachedNode> an, HashAlgorithm alg, HashAlgorithm previousAlg, KetamaNodeLocatorConfiguration conf) {
         super();
         this.ketamaNodes = smn;
+        this.previousKetamaNodes = previousSmn;
         this.allNodes = an;
         this.hashingAlgorithm = alg;
+        this.previousHashingAlgorithm = previousAlg;
         this.config = conf;
         this.appName = appName;
         this.serverGroup = serverGroup;
@@ -86,38 +115,66 @@ public class EVCacheNodeLocator implements NodeLocator {
      * @see net.spy.memcached.NodeLocator#getPrimary
      */
     public MemcachedNode getPrimary(String k) {
+        return ketamaNodes.getNode(hashingAlgorithm.hash(getHashedKey(k)));
+    }
+
+    /**
+     * Same as {@link #getPrimary(String)} for the derived key of the given
+     * EVCacheKey, but the hash is cached in the EVCacheKey so it is computed
+     * only once across all the server groups using the same algorithm.
+     */
+    public MemcachedNode getPrimary(EVCacheKey evcKey) {
+        return ketamaNodes.getNode(getHash(evcKey));
+    }
+
+    /**
+     * @return the hash that is used to place the given key on the continuum
+     */
+    public long getHash(EVCacheKey evcKey) {
+        return evcKey.getKetamaHash(hashingAlgorithm, getHashedKey(evcKey.getDerivedKey()));
+    }
+
+    /**
+     * @return true if the continuum is being migrated from a previous hash
+     *         algorithm
+     */
+    public boolean isMigrating() {
+        return previousKetamaNodes != null;
+    }
+
+    /**
+     * Returns the node the given key was placed on by the previous hash
+     * algorithm while migrating. null if not migrating or if the node is the
+     * same as the primary node.
+     */
+    public MemcachedNode getPreviousPrimary(EVCacheKey evcKey) {
+        final Ring previous = previousKetamaNodes;
+        if (previous == null) return null;
+        final MemcachedNode node = previous.getNode(evcKey.getKetamaHash(previousHashingAlgorithm, getHashedKey(evcKey.getDerivedKey())));
+        return node == getPrimary(evcKey) ? null : node;
+    }
+
+    private String getHashedKey(String k) {
         if (partialStringHash.get()) {
             final int index = k.indexOf(hashDelimiter.get());
             if (index > 0) {
-                k = k.substring(0, index);
+                return k.substring(0, index);
             }
         }
-
-        final long _hash = hashingAlgorithm.hash(k);
-        Long hash = Long.valueOf(_hash);
-        hash = ketamaNodes.ceilingKey(hash);
-        if (hash == null) {
-            hash = ketamaNodes.firstKey();
-        }
-        return ketamaNodes.get(hash);
+        return k;
     }
 
     /*
      * @return Returns the max key in the hashing distribution
      */
     public long getMaxKey() {
-        return getKetamaNodes().lastKey().longValue();
+        return ketamaNodes.getMaxHash();
     }
 
     public MemcachedNode getNodeForKey(long _hash) {
         long start = (log.isDebugEnabled()) ? System.nanoTime() : 0;
         try {
-            Long hash = Long.valueOf(_hash);
-            hash = ketamaNodes.ceilingKey(hash);
-            if (hash == null) {
-                hash = ketamaNodes.firstKey();
-            }
-            return ketamaNodes.get(hash);
+            return ketamaNodes.getNode(_hash);
         } finally {
             if (log.isDebugEnabled()) {
                 final long end = System.nanoTime();
@@ -127,32 +184,38 @@ public class EVCacheNodeLocator implements NodeLocator {
     }
 
     public Iterator<MemcachedNode> getSequence(String k) {
-        final List<MemcachedNode> allKetamaNodes = new ArrayList<MemcachedNode>(getKetamaNodes().values());
+        final List<MemcachedNode> allKetamaNodes = new ArrayList<MemcachedNode>(Arrays.asList(ketamaNodes.nodes));
         Collections.shuffle(allKetamaNodes);
         return allKetamaNodes.iterator();
     }
 
     public NodeLocator getReadonlyCopy() {
-        final TreeMap<Long, MemcachedNode> ketamaNaodes = new TreeMap<Long, MemcachedNode>(getKetamaNodes());
+        final Ring ring = ketamaNodes;
+        final Ring previous = previousKetamaNodes;
+        final Map<MemcachedNode, MemcachedNode> roNodes = new IdentityHashMap<MemcachedNode, MemcachedNode>(allNodes.size() * 2);
         final Collection<MemcachedNode> aNodes = new ArrayList<MemcachedNode>(allNodes.size());
 
-        // Rewrite the values a copy of the map.
-        for (Map.Entry<Long, MemcachedNode> me : ketamaNaodes.entrySet()) {
-            me.setValue(new EVCacheMemcachedNodeROImpl(me.getValue()));
-        }
         // Copy the allNodes collection.
         for (MemcachedNode n : allNodes) {
-            aNodes.add(new EVCacheMemcachedNodeROImpl(n));
+            final MemcachedNode roNode = new EVCacheMemcachedNodeROImpl(n);
+            roNodes.put(n, roNode);
+            aNodes.add(roNode);
         }
 
-        return new EVCacheNodeLocator(appName, serverGroup, ketamaNaodes, aNodes, hashingAlgorithm, config);
+        return new EVCacheNodeLocator(appName, serverGroup, ring.getReadonlyCopy(roNodes), previous == null ? null : previous.getReadonlyCopy(roNodes),
+                aNodes, hashingAlgorithm, previousHashingAlgorithm, config);
     }
 
     /**
-     * @return the ketamaNodes
+     * @return a copy of the ketamaNodes as a sorted map
      */
     protected TreeMap<Long, MemcachedNode> getKetamaNodes() {
-        return ketamaNodes;
+        final Ring ring = ketamaNodes;
+        final TreeMap<Long, MemcachedNode> map = new TreeMap<Long, MemcachedNode>();
+        for (int i = 0; i < ring.hashes.length; i++) {
+            map.put(Long.valueOf(ring.hashes[i]), ring.nodes[i]);
+        }
+        return map;
     }
 
     /**
@@ -160,7 +223,7 @@ public class EVCacheNodeLocator implements NodeLocator {
      *         purposes
      */
     public Map<Long, MemcachedNode> getKetamaNodeMap() {
-        return Collections.<Long, MemcachedNode> unmodifiableMap(ketamaNodes);
+        return Collections.<Long, MemcachedNode> unmodifiableMap(getKetamaNodes());
     }
 
     /**
@@ -171,11 +234,18 @@ public class EVCacheNodeLocator implements NodeLocator {
      *            its continuum
      */
     protected final void setKetamaNodes(List<MemcachedNode> nodes) {
+        final Ring ring = buildRing(nodes, hashingAlgorithm);
+        final Ring previous = (previousHashingAlgorithm == null) ? null : buildRing(nodes, previousHashingAlgorithm);
+        ketamaNodes = ring;
+        previousKetamaNodes = previous;
+    }
+
+    private Ring buildRing(List<MemcachedNode> nodes, HashAlgorithm alg) {
         TreeMap<Long, MemcachedNode> newNodeMap = new TreeMap<Long, MemcachedNode>();
         final int numReps = config.getNodeRepetitions();
         for (MemcachedNode node : nodes) {
             // Ketama does some special work with md5 where it reuses chunks.
-            if (hashingAlgorithm == DefaultHashAlgorithm.KETAMA_HASH) {
+            if (alg == DefaultHashAlgorithm.KETAMA_HASH) {
                 for (int i = 0; i < numReps / 4; i++) {
                 	final String hashString = config.getKeyForNode(node, i);
                     byte[] digest = DefaultHashAlgorithm.computeMd5(hashString);
@@ -191,18 +261,18 @@ public class EVCacheNodeLocator implements NodeLocator {
                 }
             } else {
                 for (int i = 0; i < numReps; i++) {
-                    final Long hashL = Long.valueOf(hashingAlgorithm.hash(config.getKeyForNode(node, i)));
+                    final Long hashL = Long.valueOf(alg.hash(config.getKeyForNode(node, i)));
                     newNodeMap.put(hashL, node);
                 }
             }
         }
-        if (log.isDebugEnabled()) log.debug("NewNodeMapSize : " + newNodeMap.size() + "; MapSize : " + (numReps * nodes.size()));
+        if (log.isDebugEnabled()) log.debug("Algorithm : " + alg + "; NewNodeMapSize : " + newNodeMap.size() + "; MapSize : " + (numReps * nodes.size()));
         if (log.isTraceEnabled()) {
             for (Long key : newNodeMap.keySet()) {
                 log.trace("Hash : " + key + "; Node : " + newNodeMap.get(key));
             }
         }
-        ketamaNodes = newNodeMap;
+        return new Ring(newNodeMap);
     }
 
     @Override
@@ -212,9 +282,75 @@ public class EVCacheNodeLocator implements NodeLocator {
 
 	@Override
 	public String toString() {
-		return "EVCacheNodeLocator [ketamaNodes=" + ketamaNodes + ", appName=" + appName + ", serverGroup="
+		return "EVCacheNodeLocator [ketamaNodes=" + getKetamaNodeMap() + ", appName=" + appName + ", serverGroup="
 				+ serverGroup + ", partialStringHash=" + partialStringHash + ", hashDelimiter=" + hashDelimiter
-				+ ", allNodes=" + allNodes + ", hashingAlgorithm=" + hashingAlgorithm + ", config=" + config + "]";
+				+ ", allNodes=" + allNodes + ", hashingAlgorithm=" + hashingAlgorithm + ", previousHashingAlgorithm=" + previousHashingAlgorithm + ", config=" + config + "]";
 	}
 
-}
\ No newline at end of file
+    /**
+     * Immutable ketama continuum. hashes is sorted in ascending order and
+     * nodes[i] owns the arc ending at hashes[i].
+     */
+    static final class Ring {
+        final long[] hashes;
+        final MemcachedNode[] nodes;
+
+        Ring(TreeMap<Long, MemcachedNode> continuum) {
+            this.hashes = new long[continuum.size()];
+            this.nodes = new MemcachedNode[continuum.size()];
+            int i = 0;
+            for (Map.Entry<Long, MemcachedNode> entry : continuum.entrySet()) {
+                hashes[i] = entry.getKey().longValue();
+                nodes[i++] = entry.getValue();
+            }
+        }
+
+        Ring(long[] hashes, MemcachedNode[] nodes) {
+            this.hashes = hashes;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Returns the node owning the first point on the continuum that is
+         * greater than or equal to the given hash, wrapping around to the
+         * first point if there is none.
+         */
+        MemcachedNode getNode(long hash) {
+            final long[] h = hashes;
+            int n = h.length;
+            if (n == 0) return null;
+
+            // lower bound search with a fixed number of iterations; the conditional
+            // is a select rather than a branch the cpu has to predict
+            int base = 0;
+            while (n > 1) {
+                final int half = n >>> 1;
+                base = (h[base + half] < hash) ? base + half : base;
+                n -= half;
+            }
+            if (h[base] < hash) base++;
+            return nodes[base == h.length ? 0 : base];
+        }
+
+        long getMaxHash() {
+            return hashes[hashes.length - 1];
+        }
+
+        /*
+         * The hashes are shared as they are never modified, only the nodes are
+         * replaced with their read only version.
+         */
+        Ring getReadonlyCopy(Map<MemcachedNode, MemcachedNode> roNodes) {
+            final MemcachedNode[] roRing = new MemcachedNode[nodes.length];
+            for (int i = 0; i < roRing.length; i++) {
+                MemcachedNode roNode = roNodes.get(nodes[i]);
+                if (roNode == null) {
+                    roNode = new EVCacheMemcachedNodeROImpl(nodes[i]);
+                    roNodes.put(nodes[i], roNode);
+                }
+                roRing[i] = roNode;
+            }
+            return new Ring(hashes, roRing);
+        }
+    }
+}
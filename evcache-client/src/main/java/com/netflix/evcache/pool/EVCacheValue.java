@@ -3,6 +3,11 @@ package com.netflix.evcache.pool;
 import java.io.Serializable;
 import java.util.Arrays;
 
+import com.netflix.evcache.EVCacheTranscoder;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.Transcoder;
+
 public class EVCacheValue implements Serializable {
     /**
      * 
@@ -14,6 +19,12 @@ public class EVCacheValue implements Serializable {
     private final int flags;
     private final long ttl;
     private final long createTime;
+
+    /* the value is a slice of the buffer it was read in when value is null */
+    private final transient byte[] buffer;
+    private final transient int offset;
+    private final transient int length;
+
     public EVCacheValue(String key, byte[] value, int flags, long ttl, long createTime) {
         super();
         this.key = key;
@@ -21,14 +32,49 @@ public class EVCacheValue implements Serializable {
         this.flags = flags;
         this.ttl = ttl;
         this.createTime = createTime;
+        this.buffer = null;
+        this.offset = 0;
+        this.length = 0;
+    }
+
+    /**
+     * A value that is the given slice of the buffer, which is not copied.
+     */
+    public EVCacheValue(String key, byte[] buffer, int offset, int length, int flags, long ttl, long createTime) {
+        super();
+        this.key = key;
+        this.value = null;
+        this.flags = flags;
+        this.ttl = ttl;
+        this.createTime = createTime;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
     }
 
     public String getKey() {
         return key;
     }
 
+    /**
+     * Returns the value, which is copied out of the buffer it was read in.
+     * Use {@link #decode(Transcoder)} to decode it without the copy.
+     */
     public byte[] getValue() {
-        return value;
+        return (value != null) ? value : Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+
+    /**
+     * Decodes the value with the transcoder, from the buffer it was read in
+     * when the transcoder is an {@link EVCacheTranscoder} that decodes slices,
+     * see {@link EVCacheTranscoder#decodesSlices()}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T decode(Transcoder<T> tc) {
+        if (value == null && tc instanceof EVCacheTranscoder && ((EVCacheTranscoder) tc).decodesSlices()) {
+            return (T) ((EVCacheTranscoder) tc).decode(flags, buffer, offset, length);
+        }
+        return tc.decode(new CachedData(flags, getValue(), CachedData.MAX_SIZE));
     }
 
     public int getFlags() {
@@ -51,7 +97,7 @@ public class EVCacheValue implements Serializable {
         result = prime * result + ((key == null) ? 0 : key.hashCode());
         result = prime * result + (int) (ttl ^ (ttl >>> 32));
         result = prime * result + (int) (flags);
-        result = prime * result + Arrays.hashCode(value);
+        result = prime * result + Arrays.hashCode(getValue());
         return result;
     }
 
@@ -75,15 +121,20 @@ public class EVCacheValue implements Serializable {
             return false;
         if (ttl != other.ttl)
             return false;
-        if (!Arrays.equals(value, other.value))
+        if (!Arrays.equals(getValue(), other.getValue()))
             return false;
         return true;
     }
 
     @Override
     public String toString() {
-        return "EVCacheValue [key=" + key + ", value=" + Arrays.toString(value) + ", flags=" + flags + ", ttl=" + ttl + ", createTime="
+        return "EVCacheValue [key=" + key + ", value=" + Arrays.toString(getValue()) + ", flags=" + flags + ", ttl=" + ttl + ", createTime="
                 + createTime + "]";
     }
 
+    /* a slice is written with its value copied, as the buffer is transient */
+    private Object writeReplace() {
+        return (value != null) ? this : new EVCacheValue(key, getValue(), flags, ttl, createTime);
+    }
+
 }
@@ -0,0 +1,163 @@
+package com.netflix.evcache.pool;
+
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.EVCacheTranscoder;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.util.EVCacheConfig;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * Writes the {@link EVCacheValue} kept under a hashed key in a compact binary
+ * envelope instead of Java serialization :
+ *
+ * <pre>
+ * magic (2 bytes) | version (1 byte) | key length (varint) | key (UTF-8)
+ *   | flags (4 bytes) | ttl (varint) | create time (8 bytes) | value
+ * </pre>
+ *
+ * The value read is a slice of the envelope, see
+ * {@link EVCacheValue#decode(net.spy.memcached.transcoders.Transcoder)}.
+ * Envelopes written with Java serialization by older clients are still read,
+ * by their flags. As older clients read the binary envelopes as misses, the
+ * Java serialized envelopes are written until
+ * <code>&lt;app&gt;.value.envelope.binary</code> is set to true, once all the
+ * clients of the app are upgraded.
+ */
+public class EVCacheValueTranscoder extends EVCacheTranscoder {
+    private static final Logger log = LoggerFactory.getLogger(EVCacheValueTranscoder.class);
+
+    private static final int SPECIAL_MASK = 0xff00;
+    static final int SPECIAL_ENVELOPE = 17 << 8;
+
+    private static final byte MAGIC_0 = (byte) 0xEC;
+    private static final byte MAGIC_1 = (byte) 0x5A;
+    private static final byte VERSION = 1;
+
+    private final String appName;
+    private final ChainedDynamicProperty.BooleanProperty binary;
+
+    public EVCacheValueTranscoder(String appName) {
+        super(appName);
+        // the values in the envelope are already compressed
+        setCompressionThreshold(Integer.MAX_VALUE);
+        this.appName = appName;
+        final String prefix = (appName == null) ? "default.evcache" : appName;
+        this.binary = EVCacheConfig.getInstance().getChainedBooleanProperty(prefix + ".value.envelope.binary", "default.evcache.value.envelope.binary", Boolean.FALSE, null);
+    }
+
+    @Override
+    protected CachedData encodeValue(Object o) {
+        if (o instanceof EVCacheValue && binary.get()) {
+            return new CachedData(SPECIAL_ENVELOPE, toBytes((EVCacheValue) o), getMaxSize());
+        }
+        return super.encodeValue(o);
+    }
+
+    @Override
+    protected Object decodeValue(CachedData d) {
+        if ((d.getFlags() & SPECIAL_MASK) == SPECIAL_ENVELOPE) {
+            final EVCacheValue val = fromBytes(d.getData());
+            if (val == null) EVCacheMetricsFactory.increment((appName == null ? "" : appName + "-") + "VALUE_ENVELOPE_ERROR");
+            return val;
+        }
+        return super.decodeValue(d);
+    }
+
+    static byte[] toBytes(EVCacheValue val) {
+        final byte[] key = (val.getKey() == null) ? new byte[0] : val.getKey().getBytes(StandardCharsets.UTF_8);
+        final byte[] value = val.getValue();
+        final long ttl = Math.max(0, val.getTTL());
+        final byte[] out = new byte[3 + varintSize(key.length) + key.length + 4 + varintSize(ttl) + 8 + value.length];
+        out[0] = MAGIC_0;
+        out[1] = MAGIC_1;
+        out[2] = VERSION;
+        int pos = writeVarint(out, 3, key.length);
+        System.arraycopy(key, 0, out, pos, key.length);
+        pos += key.length;
+        pos = writeLong(out, pos, val.getFlags(), 4);
+        pos = writeVarint(out, pos, ttl);
+        pos = writeLong(out, pos, val.getCreateTimeUTC(), 8);
+        System.arraycopy(value, 0, out, pos, value.length);
+        return out;
+    }
+
+    /*
+     * Returns the value in the envelope, which keeps a slice of data, or null
+     * if it is not a valid envelope.
+     */
+    static EVCacheValue fromBytes(byte[] data) {
+        if (data.length < 3 || data[0] != MAGIC_0 || data[1] != MAGIC_1) {
+            if (log.isWarnEnabled()) log.warn("Invalid EVCacheValue envelope of " + data.length + " bytes");
+            return null;
+        }
+        if (data[2] != VERSION) {
+            if (log.isWarnEnabled()) log.warn("Unknown EVCacheValue envelope version " + data[2]);
+            return null;
+        }
+        final int[] pos = { 3 };
+        final long keyLength = readVarint(data, pos);
+        if (keyLength < 0 || keyLength > data.length - pos[0] - 4) return invalid(data);
+        final String key = new String(data, pos[0], (int) keyLength, StandardCharsets.UTF_8);
+        pos[0] += (int) keyLength;
+        final int flags = (int) readLong(data, pos[0], 4);
+        pos[0] += 4;
+        final long ttl = readVarint(data, pos);
+        if (ttl < 0 || data.length - pos[0] < 8) return invalid(data);
+        final long createTime = readLong(data, pos[0], 8);
+        final int offset = pos[0] + 8;
+        return new EVCacheValue(key, data, offset, data.length - offset, flags, ttl, createTime);
+    }
+
+    private static EVCacheValue invalid(byte[] data) {
+        if (log.isWarnEnabled()) log.warn("Truncated EVCacheValue envelope of " + data.length + " bytes");
+        return null;
+    }
+
+    private static int varintSize(long v) {
+        int size = 1;
+        while ((v >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static int writeVarint(byte[] out, int pos, long v) {
+        while ((v & ~0x7fL) != 0) {
+            out[pos++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out[pos++] = (byte) v;
+        return pos;
+    }
+
+    /* returns -1 if the varint is truncated or too long */
+    private static long readVarint(byte[] data, int[] pos) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) return -1;
+            final int b = data[pos[0]++];
+            v |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        return -1;
+    }
+
+    private static int writeLong(byte[] out, int pos, long v, int size) {
+        for (int i = size - 1; i >= 0; i--) {
+            out[pos++] = (byte) (v >>> (i * 8));
+        }
+        return pos;
+    }
+
+    private static long readLong(byte[] data, int pos, int size) {
+        long v = 0;
+        for (int i = 0; i < size; i++) {
+            v = (v << 8) | (data[pos + i] & 0xff);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,21 @@
+package com.netflix.evcache.serialization;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads the fields of a class registered with
+ * {@link RegisteredClassTranscoder}.
+ * <p>
+ * To evolve the class, new fields are only written after the existing ones,
+ * and are read only if {@link SerializationInput#hasRemaining()}, so values
+ * written before have their default. Fields are never removed or retyped,
+ * a field that is no longer used is still written with a default value.
+ * Readers skip the fields that were added after them, and can use the
+ * version a value was written with for any other change.
+ */
+public interface EVCacheSerializer<T> {
+
+    void write(SerializationOutput out, T value);
+
+    T read(SerializationInput in, int version) throws IOException;
+}
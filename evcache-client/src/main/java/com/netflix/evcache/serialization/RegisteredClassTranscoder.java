@@ -0,0 +1,196 @@
+package com.netflix.evcache.serialization;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.EVCacheTranscoder;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.util.EVCacheConfig;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * Serializes the registered classes with their {@link EVCacheSerializer}
+ * instead of Java serialization, to a compact binary form written in a
+ * buffer reused by each thread. Values are then compressed as by
+ * {@link EVCacheTranscoder}. It is set with
+ * <code>EVCache.Builder.setTranscoder</code> once the classes are
+ * registered :
+ * 
+ * <pre>
+ * final RegisteredClassTranscoder transcoder = new RegisteredClassTranscoder(appName);
+ * transcoder.register(16, Movie.class, 1, new MovieSerializer());
+ * new EVCache.Builder().setAppName(appName).setTranscoder(transcoder).build();
+ * </pre>
+ * 
+ * Ids and versions are kept with the values, so an id is never reused for
+ * another class, see {@link EVCacheSerializer} on how to evolve a class.
+ * <p>
+ * While <code>&lt;app&gt;.serialization.legacy</code> is true, the default,
+ * the values written with Java serialization are still read, by their
+ * flags, and the classes that are not registered are written with Java
+ * serialization. Once all the values were rewritten, it can be set to false
+ * so Java serialization is never used.
+ */
+public class RegisteredClassTranscoder extends EVCacheTranscoder {
+    private static final Logger log = LoggerFactory.getLogger(RegisteredClassTranscoder.class);
+
+    /**
+     * The ids of the registered classes start at 16, the lower ones are kept
+     * for the classes registered by default.
+     */
+    public static final int MIN_ID = 16;
+
+    private static final int SERIALIZED = 1;
+    private static final int SPECIAL_MASK = 0xff00;
+    static final int SPECIAL_REGISTERED = 16 << 8;
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private final String appName;
+    private final ChainedDynamicProperty.BooleanProperty legacy;
+    private final ConcurrentHashMap<Class<?>, Registration<?>> byClass = new ConcurrentHashMap<Class<?>, Registration<?>>();
+    private final ConcurrentHashMap<Integer, Registration<?>> byId = new ConcurrentHashMap<Integer, Registration<?>>();
+    private final ThreadLocal<SerializationOutput> outputs = ThreadLocal.withInitial(() -> new SerializationOutput(this, BUFFER_SIZE));
+
+    public RegisteredClassTranscoder(String appName) {
+        this(appName, EVCacheConfig.getInstance().getDynamicIntProperty("default.evcache.max.data.size", Integer.MAX_VALUE).get());
+    }
+
+    public RegisteredClassTranscoder(String appName, int max) {
+        super(appName, max);
+        this.appName = appName;
+        final String prefix = (appName == null) ? "default.evcache" : appName;
+        this.legacy = EVCacheConfig.getInstance().getChainedBooleanProperty(prefix + ".serialization.legacy", "default.evcache.serialization.legacy", Boolean.TRUE, null);
+
+        // the boxed primitives and strings found in collections and maps
+        addRegistration(1, String.class, 0, (out, v) -> out.writeString(v), (in, v) -> in.readString());
+        addRegistration(2, Integer.class, 0, (out, v) -> out.writeInt(v), (in, v) -> in.readInt());
+        addRegistration(3, Long.class, 0, (out, v) -> out.writeLong(v), (in, v) -> in.readLong());
+        addRegistration(4, Boolean.class, 0, (out, v) -> out.writeBoolean(v), (in, v) -> in.readBoolean());
+        addRegistration(5, Double.class, 0, (out, v) -> out.writeDouble(v), (in, v) -> in.readDouble());
+        addRegistration(6, Float.class, 0, (out, v) -> out.writeFloat(v), (in, v) -> in.readFloat());
+        addRegistration(7, byte[].class, 0, (out, v) -> out.writeBytes(v), (in, v) -> in.readBytes());
+        addRegistration(8, Date.class, 0, (out, v) -> out.writeLong(v.getTime()), (in, v) -> new Date(in.readLong()));
+    }
+
+    private <T> void addRegistration(int id, Class<T> type, int version, Writer<T> writer, Reader<T> reader) {
+        final Registration<T> registration = new Registration<T>(id, type, version, new EVCacheSerializer<T>() {
+            public void write(SerializationOutput out, T value) {
+                writer.write(out, value);
+            }
+
+            public T read(SerializationInput in, int v) throws IOException {
+                return reader.read(in, v);
+            }
+        });
+        byClass.put(type, registration);
+        byId.put(id, registration);
+    }
+
+    private interface Writer<T> {
+        void write(SerializationOutput out, T value);
+    }
+
+    private interface Reader<T> {
+        T read(SerializationInput in, int version) throws IOException;
+    }
+
+    /**
+     * Registers the class with an id, from {@link #MIN_ID}, and the version
+     * its values are written with. Instances of subclasses have to be
+     * registered as well.
+     */
+    public synchronized <T> RegisteredClassTranscoder register(int id, Class<T> type, int version, EVCacheSerializer<T> serializer) {
+        if (id < MIN_ID) throw new IllegalArgumentException("The id of class " + type.getName() + " is lower than " + MIN_ID + " : " + id);
+        if (version < 0) throw new IllegalArgumentException("The version of class " + type.getName() + " is negative : " + version);
+        final Registration<?> previous = byId.get(id);
+        if (previous != null && previous.type != type) throw new IllegalArgumentException("The id " + id + " of class " + type.getName() + " is used by " + previous.type.getName());
+        final Registration<T> registration = new Registration<T>(id, type, version, serializer);
+        byClass.put(type, registration);
+        byId.put(id, registration);
+        if (log.isDebugEnabled()) log.debug("Registered class " + type.getName() + " with id " + id + " and version " + version);
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    Registration<Object> getRegistration(Class<?> type) {
+        return (Registration<Object>) byClass.get(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    Registration<Object> getRegistration(int id) {
+        return (Registration<Object>) byId.get(id);
+    }
+
+    @Override
+    protected CachedData encodeValue(Object o) {
+        final Registration<Object> registration = getRegistration(o.getClass());
+        if (registration == null || registration.id < MIN_ID) {
+            if (!legacy.get() && !isNative(o)) throw new IllegalArgumentException("The class " + o.getClass().getName() + " is not registered");
+            return super.encodeValue(o);
+        }
+
+        // a serializer that encodes with this transcoder gets its own buffer
+        SerializationOutput out = outputs.get();
+        if (out.inUse) out = new SerializationOutput(this, BUFFER_SIZE);
+        out.inUse = true;
+        try {
+            out.writeVarInt(registration.id);
+            out.writeVarInt(registration.version);
+            registration.serializer.write(out, o);
+            return new CachedData(SPECIAL_REGISTERED, out.toByteArray(), getMaxSize());
+        } finally {
+            out.reset(MAX_RETAINED_BUFFER_SIZE);
+            out.inUse = false;
+        }
+    }
+
+    /*
+     * The classes spymemcached writes without Java serialization.
+     */
+    private static boolean isNative(Object o) {
+        return o instanceof String || o instanceof Long || o instanceof Integer || o instanceof Short || o instanceof Boolean
+                || o instanceof Date || o instanceof Byte || o instanceof Float || o instanceof Double || o instanceof byte[];
+    }
+
+    @Override
+    protected Object decodeValue(CachedData d) {
+        final int flags = d.getFlags();
+        if ((flags & SPECIAL_MASK) == SPECIAL_REGISTERED) {
+            try {
+                return new SerializationInput(this, d.getData()).readRoot();
+            } catch (IOException | RuntimeException e) {
+                EVCacheMetricsFactory.increment((appName == null ? "" : appName + "-") + "DESERIALIZATION_ERROR");
+                log.warn("Exception reading a registered class", e);
+                return null;
+            }
+        }
+        if ((flags & SERIALIZED) != 0 && !legacy.get()) {
+            EVCacheMetricsFactory.increment((appName == null ? "" : appName + "-") + "LEGACY_SERIALIZED_VALUE");
+            if (log.isDebugEnabled()) log.debug("Ignoring a Java serialized value with flags " + flags);
+            return null;
+        }
+        return super.decodeValue(d);
+    }
+
+    static final class Registration<T> {
+        final int id;
+        final Class<T> type;
+        final int version;
+        final EVCacheSerializer<T> serializer;
+
+        Registration(int id, Class<T> type, int version, EVCacheSerializer<T> serializer) {
+            this.id = id;
+            this.type = type;
+            this.version = version;
+            this.serializer = serializer;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.netflix.evcache.serialization;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads what was written by {@link SerializationOutput}, within the bounds
+ * of the object being read.
+ */
+public final class SerializationInput {
+    private final RegisteredClassTranscoder transcoder;
+    private final byte[] data;
+    private int position;
+    private int limit;
+
+    SerializationInput(RegisteredClassTranscoder transcoder, byte[] data) {
+        this.transcoder = transcoder;
+        this.data = data;
+        this.limit = data.length;
+    }
+
+    /**
+     * Returns true if the object being read has more fields, false if it was
+     * written before the next fields were added.
+     */
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    private void require(int length) throws EOFException {
+        if (length < 0 || length > limit - position) throw new EOFException("Reading " + length + " bytes at " + position + " of an object ending at " + limit);
+    }
+
+    public int readByte() throws IOException {
+        require(1);
+        return data[position++];
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid varint at " + position);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid varint at " + position);
+    }
+
+    public int readInt() throws IOException {
+        final int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public long readLong() throws IOException {
+        final long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public float readFloat() throws IOException {
+        require(4);
+        final int bits = ((data[position] & 0xff) << 24) | ((data[position + 1] & 0xff) << 16) | ((data[position + 2] & 0xff) << 8) | (data[position + 3] & 0xff);
+        position += 4;
+        return Float.intBitsToFloat(bits);
+    }
+
+    public double readDouble() throws IOException {
+        require(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (data[position++] & 0xff);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public String readString() throws IOException {
+        final int length = readVarInt() - 1;
+        if (length < 0) return null;
+        require(length);
+        final String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public byte[] readBytes() throws IOException {
+        final int length = readVarInt() - 1;
+        if (length < 0) return null;
+        require(length);
+        final byte[] value = Arrays.copyOfRange(data, position, position + length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads an object written by {@link SerializationOutput#writeObject}.
+     * The fields it was written with that its serializer does not read are
+     * skipped.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T readObject() throws IOException {
+        final int id = readVarInt();
+        if (id == 0) return null;
+        final int version = readVarInt();
+        final int length = readVarInt();
+        require(length);
+        final int end = position + length;
+        final int previousLimit = limit;
+        limit = end;
+        try {
+            return (T) getRegistration(id).serializer.read(this, version);
+        } finally {
+            position = end;
+            limit = previousLimit;
+        }
+    }
+
+    /*
+     * Reads the top level object, which is not preceded by its length.
+     */
+    Object readRoot() throws IOException {
+        final RegisteredClassTranscoder.Registration<Object> registration = getRegistration(readVarInt());
+        return registration.serializer.read(this, readVarInt());
+    }
+
+    private RegisteredClassTranscoder.Registration<Object> getRegistration(int id) throws IOException {
+        final RegisteredClassTranscoder.Registration<Object> registration = transcoder.getRegistration(id);
+        if (registration == null) throw new IOException("No class is registered with id " + id);
+        return registration;
+    }
+
+    public <T> List<T> readList() throws IOException {
+        final int size = readVarInt() - 1;
+        if (size < 0) return null;
+        final List<T> values = new ArrayList<T>(Math.min(size, limit - position));
+        for (int i = 0; i < size; i++) {
+            values.add(this.<T> readObject());
+        }
+        return values;
+    }
+
+    public <T> Map<String, T> readMap() throws IOException {
+        final int size = readVarInt() - 1;
+        if (size < 0) return null;
+        final Map<String, T> values = new LinkedHashMap<String, T>(Math.min(size, limit - position) * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            final String key = readString();
+            values.put(key, this.<T> readObject());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,204 @@
+package com.netflix.evcache.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A growable buffer the registered classes are written to, reused by the
+ * thread that encodes.
+ */
+public final class SerializationOutput {
+    private final RegisteredClassTranscoder transcoder;
+    private byte[] buffer;
+    private int position;
+    boolean inUse;
+
+    SerializationOutput(RegisteredClassTranscoder transcoder, int size) {
+        this.transcoder = transcoder;
+        this.buffer = new byte[size];
+    }
+
+    void reset(int maxRetainedSize) {
+        position = 0;
+        if (buffer.length > maxRetainedSize) buffer = new byte[maxRetainedSize];
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void ensure(int length) {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    /**
+     * Writes a non negative int in 1 to 5 bytes.
+     */
+    public void writeVarInt(int value) {
+        ensure(5);
+        while ((value & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes an int, the ones closer to 0 in fewer bytes.
+     */
+    public void writeInt(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeFloat(float value) {
+        final int bits = Float.floatToIntBits(value);
+        ensure(4);
+        buffer[position++] = (byte) (bits >>> 24);
+        buffer[position++] = (byte) (bits >>> 16);
+        buffer[position++] = (byte) (bits >>> 8);
+        buffer[position++] = (byte) bits;
+    }
+
+    public void writeDouble(double value) {
+        final long bits = Double.doubleToLongBits(value);
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (bits >>> shift);
+        }
+    }
+
+    /**
+     * Writes a string, or null, as UTF-8.
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                writeBytes(value.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        // ASCII is copied without encoding
+        writeVarInt(length + 1);
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Writes an array of bytes, or null.
+     */
+    public void writeBytes(byte[] value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(value.length + 1);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * Writes an instance of a registered class, or null, with its id and
+     * version so it can be read by {@link SerializationInput#readObject()}.
+     */
+    public void writeObject(Object value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        final RegisteredClassTranscoder.Registration<Object> registration = transcoder.getRegistration(value.getClass());
+        if (registration == null) throw new IllegalArgumentException("The class " + value.getClass().getName() + " is not registered");
+        writeVarInt(registration.id);
+        writeVarInt(registration.version);
+
+        // the length is written first so readers can skip the fields they do
+        // not know, a single byte is reserved and the body moved if longer
+        final int start = position;
+        writeByte(0);
+        registration.serializer.write(this, value);
+        final int length = position - start - 1;
+        final int lengthSize = varIntSize(length);
+        if (lengthSize > 1) {
+            ensure(lengthSize - 1);
+            System.arraycopy(buffer, start + 1, buffer, start + lengthSize, length);
+        }
+        final int end = start + lengthSize + length;
+        position = start;
+        writeVarInt(length);
+        position = end;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the elements, registered classes or null, of a collection, or
+     * null, read back as a list by {@link SerializationInput#readList()}.
+     */
+    public void writeCollection(Collection<?> values) {
+        if (values == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(values.size() + 1);
+        for (Object value : values) {
+            writeObject(value);
+        }
+    }
+
+    /**
+     * Writes the entries of a map, or null, whose keys are strings and
+     * values registered classes or null, read back by
+     * {@link SerializationInput#readMap()}.
+     */
+    public void writeMap(Map<String, ?> values) {
+        if (values == null) {
+            writeVarInt(0);
+            return;
+        }
+        writeVarInt(values.size() + 1);
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            writeString(entry.getKey());
+            writeObject(entry.getValue());
+        }
+    }
+}
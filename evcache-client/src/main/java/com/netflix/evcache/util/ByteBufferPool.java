@@ -0,0 +1,100 @@
+package com.netflix.evcache.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of heap buffers whose capacity is a power of two. Buffers that are
+ * not released are simply collected, so a buffer only has to be released
+ * when it is no longer referenced.
+ * <p>
+ * The buffers of each size are kept up to an equal share of the retained
+ * bytes, larger buffers are not pooled.
+ */
+public class ByteBufferPool {
+
+    private static final int MIN_SHIFT = 9;
+
+    /**
+     * The pool of the buffers requests to memcached are written from when
+     * <code>&lt;app&gt;.write.buffer.pool.enabled</code> is set, see
+     * <code>EVCacheSliceStoreOperationImpl</code>.
+     */
+    public static final ByteBufferPool WRITE_BUFFERS = new ByteBufferPool(
+            EVCacheConfig.getInstance().getDynamicIntProperty("evcache.write.buffer.pool.max.buffer.size", 1024 * 1024).get(),
+            EVCacheConfig.getInstance().getDynamicLongProperty("evcache.write.buffer.pool.max.bytes", 16 * 1024 * 1024).get());
+
+    private final int maxShift;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+    private final AtomicInteger[] counts;
+    private final int[] maxCounts;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    public ByteBufferPool(int maxBufferSize, long maxRetainedBytes) {
+        int shift = MIN_SHIFT;
+        while (shift < 30 && (1 << shift) < maxBufferSize) shift++;
+        this.maxShift = shift;
+        final int sizes = maxShift - MIN_SHIFT + 1;
+        // an array of a generic type can only be created raw
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        final ConcurrentLinkedQueue<ByteBuffer>[] free = new ConcurrentLinkedQueue[sizes];
+        this.free = free;
+        this.counts = new AtomicInteger[sizes];
+        this.maxCounts = new int[sizes];
+        for (int i = 0; i < sizes; i++) {
+            free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            counts[i] = new AtomicInteger();
+            maxCounts[i] = (int) Math.min(Integer.MAX_VALUE, maxRetainedBytes / sizes >> (MIN_SHIFT + i));
+        }
+    }
+
+    /**
+     * Returns a cleared buffer of at least the given capacity.
+     */
+    public ByteBuffer acquire(int size) {
+        final int index = index(size);
+        if (index < 0) {
+            misses.increment();
+            return ByteBuffer.allocate(size);
+        }
+        final ByteBuffer buffer = free[index].poll();
+        if (buffer == null) {
+            misses.increment();
+            return ByteBuffer.allocate(1 << (MIN_SHIFT + index));
+        }
+        counts[index].decrementAndGet();
+        hits.increment();
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool, it must not be used anymore.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() || buffer.isReadOnly()) return;
+        final int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) return;
+        final int index = index(capacity);
+        if (index < 0 || counts[index].incrementAndGet() > maxCounts[index]) {
+            if (index >= 0) counts[index].decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        free[index].offer(buffer);
+    }
+
+    private int index(int size) {
+        final int shift = (size <= (1 << MIN_SHIFT)) ? MIN_SHIFT : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        return (shift > maxShift) ? -1 : shift - MIN_SHIFT;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+}
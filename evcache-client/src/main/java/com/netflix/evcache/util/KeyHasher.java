@@ -1,80 +1,389 @@
 package com.netflix.evcache.util;
 
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Base64;
-import java.util.Base64.Encoder;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Charsets;
-import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 
+/**
+ * Hashes keys and encodes the digest using Base64 (without padding). Keys are
+ * hashed over their UTF-8 bytes.
+ * <p>
+ * A KeyHasher for an algorithm is obtained using
+ * {@link #getKeyHasher(String)} and can be held on to and swapped when the
+ * algorithm property changes. Hashing does not allocate anything other than
+ * the returned String, the key bytes, digest and encoded chars are written
+ * into buffers that are reused by each thread.
+ */
 public class KeyHasher {
 
     private static Logger log = LoggerFactory.getLogger(KeyHasher.class);
-    private static final Encoder encoder= Base64.getEncoder().withoutPadding();
-
-//    public static String getHashedKey1(String key, String hashingAlgorithm) {
-//        try {
-//            final MessageDigest messageDigest = MessageDigest.getInstance(hashingAlgorithm);
-//            messageDigest.update(key.getBytes(), 0, key.length());
-//            final byte[] digest = messageDigest.digest();
-//            if(log.isDebugEnabled()) log.debug("Key : " + key +"; digest length : " + digest.length + "; byte Array contents : " + Arrays.toString(digest));
-//            final String hKey = encoder.encodeToString(digest);
-//            if(log.isDebugEnabled()) log.debug("Key : " + key +"; Hashed & encoded key : " + hKey);
-//            return hKey;
-//        } catch(NoSuchAlgorithmException ex){
-//            log.error("Exception while trying to conver key to its hash", ex);
-//            return key;
-//        }
-//    }
 
-    public static String getHashedKey(String key, String hashingAlgorithm) {
-        final long start = System.nanoTime();
-        HashFunction hf = null; 
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final KeyHasher MD5 = new KeyHasher("md5", new MessageDigestFunction("MD5"));
+    private static final KeyHasher SHA1 = new KeyHasher("sha1", new MessageDigestFunction("SHA-1"));
+    private static final KeyHasher SHA256 = new KeyHasher("sha256", new MessageDigestFunction("SHA-256"));
+    private static final KeyHasher MURMUR3 = new KeyHasher("murmur3", new Murmur3Function());
+    private static final KeyHasher ADLER32 = new KeyHasher("adler32", new ChecksumFunction(true));
+    private static final KeyHasher CRC32 = new KeyHasher("crc32", new ChecksumFunction(false));
+    private static final KeyHasher SIPHASH24 = new KeyHasher("siphash24", new SipHash24Function());
+    private static final KeyHasher GOODFASTHASH = new KeyHasher("goodfasthash", new GuavaFunction(Hashing.goodFastHash(128)));
+
+    private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private final String algorithm;
+    private final HashingFunction function;
+
+    private KeyHasher(String algorithm, HashingFunction function) {
+        this.algorithm = algorithm;
+        this.function = function;
+    }
+
+    /**
+     * Returns the KeyHasher for the given algorithm. The supported algorithms
+     * are murmur3, adler32, crc32, sha1, sha256, siphash24, goodfasthash and
+     * md5. md5 is used if the algorithm is not known.
+     */
+    public static KeyHasher getKeyHasher(String hashingAlgorithm) {
         switch(hashingAlgorithm.toLowerCase()) {
             case "murmur3" :
-                hf = Hashing.murmur3_128();
-                break;
-    
+                return MURMUR3;
+
             case "adler32" :
-                hf = Hashing.adler32();
-                break;
-    
+                return ADLER32;
+
             case "crc32" :
-                hf = Hashing.crc32();
-                break;
-    
+                return CRC32;
+
             case "sha1" :
-                hf = Hashing.sha1();
-                break;
-    
+                return SHA1;
+
             case "sha256" :
-                hf = Hashing.sha256();
-                break;
-    
+                return SHA256;
+
             case "siphash24" :
-                hf = Hashing.sipHash24();
-                break;
+                return SIPHASH24;
 
             case "goodfasthash" :
-                hf = Hashing.goodFastHash(128);
-                break;
-    
+                return GOODFASTHASH;
+
             case "md5" :
             default :
-                hf = Hashing.md5();
-                break;
+                return MD5;
         }
+    }
 
-        final HashCode hc = hf.newHasher().putString(key, Charsets.UTF_8).hash();
-        final byte[] digest = hc.asBytes();
-        if(log.isDebugEnabled()) log.debug("Key : " + key +"; digest length : " + digest.length + "; byte Array contents : " + Arrays.toString(digest) );
-        final String hKey = encoder.encodeToString(digest);
+    public static String getHashedKey(String key, String hashingAlgorithm) {
+        return getKeyHasher(hashingAlgorithm).getHashedKey(key);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public String getHashedKey(String key) {
+        final long start = System.nanoTime();
+        final Buffers buf = buffers.get();
+        final int length = buf.encodeUTF8(key);
+        final int digestLength = function.hash(buf.bytes, length, buf.digest);
+        if(log.isDebugEnabled()) log.debug("Key : " + key +"; digest length : " + digestLength + "; byte Array contents : " + Arrays.toString(Arrays.copyOf(buf.digest, digestLength)) );
+        final String hKey = buf.encodeBase64(digestLength);
         if(log.isDebugEnabled()) log.debug("Key : " + key +"; Hashed & encoded key : " + hKey + "; Took " + (System.nanoTime() - start) + " nanos");
         return hKey;
     }
+
+    @Override
+    public String toString() {
+        return "KeyHasher [" + algorithm + "]";
+    }
+
+    /*
+     * Per thread scratch space for the key bytes, the digest and the encoded
+     * digest. The key buffer grows to fit the largest key seen.
+     */
+    private static final class Buffers {
+        private byte[] bytes = new byte[256];
+        private final byte[] digest = new byte[32];
+        private final char[] chars = new char[(digest.length * 4 + 2) / 3];
+
+        private int encodeUTF8(String key) {
+            final int len = key.length();
+            if (bytes.length < len * 3) bytes = new byte[len * 3];
+            final byte[] b = bytes;
+            int pos = 0;
+            for (int i = 0; i < len; i++) {
+                final char c = key.charAt(i);
+                if (c < 0x80) {
+                    b[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[pos++] = (byte) (0xc0 | (c >> 6));
+                    b[pos++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(key.charAt(i + 1))) {
+                        final int cp = Character.toCodePoint(c, key.charAt(++i));
+                        b[pos++] = (byte) (0xf0 | (cp >> 18));
+                        b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        b[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    } else {
+                        // same replacement as String.getBytes for malformed input
+                        b[pos++] = (byte) '?';
+                    }
+                } else {
+                    b[pos++] = (byte) (0xe0 | (c >> 12));
+                    b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    b[pos++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            return pos;
+        }
+
+        private String encodeBase64(int length) {
+            final byte[] d = digest;
+            final char[] c = chars;
+            int pos = 0;
+            int i = 0;
+            for (; i + 3 <= length; i += 3) {
+                final int bits = (d[i] & 0xff) << 16 | (d[i + 1] & 0xff) << 8 | (d[i + 2] & 0xff);
+                c[pos++] = BASE64[bits >>> 18];
+                c[pos++] = BASE64[(bits >>> 12) & 0x3f];
+                c[pos++] = BASE64[(bits >>> 6) & 0x3f];
+                c[pos++] = BASE64[bits & 0x3f];
+            }
+            final int remaining = length - i;
+            if (remaining == 1) {
+                final int bits = (d[i] & 0xff) << 16;
+                c[pos++] = BASE64[bits >>> 18];
+                c[pos++] = BASE64[(bits >>> 12) & 0x3f];
+            } else if (remaining == 2) {
+                final int bits = (d[i] & 0xff) << 16 | (d[i + 1] & 0xff) << 8;
+                c[pos++] = BASE64[bits >>> 18];
+                c[pos++] = BASE64[(bits >>> 12) & 0x3f];
+                c[pos++] = BASE64[(bits >>> 6) & 0x3f];
+            }
+            return new String(c, 0, pos);
+        }
+    }
+
+    private interface HashingFunction {
+        /**
+         * Hashes the first length bytes of the key into digest and returns
+         * the number of bytes written. The digest is at most 32 bytes.
+         */
+        int hash(byte[] key, int length, byte[] digest);
+    }
+
+    private static final class MessageDigestFunction implements HashingFunction {
+        private final ThreadLocal<MessageDigest> digests;
+
+        private MessageDigestFunction(final String name) {
+            this.digests = new ThreadLocal<MessageDigest>() {
+                @Override
+                protected MessageDigest initialValue() {
+                    try {
+                        return MessageDigest.getInstance(name);
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(name + " is not supported", e);
+                    }
+                }
+            };
+        }
+
+        public int hash(byte[] key, int length, byte[] digest) {
+            final MessageDigest md = digests.get();
+            md.update(key, 0, length);
+            try {
+                return md.digest(digest, 0, digest.length);
+            } catch (DigestException e) {
+                md.reset();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /*
+     * java.util.zip checksums, written little endian like the guava HashCode
+     * of Hashing.crc32() and Hashing.adler32().
+     */
+    private static final class ChecksumFunction implements HashingFunction {
+        private final ThreadLocal<Checksum> checksums;
+
+        private ChecksumFunction(final boolean adler) {
+            this.checksums = new ThreadLocal<Checksum>() {
+                @Override
+                protected Checksum initialValue() {
+                    return adler ? new Adler32() : new CRC32();
+                }
+            };
+        }
+
+        public int hash(byte[] key, int length, byte[] digest) {
+            final Checksum checksum = checksums.get();
+            checksum.reset();
+            checksum.update(key, 0, length);
+            putLong(digest, 0, checksum.getValue(), 4);
+            return 4;
+        }
+    }
+
+    /*
+     * SipHash-2-4 with the same key as Hashing.sipHash24().
+     */
+    private static final class SipHash24Function implements HashingFunction {
+        private static final long K0 = 0x0706050403020100L;
+        private static final long K1 = 0x0f0e0d0c0b0a0908L;
+
+        public int hash(byte[] key, int length, byte[] digest) {
+            long v0 = 0x736f6d6570736575L ^ K0;
+            long v1 = 0x646f72616e646f6dL ^ K1;
+            long v2 = 0x6c7967656e657261L ^ K0;
+            long v3 = 0x7465646279746573L ^ K1;
+
+            final int end = length & ~7;
+            for (int i = 0; i < end; i += 8) {
+                final long m = getLong(key, i);
+                v3 ^= m;
+                for (int r = 0; r < 2; r++) {
+                    v0 += v1; v2 += v3; v1 = Long.rotateLeft(v1, 13); v3 = Long.rotateLeft(v3, 16);
+                    v1 ^= v0; v3 ^= v2; v0 = Long.rotateLeft(v0, 32);
+                    v2 += v1; v0 += v3; v1 = Long.rotateLeft(v1, 17); v3 = Long.rotateLeft(v3, 21);
+                    v1 ^= v2; v3 ^= v0; v2 = Long.rotateLeft(v2, 32);
+                }
+                v0 ^= m;
+            }
+
+            long m = ((long) length) << 56;
+            for (int i = end; i < length; i++) {
+                m ^= (key[i] & 0xffL) << ((i - end) << 3);
+            }
+            v3 ^= m;
+            for (int r = 0; r < 2; r++) {
+                v0 += v1; v2 += v3; v1 = Long.rotateLeft(v1, 13); v3 = Long.rotateLeft(v3, 16);
+                v1 ^= v0; v3 ^= v2; v0 = Long.rotateLeft(v0, 32);
+                v2 += v1; v0 += v3; v1 = Long.rotateLeft(v1, 17); v3 = Long.rotateLeft(v3, 21);
+                v1 ^= v2; v3 ^= v0; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+
+            v2 ^= 0xff;
+            for (int r = 0; r < 4; r++) {
+                v0 += v1; v2 += v3; v1 = Long.rotateLeft(v1, 13); v3 = Long.rotateLeft(v3, 16);
+                v1 ^= v0; v3 ^= v2; v0 = Long.rotateLeft(v0, 32);
+                v2 += v1; v0 += v3; v1 = Long.rotateLeft(v1, 17); v3 = Long.rotateLeft(v3, 21);
+                v1 ^= v2; v3 ^= v0; v2 = Long.rotateLeft(v2, 32);
+            }
+            putLong(digest, 0, v0 ^ v1 ^ v2 ^ v3, 8);
+            return 8;
+        }
+    }
+
+    /*
+     * 128 bit murmur3 (x64 variant, seed 0) as in Hashing.murmur3_128().
+     */
+    private static final class Murmur3Function implements HashingFunction {
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        public int hash(byte[] key, int length, byte[] digest) {
+            long h1 = 0;
+            long h2 = 0;
+
+            final int end = length & ~15;
+            for (int i = 0; i < end; i += 16) {
+                h1 ^= mixK1(getLong(key, i));
+                h1 = Long.rotateLeft(h1, 27);
+                h1 += h2;
+                h1 = h1 * 5 + 0x52dce729;
+
+                h2 ^= mixK2(getLong(key, i + 8));
+                h2 = Long.rotateLeft(h2, 31);
+                h2 += h1;
+                h2 = h2 * 5 + 0x38495ab5;
+            }
+
+            long k1 = 0;
+            long k2 = 0;
+            final int remaining = length - end;
+            for (int i = remaining - 1; i >= 8; i--) {
+                k2 ^= (key[end + i] & 0xffL) << ((i - 8) << 3);
+            }
+            for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+                k1 ^= (key[end + i] & 0xffL) << (i << 3);
+            }
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            putLong(digest, 0, h1, 8);
+            putLong(digest, 8, h2, 8);
+            return 16;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            return k1 * C2;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            return k2 * C1;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+
+    private static final class GuavaFunction implements HashingFunction {
+        private final HashFunction hashFunction;
+
+        private GuavaFunction(HashFunction hashFunction) {
+            this.hashFunction = hashFunction;
+        }
+
+        public int hash(byte[] key, int length, byte[] digest) {
+            return hashFunction.hashBytes(key, 0, length).writeBytesTo(digest, 0, digest.length);
+        }
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return (b[i] & 0xffL) | ((b[i + 1] & 0xffL) << 8) | ((b[i + 2] & 0xffL) << 16) | ((b[i + 3] & 0xffL) << 24)
+                | ((b[i + 4] & 0xffL) << 32) | ((b[i + 5] & 0xffL) << 40) | ((b[i + 6] & 0xffL) << 48) | ((b[i + 7] & 0xffL) << 56);
+    }
+
+    private static void putLong(byte[] b, int offset, long value, int length) {
+        for (int i = 0; i < length; i++) {
+            b[offset + i] = (byte) (value >>> (i << 3));
+        }
+    }
 }
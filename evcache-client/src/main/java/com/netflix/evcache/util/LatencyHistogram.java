@@ -0,0 +1,102 @@
+package com.netflix.evcache.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies used to compute percentiles over the
+ * recent past. Latencies are recorded in microseconds into log-linear buckets
+ * (4 buckets for every power of 2) so the percentiles are accurate to within
+ * 25%. Only the current and the previous window are kept, so older latencies
+ * do not affect the percentiles.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    // up to 2^26 micros (~67 seconds), anything larger goes into the last bucket
+    private static final int BUCKETS = 26 * SUB_BUCKETS;
+
+    private final long windowNanos;
+    private final AtomicLong windowStart;
+    private volatile AtomicLongArray current = new AtomicLongArray(BUCKETS);
+    private volatile AtomicLongArray previous = new AtomicLongArray(BUCKETS);
+
+    public LatencyHistogram(long window, TimeUnit unit) {
+        this.windowNanos = unit.toNanos(window);
+        this.windowStart = new AtomicLong(System.nanoTime());
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        rotate(System.nanoTime());
+        current.incrementAndGet(getBucket(unit.toMicros(duration)));
+    }
+
+    /**
+     * Returns the number of latencies recorded in the current and the
+     * previous window.
+     */
+    public long getCount() {
+        rotate(System.nanoTime());
+        final AtomicLongArray cur = current, prev = previous;
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += cur.get(i) + prev.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the given percentile (0 - 100) of the latencies recorded in the
+     * current and the previous window, or -1 if nothing was recorded.
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        rotate(System.nanoTime());
+        final AtomicLongArray cur = current, prev = previous;
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = cur.get(i) + prev.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return -1;
+
+        final long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts[i];
+            if (count >= target) return unit.convert(getUpperBound(i), TimeUnit.MICROSECONDS);
+        }
+        return unit.convert(getUpperBound(BUCKETS - 1), TimeUnit.MICROSECONDS);
+    }
+
+    private void rotate(long now) {
+        final long start = windowStart.get();
+        if (now - start < windowNanos || !windowStart.compareAndSet(start, now)) return;
+        previous = current;
+        current = new AtomicLongArray(BUCKETS);
+    }
+
+    static int getBucket(long micros) {
+        if (micros < SUB_BUCKETS) return (int) Math.max(micros, 0);
+        final int msb = 63 - Long.numberOfLeadingZeros(micros);
+        final int bucket = (msb - 1) * SUB_BUCKETS + (int) ((micros >>> (msb - 2)) & (SUB_BUCKETS - 1));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /*
+     * The largest value in micros that goes into the given bucket.
+     */
+    static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int msb = bucket / SUB_BUCKETS + 1;
+        final int sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1L) << (msb - 2)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram [count=" + getCount() + ", p50=" + getPercentile(50, TimeUnit.MICROSECONDS)
+                + ", p99=" + getPercentile(99, TimeUnit.MICROSECONDS) + "]";
+    }
+}
@@ -0,0 +1,272 @@
+package com.netflix.evcache.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * A cache of raw {@link CachedData} kept in direct memory, so the values do
+ * not add to the heap the garbage collector has to walk. The memory is split
+ * in segments that are written as a log. When the last segment is full the
+ * oldest one is recycled and the entries in it are evicted.
+ * <p>
+ * Only the index of keys to locations is kept on heap. Reads do not lock,
+ * they copy the entry and then check that its segment was not recycled in
+ * the meantime.
+ */
+public class OffHeapCache {
+
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+    private static final int SEGMENTS = 16;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4; // key length, flags, write time, data length
+
+    private final ConcurrentHashMap<String, Long> index = new ConcurrentHashMap<String, Long>();
+    private final ConcurrentHashMap<String, Long> refreshing = new ConcurrentHashMap<String, Long>();
+    private final ByteBuffer[] segments;
+    private final StampedLock[] segmentLocks;
+    private final int segmentSize;
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    private volatile long expireAfterWriteNanos, refreshAfterWriteNanos;
+
+    // guarded by the stamped lock of each segment
+    private final long[] generations;
+
+    // guarded by appendLock
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ByteBuffer[] writeViews;
+    private final int[] segmentEnds;
+    private int current = 0;
+    private int writeOffset = 0;
+    private long usedBytes = 0;
+
+    public OffHeapCache(long capacity) {
+        this.segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, capacity / SEGMENTS));
+        final int count = (int) Math.max(2, Math.min(Integer.MAX_VALUE, capacity / segmentSize));
+        this.segments = new ByteBuffer[count];
+        this.writeViews = new ByteBuffer[count];
+        this.segmentLocks = new StampedLock[count];
+        this.generations = new long[count];
+        this.segmentEnds = new int[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentSize);
+            writeViews[i] = segments[i].duplicate();
+            segmentLocks[i] = new StampedLock();
+        }
+    }
+
+    public void setExpireAfterWriteNanos(long nanos) {
+        this.expireAfterWriteNanos = Math.max(0, nanos);
+    }
+
+    public void setRefreshAfterWriteNanos(long nanos) {
+        this.refreshAfterWriteNanos = Math.max(0, nanos);
+    }
+
+    /**
+     * Returns the data of the key or null if it is not cached or expired. If
+     * the entry is due for a refresh the given task, if any, is run. It is run
+     * at most once per refresh interval for a key until the key is put again.
+     */
+    public CachedData get(String key, Runnable refresh) {
+        final Long location = index.get(key);
+        if (location == null) {
+            misses.increment();
+            return null;
+        }
+        final long loc = location.longValue();
+        final int segment = segmentOf(loc);
+        final StampedLock lock = segmentLocks[segment];
+        final long stamp = lock.tryOptimisticRead();
+        CachedData data = null;
+        long writeTime = 0;
+        if (stamp != 0 && (generations[segment] & 0xffffL) == generationOf(loc)) {
+            final ByteBuffer buf = segments[segment].duplicate();
+            buf.position(offsetOf(loc));
+            final int keyLength = buf.getInt();
+            if (keyLength >= 0 && keyLength <= buf.remaining() - (HEADER_SIZE - 4)) {
+                buf.position(buf.position() + keyLength);
+                final int flags = buf.getInt();
+                writeTime = buf.getLong();
+                final int length = buf.getInt();
+                if (length >= 0 && length <= buf.remaining()) {
+                    final byte[] bytes = new byte[length];
+                    buf.get(bytes);
+                    data = new CachedData(flags, bytes, CachedData.MAX_SIZE);
+                }
+            }
+        }
+        if (data == null || !lock.validate(stamp)) {
+            // the segment was recycled
+            index.remove(key, location);
+            misses.increment();
+            return null;
+        }
+
+        final long now = System.nanoTime();
+        final long afterWrite = expireAfterWriteNanos;
+        if (afterWrite > 0 && now - writeTime >= afterWrite) {
+            index.remove(key, location);
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        final long refreshNanos = refreshAfterWriteNanos;
+        if (refresh != null && refreshNanos > 0 && now - writeTime >= refreshNanos) refreshIfNeeded(key, now, refreshNanos, refresh);
+        return data;
+    }
+
+    private void refreshIfNeeded(String key, long now, long refreshNanos, Runnable refresh) {
+        final Long last = refreshing.putIfAbsent(key, Long.valueOf(now));
+        if (last != null && (now - last.longValue() < refreshNanos || !refreshing.replace(key, last, Long.valueOf(now)))) return;
+        refresh.run();
+    }
+
+    /**
+     * Adds the data of the key. Returns false if the data is larger than a
+     * segment and was not added.
+     */
+    public boolean put(String key, CachedData data) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] bytes = data.getData();
+        final int length = HEADER_SIZE + keyBytes.length + bytes.length;
+        if (length > segmentSize) {
+            invalidate(key);
+            return false;
+        }
+
+        appendLock.lock();
+        try {
+            if (writeOffset + length > segmentSize) {
+                current = (current + 1) % segments.length;
+                recycle(current);
+                writeOffset = 0;
+            }
+            final ByteBuffer buf = writeViews[current];
+            buf.position(writeOffset);
+            buf.putInt(keyBytes.length);
+            buf.put(keyBytes);
+            buf.putInt(data.getFlags());
+            buf.putLong(System.nanoTime());
+            buf.putInt(bytes.length);
+            buf.put(bytes);
+            index.put(key, Long.valueOf(locationOf(generations[current], current, writeOffset)));
+            refreshing.remove(key);
+            writeOffset += length;
+            segmentEnds[current] = writeOffset;
+            usedBytes += length;
+        } finally {
+            appendLock.unlock();
+        }
+        return true;
+    }
+
+    /*
+     * Starts a new generation of the segment and removes the keys that are
+     * still located in it from the index.
+     */
+    // guarded by appendLock
+    private void recycle(int segment) {
+        final StampedLock lock = segmentLocks[segment];
+        final long stamp = lock.writeLock();
+        final long generation = generations[segment];
+        try {
+            generations[segment] = generation + 1;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        final ByteBuffer buf = writeViews[segment];
+        int offset = 0;
+        while (offset < segmentEnds[segment]) {
+            buf.position(offset);
+            final byte[] keyBytes = new byte[buf.getInt()];
+            buf.get(keyBytes);
+            buf.position(buf.position() + 4 + 8);
+            final int length = buf.getInt();
+            final String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (index.remove(key, Long.valueOf(locationOf(generation, segment, offset)))) {
+                refreshing.remove(key);
+                evictions.increment();
+            }
+            offset += HEADER_SIZE + keyBytes.length + length;
+        }
+        usedBytes -= segmentEnds[segment];
+        segmentEnds[segment] = 0;
+    }
+
+    public void invalidate(String key) {
+        index.remove(key);
+        refreshing.remove(key);
+    }
+
+    public void invalidateAll() {
+        index.clear();
+        refreshing.clear();
+    }
+
+    public long size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of bytes written to the segments, including the
+     * entries that were replaced or invalidated but not recycled yet.
+     */
+    public long weightedSize() {
+        appendLock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long capacity() {
+        return (long) segmentSize * segments.length;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /*
+     * A location is the low 16 bits of the generation of the segment, the
+     * segment and the offset in the segment.
+     */
+    private static long locationOf(long generation, int segment, int offset) {
+        return ((generation & 0xffffL) << 48) | ((long) segment << 32) | (offset & 0xffffffffL);
+    }
+
+    private static int segmentOf(long location) {
+        return (int) ((location >>> 32) & 0xffff);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static long generationOf(long location) {
+        return location >>> 48;
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapCache [size=" + size() + ", capacity=" + capacity() + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + "]";
+    }
+}
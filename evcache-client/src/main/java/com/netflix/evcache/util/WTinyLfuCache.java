@@ -0,0 +1,568 @@
+package com.netflix.evcache.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent cache bounded by the total weight of its entries that uses the
+ * W-TinyLFU policy. New entries go to a small LRU window. Entries pushed out
+ * of the window are only admitted to the main space, a segmented LRU of
+ * probation and protected entries, if they were used more often than the
+ * entry they would replace. The use of keys is estimated by a count-min
+ * sketch, so a scan of keys that are used once does not flush the keys that
+ * are used all the time.
+ * <p>
+ * Reads do not lock. They are recorded in lossy striped buffers that are
+ * replayed against the policy by the thread holding the eviction lock, which
+ * is taken by writes. The maximum weight and the expiry times can be changed
+ * at any time and are applied in place.
+ */
+public class WTinyLfuCache<K, V> {
+
+    /**
+     * Computes the weight of an entry when it is added.
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Called, at most once per refresh interval, for an entry that was read
+     * after it is due for a refresh. The refreshed value is put back by the
+     * implementation.
+     */
+    public interface Refresher<K, V> {
+        void refresh(K key, V value);
+    }
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int READ_BUFFER_STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+    private static final long CLEANUP_INTERVAL_NANOS = 1000000000L;
+
+    private static final int PENDING = 0, ALIVE = 1, RETIRED = 2;
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<K, Node<K, V>>();
+    private final Weigher<K, V> weigher;
+    private final Refresher<K, V> refresher;
+    private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    private volatile long expireAfterWriteNanos, expireAfterAccessNanos, refreshAfterWriteNanos;
+
+    // guarded by evictionLock
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<K, V>();
+    private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<K, V>();
+    private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<K, V>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long maximum, windowMaximum, protectedMaximum;
+    private long weightedSize, windowWeightedSize, protectedWeightedSize;
+    private long lastCleanup = System.nanoTime();
+
+    public WTinyLfuCache(long maximumWeight, Weigher<K, V> weigher, Refresher<K, V> refresher) {
+        this.weigher = weigher;
+        this.refresher = refresher;
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+        setMaximumWeight(maximumWeight);
+    }
+
+    /**
+     * Sets the max total weight of the entries, evicting entries if the
+     * cache is now too big.
+     */
+    public void setMaximumWeight(long maximumWeight) {
+        evictionLock.lock();
+        try {
+            maximum = Math.max(0, maximumWeight);
+            windowMaximum = Math.max(1, maximum * WINDOW_PERCENT / 100);
+            protectedMaximum = (maximum - Math.min(maximum, windowMaximum)) * PROTECTED_PERCENT / 100;
+            drainReadBuffers();
+            demoteProtected();
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the time after which an entry expires once it was written, 0 to
+     * not expire entries after they were written.
+     */
+    public void setExpireAfterWriteNanos(long nanos) {
+        this.expireAfterWriteNanos = Math.max(0, nanos);
+    }
+
+    /**
+     * Sets the time after which an entry expires once it was last read or
+     * written, 0 to not expire entries after they were read.
+     */
+    public void setExpireAfterAccessNanos(long nanos) {
+        this.expireAfterAccessNanos = Math.max(0, nanos);
+    }
+
+    /**
+     * Sets the time after which an entry that is read is refreshed, 0 to not
+     * refresh entries.
+     */
+    public void setRefreshAfterWriteNanos(long nanos) {
+        this.refreshAfterWriteNanos = Math.max(0, nanos);
+    }
+
+    /**
+     * Returns the value of the key or null if it is not cached or expired.
+     */
+    public V getIfPresent(K key) {
+        final Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        final long now = System.nanoTime();
+        if (hasExpired(node, now)) {
+            misses.increment();
+            if (data.remove(key, node)) {
+                evictionLock.lock();
+                try {
+                    removeNode(node);
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        if (expireAfterAccessNanos > 0) node.accessTime = now;
+        afterRead(node);
+        refreshIfNeeded(node, now);
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        final long now = System.nanoTime();
+        final Node<K, V> node = new Node<K, V>(key, value, Math.max(0, weigher.weigh(key, value)), now);
+        final Node<K, V> prior = data.put(key, node);
+        evictionLock.lock();
+        try {
+            if (prior != null) removeNode(prior);
+            addNode(node);
+            drainReadBuffers();
+            evict();
+            if (now - lastCleanup > CLEANUP_INTERVAL_NANOS) expireEntries(now);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        final Node<K, V> node = data.remove(key);
+        if (node == null) return;
+        evictionLock.lock();
+        try {
+            removeNode(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            for (Node<K, V> node : data.values()) {
+                if (data.remove(node.key, node)) removeNode(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the entries that have not expired.
+     */
+    public Map<K, V> asMap() {
+        final long now = System.nanoTime();
+        final Map<K, V> map = new HashMap<K, V>(data.size() * 4 / 3 + 1);
+        for (Node<K, V> node : data.values()) {
+            if (!hasExpired(node, now)) map.put(node.key, node.value);
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    public long size() {
+        return data.size();
+    }
+
+    public long weightedSize() {
+        evictionLock.lock();
+        try {
+            return weightedSize;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private boolean hasExpired(Node<K, V> node, long now) {
+        final long afterAccess = expireAfterAccessNanos;
+        if (afterAccess > 0 && now - node.accessTime >= afterAccess) return true;
+        final long afterWrite = expireAfterWriteNanos;
+        return afterWrite > 0 && now - node.writeTime >= afterWrite;
+    }
+
+    private void refreshIfNeeded(Node<K, V> node, long now) {
+        final long refreshNanos = refreshAfterWriteNanos;
+        if (refreshNanos <= 0 || refresher == null) return;
+        final long last = node.refreshTime;
+        if (now - last < refreshNanos) return;
+        synchronized (node) {
+            if (node.refreshTime != last) return;
+            node.refreshTime = now;
+        }
+        refresher.refresh(node.key, node.value);
+    }
+
+    /*
+     * Records the read in the buffer of the stripe of the thread. The buffer
+     * is lossy, a read that overwrites another one that was not replayed yet
+     * only loses the frequency and recency of that read.
+     */
+    private void afterRead(Node<K, V> node) {
+        final ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1)];
+        final long index = buffer.writes.getAndIncrement();
+        buffer.nodes.lazySet((int) (index & READ_BUFFER_MASK), node);
+        if ((index & READ_BUFFER_MASK) == READ_BUFFER_MASK && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    // guarded by evictionLock
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                // the buffers only hold the nodes of this cache
+                @SuppressWarnings("unchecked")
+                final Node<K, V> node = (Node<K, V>) buffer.nodes.getAndSet(i, null);
+                if (node != null) onAccess(node);
+            }
+        }
+    }
+
+    // guarded by evictionLock
+    private void onAccess(Node<K, V> node) {
+        sketch.increment(spread(node.key.hashCode()));
+        if (node.state != ALIVE) return;
+        if (node.queue == WINDOW) {
+            window.moveToBack(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.addLast(node);
+            protectedWeightedSize += node.weight;
+            demoteProtected();
+        } else {
+            protectedQueue.moveToBack(node);
+        }
+    }
+
+    // guarded by evictionLock
+    private void demoteProtected() {
+        while (protectedWeightedSize > protectedMaximum) {
+            final Node<K, V> node = protectedQueue.pollFirst();
+            if (node == null) break;
+            protectedWeightedSize -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+        }
+    }
+
+    // guarded by evictionLock
+    private void addNode(Node<K, V> node) {
+        if (node.state == RETIRED) return;
+        node.state = ALIVE;
+        node.queue = WINDOW;
+        window.addLast(node);
+        weightedSize += node.weight;
+        windowWeightedSize += node.weight;
+        sketch.ensureCapacity(data.size());
+        sketch.increment(spread(node.key.hashCode()));
+    }
+
+    // guarded by evictionLock
+    private void removeNode(Node<K, V> node) {
+        if (node.state == ALIVE) {
+            if (node.queue == WINDOW) {
+                window.remove(node);
+                windowWeightedSize -= node.weight;
+            } else if (node.queue == PROBATION) {
+                probation.remove(node);
+            } else {
+                protectedQueue.remove(node);
+                protectedWeightedSize -= node.weight;
+            }
+            weightedSize -= node.weight;
+        }
+        node.state = RETIRED;
+    }
+
+    // guarded by evictionLock
+    private void evictNode(Node<K, V> node) {
+        data.remove(node.key, node);
+        removeNode(node);
+        evictions.increment();
+    }
+
+    /*
+     * Moves the entries that do not fit in the window to probation, then
+     * evicts until the cache fits. Each entry that came from the window is
+     * compared with the least recently used entry in probation and the one
+     * used less often is evicted.
+     */
+    // guarded by evictionLock
+    private void evict() {
+        int candidates = 0;
+        while (windowWeightedSize > windowMaximum) {
+            final Node<K, V> node = window.pollFirst();
+            if (node == null) break;
+            windowWeightedSize -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            candidates++;
+        }
+
+        Node<K, V> candidate = (candidates > 0) ? probation.peekLast() : null;
+        while (weightedSize > maximum) {
+            if (candidates <= 0) candidate = null;
+            Node<K, V> victim = probation.peekFirst();
+            if (victim == null) victim = protectedQueue.peekFirst();
+            if (victim == null) victim = window.peekFirst();
+            if (victim == null) break;
+
+            if (candidate == null || candidate == victim) {
+                if (candidate == victim) candidate = null;
+                evictNode(victim);
+                continue;
+            }
+            Node<K, V> previous = candidate.prev;
+            candidates--;
+            if (candidate.weight <= maximum && admit(candidate.key, victim.key)) {
+                if (previous == victim) previous = null;
+                evictNode(victim);
+            } else {
+                evictNode(candidate);
+            }
+            candidate = previous;
+        }
+    }
+
+    // guarded by evictionLock
+    private boolean admit(K candidateKey, K victimKey) {
+        final int candidateFrequency = sketch.frequency(spread(candidateKey.hashCode()));
+        final int victimFrequency = sketch.frequency(spread(victimKey.hashCode()));
+        if (candidateFrequency > victimFrequency) return true;
+        // let a warm candidate in once in a while so an attacker cannot keep a victim's frequency high
+        if (candidateFrequency <= 5) return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    // guarded by evictionLock
+    private void expireEntries(long now) {
+        lastCleanup = now;
+        if (expireAfterWriteNanos <= 0 && expireAfterAccessNanos <= 0) return;
+        for (Node<K, V> node : data.values()) {
+            if (hasExpired(node, now) && data.remove(node.key, node)) removeNode(node);
+        }
+    }
+
+    private static int spread(int hashCode) {
+        final int h = hashCode * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(Math.max(1, x) - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "WTinyLfuCache [size=" + size() + ", weightedSize=" + weightedSize() + ", hits=" + hitCount() + ", misses=" + missCount()
+                + ", evictions=" + evictionCount() + "]";
+    }
+
+    private static final class Node<K, V> {
+        private final K key;
+        private final V value;
+        private final int weight;
+        private final long writeTime;
+        private volatile long accessTime;
+        private volatile long refreshTime;
+
+        // guarded by evictionLock
+        private int state = PENDING;
+        private int queue;
+        private Node<K, V> prev, next;
+
+        private Node(K key, V value, int weight, long now) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = now;
+            this.accessTime = now;
+            this.refreshTime = now;
+        }
+    }
+
+    private static final class ReadBuffer {
+        private final AtomicLong writes = new AtomicLong();
+        private final AtomicReferenceArray<Object> nodes = new AtomicReferenceArray<Object>(READ_BUFFER_SIZE);
+    }
+
+    /*
+     * A doubly linked list of nodes in access order, least recently used first.
+     */
+    private static final class AccessOrderQueue<K, V> {
+        private Node<K, V> first, last;
+
+        private Node<K, V> peekFirst() {
+            return first;
+        }
+
+        private Node<K, V> peekLast() {
+            return last;
+        }
+
+        private void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        private void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        private Node<K, V> pollFirst() {
+            final Node<K, V> node = first;
+            if (node != null) remove(node);
+            return node;
+        }
+
+        private void moveToBack(Node<K, V> node) {
+            if (node == last) return;
+            remove(node);
+            addLast(node);
+        }
+    }
+
+    /*
+     * A count-min sketch with four 4-bit counters per key that are all halved
+     * once the number of increments reaches ten times the number of counters
+     * per row, so the frequencies follow changes in the popularity of keys.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        private long[] table = new long[0];
+        private int tableMask;
+        private int sampleSize;
+        private int additions;
+
+        private void ensureCapacity(long entries) {
+            final int capacity = (int) Math.min(Math.max(entries, 16), 1 << 30);
+            if (table.length >= capacity) return;
+            table = new long[ceilingPowerOfTwo(capacity * 2)];
+            tableMask = table.length - 1;
+            sampleSize = 10 * table.length;
+            additions = 0;
+        }
+
+        private int frequency(int hash) {
+            if (table.length == 0) return 0;
+            final int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                final int index = indexOf(hash, i);
+                final int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        private void increment(int hash) {
+            if (table.length == 0) return;
+            final int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++additions >= sampleSize) reset();
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            final int offset = counter << 2;
+            final long mask = 0xfL << offset;
+            if ((table[index] & mask) == mask) return false;
+            table[index] += 1L << offset;
+            return true;
+        }
+
+        private void reset() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions = (additions - (odd >>> 2)) >>> 1;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+    }
+}
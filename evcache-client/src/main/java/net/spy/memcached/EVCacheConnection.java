@@ -6,6 +6,7 @@ import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedSelectorException;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -88,7 +89,33 @@ public class EVCacheConnection extends MemcachedConnection {
         checkState();
         addOperation(key, o);
       }
-    
+
+    /**
+     * Same as {@link #enqueueOperation(String, Operation)} but with the
+     * primary node for the key already located by the caller, so the key is
+     * not hashed again. The failure mode is applied as in
+     * {@link MemcachedConnection#addOperation(String, Operation)}.
+     */
+    public void enqueueOperation(final MemcachedNode primary, final String key, final Operation o) {
+        checkState();
+        MemcachedNode placeIn = null;
+        if (primary.isActive() || failureMode == FailureMode.Retry) {
+            placeIn = primary;
+        } else if (failureMode == FailureMode.Cancel) {
+            o.cancel();
+        } else {
+            for (Iterator<MemcachedNode> i = locator.getSequence(key); placeIn == null && i.hasNext();) {
+                final MemcachedNode n = i.next();
+                if (n.isActive()) placeIn = n;
+            }
+            if (placeIn == null) {
+                placeIn = primary;
+                if (log.isWarnEnabled()) log.warn("Could not redistribute to another node, retrying primary node for " + key);
+            }
+        }
+        if (placeIn != null) addOperation(placeIn, o);
+    }
+
 
     @Override
     public CountDownLatch broadcastOperation(BroadcastOpFactory of, Collection<MemcachedNode> nodes) {
@@ -0,0 +1,288 @@
+package net.spy.memcached;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ChainedDynamicProperty;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.operation.EVCacheOperationFuture;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.ServerGroup;
+import com.netflix.evcache.util.EVCacheConfig;
+import com.netflix.servo.monitor.Stopwatch;
+import com.netflix.spectator.api.DistributionSummary;
+
+import net.spy.memcached.ops.GetOperation;
+import net.spy.memcached.ops.Operation;
+import net.spy.memcached.ops.OperationStatus;
+import net.spy.memcached.ops.StatusCode;
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * Coalesces the single key gets sent to the same node. The gets are collected
+ * for a short window, or until the max number of keys is reached, and then
+ * sent as one multi get. Every caller still gets its own future which is
+ * completed with the value of its key, and the metrics of the single gets
+ * are recorded for every caller.
+ */
+class EVCacheGetBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EVCacheGetBatcher.class);
+
+    private final EVCacheMemcachedClient client;
+    private final EVCacheClient evcacheClient;
+    private final String appName;
+    private final ServerGroup serverGroup;
+    private final ChainedDynamicProperty.IntProperty readTimeout;
+    private final ChainedDynamicProperty.BooleanProperty enabled;
+    private final ChainedDynamicProperty.IntProperty windowMicros, maxKeys;
+    private final ConcurrentHashMap<MemcachedNode, Batch> batches = new ConcurrentHashMap<MemcachedNode, Batch>();
+    private DistributionSummary batchSize;
+
+    EVCacheGetBatcher(EVCacheMemcachedClient client, EVCacheClient evcacheClient, String appName, ServerGroup serverGroup, ChainedDynamicProperty.IntProperty readTimeout) {
+        this.client = client;
+        this.evcacheClient = evcacheClient;
+        this.appName = appName;
+        this.serverGroup = serverGroup;
+        this.readTimeout = readTimeout;
+        final EVCacheConfig config = EVCacheConfig.getInstance();
+        this.enabled = config.getChainedBooleanProperty(appName + ".auto.batch.gets", "evcache.auto.batch.gets", Boolean.FALSE, null);
+        this.windowMicros = config.getChainedIntProperty(appName + ".auto.batch.window.micros", "evcache.auto.batch.window.micros", 100, null);
+        this.maxKeys = config.getChainedIntProperty(appName + ".auto.batch.max.keys", "evcache.auto.batch.max.keys", 32, null);
+    }
+
+    boolean isEnabled() {
+        return enabled.get().booleanValue();
+    }
+
+    /**
+     * Adds the get of the key to the batch of the given node.
+     */
+    <T> EVCacheOperationFuture<T> get(String key, Transcoder<T> tc, MemcachedNode node) {
+        final BatchedGet<T> get = new BatchedGet<T>(key, tc, new BatchedGetFuture<T>(key, new CountDownLatch(1),
+                readTimeout.get().intValue(), client.executorService, appName, serverGroup), client.startGetTimer());
+        while (true) {
+            Batch batch = batches.get(node);
+            if (batch == null) {
+                final Batch newBatch = new Batch(node);
+                batch = batches.putIfAbsent(node, newBatch);
+                if (batch == null) {
+                    batch = newBatch;
+                    final Batch toFlush = batch;
+                    evcacheClient.getPool().getEVCacheClientPoolManager().getEVCacheScheduledExecutor()
+                            .schedule(() -> flush(toFlush), windowMicros.get().intValue(), TimeUnit.MICROSECONDS);
+                }
+            }
+            final int size = batch.add(get);
+            if (size < 0) {
+                // the batch was flushed in the meantime
+                batches.remove(node, batch);
+                continue;
+            }
+            if (size >= maxKeys.get().intValue()) flush(batch);
+            return get.future;
+        }
+    }
+
+    private void flush(Batch batch) {
+        batches.remove(batch.node, batch);
+        final Map<String, List<BatchedGet<?>>> gets = batch.close();
+        if (gets == null) return;
+        if (batchSize == null) batchSize = EVCacheMetricsFactory.getDistributionSummary(appName + "-GetBatch-Size", appName, serverGroup.getName());
+        if (batchSize != null) batchSize.record(gets.size());
+
+        final GetOperation.Callback cb = new GetOperation.Callback() {
+            private OperationStatus status = null;
+
+            public void receivedStatus(OperationStatus status) {
+                this.status = status;
+                if (!status.getStatusCode().equals(StatusCode.SUCCESS) && !status.getStatusCode().equals(StatusCode.ERR_NOT_FOUND)) {
+                    EVCacheMetricsFactory.increment(appName, null, serverGroup.getName(), appName + "-GetBatch-" + status.getStatusCode().name());
+                }
+            }
+
+            public void gotData(String k, int flags, byte[] data) {
+                final List<BatchedGet<?>> keyGets = gets.get(k);
+                if (keyGets == null) {
+                    log.warn("Wrong key returned. Keys - {}; Returned Key {}", gets.keySet(), k);
+                    return;
+                }
+                for (BatchedGet<?> get : keyGets) {
+                    get.decode(flags, data);
+                }
+            }
+
+            public void complete() {
+                for (List<BatchedGet<?>> keyGets : gets.values()) {
+                    for (BatchedGet<?> get : keyGets) {
+                        get.complete(status);
+                    }
+                }
+            }
+        };
+
+        final String firstKey = gets.keySet().iterator().next();
+        final Operation op = (gets.size() == 1) ? client.opFact.get(firstKey, cb) : client.opFact.get(gets.keySet(), cb);
+        // the timeout of the operation is counted once against the node, not by caller
+        final AtomicBoolean timedOut = new AtomicBoolean(false);
+        for (List<BatchedGet<?>> keyGets : gets.values()) {
+            for (BatchedGet<?> get : keyGets) {
+                get.future.setOperation(op, timedOut);
+            }
+        }
+        if (log.isDebugEnabled()) log.debug("APP " + appName + "; sending a batch of " + gets.size() + " keys to " + batch.node.getSocketAddress());
+        if (client.mconn instanceof EVCacheConnection) {
+            ((EVCacheConnection) client.mconn).enqueueOperation(batch.node, firstKey, op);
+        } else {
+            client.mconn.enqueueOperation(firstKey, op);
+        }
+    }
+
+    /*
+     * The gets collected for a node. Once closed no more gets can be added.
+     */
+    private static final class Batch {
+        private final MemcachedNode node;
+        private final Map<String, List<BatchedGet<?>>> gets = new LinkedHashMap<String, List<BatchedGet<?>>>();
+        private int size = 0;
+        private boolean closed = false;
+
+        private Batch(MemcachedNode node) {
+            this.node = node;
+        }
+
+        /*
+         * Returns the number of gets in the batch or -1 if it was closed.
+         */
+        private synchronized int add(BatchedGet<?> get) {
+            if (closed) return -1;
+            List<BatchedGet<?>> keyGets = gets.get(get.key);
+            if (keyGets == null) {
+                keyGets = new ArrayList<BatchedGet<?>>(1);
+                gets.put(get.key, keyGets);
+            }
+            keyGets.add(get);
+            return ++size;
+        }
+
+        /*
+         * Returns the gets by key or null if the batch was already closed.
+         */
+        private synchronized Map<String, List<BatchedGet<?>>> close() {
+            if (closed) return null;
+            closed = true;
+            return gets;
+        }
+    }
+
+    /*
+     * The get of a single key in a batch.
+     */
+    private final class BatchedGet<T> {
+        private final String key;
+        private final Transcoder<T> tc;
+        private final BatchedGetFuture<T> future;
+        private final Stopwatch duration;
+        private Future<T> val = null;
+
+        private BatchedGet(String key, Transcoder<T> tc, BatchedGetFuture<T> future, Stopwatch duration) {
+            this.key = key;
+            this.tc = tc;
+            this.future = future;
+            this.duration = duration;
+        }
+
+        private void decode(int flags, byte[] data) {
+            client.recordGetDataSize(data);
+            val = client.tcService.decode(tc, new CachedData(flags, data, tc.getMaxSize()));
+        }
+
+        private void complete(OperationStatus status) {
+            duration.stop();
+            // the status of a multi get is not by key, a key without data is not found
+            final StatusCode statusCode;
+            if (val != null) {
+                statusCode = StatusCode.SUCCESS;
+            } else if (status == null || status.getStatusCode().equals(StatusCode.SUCCESS)) {
+                statusCode = StatusCode.ERR_NOT_FOUND;
+            } else {
+                statusCode = status.getStatusCode();
+            }
+            client.recordGetStatus(key, statusCode);
+
+            T value = null;
+            try {
+                if (val != null) value = val.get();
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+            future.complete(value, status);
+        }
+    }
+
+    /*
+     * The future of a single key in a batch. The operation is shared with the
+     * other keys of the batch, so cancelling or timing out this future only
+     * completes it and leaves the operation to the other keys.
+     */
+    private static final class BatchedGetFuture<T> extends EVCacheOperationFuture<T> {
+        private final CountDownLatch latch;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+        private volatile AtomicBoolean operationTimedOut = null;
+
+        private BatchedGetFuture(String key, CountDownLatch latch, long opTimeout, ExecutorService service, String appName, ServerGroup serverGroup) {
+            super(key, latch, new AtomicReference<T>(null), opTimeout, service, appName, serverGroup);
+            this.latch = latch;
+        }
+
+        private void complete(T value, OperationStatus status) {
+            if (!done.compareAndSet(false, true)) return;
+            set(value, status);
+            latch.countDown();
+            signalComplete();
+        }
+
+        private void setOperation(Operation op, AtomicBoolean timedOut) {
+            this.operationTimedOut = timedOut;
+            setOperation(op);
+        }
+
+        @Override
+        protected void timeOutOperation() {
+            final AtomicBoolean timedOut = operationTimedOut;
+            if (timedOut != null && timedOut.compareAndSet(false, true)) MemcachedConnection.opTimedOut(getOperation());
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!done.compareAndSet(false, true)) return false;
+            cancelled = true;
+            latch.countDown();
+            signalComplete();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.get();
+        }
+    }
+}
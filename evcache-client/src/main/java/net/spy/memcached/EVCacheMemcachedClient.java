@@ -3,11 +3,13 @@ package net.spy.memcached;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
@@ -22,13 +24,17 @@ import org.slf4j.LoggerFactory;
 import com.netflix.config.ChainedDynamicProperty;
 import com.netflix.config.DynamicLongProperty;
 import com.netflix.evcache.EVCacheGetOperationListener;
+import com.netflix.evcache.EVCacheKey;
 import com.netflix.evcache.EVCacheLatch;
 import com.netflix.evcache.metrics.EVCacheMetricsFactory;
 import com.netflix.evcache.operation.EVCacheBulkGetFuture;
+import com.netflix.evcache.operation.EVCacheDependentFuture;
 import com.netflix.evcache.operation.EVCacheLatchImpl;
 import com.netflix.evcache.operation.EVCacheOperationFuture;
 import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheNodeLocator;
 import com.netflix.evcache.pool.ServerGroup;
+import com.netflix.evcache.util.ByteBufferPool;
 import com.netflix.evcache.util.EVCacheConfig;
 import com.netflix.servo.monitor.Counter;
 import com.netflix.servo.monitor.Stopwatch;
@@ -52,6 +58,7 @@ import net.spy.memcached.ops.StoreOperation;
 import net.spy.memcached.ops.StoreType;
 import net.spy.memcached.protocol.binary.BinaryOperationFactory;
 import net.spy.memcached.protocol.binary.EVCacheNodeImpl;
+import net.spy.memcached.protocol.binary.EVCacheSliceStoreOperationImpl;
 import net.spy.memcached.transcoders.Transcoder;
 import net.spy.memcached.util.StringUtils;
 
@@ -69,6 +76,8 @@ public class EVCacheMemcachedClient extends MemcachedClient {
     private final ConnectionFactory connectionFactory;
     private final Map<String, Counter> counterMap = new ConcurrentHashMap<String, Counter>();
     private final Map<String, Timer> timerMap = new ConcurrentHashMap<String, Timer>();
+    private final EVCacheGetBatcher getBatcher;
+    private final ChainedDynamicProperty.BooleanProperty pooledWrites;
 
     private DistributionSummary getDataSize, bulkDataSize, getAndTouchDataSize;
     private DynamicLongProperty mutateOperationTimeout;
@@ -84,6 +93,8 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         this.readTimeout = readTimeout;
         this.serverGroup = serverGroup;
         this.client = client;
+        this.getBatcher = new EVCacheGetBatcher(this, client, appName, serverGroup, readTimeout);
+        this.pooledWrites = EVCacheConfig.getInstance().getChainedBooleanProperty(appName + ".write.buffer.pool.enabled", "evcache.write.buffer.pool.enabled", Boolean.FALSE, null);
     }
 
     public NodeLocator getNodeLocator() {
@@ -94,11 +105,59 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         return this.mconn.getLocator().getPrimary(key);
     }
 
+    /**
+     * Returns the primary node for the derived key of the given EVCacheKey
+     * reusing the hash cached in it.
+     */
+    public MemcachedNode getEVCacheNode(EVCacheKey evcKey) {
+        final NodeLocator locator = this.mconn.getLocator();
+        if (locator instanceof EVCacheNodeLocator) return ((EVCacheNodeLocator) locator).getPrimary(evcKey);
+        return locator.getPrimary(evcKey.getDerivedKey());
+    }
+
+    /**
+     * Returns the node the derived key of the given EVCacheKey was placed on
+     * by the previous hash algorithm while the continuum is being migrated,
+     * null otherwise.
+     */
+    public MemcachedNode getPreviousEVCacheNode(EVCacheKey evcKey) {
+        final NodeLocator locator = this.mconn.getLocator();
+        if (locator instanceof EVCacheNodeLocator) return ((EVCacheNodeLocator) locator).getPreviousPrimary(evcKey);
+        return null;
+    }
+
+    /*
+     * Enqueues the operation on the given primary node if it was already
+     * located by the caller, else the key is hashed to find it.
+     */
+    private void enqueueOperation(MemcachedNode primary, String key, Operation op) {
+        if (primary != null && mconn instanceof EVCacheConnection) {
+            ((EVCacheConnection) mconn).enqueueOperation(primary, key, op);
+        } else {
+            mconn.enqueueOperation(key, op);
+        }
+    }
+
     public <T> GetFuture<T> asyncGet(final String key, final Transcoder<T> tc) {
         throw new UnsupportedOperationException("asyncGet");
     }
 
     public <T> EVCacheOperationFuture<T> asyncGet(final String key, final Transcoder<T> tc, EVCacheGetOperationListener<T> listener) {
+        return asyncGet(key, tc, listener, null);
+    }
+
+    public <T> EVCacheOperationFuture<T> asyncGet(final String key, final Transcoder<T> tc, EVCacheGetOperationListener<T> listener, MemcachedNode primary) {
+        if (getBatcher.isEnabled()) {
+            final MemcachedNode node = (primary == null) ? getEVCacheNode(key) : primary;
+            if (node.isActive()) {
+                // the transcoder of the client decodes the values of any type
+                @SuppressWarnings("unchecked")
+                final Transcoder<T> t = (tc == null) ? (Transcoder<T>) getTranscoder() : tc;
+                final EVCacheOperationFuture<T> rv = getBatcher.get(key, t, node);
+                if (listener != null) rv.addListener(listener);
+                return rv;
+            }
+        }
         final CountDownLatch latch = new CountDownLatch(1);
         final EVCacheOperationFuture<T> rv = new EVCacheOperationFuture<T>(key, latch, new AtomicReference<T>(null), readTimeout.get().intValue(), executorService, appName, serverGroup);
         final Stopwatch operationDuration = getTimer(GET_OPERATION_STRING).start();
@@ -110,20 +169,7 @@ public class EVCacheMemcachedClient extends MemcachedClient {
                 if (log.isDebugEnabled()) log.debug("Getting Key : " + key + "; Status : " + status.getStatusCode().name()
                         + (log.isTraceEnabled() ?  " Node : " + getEVCacheNode(key) : "")
                         + "; Message : " + status.getMessage() + "; Elapsed Time - " + operationDuration.getDuration(TimeUnit.MILLISECONDS));
-                if (status.getStatusCode().equals(StatusCode.SUCCESS)) {
-                    getCounter(GET_OPERATION_STRING + "-SUCCESS").increment();
-                } else {
-                    if (status.getStatusCode().equals(StatusCode.TIMEDOUT)) {
-                        final MemcachedNode node = getEVCacheNode(key);
-                        if(node instanceof EVCacheNodeImpl) {
-                            getCounter(GET_OPERATION_STRING + "-" + status.getStatusCode().name(), ((EVCacheNodeImpl)node).getBaseTags()).increment();
-                        } else {
-                            getCounter(GET_OPERATION_STRING + "-"+ status.getStatusCode().name(), BasicTagList.of("HOST", node.getSocketAddress().toString())).increment();
-                        }
-                    } else {
-                        getCounter(GET_OPERATION_STRING + "-"+ status.getStatusCode().name()).increment();
-                    }
-                }
+                recordGetStatus(key, status.getStatusCode());
 
                 try {
                     if (val != null) {
@@ -140,10 +186,7 @@ public class EVCacheMemcachedClient extends MemcachedClient {
             @SuppressWarnings("unchecked")
             public void gotData(String k, int flags, byte[] data) {
 
-                if (data != null)  {
-                    if(getDataSize == null) getDataSize = EVCacheMetricsFactory.getDistributionSummary(appName + "-GetOperation-DataSize", appName, serverGroup.getName());
-                    if (getDataSize != null) getDataSize.record(data.length);
-                }
+                recordGetDataSize(data);
                 if (!key.equals(k)) log.warn("Wrong key returned. Key - {}; Returned Key {}", key, k);
                 if (tc == null) {
                     if (tcService == null) {
@@ -170,11 +213,40 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         });
         rv.setOperation(op);
         if (listener != null) rv.addListener(listener);
-        mconn.enqueueOperation(key, op);
+        enqueueOperation(primary, key, op);
         return rv;
     }
 
     public <T> EVCacheBulkGetFuture<T> asyncGetBulk(Collection<String> keys, final Transcoder<T> tc, EVCacheGetOperationListener<T> listener, String metricName) {
+        return asyncGetBulk(keys, tc, metricName, null, false);
+    }
+
+    /**
+     * Gets the keys from the nodes they were placed on by the previous hash
+     * algorithm while the continuum is being migrated. Keys that are on the
+     * same node with both algorithms are not read.
+     */
+    public <T> EVCacheBulkGetFuture<T> asyncGetBulkFromPreviousNodes(Collection<String> keys, final Transcoder<T> tc, String metricName) {
+        return asyncGetBulk(keys, tc, metricName, null, true);
+    }
+
+    /**
+     * Receives the data of the keys of a bulk get as it is read.
+     */
+    public interface DataReceiver {
+        void receive(String key, int flags, byte[] data);
+    }
+
+    /**
+     * Gets the keys and hands the data of each one to the receiver, on the
+     * thread that read it, instead of adding it to the future. The future
+     * completes once all the keys were read.
+     */
+    public EVCacheBulkGetFuture<CachedData> asyncGetBulk(Collection<String> keys, DataReceiver receiver, String metricName) {
+        return asyncGetBulk(keys, null, metricName, receiver, false);
+    }
+
+    private <T> EVCacheBulkGetFuture<T> asyncGetBulk(Collection<String> keys, final Transcoder<T> tc, String metricName, final DataReceiver receiver, boolean previousNodes) {
         final Map<String, Future<T>> m = new ConcurrentHashMap<String, Future<T>>();
 
         // Break the gets down into groups by key
@@ -185,8 +257,8 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         while (keyIter.hasNext()) {
             final String key = keyIter.next();
             StringUtils.validateKey(key, opFact instanceof BinaryOperationFactory);
-            final MemcachedNode primaryNode = locator.getPrimary(key);
-            if (primaryNode.isActive()) {
+            final MemcachedNode primaryNode = previousNodes ? getPreviousEVCacheNode(new EVCacheKey(key, key, null)) : locator.getPrimary(key);
+            if (primaryNode != null && primaryNode.isActive()) {
                 Collection<String> ks = chunks.get(primaryNode);
                 if (ks == null) {
                     ks = new ArrayList<String>();
@@ -223,7 +295,11 @@ public class EVCacheMemcachedClient extends MemcachedClient {
                     if(bulkDataSize == null) bulkDataSize = EVCacheMetricsFactory.getDistributionSummary(appName + "-BulkOperation-DataSize", appName, serverGroup.getName());
                     if (bulkDataSize != null) bulkDataSize.record(data.length);
                 }
-                m.put(k, tcService.decode(tc, new CachedData(flags, data, tc.getMaxSize())));
+                if (receiver != null) {
+                    receiver.receive(k, flags, data);
+                } else {
+                    m.put(k, tcService.decode(tc, new CachedData(flags, data, tc.getMaxSize())));
+                }
             }
 
             @Override
@@ -251,6 +327,10 @@ public class EVCacheMemcachedClient extends MemcachedClient {
     }
 
     public <T> EVCacheOperationFuture<CASValue<T>> asyncGetAndTouch(final String key, final int exp, final Transcoder<T> tc) {
+        return asyncGetAndTouch(key, exp, tc, null);
+    }
+
+    public <T> EVCacheOperationFuture<CASValue<T>> asyncGetAndTouch(final String key, final int exp, final Transcoder<T> tc, MemcachedNode primary) {
         final CountDownLatch latch = new CountDownLatch(1);
         final EVCacheOperationFuture<CASValue<T>> rv = new EVCacheOperationFuture<CASValue<T>>(key, latch, new AtomicReference<CASValue<T>>(null), connectionFactory.getOperationTimeout(), executorService, appName, serverGroup);
         final Stopwatch operationDuration = getTimer(GET_AND_TOUCH_OPERATION_STRING).start();
@@ -295,35 +375,47 @@ public class EVCacheMemcachedClient extends MemcachedClient {
             }
         });
         rv.setOperation(op);
-        mconn.enqueueOperation(key, op);
+        enqueueOperation(primary, key, op);
         return rv;
     }
 
     public <T> OperationFuture<Boolean> set(String key, int exp, T o, final Transcoder<T> tc) {
-        return asyncStore(StoreType.set, key, exp, o, tc, null);
+        return asyncStore(StoreType.set, key, exp, o, tc, null, null);
     }
 
     public OperationFuture<Boolean> set(String key, int exp, Object o) {
-        return asyncStore(StoreType.set, key, exp, o, transcoder, null);
+        return asyncStore(StoreType.set, key, exp, o, transcoder, null, null);
     }
 
-    @SuppressWarnings("unchecked")
     public <T> OperationFuture<Boolean> set(String key, int exp, T o, final Transcoder<T> tc, EVCacheLatch latch) {
-        Transcoder<T> t = (Transcoder<T>) ((tc == null) ? transcoder : tc);
-        return asyncStore(StoreType.set, key, exp, o, t, latch);
+        return set(key, exp, o, tc, latch, null);
     }
 
     @SuppressWarnings("unchecked")
+    public <T> OperationFuture<Boolean> set(String key, int exp, T o, final Transcoder<T> tc, EVCacheLatch latch, MemcachedNode primary) {
+        Transcoder<T> t = (Transcoder<T>) ((tc == null) ? transcoder : tc);
+        return asyncStore(StoreType.set, key, exp, o, t, latch, primary);
+    }
+
     public <T> OperationFuture<Boolean> replace(String key, int exp, T o, final Transcoder<T> tc, EVCacheLatch latch) {
+        return replace(key, exp, o, tc, latch, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> OperationFuture<Boolean> replace(String key, int exp, T o, final Transcoder<T> tc, EVCacheLatch latch, MemcachedNode primary) {
         Transcoder<T> t = (Transcoder<T>) ((tc == null) ? transcoder : tc);
-        return asyncStore(StoreType.replace, key, exp, o, t, latch);
+        return asyncStore(StoreType.replace, key, exp, o, t, latch, primary);
     }
 
     public <T> OperationFuture<Boolean> add(String key, int exp, T o, Transcoder<T> tc) {
-        return asyncStore(StoreType.add, key, exp, o, tc, null);
+        return asyncStore(StoreType.add, key, exp, o, tc, null, null);
     }
 
     public OperationFuture<Boolean> delete(String key, EVCacheLatch evcacheLatch) {
+        return delete(key, evcacheLatch, null);
+    }
+
+    public OperationFuture<Boolean> delete(String key, EVCacheLatch evcacheLatch, MemcachedNode primary) {
         final CountDownLatch latch = new CountDownLatch(1);
         final OperationFuture<Boolean> rv = new OperationFuture<Boolean>(key, latch, connectionFactory.getOperationTimeout(), executorService);
         final Stopwatch operationDuration = getTimer(DELETE_STRING).start();
@@ -363,11 +455,15 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         final DeleteOperation op = opFact.delete(key, callback);
         rv.setOperation(op);
         if (evcacheLatch != null && evcacheLatch instanceof EVCacheLatchImpl && !client.isInWriteOnly()) ((EVCacheLatchImpl) evcacheLatch).addFuture(rv);
-        mconn.enqueueOperation(key, op);
+        enqueueOperation(primary, key, op);
         return rv;
     }
 
     public <T> OperationFuture<Boolean> touch(final String key, final int exp, EVCacheLatch evcacheLatch) {
+        return touch(key, exp, evcacheLatch, null);
+    }
+
+    public <T> OperationFuture<Boolean> touch(final String key, final int exp, EVCacheLatch evcacheLatch, MemcachedNode primary) {
         final CountDownLatch latch = new CountDownLatch(1);
         final OperationFuture<Boolean> rv = new OperationFuture<Boolean>(key, latch, connectionFactory.getOperationTimeout(), executorService);
         final Stopwatch operationDuration = getTimer(TOUCH_OPERATION_STRING).start();
@@ -401,12 +497,16 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         });
         rv.setOperation(op);
         if (evcacheLatch != null && evcacheLatch instanceof EVCacheLatchImpl && !client.isInWriteOnly()) ((EVCacheLatchImpl) evcacheLatch).addFuture(rv);
-        mconn.enqueueOperation(key, op);
+        enqueueOperation(primary, key, op);
         return rv;
     }
 
 
     public <T> OperationFuture<Boolean> asyncAppendOrAdd(final String key, int exp, CachedData co, EVCacheLatch evcacheLatch) {
+        return asyncAppendOrAdd(key, exp, co, evcacheLatch, null);
+    }
+
+    public <T> OperationFuture<Boolean> asyncAppendOrAdd(final String key, int exp, CachedData co, EVCacheLatch evcacheLatch, MemcachedNode primary) {
         final CountDownLatch latch = new CountDownLatch(1);
         final OperationFuture<Boolean> rv = new EVCacheOperationFuture<Boolean>(key, latch, new AtomicReference<Boolean>(null), connectionFactory.getOperationTimeout(), executorService, appName, serverGroup);
         final Stopwatch operationDuration = getTimer(AOA_STRING).start();
@@ -475,7 +575,7 @@ public class EVCacheMemcachedClient extends MemcachedClient {
                                     }
                                 });
                                 rv.setOperation(op);
-                                mconn.enqueueOperation(key, op);
+                                enqueueOperation(primary, key, op);
                             }
                         }
 
@@ -494,16 +594,51 @@ public class EVCacheMemcachedClient extends MemcachedClient {
                         }
                     });
                     rv.setOperation(op);
-                    mconn.enqueueOperation(key, op);
+                    enqueueOperation(primary, key, op);
                 }
             }
         });
         rv.setOperation(op);
-        mconn.enqueueOperation(key, op);
+        enqueueOperation(primary, key, op);
         if (evcacheLatch != null && evcacheLatch instanceof EVCacheLatchImpl && !client.isInWriteOnly()) ((EVCacheLatchImpl) evcacheLatch).addFuture(rv);
         return rv;
     }
 
+    /*
+     * Starts the timer of a get, the gets sent in a batch are timed by caller.
+     */
+    Stopwatch startGetTimer() {
+        return getTimer(GET_OPERATION_STRING).start();
+    }
+
+    /*
+     * Counts the status of a get of the key, whether it was sent alone or in
+     * a batch.
+     */
+    void recordGetStatus(String key, StatusCode statusCode) {
+        if (statusCode.equals(StatusCode.SUCCESS)) {
+            getCounter(GET_OPERATION_STRING + "-SUCCESS").increment();
+        } else {
+            if (statusCode.equals(StatusCode.TIMEDOUT)) {
+                final MemcachedNode node = getEVCacheNode(key);
+                if(node instanceof EVCacheNodeImpl) {
+                    getCounter(GET_OPERATION_STRING + "-" + statusCode.name(), ((EVCacheNodeImpl)node).getBaseTags()).increment();
+                } else {
+                    getCounter(GET_OPERATION_STRING + "-"+ statusCode.name(), BasicTagList.of("HOST", node.getSocketAddress().toString())).increment();
+                }
+            } else {
+                getCounter(GET_OPERATION_STRING + "-"+ statusCode.name()).increment();
+            }
+        }
+    }
+
+    void recordGetDataSize(byte[] data) {
+        if (data != null)  {
+            if(getDataSize == null) getDataSize = EVCacheMetricsFactory.getDistributionSummary(appName + "-GetOperation-DataSize", appName, serverGroup.getName());
+            if (getDataSize != null) getDataSize.record(data.length);
+        }
+    }
+
     private Timer getTimer(String name) {
         Timer timer = timerMap.get(name);
         if(timer != null) return timer;
@@ -527,13 +662,40 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         return getCounter(counterMetric, null);
     }
 
-    private <T> OperationFuture<Boolean> asyncStore(final StoreType storeType, final String key, int exp, T value, Transcoder<T> tc, EVCacheLatch evcacheLatch) {
+    private <T> OperationFuture<Boolean> asyncStore(final StoreType storeType, final String key, int exp, T value, Transcoder<T> tc, EVCacheLatch evcacheLatch, MemcachedNode primary) {
         final CachedData co;
         if (value instanceof CachedData) {
             co = (CachedData) value;
         } else {
             co = tc.encode(value);
         }
+        return asyncStore(storeType, key, exp, co.getFlags(), co.getData(), 0, co.getData().length, evcacheLatch, primary);
+    }
+
+    /**
+     * Stores <code>length</code> bytes of the data starting at
+     * <code>offset</code> with the given flags. The bytes are written to the
+     * request as is, no array is created for them.
+     */
+    public OperationFuture<Boolean> store(StoreType storeType, String key, int exp, int flags, byte[] data, int offset, int length, EVCacheLatch evcacheLatch) {
+        return asyncStore(storeType, key, exp, flags, data, offset, length, evcacheLatch, null);
+    }
+
+    /**
+     * Stores <code>length</code> bytes of the data starting at
+     * <code>offset</code> once all the given writes have succeeded. The data
+     * is not stored if one of them fails.
+     */
+    public OperationFuture<Boolean> storeAfter(OperationFuture<Boolean>[] dependencies, final StoreType storeType, final String key, final int exp, final int flags, final byte[] data, final int offset, final int length) {
+        return new EVCacheDependentFuture(key, dependencies, new Callable<OperationFuture<Boolean>>() {
+            @Override
+            public OperationFuture<Boolean> call() throws Exception {
+                return asyncStore(storeType, key, exp, flags, data, offset, length, null, null);
+            }
+        }, connectionFactory.getOperationTimeout(), executorService);
+    }
+
+    private OperationFuture<Boolean> asyncStore(final StoreType storeType, final String key, int exp, int flags, byte[] data, int offset, int length, EVCacheLatch evcacheLatch, MemcachedNode primary) {
         final CountDownLatch latch = new CountDownLatch(1);
         final String operationStr;
         final String operationSuccessStr;
@@ -550,7 +712,7 @@ public class EVCacheMemcachedClient extends MemcachedClient {
 
         final Timer timer = getTimer(operationStr);
         final EVCacheOperationFuture<Boolean> rv = new EVCacheOperationFuture<Boolean>(key, latch, new AtomicReference<Boolean>(null), connectionFactory.getOperationTimeout(), executorService, appName, serverGroup);
-        final Operation op = opFact.store(storeType, key, co.getFlags(), exp, co.getData(), new StoreOperation.Callback() {
+        final StoreOperation.Callback callback = new StoreOperation.Callback() {
             
             final Stopwatch operationDuration = timer.start();
 
@@ -591,10 +753,21 @@ public class EVCacheMemcachedClient extends MemcachedClient {
                 latch.countDown();
                 rv.signalComplete();
             }
-        });
+        };
+        final Operation op;
+        if (opFact instanceof BinaryOperationFactory && pooledWrites.get().booleanValue()) {
+            // the request is written from a pooled buffer, released once it was sent
+            op = new EVCacheSliceStoreOperationImpl(storeType, key, flags, exp, data, offset, length, ByteBufferPool.WRITE_BUFFERS, callback);
+        } else if (offset == 0 && length == data.length) {
+            op = opFact.store(storeType, key, flags, exp, data, callback);
+        } else if (opFact instanceof BinaryOperationFactory) {
+            op = new EVCacheSliceStoreOperationImpl(storeType, key, flags, exp, data, offset, length, callback);
+        } else {
+            op = opFact.store(storeType, key, flags, exp, Arrays.copyOfRange(data, offset, offset + length), callback);
+        }
         rv.setOperation(op);
         if (evcacheLatch != null && evcacheLatch instanceof EVCacheLatchImpl && !client.isInWriteOnly()) ((EVCacheLatchImpl) evcacheLatch).addFuture(rv);
-        mconn.enqueueOperation(key, op);
+        enqueueOperation(primary, key, op);
         return rv;
     }
 
@@ -602,10 +775,14 @@ public class EVCacheMemcachedClient extends MemcachedClient {
         return appName + "_" + zone + " _" + id;
     }
 
-    @SuppressWarnings("unchecked")
     public <T> OperationFuture<Boolean> add(String key, int exp, T o, final Transcoder<T> tc, EVCacheLatch latch) {
+        return add(key, exp, o, tc, latch, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> OperationFuture<Boolean> add(String key, int exp, T o, final Transcoder<T> tc, EVCacheLatch latch, MemcachedNode primary) {
         Transcoder<T> t = (Transcoder<T>) ((tc == null) ? transcoder : tc);
-        return asyncStore(StoreType.add, key, exp, o, t, latch);
+        return asyncStore(StoreType.add, key, exp, o, t, latch, primary);
     }
 
     public long incr(String key, long by, long def, int exp) {
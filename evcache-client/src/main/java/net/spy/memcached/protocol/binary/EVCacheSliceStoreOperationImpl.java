@@ -0,0 +1,111 @@
+package net.spy.memcached.protocol.binary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.netflix.evcache.util.ByteBufferPool;
+
+import net.spy.memcached.KeyUtil;
+import net.spy.memcached.ops.StoreOperation;
+import net.spy.memcached.ops.StoreType;
+
+/**
+ * A binary store operation of a slice of an array. The slice is copied once,
+ * into the buffer that is written to the socket, so a large value can be
+ * stored as several chunks without creating an array for each chunk.
+ * <p>
+ * With a pool, that buffer is taken from it and released by
+ * {@link EVCacheWriteOperationQueue} once the request was written.
+ */
+public class EVCacheSliceStoreOperationImpl extends StoreOperationImpl {
+
+    private final StoreType storeType;
+    private final byte[] source;
+    private final int offset, length;
+    private final ByteBufferPool pool;
+    private volatile ByteBuffer pooled;
+
+    public EVCacheSliceStoreOperationImpl(StoreType storeType, String key, int flags, int exp, byte[] source, int offset, int length, StoreOperation.Callback cb) {
+        this(storeType, key, flags, exp, source, offset, length, null, cb);
+    }
+
+    public EVCacheSliceStoreOperationImpl(StoreType storeType, String key, int flags, int exp, byte[] source, int offset, int length, ByteBufferPool pool, StoreOperation.Callback cb) {
+        super(storeType, key, flags, exp, EMPTY_BYTES, 0, cb);
+        if (offset < 0 || length < 0 || offset + length > source.length) throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + source.length);
+        this.storeType = storeType;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.pool = pool;
+    }
+
+    /*
+     * Builds the same request as prepareBuffer, with the slice as the value.
+     */
+    @Override
+    public void initialize() {
+        final byte[] keyBytes = KeyUtil.getKeyBytes(key);
+        final int size = MIN_RECV_PACKET + EXTRA_LEN + keyBytes.length + length;
+        final ByteBuffer bb;
+        if (pool == null) {
+            bb = ByteBuffer.allocate(size);
+        } else {
+            // an operation retried before it was written is initialized again
+            releaseBuffer();
+            bb = pool.acquire(size);
+            pooled = bb;
+        }
+        bb.put(REQ_MAGIC);
+        bb.put(opcode(storeType));
+        bb.putShort((short) keyBytes.length);
+        bb.put((byte) EXTRA_LEN);
+        bb.put((byte) 0); // data type
+        bb.putShort(vbucket);
+        bb.putInt(keyBytes.length + length + EXTRA_LEN);
+        bb.putInt(opaque);
+        bb.putLong(0); // cas
+        bb.putInt(getFlags());
+        bb.putInt(getExpiration());
+        bb.put(keyBytes);
+        bb.put(source, offset, length);
+        bb.flip();
+        setBuffer(bb);
+    }
+
+    /**
+     * Returns the buffer to the pool, once the request was written.
+     */
+    void releaseBuffer() {
+        final ByteBuffer bb = pooled;
+        if (bb == null) return;
+        pooled = null;
+        pool.release(bb);
+    }
+
+    private static byte opcode(StoreType storeType) {
+        switch (storeType) {
+        case set:
+            return 0x01;
+        case add:
+            return 0x02;
+        case replace:
+            return 0x03;
+        default:
+            throw new IllegalArgumentException("Unsupported store type " + storeType);
+        }
+    }
+
+    /**
+     * Returns a copy of the slice, it is only needed when the operation is
+     * cloned to be sent to another node.
+     */
+    @Override
+    public byte[] getData() {
+        return Arrays.copyOfRange(source, offset, offset + length);
+    }
+
+    @Override
+    public String toString() {
+        return "Cmd: " + storeType + " Key: " + key + " Flags: " + getFlags() + " Exp: " + getExpiration() + " Slice: " + offset + "+" + length;
+    }
+}
@@ -0,0 +1,26 @@
+package net.spy.memcached.protocol.binary;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.spy.memcached.ops.Operation;
+import net.spy.memcached.ops.OperationState;
+
+/**
+ * The write queue of a node. An operation is removed from it once its
+ * request was copied to the write buffer of the node, at which point the
+ * pooled buffer of the request, if any, is released.
+ */
+public class EVCacheWriteOperationQueue extends LinkedBlockingQueue<Operation> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Operation remove() {
+        final Operation op = super.remove();
+        if (op instanceof EVCacheSliceStoreOperationImpl) {
+            final OperationState state = op.getState();
+            // operations removed before they were written are not released
+            if (state == OperationState.READING || state == OperationState.COMPLETE) ((EVCacheSliceStoreOperationImpl) op).releaseBuffer();
+        }
+        return op;
+    }
+}
@@ -0,0 +1,205 @@
+package com.netflix.evcache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.codec.CompressionCodecs;
+import com.netflix.evcache.codec.DeflateCompressionCodec;
+import com.netflix.evcache.codec.DictionaryCompressionCodec;
+import com.netflix.evcache.codec.DictionaryTrainer;
+import com.netflix.evcache.codec.EVCacheCompressionCodec;
+import com.netflix.evcache.codec.GzipCompressionCodec;
+import com.netflix.evcache.test.EmbeddedMemcachedServer;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.SerializingTranscoder;
+
+/**
+ * Values are compressed with the codec of the app, decompressed with the
+ * codec they were written with, and not compressed when they do not shrink.
+ */
+public class EVCacheTranscoderTest {
+    private static final int CODEC_MASK = 7 << 2;
+
+    private static String text(int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        final Random random = new Random(size);
+        while (sb.length() < size) sb.append("field").append(random.nextInt(100)).append('=').append(random.nextInt(10)).append(';');
+        return sb.substring(0, size);
+    }
+
+    private static String record(Random random) {
+        return "{\"profileId\":" + random.nextInt(1000000) + ",\"country\":\"" + (random.nextBoolean() ? "US" : "BR")
+                + "\",\"maturityLevel\":" + random.nextInt(5) * 100 + ",\"language\":\"en-US\",\"experience\":\"standard\""
+                + ",\"lastPlayedTitleId\":" + random.nextInt(90000000) + ",\"autoplayNextEpisode\":" + random.nextBoolean()
+                + ",\"autoplayPreviews\":" + random.nextBoolean() + ",\"subtitlePreference\":{\"language\":\"es\",\"size\":\"MEDIUM\"}"
+                + ",\"createdAt\":" + (1500000000000L + random.nextInt()) + ",\"isKids\":" + random.nextBoolean() + "}";
+    }
+
+    @Test
+    public void testTrainedDictionary() throws Exception {
+        final Random random = new Random(7);
+        final List<byte[]> samples = new ArrayList<byte[]>();
+        for (int i = 0; i < 1000; i++) {
+            samples.add(record(random).getBytes("UTF-8"));
+        }
+        final File file = File.createTempFile("evcache", ".dict");
+        file.deleteOnExit();
+        Files.write(file.toPath(), DictionaryTrainer.train(samples, 4096));
+        EmbeddedMemcachedServer.setProperty("DICTIONARY_APP.compression.dictionary.1", file.getAbsolutePath());
+        EmbeddedMemcachedServer.setProperty("DICTIONARY_APP.compression.dictionary.version", "1");
+        final EVCacheTranscoder transcoder = new EVCacheTranscoder("DICTIONARY_APP");
+        assertEquals(transcoder.getDictionaryCodec().getVersion(), 1);
+        // the transcoders of an app share its dictionaries
+        assertSame(new EVCacheTranscoder("DICTIONARY_APP").getDictionaryCodec(), transcoder.getDictionaryCodec());
+
+        final String value = record(random);
+        final byte[] bytes = value.getBytes("UTF-8");
+        final CachedData cd = transcoder.encode(bytes);
+        assertEquals(cd.getFlags() & CODEC_MASK, DictionaryCompressionCodec.ID << 2);
+        assertEquals((byte[]) transcoder.decode(cd), bytes);
+        final byte[] deflated = new DeflateCompressionCodec().compress(bytes, -1);
+        assertTrue(cd.getData().length * 2 < bytes.length, bytes.length + " bytes compressed to " + cd.getData().length);
+        assertTrue(cd.getData().length * 2 < deflated.length, bytes.length + " bytes compressed to " + cd.getData().length + ", deflated to " + deflated.length);
+        assertEquals(transcoder.decode(transcoder.encode(value)), value);
+
+        // the values of the previous version are read while its dictionary is loaded
+        transcoder.getDictionaryCodec().setDictionary(2, "\"autoplayPreviews\":".getBytes("UTF-8"));
+        EmbeddedMemcachedServer.setProperty("DICTIONARY_APP.compression.dictionary.version", "2");
+        assertEquals((cd.getFlags() >>> 5) & 7, 1);
+        assertEquals((transcoder.encode(bytes).getFlags() >>> 5) & 7, 2);
+        assertEquals((byte[]) transcoder.decode(cd), bytes);
+        EmbeddedMemcachedServer.setProperty("DICTIONARY_APP.compression.dictionary.1", "");
+        assertNull(transcoder.decode(cd));
+        // transcoders without the dictionary miss
+        assertNull(new EVCacheTranscoder().decode(cd));
+    }
+
+    @Test
+    public void testLegacyGzipIsDecoded() throws IOException {
+        final SerializingTranscoder legacy = new SerializingTranscoder();
+        legacy.setCompressionThreshold(100);
+        final String value = text(5000);
+        final CachedData cd = legacy.encode(value);
+        assertEquals(cd.getFlags() & 2, 2);
+        assertEquals(new EVCacheTranscoder().decode(cd), value);
+
+        // gzip is still the default, so older clients read the values
+        final CachedData encoded = new EVCacheTranscoder().encode(value);
+        assertEquals(encoded.getFlags() & CODEC_MASK, 0);
+        assertEquals(legacy.decode(encoded), value);
+
+        // the same bytes as spymemcached
+        final byte[] bytes = text(3000).getBytes();
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(bytes);
+        }
+        assertEquals(new GzipCompressionCodec().compress(bytes, -1), bos.toByteArray());
+    }
+
+    @Test
+    public void testDeflateByApp() {
+        EmbeddedMemcachedServer.setProperty("DEFLATE_APP.compression.codec", "deflate");
+        EmbeddedMemcachedServer.setProperty("DEFLATE_APP.compression.level", "1");
+        final EVCacheTranscoder transcoder = new EVCacheTranscoder("DEFLATE_APP");
+        final String value = text(5000);
+        final CachedData cd = transcoder.encode(value);
+        assertEquals(cd.getFlags() & CODEC_MASK, DeflateCompressionCodec.ID << 2);
+        assertTrue(cd.getData().length < 5000);
+        // any transcoder reads the values of any codec
+        assertEquals(new EVCacheTranscoder().decode(cd), value);
+
+        final byte[] bytes = text(300).getBytes();
+        assertEquals((byte[]) transcoder.decode(transcoder.encode(bytes)), bytes);
+        assertEquals(transcoder.decode(transcoder.encode(Integer.valueOf(42))), Integer.valueOf(42));
+    }
+
+    private static CachedData withLength(CachedData cd, int length) {
+        final byte[] data = cd.getData().clone();
+        data[0] = (byte) (length >>> 24);
+        data[1] = (byte) (length >>> 16);
+        data[2] = (byte) (length >>> 8);
+        data[3] = (byte) length;
+        return new CachedData(cd.getFlags(), data, CachedData.MAX_SIZE);
+    }
+
+    @Test
+    public void testCorruptLengthIsAMiss() {
+        EmbeddedMemcachedServer.setProperty("DEFLATE_APP.compression.codec", "deflate");
+        final CachedData cd = new EVCacheTranscoder("DEFLATE_APP").encode(text(5000));
+        assertEquals(cd.getFlags() & CODEC_MASK, DeflateCompressionCodec.ID << 2);
+        // lengths the data cannot inflate to are rejected before allocating
+        for (int length : new int[] { -1, Integer.MAX_VALUE, 5000 * 1000 }) {
+            assertNull(new EVCacheTranscoder().decode(withLength(cd, length)));
+        }
+        // as are values larger than the max size of the transcoder
+        final EVCacheTranscoder small = new EVCacheTranscoder(4096);
+        assertNull(small.decode(cd));
+        assertNull(small.decode(new EVCacheTranscoder().encode(text(5000))));
+        assertEquals(new EVCacheTranscoder().decode(cd), text(5000));
+    }
+
+    @Test
+    public void testUnknownCodecIsAMiss() {
+        final CachedData cd = new CachedData(2 | (6 << 2), new byte[] { 1, 2, 3 }, CachedData.MAX_SIZE);
+        assertNull(new EVCacheTranscoder().decode(cd));
+    }
+
+    @Test
+    public void testValuesThatDoNotShrinkAreNotCompressed() {
+        final AtomicInteger compressions = new AtomicInteger();
+        final DeflateCompressionCodec deflate = new DeflateCompressionCodec();
+        CompressionCodecs.register(new EVCacheCompressionCodec() {
+            public int getId() {
+                return 7;
+            }
+
+            public String getName() {
+                return "counting";
+            }
+
+            public byte[] compress(byte[] data, int level) {
+                compressions.incrementAndGet();
+                return deflate.compress(data, level);
+            }
+
+            public byte[] decompress(byte[] data) throws IOException {
+                return deflate.decompress(data);
+            }
+        });
+        EmbeddedMemcachedServer.setProperty("COUNTING_APP.compression.codec", "counting");
+        final EVCacheTranscoder transcoder = new EVCacheTranscoder("COUNTING_APP");
+
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final byte[] bytes = new byte[4000];
+            random.nextBytes(bytes);
+            assertEquals((byte[]) transcoder.decode(transcoder.encode(bytes)), bytes);
+        }
+        assertTrue(compressions.get() < 100, "compressions : " + compressions.get());
+
+        // values of another class are still compressed
+        compressions.set(0);
+        for (int i = 0; i < 100; i++) {
+            final CachedData cd = transcoder.encode(text(4000 + i));
+            assertNotEquals(cd.getFlags() & CODEC_MASK, 0);
+        }
+        assertEquals(compressions.get(), 100);
+    }
+}
@@ -0,0 +1,123 @@
+package com.netflix.evcache.invalidation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.test.EmbeddedMemcachedServer;
+
+/**
+ * Checks that {@link EVCacheInvalidationBus} batches and coalesces the keys it
+ * publishes and that the keys reach the other instances of the app.
+ */
+public class EVCacheInvalidationBusTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @AfterClass
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /*
+     * Keeps the messages that were published.
+     */
+    private static final class RecordingTransport implements EVCacheInvalidationTransport {
+        private final List<byte[]> messages = new CopyOnWriteArrayList<byte[]>();
+
+        public void publish(String appName, byte[] message) {
+            messages.add(message);
+        }
+
+        public void subscribe(String appName, Receiver receiver) {
+        }
+
+        public void unsubscribe(String appName) {
+        }
+
+        public void close() {
+        }
+    }
+
+    private static void await(Set<String> keys, int size) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 5000;
+        while (keys.size() < size && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testEncodeAndDecode() throws Exception {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            keys.add("app:key_" + i);
+        }
+        final List<byte[]> messages = EVCacheInvalidationBus.encode(1, keys);
+        assertTrue(messages.size() > 1);
+        final List<String> decoded = new ArrayList<String>();
+        for (byte[] message : messages) {
+            assertTrue(message.length < EVCacheInvalidationBus.MAX_BATCH_BYTES);
+            decoded.addAll(EVCacheInvalidationBus.decode(2, message));
+            // a bus ignores the messages it sent
+            assertNull(EVCacheInvalidationBus.decode(1, message));
+        }
+        assertEquals(decoded, keys);
+    }
+
+    @Test
+    public void testKeysAreCoalescedWithinTheWindow() throws Exception {
+        // the window does not end during the test, the keys are sent by the flush below
+        EmbeddedMemcachedServer.setProperty("COALESCE_APP.inmemory.invalidation.window.ms", "60000");
+        final RecordingTransport transport = new RecordingTransport();
+        final EVCacheInvalidationBus bus = new EVCacheInvalidationBus("COALESCE_APP", transport, executor, key -> {});
+        for (int i = 0; i < 100; i++) {
+            bus.publish("key_" + (i % 3));
+        }
+        bus.flush();
+        assertEquals(transport.messages.size(), 1);
+        assertEquals(new HashSet<String>(EVCacheInvalidationBus.decode(0, transport.messages.get(0))), new HashSet<String>(Arrays.asList("key_0", "key_1", "key_2")));
+        assertEquals(EVCacheInvalidationBus.decode(0, transport.messages.get(0)).size(), 3);
+        bus.close();
+    }
+
+    @Test
+    public void testInvalidationsReachOtherInstances() throws Exception {
+        final InetAddress group = InetAddress.getByName("239.255.77.78");
+        final NetworkInterface loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+        final int port = 7000 + (int) (System.nanoTime() % 1000);
+        final MulticastInvalidationTransport first = new MulticastInvalidationTransport(group, port, loopback, 0);
+        final MulticastInvalidationTransport second = new MulticastInvalidationTransport(group, port, loopback, 0);
+        try {
+            final Set<String> firstKeys = ConcurrentHashMap.newKeySet(), secondKeys = ConcurrentHashMap.newKeySet(), otherAppKeys = ConcurrentHashMap.newKeySet();
+            final EVCacheInvalidationBus firstBus = new EVCacheInvalidationBus("BUS_APP", first, executor, firstKeys::add);
+            new EVCacheInvalidationBus("BUS_APP", second, executor, secondKeys::add);
+            new EVCacheInvalidationBus("OTHER_BUS_APP", second, executor, otherAppKeys::add);
+
+            firstBus.publish("key_1");
+            firstBus.publish("key_2");
+            await(secondKeys, 2);
+            assertEquals(secondKeys, new HashSet<String>(Arrays.asList("key_1", "key_2")));
+            Thread.sleep(100);
+            assertTrue(firstKeys.isEmpty());
+            assertTrue(otherAppKeys.isEmpty());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.netflix.evcache.pool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.pool.EVCacheClient.ChunkInfo;
+
+/**
+ * Checks that {@link ChunkAssembler} puts chunks that arrive in any order in
+ * place and checksums the whole value.
+ */
+public class ChunkAssemblerTest {
+
+    private static final int CHUNK_SIZE = 100;
+
+    private static ChunkInfo chunkInfo(byte[] value) {
+        final CRC32 crc = new CRC32();
+        crc.update(value, 0, value.length);
+        final int last = value.length % CHUNK_SIZE;
+        final int chunks = value.length / CHUNK_SIZE + (last > 0 ? 1 : 0) + 1;
+        return new ChunkInfo(chunks, CHUNK_SIZE, last == 0 ? CHUNK_SIZE : last, 0, "key", crc.getValue());
+    }
+
+    private static byte[] chunk(byte[] value, int index) {
+        return Arrays.copyOfRange(value, index * CHUNK_SIZE, Math.min(value.length, (index + 1) * CHUNK_SIZE));
+    }
+
+    @Test
+    public void testChunksInAnyOrder() {
+        final byte[] value = new byte[1234];
+        new Random(1).nextBytes(value);
+        final ChunkInfo ci = chunkInfo(value);
+        final List<String> keys = EVCacheClient.getChunkKeys(ci);
+        assertEquals(keys.get(0), "key_01");
+        assertEquals(keys.size(), 13);
+
+        final ChunkAssembler assembler = new ChunkAssembler(ci, keys);
+        for (int i = keys.size() - 1; i >= 0; i -= 2) {
+            assembler.receive(keys.get(i), 0, chunk(value, i));
+        }
+        for (int i = keys.size() - 2; i >= 0; i -= 2) {
+            assembler.receive(keys.get(i), 0, chunk(value, i));
+        }
+        assertTrue(assembler.complete());
+        assertEquals(assembler.getChecksum(), ci.getChecksum());
+        assertEquals(assembler.getData(), value);
+    }
+
+    @Test
+    public void testMissingAndShortChunks() {
+        final byte[] value = new byte[450];
+        new Random(2).nextBytes(value);
+        final ChunkInfo ci = chunkInfo(value);
+        final List<String> keys = EVCacheClient.getChunkKeys(ci);
+
+        ChunkAssembler assembler = new ChunkAssembler(ci, keys);
+        for (int i = 1; i < keys.size(); i++) {
+            assembler.receive(keys.get(i), 0, chunk(value, i));
+        }
+        assertFalse(assembler.complete());
+        assertFalse(assembler.isMalformed());
+
+        assembler = new ChunkAssembler(ci, keys);
+        for (int i = 0; i < keys.size(); i++) {
+            assembler.receive(keys.get(i), 0, (i == 2) ? new byte[10] : chunk(value, i));
+        }
+        assertFalse(assembler.complete());
+        assertTrue(assembler.isMalformed());
+    }
+}
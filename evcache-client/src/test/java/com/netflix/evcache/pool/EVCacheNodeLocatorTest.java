@@ -0,0 +1,192 @@
+package com.netflix.evcache.pool;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.google.common.hash.Hashing;
+import com.netflix.evcache.EVCacheKey;
+
+import net.spy.memcached.DefaultHashAlgorithm;
+import net.spy.memcached.EVCacheMemcachedNodeROImpl;
+import net.spy.memcached.HashAlgorithm;
+import net.spy.memcached.KetamaNodeLocator;
+import net.spy.memcached.MemcachedNode;
+import net.spy.memcached.util.DefaultKetamaNodeLocatorConfiguration;
+
+/**
+ * Checks the ketama ring of {@link EVCacheNodeLocator} against the
+ * spymemcached {@link KetamaNodeLocator} it was derived from.
+ */
+public class EVCacheNodeLocatorTest {
+
+    private static final int NUM_NODES = 6;
+    private List<MemcachedNode> nodes;
+    private EVCacheNodeLocator locator;
+    private KetamaNodeLocator reference;
+
+    @BeforeClass
+    public void setup() {
+        nodes = new ArrayList<MemcachedNode>();
+        for (int i = 0; i < NUM_NODES; i++) {
+            final MemcachedNode node = mock(MemcachedNode.class);
+            when(node.getSocketAddress()).thenReturn(InetSocketAddress.createUnresolved("10.0.0." + i, 11211));
+            nodes.add(node);
+        }
+        final DefaultKetamaNodeLocatorConfiguration config = new DefaultKetamaNodeLocatorConfiguration();
+        locator = new EVCacheNodeLocator("EVCACHE_LOCATOR_TEST", new ServerGroup("us-east-1a", "us-east-1a"), nodes, DefaultHashAlgorithm.KETAMA_HASH, config);
+        reference = new KetamaNodeLocator(nodes, DefaultHashAlgorithm.KETAMA_HASH, config);
+    }
+
+    @Test
+    public void testGetPrimaryMatchesKetama() {
+        for (int i = 0; i < 20000; i++) {
+            final String key = "key_" + i;
+            assertSame(locator.getPrimary(key), reference.getPrimary(key), key);
+        }
+    }
+
+    @Test
+    public void testGetPrimaryWithEVCacheKey() {
+        for (int i = 0; i < 1000; i++) {
+            final String key = "key_" + i;
+            final EVCacheKey evcKey = new EVCacheKey(key, key, null);
+            assertSame(locator.getPrimary(evcKey), locator.getPrimary(key), key);
+            assertEquals(locator.getHash(evcKey), DefaultHashAlgorithm.KETAMA_HASH.hash(key));
+        }
+        final EVCacheKey hashed = new EVCacheKey("key", "key", "hashed_key");
+        assertSame(locator.getPrimary(hashed), locator.getPrimary("hashed_key"));
+    }
+
+    @Test
+    public void testHashIsSharedAcrossServerGroups() {
+        final AtomicInteger hashCount = new AtomicInteger();
+        final HashAlgorithm countingHash = new HashAlgorithm() {
+            public long hash(String k) {
+                hashCount.incrementAndGet();
+                return DefaultHashAlgorithm.KETAMA_HASH.hash(k);
+            }
+        };
+        final DefaultKetamaNodeLocatorConfiguration config = new DefaultKetamaNodeLocatorConfiguration();
+        final EVCacheNodeLocator sg1 = new EVCacheNodeLocator("EVCACHE_LOCATOR_TEST", new ServerGroup("us-east-1a", "us-east-1a"), nodes, countingHash, config);
+        final EVCacheNodeLocator sg2 = new EVCacheNodeLocator("EVCACHE_LOCATOR_TEST", new ServerGroup("us-east-1b", "us-east-1b"), nodes, countingHash, config);
+        hashCount.set(0);
+
+        final EVCacheKey evcKey = new EVCacheKey("key", "key", null);
+        final MemcachedNode node = sg1.getPrimary(evcKey);
+        assertSame(sg2.getPrimary(evcKey), node);
+        assertSame(sg1.getPrimary(evcKey), node);
+        assertEquals(hashCount.get(), 1);
+    }
+
+    @Test
+    public void testHashAlgorithms() {
+        assertEquals(EVCacheHashAlgorithm.murmur3_32(new byte[0]), 0);
+        assertEquals(EVCacheHashAlgorithm.murmur3_32("hello".getBytes(StandardCharsets.UTF_8)), 0x248bfa47);
+        for (int i = 0; i < 100; i++) {
+            final byte[] data = ("key_" + i + "_abcdefghijklmnopqrstuvwxyz".substring(i % 26)).getBytes(StandardCharsets.UTF_8);
+            assertEquals(EVCacheHashAlgorithm.murmur3_32(data), Hashing.murmur3_32().hashBytes(data).asInt());
+        }
+
+        assertEquals(EVCacheHashAlgorithm.xxhash64(new byte[0]), 0xEF46DB3751D8E999L);
+        assertEquals(EVCacheHashAlgorithm.xxhash64("a".getBytes(StandardCharsets.UTF_8)), 0xD24EC4F1A98C6E5BL);
+        assertEquals(EVCacheHashAlgorithm.xxhash64("abc".getBytes(StandardCharsets.UTF_8)), 0x44BC2CF5AD770999L);
+        assertEquals(EVCacheHashAlgorithm.xxhash64("Nobody inspects the spammish repetition".getBytes(StandardCharsets.UTF_8)), 0xFBCEA83C8A378BF1L);
+
+        assertSame(EVCacheHashAlgorithm.getHashAlgorithm("murmur3_hash", null), EVCacheHashAlgorithm.MURMUR3_HASH);
+        assertSame(EVCacheHashAlgorithm.getHashAlgorithm("FNV1A_32_HASH", null), DefaultHashAlgorithm.FNV1A_32_HASH);
+        assertSame(EVCacheHashAlgorithm.getHashAlgorithm("unknown", DefaultHashAlgorithm.KETAMA_HASH), DefaultHashAlgorithm.KETAMA_HASH);
+    }
+
+    @Test
+    public void testMigration() {
+        final DefaultKetamaNodeLocatorConfiguration config = new DefaultKetamaNodeLocatorConfiguration();
+        final ServerGroup sg = new ServerGroup("us-east-1a", "us-east-1a");
+        final EVCacheNodeLocator xxhash = new EVCacheNodeLocator("EVCACHE_LOCATOR_TEST", sg, nodes, EVCacheHashAlgorithm.XXHASH64_HASH, config);
+        final EVCacheNodeLocator migrating = new EVCacheNodeLocator("EVCACHE_LOCATOR_TEST", sg, nodes, EVCacheHashAlgorithm.XXHASH64_HASH, DefaultHashAlgorithm.KETAMA_HASH, config);
+        assertFalse(xxhash.isMigrating());
+        assertTrue(migrating.isMigrating());
+        assertTrue(((EVCacheNodeLocator) migrating.getReadonlyCopy()).isMigrating());
+
+        int moved = 0;
+        for (int i = 0; i < 1000; i++) {
+            final String key = "key_" + i;
+            final EVCacheKey evcKey = new EVCacheKey(key, key, null);
+            assertSame(migrating.getPrimary(key), xxhash.getPrimary(key));
+            assertSame(migrating.getPrimary(evcKey), xxhash.getPrimary(key));
+            assertNull(xxhash.getPreviousPrimary(evcKey));
+
+            final MemcachedNode previous = migrating.getPreviousPrimary(evcKey);
+            if (previous == null) {
+                assertSame(reference.getPrimary(key), migrating.getPrimary(key));
+            } else {
+                assertSame(previous, reference.getPrimary(key));
+                moved++;
+            }
+        }
+        // with 6 nodes roughly 5 out of 6 keys move to another node
+        assertTrue(moved > 700 && moved < 950, "moved : " + moved);
+    }
+
+    @Test
+    public void testGetNodeForKey() {
+        final Map<Long, MemcachedNode> ring = locator.getKetamaNodeMap();
+        assertEquals(ring.size(), NUM_NODES * 160);
+
+        long previous = -1;
+        for (Map.Entry<Long, MemcachedNode> entry : ring.entrySet()) {
+            final long hash = entry.getKey().longValue();
+            assertSame(locator.getNodeForKey(hash), entry.getValue());
+            if (hash - 1 > previous) assertSame(locator.getNodeForKey(hash - 1), entry.getValue());
+            previous = hash;
+        }
+
+        // past the last point wraps around to the first one
+        final MemcachedNode first = ring.values().iterator().next();
+        assertEquals(locator.getMaxKey(), previous);
+        assertSame(locator.getNodeForKey(previous + 1), first);
+        assertSame(locator.getNodeForKey(Long.MAX_VALUE), first);
+        assertSame(locator.getNodeForKey(0), first);
+    }
+
+    @Test
+    public void testSequence() {
+        final Set<MemcachedNode> seen = new HashSet<MemcachedNode>();
+        int count = 0;
+        for (Iterator<MemcachedNode> it = locator.getSequence("key"); it.hasNext(); count++) {
+            seen.add(it.next());
+        }
+        assertEquals(count, NUM_NODES * 160);
+        assertEquals(seen.size(), NUM_NODES);
+    }
+
+    @Test
+    public void testReadonlyCopy() {
+        final EVCacheNodeLocator copy = (EVCacheNodeLocator) locator.getReadonlyCopy();
+        assertEquals(copy.getAll().size(), NUM_NODES);
+        assertEquals(copy.getMaxKey(), locator.getMaxKey());
+        for (int i = 0; i < 1000; i++) {
+            final String key = "key_" + i;
+            final MemcachedNode node = copy.getPrimary(key);
+            assertTrue(node instanceof EVCacheMemcachedNodeROImpl);
+            assertEquals(node.getSocketAddress(), locator.getPrimary(key).getSocketAddress());
+        }
+    }
+}
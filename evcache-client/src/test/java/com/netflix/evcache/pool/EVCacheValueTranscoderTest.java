@@ -0,0 +1,136 @@
+package com.netflix.evcache.pool;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.util.Random;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.EVCacheTranscoder;
+import com.netflix.evcache.test.EmbeddedMemcachedServer;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * The values kept under hashed keys are written in a binary envelope whose
+ * value is read without being copied out of it, and the Java serialized
+ * envelopes of older clients are still read.
+ */
+public class EVCacheValueTranscoderTest {
+
+    @BeforeClass
+    public void setup() {
+        EmbeddedMemcachedServer.setProperty("ENVELOPE_APP.value.envelope.binary", "true");
+    }
+
+    private static String text(int size) {
+        final StringBuilder sb = new StringBuilder(size);
+        final Random random = new Random(size);
+        while (sb.length() < size) sb.append("field").append(random.nextInt(100)).append('=').append(random.nextInt(10)).append(';');
+        return sb.substring(0, size);
+    }
+
+    private static EVCacheValue envelope(EVCacheTranscoder tc, String key, Object value) {
+        final CachedData cd = tc.encode(value);
+        return new EVCacheValue(key, cd.getData(), cd.getFlags(), 900, 1500000000000L);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final EVCacheValueTranscoder transcoder = new EVCacheValueTranscoder("ENVELOPE_APP");
+        final EVCacheTranscoder tc = new EVCacheTranscoder();
+        for (Object value : new Object[] { "value", text(5000), Integer.valueOf(42), new byte[] { 1, 2, 3 } }) {
+            final EVCacheValue val = envelope(tc, "app:key\u00e9", value);
+            final CachedData cd = transcoder.encode(val);
+            assertEquals(cd.getFlags(), EVCacheValueTranscoder.SPECIAL_ENVELOPE);
+
+            final EVCacheValue decoded = (EVCacheValue) transcoder.decode(cd);
+            assertEquals(decoded, val);
+            assertEquals(decoded.getKey(), "app:key\u00e9");
+            assertEquals(decoded.getTTL(), 900);
+            assertEquals(decoded.getCreateTimeUTC(), 1500000000000L);
+            if (value instanceof byte[]) {
+                assertEquals((byte[]) decoded.decode(tc), (byte[]) value);
+            } else {
+                assertEquals(decoded.decode(tc), value);
+            }
+        }
+    }
+
+    @Test
+    public void testJavaSerializedByDefault() {
+        final CachedData cd = new EVCacheValueTranscoder("DEFAULT_ENVELOPE_APP").encode(envelope(new EVCacheTranscoder(), "app:key", "value"));
+        assertEquals(cd.getFlags() & 0xff00, 0);
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() {
+        EmbeddedMemcachedServer.setProperty("LEGACY_ENVELOPE_APP.value.envelope.binary", "false");
+        final EVCacheValueTranscoder legacy = new EVCacheValueTranscoder("LEGACY_ENVELOPE_APP");
+        final EVCacheValueTranscoder transcoder = new EVCacheValueTranscoder("ENVELOPE_APP");
+        final EVCacheValue val = envelope(new EVCacheTranscoder(), "app:key", "value");
+        final CachedData serialized = legacy.encode(val);
+        final CachedData binary = transcoder.encode(val);
+        assertTrue(binary.getData().length * 5 < serialized.getData().length, binary.getData().length + " bytes, serialized " + serialized.getData().length);
+    }
+
+    @Test
+    public void testLegacyEnvelopesAreDecoded() throws Exception {
+        EmbeddedMemcachedServer.setProperty("LEGACY_ENVELOPE_APP.value.envelope.binary", "false");
+        final EVCacheValueTranscoder legacy = new EVCacheValueTranscoder("LEGACY_ENVELOPE_APP");
+        final EVCacheTranscoder tc = new EVCacheTranscoder();
+        final EVCacheValue val = envelope(tc, "app:key", text(3000));
+        final CachedData cd = legacy.encode(val);
+        assertEquals(cd.getFlags() & 0xff00, 0);
+
+        // the envelopes of older clients are read by any transcoder
+        final EVCacheValue decoded = (EVCacheValue) new EVCacheValueTranscoder("ENVELOPE_APP").decode(cd);
+        assertEquals(decoded, val);
+        assertEquals(decoded.decode(tc), text(3000));
+        assertEquals(new EVCacheTranscoder().decode(cd), val);
+    }
+
+    @Test
+    public void testSlicesAreSerializedWithTheirValue() throws Exception {
+        final EVCacheValueTranscoder transcoder = new EVCacheValueTranscoder("ENVELOPE_APP");
+        final EVCacheValue val = envelope(new EVCacheTranscoder(), "app:key", "value");
+        final EVCacheValue slice = (EVCacheValue) transcoder.decode(transcoder.encode(val));
+        EmbeddedMemcachedServer.setProperty("LEGACY_ENVELOPE_APP.value.envelope.binary", "false");
+        final CachedData cd = new EVCacheValueTranscoder("LEGACY_ENVELOPE_APP").encode(slice);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(cd.getData()))) {
+            assertEquals(in.readObject(), val);
+        }
+    }
+
+    @Test
+    public void testOverriddenDecodeIsUsed() {
+        final EVCacheTranscoder tc = new EVCacheTranscoder() {
+            @Override
+            public Object decode(CachedData d) {
+                return "decoded:" + super.decode(d);
+            }
+        };
+        assertTrue(new EVCacheTranscoder().decodesSlices());
+        assertFalse(tc.decodesSlices());
+        final EVCacheValueTranscoder transcoder = new EVCacheValueTranscoder("ENVELOPE_APP");
+        final EVCacheValue slice = (EVCacheValue) transcoder.decode(transcoder.encode(envelope(tc, "app:key", "value")));
+        assertEquals(slice.decode(tc), "decoded:value");
+    }
+
+    @Test
+    public void testInvalidEnvelopesAreMisses() {
+        final EVCacheValueTranscoder transcoder = new EVCacheValueTranscoder("ENVELOPE_APP");
+        final byte[] data = transcoder.encode(envelope(new EVCacheTranscoder(), "app:key", "value")).getData();
+        final byte[] truncated = new byte[6];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertNull(transcoder.decode(new CachedData(EVCacheValueTranscoder.SPECIAL_ENVELOPE, truncated, CachedData.MAX_SIZE)));
+        data[2] = 2;
+        assertNull(transcoder.decode(new CachedData(EVCacheValueTranscoder.SPECIAL_ENVELOPE, data, CachedData.MAX_SIZE)));
+    }
+}
@@ -0,0 +1,190 @@
+package com.netflix.evcache.serialization;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.test.EmbeddedMemcachedServer;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.SerializingTranscoder;
+
+/**
+ * Registered classes are written compactly, read by older and newer
+ * versions of their serializer, and Java serialized values are read only
+ * while the legacy mode is on.
+ */
+public class RegisteredClassTranscoderTest {
+
+    static final class Movie implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String title;
+        int year;
+        List<String> genres;
+        Map<String, Object> ratings;
+        Movie sequel;
+
+        Movie(String title, int year, List<String> genres, Map<String, Object> ratings, Movie sequel) {
+            this.title = title;
+            this.year = year;
+            this.genres = genres;
+            this.ratings = ratings;
+            this.sequel = sequel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Movie)) return false;
+            final Movie m = (Movie) o;
+            return Objects.equals(title, m.title) && year == m.year && Objects.equals(genres, m.genres) && Objects.equals(ratings, m.ratings) && Objects.equals(sequel, m.sequel);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(title, year);
+        }
+    }
+
+    /*
+     * Version 1 only has a title, a year and a sequel, version 2 adds the
+     * genres and ratings after them.
+     */
+    static final class MovieSerializer implements EVCacheSerializer<Movie> {
+        private final boolean v2;
+
+        MovieSerializer(boolean v2) {
+            this.v2 = v2;
+        }
+
+        public void write(SerializationOutput out, Movie value) {
+            out.writeString(value.title);
+            out.writeInt(value.year);
+            out.writeObject(value.sequel);
+            if (v2) {
+                out.writeCollection(value.genres);
+                out.writeMap(value.ratings);
+            }
+        }
+
+        public Movie read(SerializationInput in, int version) throws IOException {
+            final Movie movie = new Movie(in.readString(), in.readInt(), null, null, in.<Movie> readObject());
+            if (v2 && in.hasRemaining()) {
+                movie.genres = in.readList();
+                movie.ratings = in.readMap();
+            }
+            return movie;
+        }
+    }
+
+    private static RegisteredClassTranscoder transcoder(String appName, boolean v2) {
+        return new RegisteredClassTranscoder(appName).register(16, Movie.class, v2 ? 2 : 1, new MovieSerializer(v2));
+    }
+
+    private static Movie movie() {
+        final Map<String, Object> ratings = new LinkedHashMap<String, Object>();
+        ratings.put("stars", 4.5d);
+        ratings.put("votes", 1200000L);
+        ratings.put("certified", Boolean.TRUE);
+        ratings.put("summary", "Un film tr\u00e8s r\u00e9ussi");
+        final Movie sequel = new Movie("The Sequel", 2001, new ArrayList<String>(), null, null);
+        return new Movie("The Movie", 1999, new ArrayList<String>(Arrays.asList("Action", "Sci-Fi")), ratings, sequel);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final RegisteredClassTranscoder transcoder = transcoder("REGISTERED_APP", true);
+        final Movie movie = movie();
+        final CachedData cd = transcoder.encode(movie);
+        assertEquals(cd.getFlags(), RegisteredClassTranscoder.SPECIAL_REGISTERED);
+        assertEquals(transcoder.decode(cd), movie);
+
+        final SerializingTranscoder java = new SerializingTranscoder();
+        java.setCompressionThreshold(Integer.MAX_VALUE);
+        final int javaSize = java.encode(movie).getData().length;
+        assertTrue(cd.getData().length * 4 < javaSize, cd.getData().length + " bytes, " + javaSize + " with Java serialization");
+
+        // the values spymemcached writes natively are unchanged
+        assertEquals(transcoder.encode("value").getFlags(), 0);
+        assertEquals(transcoder.decode(transcoder.encode(Long.valueOf(42))), Long.valueOf(42));
+
+        // large values are compressed and the buffer is reused after them
+        final Movie large = movie();
+        for (int i = 0; i < 20000; i++) {
+            large.genres.add("Genre " + (i % 10));
+        }
+        final CachedData compressed = transcoder.encode(large);
+        assertEquals(compressed.getFlags() & 2, 2);
+        assertEquals(transcoder.decode(compressed), large);
+        assertEquals(transcoder.decode(transcoder.encode(movie)), movie);
+    }
+
+    @Test
+    public void testSchemaEvolution() {
+        final RegisteredClassTranscoder v1 = transcoder("REGISTERED_APP", false);
+        final RegisteredClassTranscoder v2 = transcoder("REGISTERED_APP", true);
+        final Movie movie = movie();
+
+        // the new fields are skipped by older readers, also in nested objects
+        final Movie read = (Movie) v1.decode(v2.encode(movie));
+        assertEquals(read.title, movie.title);
+        assertEquals(read.year, movie.year);
+        assertNull(read.genres);
+        assertEquals(read.sequel.title, movie.sequel.title);
+
+        // and missing from the values of older writers
+        final Movie old = (Movie) v2.decode(v1.encode(movie));
+        assertEquals(old.title, movie.title);
+        assertEquals(old.sequel.year, movie.sequel.year);
+        assertNull(old.genres);
+        assertNull(old.ratings);
+
+        // values of an unknown class are a miss
+        assertNull(new RegisteredClassTranscoder("REGISTERED_APP").decode(v2.encode(movie)));
+    }
+
+    @Test
+    public void testLegacyValues() {
+        final RegisteredClassTranscoder transcoder = transcoder("LEGACY_APP", true);
+        final ArrayList<String> list = new ArrayList<String>(Arrays.asList("a", "b"));
+        final CachedData legacy = new SerializingTranscoder().encode(movie());
+        assertEquals(transcoder.decode(legacy), movie());
+        // unregistered classes are still written with Java serialization
+        assertEquals(transcoder.decode(transcoder.encode(list)), list);
+
+        EmbeddedMemcachedServer.setProperty("LEGACY_APP.serialization.legacy", "false");
+        try {
+            assertNull(transcoder.decode(legacy));
+            assertEquals(transcoder.decode(transcoder.encode("value")), "value");
+            try {
+                transcoder.encode(list);
+                throw new AssertionError("unregistered class was encoded");
+            } catch (IllegalArgumentException expected) {
+            }
+        } finally {
+            EmbeddedMemcachedServer.setProperty("LEGACY_APP.serialization.legacy", "true");
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testIdsAreNotReused() {
+        transcoder("REGISTERED_APP", true).register(16, String.class, 1, new EVCacheSerializer<String>() {
+            public void write(SerializationOutput out, String value) {
+            }
+
+            public String read(SerializationInput in, int version) {
+                return null;
+            }
+        });
+    }
+}
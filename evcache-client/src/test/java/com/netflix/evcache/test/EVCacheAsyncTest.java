@@ -0,0 +1,134 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.AsyncEVCache;
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPool;
+
+/**
+ * Exercises the CompletableFuture based API against two server groups.
+ */
+public class EVCacheAsyncTest {
+    private static final String APP_NAME = "EVCACHE_ASYNC";
+    private static final long TIMEOUT_MILLIS = 2000;
+
+    private final EmbeddedMemcachedServer[] servers = new EmbeddedMemcachedServer[2];
+    private AsyncEVCache evcache;
+    private EVCacheClient[] clients;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = new EmbeddedMemcachedServer().start();
+        }
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", servers[0]) + ";"
+                + EmbeddedMemcachedServer.serverGroup("SG2", servers[1]));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "300");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("async").setDefaultTTL(60).buildAsync();
+
+        final EVCacheClientPool pool = EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+        clients = pool.getEVCacheClientForWrite();
+        assertEquals(clients.length, servers.length);
+    }
+
+    @AfterMethod
+    public void resetDelay() {
+        for (EmbeddedMemcachedServer server : servers) {
+            server.setResponseDelay(0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        for (EmbeddedMemcachedServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testSetAndGet() throws Exception {
+        assertTrue(evcache.setAsync("key", "value", null, 60, Policy.ALL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        for (EmbeddedMemcachedServer server : servers) {
+            assertTrue(server.containsKey("async:key"));
+        }
+        assertEquals(evcache.<String> getAsync("key").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "value");
+        assertNull(evcache.getAsync("missing_key").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testGetFallsBack() throws Exception {
+        // whichever server group is read first, the value is found
+        for (int i = 0; i < clients.length; i++) {
+            assertTrue(clients[i].set("async:fb_key_" + i, "fb_value_" + i, 60).get(1000, TimeUnit.MILLISECONDS));
+        }
+        for (int j = 0; j < 10; j++) {
+            for (int i = 0; i < clients.length; i++) {
+                assertEquals(evcache.<String> getAsync("fb_key_" + i).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS), "fb_value_" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testGetBulkWithPartialFallback() throws Exception {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            keys.add("bulk_key_" + i);
+            assertTrue(clients[i % clients.length].set("async:bulk_key_" + i, "bulk_value_" + i, 60).get(1000, TimeUnit.MILLISECONDS));
+        }
+        keys.add("bulk_missing_key");
+        final Map<String, String> values = evcache.<String> getBulkAsync(keys).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(values.get("bulk_key_" + i), "bulk_value_" + i);
+        }
+        assertNull(values.get("bulk_missing_key"));
+    }
+
+    @Test
+    public void testDeleteAndTouch() throws Exception {
+        assertTrue(evcache.setAsync("delete_key", "value").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(evcache.touchAsync("delete_key", 120, Policy.ALL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(evcache.deleteAsync("delete_key", Policy.ALL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        for (EmbeddedMemcachedServer server : servers) {
+            assertFalse(server.containsKey("async:delete_key"));
+        }
+        assertNull(evcache.getAsync("delete_key").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testIncrReconcilesServerGroups() throws Exception {
+        assertEquals(evcache.incrAsync("counter", 1, 10, 60).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).longValue(), 10);
+        assertEquals(evcache.incrAsync("counter", 5, 10, 60).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).longValue(), 15);
+        // one server group lost the counter, it is written back with the current value
+        assertTrue(clients[0].delete("async:counter").get(1000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.incrAsync("counter", 1, 0, 60).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).longValue(), 16);
+        assertEquals(evcache.incrAsync("counter", 1, 0, 60).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).longValue(), 17);
+    }
+
+    @Test
+    public void testSlowServerGroupsTimeOut() throws Exception {
+        assertTrue(evcache.setAsync("slow_key", "value", null, 60, Policy.ALL).get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        for (EmbeddedMemcachedServer server : servers) {
+            server.setResponseDelay(1000, TimeUnit.MILLISECONDS);
+        }
+        final long start = System.nanoTime();
+        assertNull(evcache.getAsync("slow_key").get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        final long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(took < 1000, "took : " + took);
+    }
+}
@@ -0,0 +1,167 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.AsyncEVCache;
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.metrics.EVCacheMetricsFactory;
+import com.netflix.evcache.operation.EVCacheOperationFuture;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPool;
+import com.netflix.servo.tag.TagList;
+
+import net.spy.memcached.EVCacheMemcachedClient;
+import net.spy.memcached.MemcachedNode;
+import net.spy.memcached.ops.OperationState;
+
+/**
+ * Concurrent single key gets to the same node are sent as one multi get when
+ * auto batching is enabled. Every binary multi get ends with a noop, so the
+ * number of noops the server saw is the number of multi gets.
+ */
+public class EVCacheAutoBatchTest {
+    private static final String APP_NAME = "EVCACHE_AUTO_BATCH";
+    private static final int KEYS = 20;
+
+    private final EmbeddedMemcachedServer server = new EmbeddedMemcachedServer();
+    private AsyncEVCache evcache;
+    private EVCacheClient client;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        server.start();
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", server));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".auto.batch.window.micros", "50000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "1000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".auto.batch.max.keys", "8");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("batch").setDefaultTTL(60).buildAsync();
+
+        final EVCacheClientPool pool = EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+        client = pool.getEVCacheClientForRead();
+        for (int i = 0; i < KEYS; i++) {
+            assertTrue(client.set("batch:key_" + i, "value_" + i, 60).get(1000, TimeUnit.MILLISECONDS));
+        }
+        // warm up the async read path
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(evcache.<String> getAsync("key_" + i).get(1000, TimeUnit.MILLISECONDS), "value_" + i);
+        }
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".auto.batch.gets", "true");
+    }
+
+    @AfterMethod
+    public void reset() {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".auto.batch.gets", "true");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void testConcurrentGetsAreBatched() throws Exception {
+        final long gets = server.getStat("cmd_get");
+        final long batches = server.getStat("cmd_noop");
+        // the same key twice in a batch and a key that does not exist
+        final CompletableFuture<String> duplicate = evcache.<String> getAsync("key_0");
+        final CompletableFuture<String> missing = evcache.<String> getAsync("missing_key");
+        final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < KEYS; i++) {
+            futures.add(evcache.<String> getAsync("key_" + i));
+        }
+
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(futures.get(i).get(1000, TimeUnit.MILLISECONDS), "value_" + i);
+        }
+        assertEquals(duplicate.get(1000, TimeUnit.MILLISECONDS), "value_0");
+        assertNull(missing.get(1000, TimeUnit.MILLISECONDS));
+
+        final long batchCount = server.getStat("cmd_noop") - batches;
+        assertTrue(batchCount >= 3 && batchCount < KEYS / 2, "batches : " + batchCount);
+        assertEquals(server.getStat("cmd_get") - gets, KEYS + 1);
+    }
+
+    @Test
+    public void testCancelLeavesOtherGetsOfTheBatch() throws Exception {
+        final Future<String> cancelled = client.asyncGet("batch:key_1", null, false, false);
+        final Future<String> other = client.asyncGet("batch:key_2", null, false, false);
+        assertTrue(cancelled.cancel(true));
+        assertTrue(cancelled.isCancelled());
+        assertEquals(other.get(1000, TimeUnit.MILLISECONDS), "value_2");
+    }
+
+    private long getCount(String metric) {
+        return EVCacheMetricsFactory.getCounter(APP_NAME, null, client.getServerGroupName(), APP_NAME + "-GetOperation-" + metric, (TagList) null).getValue().longValue();
+    }
+
+    @Test
+    public void testMetricsAreRecordedByCaller() throws Exception {
+        final long hits = getCount("SUCCESS");
+        final long misses = getCount("ERR_NOT_FOUND");
+        final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(evcache.<String> getAsync("key_" + i));
+        }
+        final CompletableFuture<String> missing = evcache.<String> getAsync("other_missing_key");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(futures.get(i).get(1000, TimeUnit.MILLISECONDS), "value_" + i);
+        }
+        assertNull(missing.get(1000, TimeUnit.MILLISECONDS));
+        assertEquals(getCount("SUCCESS") - hits, 5);
+        assertEquals(getCount("ERR_NOT_FOUND") - misses, 1);
+    }
+
+    @Test
+    public void testTimeoutIsCountedOncePerBatch() throws Exception {
+        final EVCacheMemcachedClient memcachedClient = client.getEVCacheMemcachedClient();
+        final MemcachedNode node = memcachedClient.getEVCacheNode("batch:key_3");
+        final int timeouts = node.getContinuousTimeout();
+        server.setResponseDelay(1000, TimeUnit.MILLISECONDS);
+        final List<EVCacheOperationFuture<String>> futures = new ArrayList<EVCacheOperationFuture<String>>();
+        try {
+            for (int i = 3; i < 7; i++) {
+                futures.add(memcachedClient.<String> asyncGet("batch:key_" + i, null, null));
+            }
+            for (EVCacheOperationFuture<String> future : futures) {
+                assertNull(future.get(50, TimeUnit.MILLISECONDS, false, false));
+            }
+            // the four callers of the one multi get that timed out
+            assertEquals(node.getContinuousTimeout() - timeouts, 1);
+        } finally {
+            server.setResponseDelay(0, TimeUnit.MILLISECONDS);
+            // the later gets are not queued behind the delayed one
+            final long end = System.currentTimeMillis() + 3000;
+            while (!futures.isEmpty() && futures.get(0).getOperation().getState() != OperationState.COMPLETE && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(evcache.<String> getAsync("key_3").get(2000, TimeUnit.MILLISECONDS), "value_3");
+    }
+
+    @Test
+    public void testDisabledAtRuntime() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".auto.batch.gets", "false");
+        final long gets = server.getStat("cmd_get");
+        final List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < KEYS; i++) {
+            futures.add(evcache.<String> getAsync("key_" + i));
+        }
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(futures.get(i).get(1000, TimeUnit.MILLISECONDS), "value_" + i);
+        }
+        assertEquals(server.getStat("cmd_get") - gets, KEYS);
+    }
+}
@@ -0,0 +1,92 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPool;
+
+/**
+ * Every key is stored in only one of three server groups, so a bulk read has
+ * to fall back to both of the other server groups to find all the keys.
+ */
+public class EVCacheBulkPartialFallbackTest {
+    private static final String APP_NAME = "EVCACHE_BULK_FALLBACK";
+    private static final long DELAY_MILLIS = 200;
+    private static final int KEYS = 30;
+
+    private final EmbeddedMemcachedServer[] servers = new EmbeddedMemcachedServer[3];
+    private final List<String> keys = new ArrayList<String>();
+    private EVCache evcache;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        final StringBuilder nodes = new StringBuilder();
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = new EmbeddedMemcachedServer().start();
+            if (i > 0) nodes.append(';');
+            nodes.append(EmbeddedMemcachedServer.serverGroup("SG" + (i + 1), servers[i]));
+        }
+        EmbeddedMemcachedServer.configure(APP_NAME, nodes.toString());
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.bulkReadTimeout", "2000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".retry.all.copies", "true");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("bulk").setDefaultTTL(60).build();
+
+        final EVCacheClientPool pool = EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+
+        final EVCacheClient[] clients = pool.getEVCacheClientForWrite();
+        assertEquals(clients.length, servers.length);
+        for (int i = 0; i < KEYS; i++) {
+            keys.add("key_" + i);
+            assertTrue(clients[i % clients.length].set("bulk:key_" + i, "value_" + i, 60).get(1000, TimeUnit.MILLISECONDS));
+        }
+        getBulk();
+        for (EmbeddedMemcachedServer server : servers) {
+            server.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        for (EmbeddedMemcachedServer server : servers) {
+            server.close();
+        }
+    }
+
+    private long getBulk() throws Exception {
+        final long start = System.nanoTime();
+        final Map<String, String> values = evcache.<String> getBulk(keys);
+        final long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(values.size(), KEYS);
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(values.get("key_" + i), "value_" + i);
+        }
+        return took;
+    }
+
+    @Test
+    public void testSequentialFallback() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".bulk.partial.fallback.concurrent", "false");
+        final long took = getBulk();
+        assertTrue(took >= 3 * DELAY_MILLIS, "took : " + took);
+    }
+
+    @Test
+    public void testConcurrentFallback() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".bulk.partial.fallback.concurrent", "true");
+        final long took = getBulk();
+        // the primary and the concurrent fallback round take two delays, while
+        // reading the two fallback server groups one after the other takes three
+        assertTrue(took >= 2 * DELAY_MILLIS && took < 3 * DELAY_MILLIS, "the fallback server groups were read one after the other, took : " + took);
+    }
+}
@@ -0,0 +1,295 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.AsyncEVCache;
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheException;
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPool;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * Values larger than the chunk size are written as slices of the value and
+ * read back into a single buffer. Streamed values are written and read chunk
+ * by chunk. The metadata left behind by a value that is no longer chunked is
+ * deleted when read.
+ */
+public class EVCacheChunkingTest {
+    private static final String APP_NAME = "EVCACHE_CHUNKING";
+
+    private final EmbeddedMemcachedServer server = new EmbeddedMemcachedServer();
+    private EVCache evcache;
+    private EVCacheClient client;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        server.start();
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", server));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".chunk.data", "true");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".chunk.size", "1024");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "2000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.bulkReadTimeout", "2000");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("chunk").setDefaultTTL(60).build();
+
+        final EVCacheClientPool pool = EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+        client = pool.getEVCacheClientForRead();
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    private static byte[] value(int size, int seed) {
+        final byte[] value = new byte[size];
+        new Random(seed).nextBytes(value);
+        return value;
+    }
+
+    private CachedData raw(String key) throws Exception {
+        return client.getEVCacheMemcachedClient().asyncGet(key, client.getChunkingTranscoder(), null).get();
+    }
+
+    @Test
+    public void testLargeValue() throws Exception {
+        final byte[] value = value(200 * 1024, 1);
+        assertTrue(evcache.set("large", value, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.<byte[]> get("large"), value);
+
+        final Map<String, CachedData> chunks = client.getAllChunks("chunk:large");
+        assertTrue(chunks.size() > 100, "chunks : " + chunks.size());
+        int length = 0;
+        for (CachedData cd : chunks.values()) {
+            length += cd.getData().length;
+        }
+        // the last chunk is not padded
+        assertEquals(length, client.getTranscoder().encode(value).getData().length);
+    }
+
+    @Test
+    public void testAsyncGet() throws Exception {
+        final byte[] value = value(5000, 20);
+        assertTrue(evcache.set("async", value, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        // chunked values are read on the blocking executor
+        assertEquals(((AsyncEVCache) evcache).<byte[]> getAsync("async").get(2000, TimeUnit.MILLISECONDS), value);
+    }
+
+    @Test
+    public void testReplace() throws Exception {
+        assertTrue(evcache.set("replaced", value(5000, 2), null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        // each chunk is replaced, so the new value has as many chunks as the old one
+        final byte[] value = value(5000, 3);
+        assertTrue(evcache.replace("replaced", value, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.<byte[]> get("replaced"), value);
+    }
+
+    @Test
+    public void testMetadataIsWrittenAfterTheChunks() throws Exception {
+        assertTrue(evcache.set("replace_missing", value(5000, 17), null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        final CachedData metadata = raw("chunk:replace_missing_00");
+        assertTrue(client.getEVCacheMemcachedClient().delete("chunk:replace_missing_02").get());
+        // the replace of the missing chunk fails, so the metadata of the new value is not written
+        evcache.replace("replace_missing", value(5000, 18), null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS);
+        Thread.sleep(200);
+        assertEquals(raw("chunk:replace_missing_00").getData(), metadata.getData());
+    }
+
+    @Test
+    public void testBulk() throws Exception {
+        final byte[] first = value(3000, 4), second = value(9000, 5), small = value(10, 6);
+        assertTrue(evcache.set("bulk_1", first, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertTrue(evcache.set("bulk_2", second, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertTrue(evcache.set("bulk_3", small, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        final Map<String, byte[]> values = evcache.<byte[]> getBulk(Arrays.asList("bulk_1", "bulk_2", "bulk_3"));
+        assertEquals(values.get("bulk_1"), first);
+        assertEquals(values.get("bulk_2"), second);
+        assertEquals(values.get("bulk_3"), small);
+    }
+
+    @Test
+    public void testPaddedLastChunkIsRead() throws Exception {
+        final byte[] value = value(5000, 7);
+        assertTrue(evcache.set("padded", value, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        padLastChunk("chunk:padded");
+        assertEquals(evcache.<byte[]> get("padded"), value);
+    }
+
+    @Test
+    public void testStreamPaddedLastChunk() throws Exception {
+        final byte[] value = value(5000, 15);
+        assertTrue(evcache.setStream("stream_padded", new ByteArrayInputStream(value), 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        padLastChunk("chunk:stream_padded");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(evcache.getStream("stream_padded", out));
+        assertEquals(out.toByteArray(), value);
+    }
+
+    /* pads the last chunk of the key the way older clients did */
+    private void padLastChunk(String key) throws Exception {
+        final Map<String, CachedData> chunks = client.getAllChunks(key);
+        String lastKey = null;
+        for (String chunkKey : chunks.keySet()) {
+            if (lastKey == null || chunkKey.compareTo(lastKey) > 0) lastKey = chunkKey;
+        }
+        final CachedData last = chunks.get(lastKey);
+        final CachedData padded = new CachedData(last.getFlags(), Arrays.copyOf(last.getData(), chunks.get(key + "_01").getData().length), Integer.MAX_VALUE);
+        assertTrue(padded.getData().length > last.getData().length);
+        assertTrue(client.getEVCacheMemcachedClient().set(lastKey, 60, padded, client.getChunkingTranscoder()).get());
+    }
+
+    @Test
+    public void testMissingChunk() throws Exception {
+        assertTrue(evcache.set("missing_chunk", value(5000, 8), null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertTrue(client.getEVCacheMemcachedClient().delete("chunk:missing_chunk_02").get());
+        assertNull(evcache.<byte[]> get("missing_chunk"));
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        final byte[] value = value(300 * 1024 + 17, 9);
+        assertTrue(evcache.setStream("stream", new ByteArrayInputStream(value), 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(evcache.getStream("stream", out));
+        assertEquals(out.toByteArray(), value);
+        // a streamed value is a byte array
+        assertEquals(evcache.<byte[]> get("stream"), value);
+
+        // a value that was set is streamed as well
+        final byte[] set = value(7000, 10);
+        assertTrue(evcache.set("stream", set, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        out.reset();
+        assertTrue(evcache.getStream("stream", out));
+        assertEquals(out.toByteArray(), set);
+    }
+
+    @Test
+    public void testStreamChannels() throws Exception {
+        final byte[] value = value(5000, 11);
+        assertTrue(evcache.setStream("stream_channel", Channels.newChannel(new ByteArrayInputStream(value)), 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(evcache.getStream("stream_channel", Channels.newChannel(out)));
+        assertEquals(out.toByteArray(), value);
+
+        assertTrue(evcache.setStream("stream_channel", new ByteArrayInputStream(new byte[0]), 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        out.reset();
+        assertTrue(evcache.getStream("stream_channel", out));
+        assertEquals(out.size(), 0);
+    }
+
+    @Test
+    public void testStreamNeedsChunking() throws Exception {
+        final String appName = "EVCACHE_NOT_CHUNKING";
+        EmbeddedMemcachedServer.configure(appName, EmbeddedMemcachedServer.serverGroup("SG1", server));
+        final EVCache notChunking = new EVCache.Builder().setAppName(appName).setCachePrefix("not_chunked").setDefaultTTL(60).build();
+        EmbeddedMemcachedServer.awaitConnected(appName);
+        try {
+            notChunking.setStream("stream", new ByteArrayInputStream(value(5000, 21)), 60, Policy.ALL);
+            fail("the value of an app that does not chunk its values was streamed");
+        } catch (EVCacheException e) {
+            // expected, as get would not read the chunks
+        }
+        assertFalse(server.containsKey("not_chunked:stream_00"));
+        assertFalse(server.containsKey("not_chunked:stream_01"));
+        assertNull(notChunking.get("stream"));
+    }
+
+    @Test
+    public void testStreamMiss() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(evcache.getStream("stream_missing", out));
+        assertEquals(out.size(), 0);
+    }
+
+    @Test
+    public void testStreamMissingChunk() throws Exception {
+        assertTrue(evcache.setStream("stream_missing_chunk", new ByteArrayInputStream(value(5000, 12)), 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertTrue(client.getEVCacheMemcachedClient().delete("chunk:stream_missing_chunk_03").get());
+        try {
+            evcache.getStream("stream_missing_chunk", new ByteArrayOutputStream());
+            fail("a missing chunk was not detected");
+        } catch (EVCacheException e) {
+            // the chunks before the missing one were written
+        }
+    }
+
+    @Test
+    public void testUnchunkedWritesDoNotRead() throws Exception {
+        assertTrue(evcache.set("shape", "small", null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        final long gets = server.getStat("cmd_get");
+        assertTrue(evcache.set("shape", "other", null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertEquals(server.getStat("cmd_get") - gets, 0);
+
+        assertTrue(evcache.set("shape", value(5000, 13), null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertTrue(evcache.set("shape", "small", null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        assertNull(raw("chunk:shape_00"));
+        assertEquals(evcache.<String> get("shape"), "small");
+    }
+
+    @Test
+    public void testUnchunkedWritesWithoutMetadataDelete() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".chunk.delete.metadata", "false");
+        try {
+            final long deletes = server.getStat("delete_hits") + server.getStat("delete_misses");
+            assertTrue(evcache.set("single_shape", "small", null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+            assertEquals(evcache.<String> get("single_shape"), "small");
+            assertEquals(server.getStat("delete_hits") + server.getStat("delete_misses") - deletes, 0);
+        } finally {
+            EmbeddedMemcachedServer.setProperty(APP_NAME + ".chunk.delete.metadata", "true");
+        }
+    }
+
+    @Test
+    public void testStaleChunkMetadataIsDeletedOnRead() throws Exception {
+        final byte[] value = value(5000, 14);
+        assertTrue(evcache.set("orphan", value, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        // an unchunked value whose delete of the metadata was lost
+        assertTrue(client.getEVCacheMemcachedClient().set("chunk:orphan", 60, "small").get());
+        assertEquals(evcache.<String> getBulk(Arrays.asList("orphan")).get("orphan"), "small");
+        final long end = System.currentTimeMillis() + 2000;
+        while (raw("chunk:orphan_00") != null && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertNull(raw("chunk:orphan_00"));
+        assertEquals(evcache.<String> get("orphan"), "small");
+    }
+
+    @Test
+    public void testChunkedWriteInProgressIsNotDeletedOnRead() throws Exception {
+        final byte[] value = value(5000, 16);
+        assertTrue(evcache.set("in_progress", value, null, 60, Policy.ALL).await(2000, TimeUnit.MILLISECONDS));
+        final CachedData metadata = raw("chunk:in_progress_00");
+        // a chunked write stored its metadata after the unchunked value, and
+        // its delete of the unchunked value has not landed yet
+        assertTrue(client.getEVCacheMemcachedClient().set("chunk:in_progress", 60, "small").get());
+        assertTrue(client.getEVCacheMemcachedClient().set("chunk:in_progress_00", 60, metadata, client.getChunkingTranscoder()).get());
+
+        assertEquals(evcache.<String> get("in_progress"), "small");
+        assertEquals(evcache.<String> getBulk(Arrays.asList("in_progress")).get("in_progress"), "small");
+        Thread.sleep(200);
+        assertEquals(raw("chunk:in_progress_00").getData(), metadata.getData());
+        assertTrue(raw("chunk:in_progress_01") != null);
+
+        // the write completes
+        assertTrue(client.getEVCacheMemcachedClient().delete("chunk:in_progress").get());
+        assertEquals(evcache.<byte[]> get("in_progress"), value);
+    }
+}
@@ -0,0 +1,142 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.AsyncEVCache;
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheLatch.Policy;
+
+/**
+ * Moves a server group from the ketama continuum to xxhash. Three apps share
+ * the same servers and cache prefix: one still on ketama, one on xxhash that
+ * is migrating from ketama and one on xxhash only. The servers are bound to
+ * different loopback addresses so they are distinct nodes on the continuum.
+ */
+public class EVCacheHashMigrationTest {
+    private static final String KETAMA_APP = "EVCACHE_MIGRATE_KETAMA";
+    private static final String MIGRATING_APP = "EVCACHE_MIGRATE_MIGRATING";
+    private static final String XXHASH_APP = "EVCACHE_MIGRATE_XXHASH";
+    private static final int NUM_KEYS = 100;
+
+    private final EmbeddedMemcachedServer[] servers = new EmbeddedMemcachedServer[4];
+    private EVCache ketama, migrating, xxhash;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = new EmbeddedMemcachedServer("127.0.0." + (i + 1), 0).start();
+        }
+        final String nodes = EmbeddedMemcachedServer.serverGroup("SG1", servers);
+        EmbeddedMemcachedServer.configure(KETAMA_APP, nodes);
+        EmbeddedMemcachedServer.configure(MIGRATING_APP, nodes);
+        EmbeddedMemcachedServer.configure(XXHASH_APP, nodes);
+        EmbeddedMemcachedServer.setProperty("EVCacheNodeLocator." + MIGRATING_APP + ".hash.algorithm", "XXHASH64_HASH");
+        EmbeddedMemcachedServer.setProperty("EVCacheNodeLocator." + MIGRATING_APP + ".hash.algorithm.migrate.from", "KETAMA_HASH");
+        EmbeddedMemcachedServer.setProperty("EVCacheNodeLocator." + XXHASH_APP + ".hash.algorithm", "XXHASH64_HASH");
+
+        ketama = build(KETAMA_APP);
+        migrating = build(MIGRATING_APP);
+        xxhash = build(XXHASH_APP);
+    }
+
+    private EVCache build(String appName) throws InterruptedException {
+        EmbeddedMemcachedServer.setProperty(appName + ".EVCacheClientPool.readTimeout", "1000");
+        final EVCache evcache = new EVCache.Builder().setAppName(appName).setCachePrefix("migrate").setDefaultTTL(60).build();
+        EmbeddedMemcachedServer.awaitConnected(appName);
+        return evcache;
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        for (EmbeddedMemcachedServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testReadsFallBackToPreviousNode() throws Exception {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertTrue(ketama.set("read_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+
+        int xxhashHits = 0;
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertEquals(migrating.get("read_" + i), "value_" + i);
+            if (xxhash.get("read_" + i) != null) xxhashHits++;
+        }
+        // without the migration most of the keys would be lost
+        assertTrue(xxhashHits < NUM_KEYS / 2, "hits : " + xxhashHits);
+    }
+
+    @Test
+    public void testBulkReadsFallBackToPreviousNode() throws Exception {
+        final List<String> keys = new ArrayList<String>(NUM_KEYS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            keys.add("bulk_" + i);
+            assertTrue(ketama.set("bulk_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+        keys.add("bulk_missing");
+
+        final Map<String, String> values = migrating.<String> getBulk(keys);
+        final Map<String, String> asyncValues = ((AsyncEVCache) migrating).<String> getBulkAsync(keys).get(2000, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertEquals(values.get("bulk_" + i), "value_" + i);
+            assertEquals(asyncValues.get("bulk_" + i), "value_" + i);
+        }
+        assertNull(values.get("bulk_missing"));
+        assertNull(asyncValues.get("bulk_missing"));
+        int xxhashHits = 0;
+        for (String value : xxhash.<String> getBulk(keys).values()) {
+            if (value != null) xxhashHits++;
+        }
+        assertTrue(xxhashHits < NUM_KEYS / 2, "hits : " + xxhashHits);
+    }
+
+    @Test
+    public void testAsyncReadsFallBackToPreviousNode() throws Exception {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertTrue(ketama.set("async_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertEquals(((AsyncEVCache) migrating).<String> getAsync("async_" + i).get(2000, TimeUnit.MILLISECONDS), "value_" + i);
+        }
+    }
+
+    @Test
+    public void testWritesGoToNewNode() throws Exception {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertTrue(ketama.set("write_" + i, "old_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            assertTrue(migrating.set("write_" + i, "new_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertEquals(xxhash.get("write_" + i), "new_" + i);
+            assertEquals(migrating.get("write_" + i), "new_" + i);
+            // the stale copy on the ketama node is removed unless it is the same node
+            final String old = ketama.get("write_" + i);
+            assertTrue(old == null || old.equals("new_" + i), "old : " + old);
+        }
+    }
+
+    @Test
+    public void testDeleteRemovesBothCopies() throws Exception {
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertTrue(ketama.set("delete_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            assertTrue(migrating.delete("delete_" + i, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+        for (int i = 0; i < NUM_KEYS; i++) {
+            assertNull(migrating.get("delete_" + i));
+            assertNull(ketama.get("delete_" + i));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.pool.EVCacheClientPool;
+
+/**
+ * Reads from two server groups where one of them is slow. With hedging the
+ * reads that go to the slow server group first are answered by the other one.
+ */
+public class EVCacheHedgedReadTest {
+    private static final String APP_NAME = "EVCACHE_HEDGE";
+    private static final long SLOW_MILLIS = 300;
+
+    private final EmbeddedMemcachedServer fast = new EmbeddedMemcachedServer();
+    private final EmbeddedMemcachedServer slow = new EmbeddedMemcachedServer();
+    private EVCache evcache;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        fast.start();
+        slow.start();
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", fast) + ";"
+                + EmbeddedMemcachedServer.serverGroup("SG2", slow));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "2000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".hedge.reads", "true");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".hedge.budget.percent", "100");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("hedge").setDefaultTTL(60).build();
+
+        EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(evcache.set("key_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+        // enough reads for the latencies of both server groups to be known
+        for (int i = 0; i < 500; i++) {
+            assertEquals(evcache.get("key_" + (i % 10)), "value_" + (i % 10));
+        }
+    }
+
+    @AfterMethod
+    public void resetDelay() {
+        slow.setResponseDelay(0, TimeUnit.MILLISECONDS);
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".hedge.reads", "true");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        fast.close();
+        slow.close();
+    }
+
+    @Test
+    public void testHedgedReadsAvoidSlowServerGroup() throws Exception {
+        slow.setResponseDelay(SLOW_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 20; i++) {
+            final long start = System.nanoTime();
+            assertEquals(evcache.get("key_" + (i % 10)), "value_" + (i % 10));
+            final long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(took < SLOW_MILLIS / 2, "took : " + took);
+        }
+    }
+
+    @Test
+    public void testMissIsNotHedgedTwice() throws Exception {
+        // a miss on both server groups is still a miss and does not time out
+        assertNull(evcache.get("missing_key"));
+    }
+
+    @Test
+    public void testNotHedgedWhenDisabled() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".hedge.reads", "false");
+        slow.setResponseDelay(SLOW_MILLIS, TimeUnit.MILLISECONDS);
+        long slowest = 0;
+        for (int i = 0; i < 4; i++) {
+            final long start = System.nanoTime();
+            assertEquals(evcache.get("key_" + i), "value_" + i);
+            slowest = Math.max(slowest, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        assertTrue(slowest >= SLOW_MILLIS / 2, "slowest : " + slowest);
+    }
+}
@@ -0,0 +1,326 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheInMemoryCache;
+import com.netflix.evcache.EVCacheKey;
+import com.netflix.evcache.EVCacheLatch;
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.invalidation.EVCacheInvalidationBus;
+import com.netflix.evcache.invalidation.EVCacheInvalidationTransport;
+import com.netflix.evcache.pool.EVCacheClientPool;
+import com.netflix.evcache.pool.EVCacheClientPoolManager;
+
+/**
+ * Gets of keys kept by the in-memory cache, and of keys it remembers as not
+ * found, are not sent to the server. Writes of a key drop or replace its
+ * entry.
+ */
+public class EVCacheNearCacheTest {
+    private static final String APP_NAME = "EVCACHE_NEAR_CACHE";
+
+    private final EmbeddedMemcachedServer server = new EmbeddedMemcachedServer();
+    private EVCache evcache;
+    private InProcessTransport transport, otherTransport;
+
+    /*
+     * Hands the messages published to the transports of the same group, in
+     * the thread that publishes them.
+     */
+    private static final class InProcessTransport implements EVCacheInvalidationTransport {
+        private final List<InProcessTransport> group;
+        private final Map<String, Receiver> receivers = new ConcurrentHashMap<String, Receiver>();
+
+        InProcessTransport(List<InProcessTransport> group) {
+            this.group = group;
+            group.add(this);
+        }
+
+        public void publish(String appName, byte[] message) {
+            for (InProcessTransport transport : group) {
+                final Receiver receiver = transport.receivers.get(appName);
+                if (receiver != null) receiver.receive(message);
+            }
+        }
+
+        public void subscribe(String appName, Receiver receiver) {
+            receivers.put(appName, receiver);
+        }
+
+        public void unsubscribe(String appName) {
+            receivers.remove(appName);
+        }
+
+        public void close() {
+            group.remove(this);
+        }
+    }
+
+    @BeforeClass
+    public void setup() throws Exception {
+        server.start();
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", server));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".use.inmemory.cache", "true");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.cache.duration.ms", "60000");
+        final List<InProcessTransport> group = new CopyOnWriteArrayList<InProcessTransport>();
+        transport = new InProcessTransport(group);
+        otherTransport = new InProcessTransport(group);
+        EVCacheClientPoolManager.getInstance().setInvalidationTransport(transport);
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("near").setDefaultTTL(60).build();
+
+        EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(evcache.set("key_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @AfterMethod
+    public void reset() {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.cache.offheap", "false");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.negative.cache.duration.ms", "0");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.update.on.write", "false");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".use.inmemory.cache", "false");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.invalidation.enabled", "false");
+        transport.close();
+        otherTransport.close();
+        server.close();
+    }
+
+    private void assertServedFromMemory(String key, String value) throws Exception {
+        assertEquals(evcache.<String> get(key), value);
+        // the completion of the last write of the key may drop the value
+        // loaded right before it
+        final long end = System.currentTimeMillis() + 1000;
+        long gets = server.getStat("cmd_get");
+        assertEquals(evcache.<String> get(key), value);
+        while (server.getStat("cmd_get") != gets && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+            gets = server.getStat("cmd_get");
+            assertEquals(evcache.<String> get(key), value);
+        }
+        gets = server.getStat("cmd_get");
+        for (int i = 0; i < 5; i++) {
+            assertEquals(evcache.<String> get(key), value);
+        }
+        assertEquals(server.getStat("cmd_get") - gets, 0);
+    }
+
+    @Test
+    public void testOnHeap() throws Exception {
+        assertServedFromMemory("key_0", "value_0");
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.cache.offheap", "true");
+        assertServedFromMemory("key_1", "value_1");
+    }
+
+    @Test
+    public void testByteBound() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.cache.max.bytes", "1048576");
+        try {
+            assertServedFromMemory("key_2", "value_2");
+        } finally {
+            EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.cache.max.bytes", "0");
+        }
+    }
+
+    @Test
+    public void testMissesAreCached() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.negative.cache.duration.ms", "60000");
+        assertNull(evcache.<String> get("missing_key"));
+        final long gets = server.getStat("cmd_get");
+        for (int i = 0; i < 5; i++) {
+            assertNull(evcache.<String> get("missing_key"));
+        }
+        assertEquals(server.getStat("cmd_get") - gets, 0);
+
+        // a write of the key drops its miss
+        assertTrue(evcache.set("missing_key", "found", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.<String> get("missing_key"), "found");
+    }
+
+    @Test
+    public void testMissesAreNotCachedByDefault() throws Exception {
+        assertNull(evcache.<String> get("other_missing_key"));
+        final long gets = server.getStat("cmd_get");
+        assertNull(evcache.<String> get("other_missing_key"));
+        assertEquals(server.getStat("cmd_get") - gets, 1);
+    }
+
+    @Test
+    public void testBulkServesHitsFromMemory() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.negative.cache.duration.ms", "60000");
+        assertEquals(evcache.<String> get("key_5"), "value_5");
+        long gets = server.getStat("cmd_get");
+        Map<String, String> values = evcache.<String> getBulk(Arrays.asList("key_5", "key_6", "key_7", "bulk_missing_key"));
+        assertEquals(values.size(), 4);
+        assertNull(values.get("bulk_missing_key"));
+        assertEquals(values.get("key_5"), "value_5");
+        assertEquals(values.get("key_7"), "value_7");
+        // only the keys that were not in memory were read
+        assertEquals(server.getStat("cmd_get") - gets, 3);
+
+        gets = server.getStat("cmd_get");
+        values = evcache.<String> getBulk(Arrays.asList("key_5", "key_6", "key_7", "bulk_missing_key"));
+        assertEquals(values.size(), 4);
+        assertTrue(values.containsKey("bulk_missing_key"));
+        assertEquals(values.get("key_6"), "value_6");
+        assertEquals(server.getStat("cmd_get") - gets, 0);
+    }
+
+    @Test
+    public void testBulkAndTouchTouchesHits() throws Exception {
+        assertEquals(evcache.<String> get("key_8"), "value_8");
+        final long gets = server.getStat("cmd_get");
+        final long touches = server.getStat("cmd_touch");
+        final Map<String, String> values = evcache.<String> getBulkAndTouch(Arrays.asList("key_8", "key_9"), null, 120);
+        assertEquals(values.get("key_8"), "value_8");
+        assertEquals(values.get("key_9"), "value_9");
+        assertEquals(server.getStat("cmd_get") - gets, 1);
+        final long end = System.currentTimeMillis() + 1000;
+        while (server.getStat("cmd_touch") - touches < 2 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(server.getStat("cmd_touch") - touches, 2);
+    }
+
+    @Test
+    public void testWritesDropTheEntry() throws Exception {
+        assertTrue(evcache.set("write_key", "old", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertServedFromMemory("write_key", "old");
+
+        assertTrue(evcache.set("write_key", "new", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        long gets = server.getStat("cmd_get");
+        assertEquals(evcache.<String> get("write_key"), "new");
+        assertEquals(server.getStat("cmd_get") - gets, 1);
+
+        assertTrue(evcache.delete("write_key", Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertNull(evcache.<String> get("write_key"));
+    }
+
+    @Test
+    public void testValueLoadedDuringWriteIsDropped() throws Exception {
+        assertTrue(evcache.set("race_key", "old", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertServedFromMemory("race_key", "old");
+        final EVCacheInMemoryCache<String> cache = EVCacheClientPoolManager.getInstance().getInMemoryCache(APP_NAME);
+
+        server.setResponseDelay(200, TimeUnit.MILLISECONDS);
+        try {
+            final EVCacheLatch latch = evcache.set("race_key", "new", null, 60, Policy.ALL);
+            // a load that read the old value before the write was applied adds
+            // it while the write is in flight
+            cache.put(new EVCacheKey("race_key", "near:race_key", null), "old");
+            assertEquals(evcache.<String> get("race_key"), "old");
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+        } finally {
+            server.setResponseDelay(0, TimeUnit.MILLISECONDS);
+        }
+
+        // the completion of the write drops it
+        final long end = System.currentTimeMillis() + 1000;
+        String value = evcache.<String> get("race_key");
+        while ("old".equals(value) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+            value = evcache.<String> get("race_key");
+        }
+        assertEquals(value, "new");
+    }
+
+    @Test
+    public void testUpdateOnWrite() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.update.on.write", "true");
+        assertTrue(evcache.set("update_key", "old", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        final long gets = server.getStat("cmd_get");
+        assertTrue(evcache.set("update_key", "new", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(evcache.<String> get("update_key"), "new");
+        }
+        assertEquals(server.getStat("cmd_get") - gets, 0);
+    }
+
+    @Test
+    public void testUpdateOnWriteOffHeap() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.cache.offheap", "true");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.update.on.write", "true");
+        assertTrue(evcache.set("offheap_update_key", "new", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        final long gets = server.getStat("cmd_get");
+        assertEquals(evcache.<String> get("offheap_update_key"), "new");
+        assertEquals(server.getStat("cmd_get") - gets, 0);
+    }
+
+    @Test
+    public void testInvalidationsAreSharedWithOtherInstances() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.invalidation.enabled", "true");
+        final Set<String> published = ConcurrentHashMap.newKeySet();
+        final EVCacheInvalidationBus other = new EVCacheInvalidationBus(APP_NAME, otherTransport, EVCacheClientPoolManager.getInstance().getEVCacheScheduledExecutor(), published::add);
+        try {
+            // the writes of this instance are published
+            assertTrue(evcache.set("shared_key", "old", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            final long end = System.currentTimeMillis() + 5000;
+            while (!published.contains("near:shared_key") && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue(published.contains("near:shared_key"), "published : " + published);
+            assertServedFromMemory("shared_key", "old");
+
+            // a write of another instance drops the entry
+            final EVCacheClientPool pool = EVCacheClientPoolManager.getInstance().getEVCacheClientPool(APP_NAME);
+            assertTrue(pool.getEVCacheClientForRead().getEVCacheMemcachedClient().set("near:shared_key", 60, "new").get());
+            other.publish("near:shared_key");
+            String value = "old";
+            while ("old".equals(value) && System.currentTimeMillis() < end + 5000) {
+                Thread.sleep(10);
+                value = evcache.<String> get("shared_key");
+            }
+            assertEquals(value, "new");
+        } finally {
+            other.close();
+            EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.invalidation.enabled", "false");
+        }
+    }
+
+    @Test
+    public void testTransportSetLaterIsUsed() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.invalidation.enabled", "true");
+        final List<InProcessTransport> group = new CopyOnWriteArrayList<InProcessTransport>();
+        final InProcessTransport later = new InProcessTransport(group);
+        final Set<String> published = ConcurrentHashMap.newKeySet();
+        final EVCacheInvalidationBus other = new EVCacheInvalidationBus(APP_NAME, new InProcessTransport(group), EVCacheClientPoolManager.getInstance().getEVCacheScheduledExecutor(), published::add);
+        try {
+            // the in-memory cache already subscribed on the first transport
+            EVCacheClientPoolManager.getInstance().setInvalidationTransport(later);
+            assertTrue(evcache.set("later_key", "value", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            final long end = System.currentTimeMillis() + 5000;
+            while (!published.contains("near:later_key") && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertTrue(published.contains("near:later_key"), "published : " + published);
+        } finally {
+            other.close();
+            EmbeddedMemcachedServer.setProperty(APP_NAME + ".inmemory.invalidation.enabled", "false");
+            EVCacheClientPoolManager.getInstance().setInvalidationTransport(transport);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCache.Call;
+import com.netflix.evcache.EVCacheException;
+import com.netflix.evcache.EVCacheKey;
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.event.EVCacheEvent;
+import com.netflix.evcache.event.EVCacheEventListener;
+import com.netflix.evcache.pool.EVCacheClientPoolManager;
+
+/**
+ * Concurrent gets of the same key are sent to the server once when single
+ * flight is enabled. The server is slowed down so that all the gets are in
+ * flight at the same time.
+ */
+public class EVCacheSingleFlightTest {
+    private static final String APP_NAME = "EVCACHE_SINGLE_FLIGHT";
+    private static final String FALLBACK_APP_NAME = "EVCACHE_SINGLE_FLIGHT_FB";
+    private static final int THREADS = 10;
+    private static final long DELAY_MILLIS = 200;
+
+    private final EmbeddedMemcachedServer server = new EmbeddedMemcachedServer();
+    private final EmbeddedMemcachedServer fallbackServer = new EmbeddedMemcachedServer();
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    private EVCache evcache;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        server.start();
+        fallbackServer.start();
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", server));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "2000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".single.flight.gets", "true");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".single.flight.bulk", "true");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("sf").setDefaultTTL(60).build();
+        EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(evcache.set("key_" + i, "value_" + i, null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            assertEquals(evcache.get("key_" + i), "value_" + i);
+        }
+    }
+
+    @AfterMethod
+    public void reset() {
+        server.setResponseDelay(0, TimeUnit.MILLISECONDS);
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".use.inmemory.cache", "false");
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        server.close();
+        fallbackServer.close();
+    }
+
+    private <T> List<T> runConcurrently(Callable<T> call) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        final List<T> results = new ArrayList<T>();
+        for (Future<T> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    @Test
+    public void testConcurrentGetsAreCollapsed() throws Exception {
+        server.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        final long gets = server.getStat("cmd_get");
+        for (String value : runConcurrently(() -> evcache.<String> get("key_0"))) {
+            assertEquals(value, "value_0");
+        }
+        assertEquals(server.getStat("cmd_get") - gets, 1);
+    }
+
+    @Test
+    public void testConcurrentMissesAreCollapsed() throws Exception {
+        server.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        final long gets = server.getStat("cmd_get");
+        for (String value : runConcurrently(() -> evcache.<String> get("missing_key"))) {
+            assertNull(value);
+        }
+        assertEquals(server.getStat("cmd_get") - gets, 1);
+    }
+
+    @Test
+    public void testConcurrentGetsWithInMemoryCache() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".use.inmemory.cache", "true");
+        server.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        final long gets = server.getStat("cmd_get");
+        for (String value : runConcurrently(() -> evcache.<String> get("missing_inmemory_key"))) {
+            assertNull(value);
+        }
+        // the in-memory cache loads the miss once for all the callers
+        assertEquals(server.getStat("cmd_get") - gets, 1);
+    }
+
+    @Test
+    public void testBulkSharesKeysInFlight() throws Exception {
+        server.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        final long gets = server.getStat("cmd_get");
+        final Future<String> single = executor.submit(() -> evcache.<String> get("key_1"));
+        Thread.sleep(DELAY_MILLIS / 4);
+        final Map<String, String> values = evcache.<String> getBulk(Arrays.asList("key_1", "key_2"));
+        assertEquals(values.get("key_1"), "value_1");
+        assertEquals(values.get("key_2"), "value_2");
+        assertEquals(single.get(5, TimeUnit.SECONDS), "value_1");
+        // key_1 was only read by the single get
+        assertEquals(server.getStat("cmd_get") - gets, 2);
+    }
+
+    @Test
+    public void testFailedBulkStillReturnsKeysInFlight() throws Exception {
+        EmbeddedMemcachedServer.configure(FALLBACK_APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", server) + ";" + EmbeddedMemcachedServer.serverGroup("SG2", fallbackServer));
+        EmbeddedMemcachedServer.setProperty(FALLBACK_APP_NAME + ".EVCacheClientPool.readTimeout", "2000");
+        EmbeddedMemcachedServer.setProperty(FALLBACK_APP_NAME + ".single.flight.gets", "true");
+        EmbeddedMemcachedServer.setProperty(FALLBACK_APP_NAME + ".single.flight.bulk", "true");
+        final EVCache fallbackCache = new EVCache.Builder().setAppName(FALLBACK_APP_NAME).setCachePrefix("sffb").setDefaultTTL(60).build();
+        EmbeddedMemcachedServer.awaitConnected(FALLBACK_APP_NAME);
+        assertTrue(fallbackCache.set("key_1", "value_1", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+
+        // the bulk get misses in its first server group and its fallback is
+        // throttled, so that it returns null without throwing
+        final AtomicInteger bulkThrottleChecks = new AtomicInteger();
+        final EVCacheEventListener listener = new EVCacheEventListener() {
+            public void onStart(EVCacheEvent e) {
+            }
+
+            public void onComplete(EVCacheEvent e) {
+            }
+
+            public void onError(EVCacheEvent e, Throwable t) {
+            }
+
+            public boolean onThrottle(EVCacheEvent e) throws EVCacheException {
+                if (!FALLBACK_APP_NAME.equals(e.getAppName()) || e.getCall() != Call.BULK) return false;
+                for (EVCacheKey key : e.getEVCacheKeys()) {
+                    if (key.getKey().equals("missing_key")) return bulkThrottleChecks.incrementAndGet() > 1;
+                }
+                return false;
+            }
+        };
+        EVCacheClientPoolManager.getInstance().addEVCacheEventListener(listener);
+        server.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        fallbackServer.setResponseDelay(DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        try {
+            final Future<String> single = executor.submit(() -> fallbackCache.<String> get("key_1"));
+            Thread.sleep(DELAY_MILLIS / 4);
+            final Map<String, String> values = fallbackCache.<String> getBulk(Arrays.asList("key_1", "missing_key"));
+            assertEquals(bulkThrottleChecks.get(), 2);
+            assertEquals(values.get("key_1"), "value_1");
+            assertNull(values.get("missing_key"));
+            assertEquals(single.get(5, TimeUnit.SECONDS), "value_1");
+        } finally {
+            EVCacheClientPoolManager.getInstance().removeEVCacheEventListener(listener);
+            fallbackServer.setResponseDelay(0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
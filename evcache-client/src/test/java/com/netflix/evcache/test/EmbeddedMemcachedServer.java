@@ -0,0 +1,716 @@
+package com.netflix.evcache.test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPool;
+import com.netflix.evcache.pool.EVCacheClientPoolManager;
+
+/**
+ * An in-process memcached stand-in that speaks the binary protocol used by
+ * spymemcached (get/getq/getk/getkq, set/add/replace and their quiet variants,
+ * delete, touch, gat, incr/decr, append/prepend, noop, version, flush, quit
+ * and stats) and the text commands used by
+ * {@link com.netflix.evcache.pool.EVCacheClient#getAllKeys(int)}
+ * (<code>lru_crawler metadump all</code>, stats, version and quit).
+ *
+ * All the connections of a server are handled by a single NIO thread and the
+ * data lives in a {@link ConcurrentHashMap}, so a few of these servers can be
+ * started on one box and wired to an EVCache app through the
+ * {@link com.netflix.evcache.pool.SimpleNodeListProvider}:
+ *
+ * <pre>
+ * EmbeddedMemcachedServer sg1 = new EmbeddedMemcachedServer().start();
+ * EmbeddedMemcachedServer sg2 = new EmbeddedMemcachedServer().start();
+ * EmbeddedMemcachedServer.configure("EVCACHE_TEST", "SG1=" + sg1.getAddress() + ";SG2=" + sg2.getAddress());
+ * EVCache evcache = new EVCache.Builder().setAppName("EVCACHE_TEST").build();
+ * </pre>
+ *
+ * There is no memory limit and no eviction; items are only removed when they
+ * expire, are deleted or the server is flushed.
+ */
+public class EmbeddedMemcachedServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(EmbeddedMemcachedServer.class);
+
+    private static final byte REQ_MAGIC = (byte) 0x80;
+    private static final byte RES_MAGIC = (byte) 0x81;
+    private static final int HEADER_LENGTH = 24;
+
+    private static final byte GET = 0x00, SET = 0x01, ADD = 0x02, REPLACE = 0x03, DELETE = 0x04, INCR = 0x05, DECR = 0x06,
+            QUIT = 0x07, FLUSH = 0x08, GETQ = 0x09, NOOP = 0x0a, VERSION = 0x0b, GETK = 0x0c, GETKQ = 0x0d,
+            APPEND = 0x0e, PREPEND = 0x0f, STAT = 0x10, SETQ = 0x11, ADDQ = 0x12, REPLACEQ = 0x13, DELETEQ = 0x14,
+            INCRQ = 0x15, DECRQ = 0x16, QUITQ = 0x17, FLUSHQ = 0x18, APPENDQ = 0x19, PREPENDQ = 0x1a,
+            TOUCH = 0x1c, GAT = 0x1d, GATQ = 0x1e;
+
+    private static final short SUCCESS = 0x00, KEY_NOT_FOUND = 0x01, KEY_EXISTS = 0x02, NOT_STORED = 0x05,
+            NON_NUMERIC = 0x06, UNKNOWN_COMMAND = 0x81;
+
+    /* Expiration values larger than this are absolute unix times, as per the memcached protocol */
+    private static final long MAX_RELATIVE_EXPIRY = 60 * 60 * 24 * 30;
+    private static final String VERSION_STRING = "1.5.0-embedded";
+
+    private final String host;
+    private final int requestedPort;
+    private final Map<String, Item> items = new ConcurrentHashMap<String, Item>();
+    private final AtomicLong casCounter = new AtomicLong();
+    private final Map<String, AtomicLong> stats = new ConcurrentHashMap<String, AtomicLong>();
+    private final long startTime = System.currentTimeMillis();
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread ioThread;
+    private volatile boolean running = false;
+    private volatile long responseDelayMillis = 0;
+
+    /**
+     * Creates a server that will listen on an ephemeral port once started.
+     */
+    public EmbeddedMemcachedServer() {
+        this(0);
+    }
+
+    public EmbeddedMemcachedServer(int port) {
+        this("localhost", port);
+    }
+
+    /**
+     * Creates a server bound to the given host. The ketama continuum only
+     * uses the host of a node, so servers that need to be distinct nodes on
+     * the continuum must be bound to different loopback addresses
+     * (127.0.0.2, 127.0.0.3 ...).
+     */
+    public EmbeddedMemcachedServer(String host, int port) {
+        this.host = host;
+        this.requestedPort = port;
+    }
+
+    /**
+     * Sets the properties needed for the given app to use the
+     * {@link com.netflix.evcache.pool.SimpleNodeListProvider} with the given
+     * node list (<code>sg1=host:port,host:port;sg2=host:port</code>).
+     */
+    public static void configure(String appName, String nodeList) {
+        setProperty(appName + ".use.simple.node.list.provider", "true");
+        setProperty(appName + "-NODES", nodeList);
+    }
+
+    /**
+     * Sets a property so it is visible to the dynamic properties. System
+     * properties set after archaius has been initialized are not picked up.
+     */
+    public static void setProperty(String name, String value) {
+        System.setProperty(name, value);
+        ConfigurationManager.getConfigInstance().setProperty(name, value);
+    }
+
+    /**
+     * Returns the node list entry for a server group made of the given servers.
+     */
+    public static String serverGroup(String serverGroupName, EmbeddedMemcachedServer... servers) {
+        final StringBuilder sb = new StringBuilder(serverGroupName).append('=');
+        for (int i = 0; i < servers.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(servers[i].getAddress());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Waits up to 10 seconds for the clients of all the server groups of the
+     * given app to connect to their servers and returns the pool of the app.
+     */
+    public static EVCacheClientPool awaitConnected(String appName) throws InterruptedException {
+        final EVCacheClientPool pool = EVCacheClientPoolManager.getInstance().getEVCacheClientPool(appName);
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (System.currentTimeMillis() < end) {
+            boolean connected = true;
+            for (EVCacheClient client : pool.getEVCacheClientForWrite()) {
+                if (!client.getEVCacheMemcachedClient().getUnavailableServers().isEmpty()) connected = false;
+            }
+            if (connected) break;
+            Thread.sleep(50);
+        }
+        return pool;
+    }
+
+    public synchronized EmbeddedMemcachedServer start() throws IOException {
+        if (running) return this;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.bind(new InetSocketAddress(host, requestedPort), 1024);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        ioThread = new Thread(this::run, "EmbeddedMemcachedServer-" + getPort());
+        ioThread.setDaemon(true);
+        ioThread.start();
+        if (log.isDebugEnabled()) log.debug("Started embedded memcached on " + getAddress());
+        return this;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return host:port of this server as expected by the SimpleNodeListProvider
+     */
+    public String getAddress() {
+        return host + ":" + getPort();
+    }
+
+    /**
+     * Delays reading every request by the given time to simulate a slow
+     * server. Since all connections share a single thread, all requests
+     * queued behind it are delayed as well.
+     */
+    public void setResponseDelay(long delay, TimeUnit unit) {
+        this.responseDelayMillis = unit.toMillis(delay);
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public boolean containsKey(String key) {
+        final Item item = items.get(key);
+        return item != null && !item.isExpired(System.currentTimeMillis());
+    }
+
+    public long getStat(String name) {
+        final AtomicLong stat = stats.get(name);
+        return stat == null ? 0 : stat.get();
+    }
+
+    public void flush() {
+        items.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            final Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                if (responseDelayMillis > 0) Thread.sleep(responseDelayMillis);
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) connection.write();
+                        }
+                    } catch (IOException e) {
+                        if (log.isDebugEnabled()) log.debug("Closing connection " + key.channel(), e);
+                        closeQuietly(key);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            log.error("Embedded memcached on port " + serverChannel.socket().getLocalPort() + " stopped", t);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) log.debug("Error closing selector", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        increment("total_connections");
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) log.debug("Error closing channel", e);
+        }
+    }
+
+    private void increment(String stat) {
+        stats.computeIfAbsent(stat, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static long toExpiry(long exp, long now) {
+        if (exp == 0) return 0;
+        if (exp < 0) return now - 1;
+        if (exp > MAX_RELATIVE_EXPIRY) return TimeUnit.SECONDS.toMillis(exp);
+        return now + TimeUnit.SECONDS.toMillis(exp);
+    }
+
+    private Item getItem(String key, long now) {
+        final Item item = items.get(key);
+        if (item == null) return null;
+        if (item.isExpired(now)) {
+            items.remove(key, item);
+            return null;
+        }
+        item.lastAccess = now;
+        return item;
+    }
+
+    private static final class Item {
+        final byte[] value;
+        final int flags;
+        final long cas;
+        volatile long expiry;
+        volatile long lastAccess;
+
+        Item(byte[] value, int flags, long expiry, long cas, long now) {
+            this.value = value;
+            this.flags = flags;
+            this.expiry = expiry;
+            this.cas = cas;
+            this.lastAccess = now;
+        }
+
+        boolean isExpired(long now) {
+            return expiry != 0 && expiry <= now;
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(16 * 1024);
+        private ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+        private boolean closeAfterWrite = false;
+        private Boolean binary = null;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            if (!in.hasRemaining()) {
+                final ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+            final int read = channel.read(in);
+            if (read < 0) {
+                closeQuietly(key);
+                return;
+            }
+            in.flip();
+            if (binary == null && in.hasRemaining()) binary = Boolean.valueOf(in.get(0) == REQ_MAGIC);
+            if (Boolean.TRUE.equals(binary)) {
+                processBinary();
+            } else {
+                processText();
+            }
+            in.compact();
+            write();
+        }
+
+        void write() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                if (channel.write(out) == 0) break;
+            }
+            final boolean pending = out.hasRemaining();
+            out.compact();
+            if (pending) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else if (closeAfterWrite) {
+                closeQuietly(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void ensureOut(int length) {
+            if (out.remaining() >= length) return;
+            final ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + length));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+
+        /* ---------------- binary protocol ---------------- */
+
+        private void processBinary() throws IOException {
+            while (!closeAfterWrite && in.remaining() >= HEADER_LENGTH) {
+                final int start = in.position();
+                if (in.get(start) != REQ_MAGIC) throw new IOException("Invalid magic " + in.get(start));
+                final int bodyLength = in.getInt(start + 8);
+                if (in.remaining() < HEADER_LENGTH + bodyLength) {
+                    if (in.capacity() < HEADER_LENGTH + bodyLength) {
+                        final ByteBuffer bigger = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+                        bigger.put(in);
+                        bigger.flip();
+                        in = bigger;
+                    }
+                    return;
+                }
+                final byte opcode = in.get(start + 1);
+                final int keyLength = in.getShort(start + 2) & 0xffff;
+                final int extrasLength = in.get(start + 4) & 0xff;
+                final int opaque = in.getInt(start + 12);
+                final long cas = in.getLong(start + 16);
+                in.position(start + HEADER_LENGTH);
+                final ByteBuffer extras = slice(extrasLength);
+                final byte[] keyBytes = new byte[keyLength];
+                in.get(keyBytes);
+                final byte[] value = new byte[bodyLength - extrasLength - keyLength];
+                in.get(value);
+                handle(opcode, extras, keyBytes, value, opaque, cas);
+            }
+        }
+
+        private ByteBuffer slice(int length) {
+            final ByteBuffer slice = in.slice();
+            slice.limit(length);
+            in.position(in.position() + length);
+            return slice;
+        }
+
+        private void handle(byte opcode, ByteBuffer extras, byte[] keyBytes, byte[] value, int opaque, long cas) {
+            final String key = new String(keyBytes, StandardCharsets.UTF_8);
+            final long now = System.currentTimeMillis();
+            switch (opcode) {
+            case GET:
+            case GETQ:
+            case GETK:
+            case GETKQ:
+                get(opcode, key, keyBytes, opaque, now, opcode == GETQ || opcode == GETKQ, opcode == GETK || opcode == GETKQ, null);
+                break;
+            case GAT:
+            case GATQ:
+                get(opcode, key, keyBytes, opaque, now, opcode == GATQ, false, Long.valueOf(extras.getInt(0) & 0xffffffffL));
+                break;
+            case TOUCH:
+                increment("cmd_touch");
+                final Item touched = getItem(key, now);
+                if (touched == null) {
+                    increment("touch_misses");
+                    respond(opcode, KEY_NOT_FOUND, opaque, 0, null, null, null);
+                } else {
+                    increment("touch_hits");
+                    touched.expiry = toExpiry(extras.getInt(0) & 0xffffffffL, now);
+                    respond(opcode, SUCCESS, opaque, touched.cas, null, null, null);
+                }
+                break;
+            case SET:
+            case SETQ:
+            case ADD:
+            case ADDQ:
+            case REPLACE:
+            case REPLACEQ:
+                store(opcode, key, extras.getInt(0), extras.getInt(4) & 0xffffffffL, value, opaque, cas, now);
+                break;
+            case APPEND:
+            case APPENDQ:
+            case PREPEND:
+            case PREPENDQ:
+                concat(opcode, key, value, opaque, cas, now);
+                break;
+            case DELETE:
+            case DELETEQ:
+                final Item existing = getItem(key, now);
+                if (existing == null || (cas != 0 && cas != existing.cas)) {
+                    increment("delete_misses");
+                    respond(opcode, existing == null ? KEY_NOT_FOUND : KEY_EXISTS, opaque, 0, null, null, null);
+                } else {
+                    increment("delete_hits");
+                    items.remove(key, existing);
+                    if (opcode == DELETE) respond(opcode, SUCCESS, opaque, 0, null, null, null);
+                }
+                break;
+            case INCR:
+            case INCRQ:
+            case DECR:
+            case DECRQ:
+                mutate(opcode, key, extras.getLong(0), extras.getLong(8), extras.getInt(16) & 0xffffffffL, opaque, now);
+                break;
+            case NOOP:
+                // ends every binary multi get
+                increment("cmd_noop");
+                respond(opcode, SUCCESS, opaque, 0, null, null, null);
+                break;
+            case VERSION:
+                respond(opcode, SUCCESS, opaque, 0, null, null, VERSION_STRING.getBytes(StandardCharsets.US_ASCII));
+                break;
+            case FLUSH:
+            case FLUSHQ:
+                items.clear();
+                if (opcode == FLUSH) respond(opcode, SUCCESS, opaque, 0, null, null, null);
+                break;
+            case QUIT:
+            case QUITQ:
+                if (opcode == QUIT) respond(opcode, SUCCESS, opaque, 0, null, null, null);
+                closeAfterWrite = true;
+                break;
+            case STAT:
+                for (Map.Entry<String, String> stat : getStats().entrySet()) {
+                    respond(opcode, SUCCESS, opaque, 0, null, stat.getKey().getBytes(StandardCharsets.US_ASCII),
+                            stat.getValue().getBytes(StandardCharsets.US_ASCII));
+                }
+                respond(opcode, SUCCESS, opaque, 0, null, null, null);
+                break;
+            default:
+                respond(opcode, UNKNOWN_COMMAND, opaque, 0, null, null, "Unknown command".getBytes(StandardCharsets.US_ASCII));
+                break;
+            }
+        }
+
+        private void get(byte opcode, String key, byte[] keyBytes, int opaque, long now, boolean quiet, boolean withKey, Long touchExpiry) {
+            increment("cmd_get");
+            if (touchExpiry != null) increment("cmd_touch");
+            final Item item = getItem(key, now);
+            if (item == null) {
+                increment("get_misses");
+                if (touchExpiry != null) increment("touch_misses");
+                if (!quiet) respond(opcode, KEY_NOT_FOUND, opaque, 0, null, withKey ? keyBytes : null, "Not found".getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            increment("get_hits");
+            if (touchExpiry != null) {
+                increment("touch_hits");
+                item.expiry = toExpiry(touchExpiry.longValue(), now);
+            }
+            final ByteBuffer flags = ByteBuffer.allocate(4).putInt(0, item.flags);
+            respond(opcode, SUCCESS, opaque, item.cas, flags.array(), withKey ? keyBytes : null, item.value);
+        }
+
+        private void store(byte opcode, String key, int flags, long exp, byte[] value, int opaque, long cas, long now) {
+            increment("cmd_set");
+            final boolean quiet = opcode == SETQ || opcode == ADDQ || opcode == REPLACEQ;
+            final Item existing = getItem(key, now);
+            final short status;
+            if ((opcode == ADD || opcode == ADDQ) && existing != null) {
+                status = KEY_EXISTS;
+            } else if ((opcode == REPLACE || opcode == REPLACEQ) && existing == null) {
+                status = KEY_NOT_FOUND;
+            } else if (cas != 0 && existing == null) {
+                status = KEY_NOT_FOUND;
+            } else if (cas != 0 && existing.cas != cas) {
+                status = KEY_EXISTS;
+            } else {
+                status = SUCCESS;
+            }
+            if (status != SUCCESS) {
+                respond(opcode, status, opaque, 0, null, null, null);
+                return;
+            }
+            final Item item = new Item(value, flags, toExpiry(exp, now), casCounter.incrementAndGet(), now);
+            items.put(key, item);
+            increment("total_items");
+            if (!quiet) respond(opcode, SUCCESS, opaque, item.cas, null, null, null);
+        }
+
+        private void concat(byte opcode, String key, byte[] value, int opaque, long cas, long now) {
+            final Item existing = getItem(key, now);
+            if (existing == null) {
+                respond(opcode, NOT_STORED, opaque, 0, null, null, null);
+                return;
+            }
+            if (cas != 0 && cas != existing.cas) {
+                respond(opcode, KEY_EXISTS, opaque, 0, null, null, null);
+                return;
+            }
+            final boolean append = opcode == APPEND || opcode == APPENDQ;
+            final byte[] newValue = new byte[existing.value.length + value.length];
+            System.arraycopy(append ? existing.value : value, 0, newValue, 0, append ? existing.value.length : value.length);
+            System.arraycopy(append ? value : existing.value, 0, newValue, append ? existing.value.length : value.length,
+                    append ? value.length : existing.value.length);
+            final Item item = new Item(newValue, existing.flags, existing.expiry, casCounter.incrementAndGet(), now);
+            items.put(key, item);
+            if (opcode == APPEND || opcode == PREPEND) respond(opcode, SUCCESS, opaque, item.cas, null, null, null);
+        }
+
+        private void mutate(byte opcode, String key, long delta, long initial, long exp, int opaque, long now) {
+            final boolean incr = opcode == INCR || opcode == INCRQ;
+            final boolean quiet = opcode == INCRQ || opcode == DECRQ;
+            final Item existing = getItem(key, now);
+            final long newValue;
+            final long expiry;
+            final int flags;
+            if (existing == null) {
+                increment(incr ? "incr_misses" : "decr_misses");
+                if (exp == 0xffffffffL) {
+                    respond(opcode, KEY_NOT_FOUND, opaque, 0, null, null, null);
+                    return;
+                }
+                newValue = initial;
+                expiry = toExpiry(exp, now);
+                flags = 0;
+            } else {
+                increment(incr ? "incr_hits" : "decr_hits");
+                final long current;
+                try {
+                    current = Long.parseUnsignedLong(new String(existing.value, StandardCharsets.US_ASCII).trim());
+                } catch (NumberFormatException e) {
+                    respond(opcode, NON_NUMERIC, opaque, 0, null, null, null);
+                    return;
+                }
+                if (incr) {
+                    newValue = current + delta;
+                } else {
+                    newValue = Long.compareUnsigned(current, delta) < 0 ? 0 : current - delta;
+                }
+                expiry = existing.expiry;
+                flags = existing.flags;
+            }
+            final Item item = new Item(Long.toUnsignedString(newValue).getBytes(StandardCharsets.US_ASCII), flags, expiry,
+                    casCounter.incrementAndGet(), now);
+            items.put(key, item);
+            if (!quiet) respond(opcode, SUCCESS, opaque, item.cas, null, null, ByteBuffer.allocate(8).putLong(0, newValue).array());
+        }
+
+        private void respond(byte opcode, short status, int opaque, long cas, byte[] extras, byte[] key, byte[] value) {
+            final int extrasLength = extras == null ? 0 : extras.length;
+            final int keyLength = key == null ? 0 : key.length;
+            final int valueLength = value == null ? 0 : value.length;
+            ensureOut(HEADER_LENGTH + extrasLength + keyLength + valueLength);
+            out.put(RES_MAGIC);
+            out.put(opcode);
+            out.putShort((short) keyLength);
+            out.put((byte) extrasLength);
+            out.put((byte) 0);
+            out.putShort(status);
+            out.putInt(extrasLength + keyLength + valueLength);
+            out.putInt(opaque);
+            out.putLong(cas);
+            if (extras != null) out.put(extras);
+            if (key != null) out.put(key);
+            if (value != null) out.put(value);
+        }
+
+        /* ---------------- text protocol ---------------- */
+
+        private void processText() {
+            while (!closeAfterWrite) {
+                final int start = in.position();
+                int end = -1;
+                for (int i = start; i < in.limit(); i++) {
+                    if (in.get(i) == '\n') {
+                        end = i;
+                        break;
+                    }
+                }
+                if (end < 0) return;
+                final byte[] line = new byte[end - start];
+                in.get(line);
+                in.get(); // '\n'
+                final String command = new String(line, StandardCharsets.US_ASCII).trim();
+                if (command.isEmpty()) continue;
+                handleText(command);
+            }
+        }
+
+        private void handleText(String command) {
+            final String[] tokens = command.split("\\s+");
+            final StringBuilder sb = new StringBuilder();
+            if ("lru_crawler".equals(tokens[0]) && tokens.length > 1 && "metadump".equals(tokens[1])) {
+                final long now = System.currentTimeMillis();
+                for (Map.Entry<String, Item> entry : items.entrySet()) {
+                    final Item item = entry.getValue();
+                    if (item.isExpired(now)) continue;
+                    sb.append("key=").append(urlEncode(entry.getKey()))
+                            .append(" exp=").append(item.expiry == 0 ? -1 : TimeUnit.MILLISECONDS.toSeconds(item.expiry))
+                            .append(" la=").append(TimeUnit.MILLISECONDS.toSeconds(item.lastAccess))
+                            .append(" cas=").append(item.cas)
+                            .append(" fetch=no cls=1 size=").append(item.value.length).append('\n');
+                }
+                sb.append("END\r\n");
+            } else if ("stats".equals(tokens[0])) {
+                for (Map.Entry<String, String> stat : getStats().entrySet()) {
+                    sb.append("STAT ").append(stat.getKey()).append(' ').append(stat.getValue()).append("\r\n");
+                }
+                sb.append("END\r\n");
+            } else if ("version".equals(tokens[0])) {
+                sb.append("VERSION ").append(VERSION_STRING).append("\r\n");
+            } else if ("quit".equals(tokens[0])) {
+                closeAfterWrite = true;
+            } else {
+                sb.append("ERROR\r\n");
+            }
+            final byte[] response = sb.toString().getBytes(StandardCharsets.UTF_8);
+            ensureOut(response.length);
+            out.put(response);
+        }
+
+        private String urlEncode(String key) {
+            try {
+                return URLEncoder.encode(key, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                return key;
+            }
+        }
+    }
+
+    private Map<String, String> getStats() {
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        final long now = System.currentTimeMillis();
+        result.put("pid", "0");
+        result.put("uptime", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(now - startTime)));
+        result.put("time", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(now)));
+        result.put("version", VERSION_STRING);
+        result.put("curr_connections", String.valueOf(selector.keys().size() - 1));
+        result.put("curr_items", String.valueOf(items.size()));
+        long bytes = 0;
+        for (Item item : items.values()) {
+            bytes += item.value.length;
+        }
+        result.put("bytes", String.valueOf(bytes));
+        result.put("evictions", "0");
+        for (Map.Entry<String, AtomicLong> stat : stats.entrySet()) {
+            result.put(stat.getKey(), String.valueOf(stat.getValue().get()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,218 @@
+package com.netflix.evcache.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheLatch;
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPoolManager;
+import com.netflix.evcache.util.ByteBufferPool;
+
+/**
+ * Runs the client end to end (EVCacheImpl, EVCacheClientPool, EVCacheClient
+ * and spymemcached) against two server groups of embedded memcached servers.
+ */
+public class EmbeddedMemcachedServerTest {
+    private static final String APP_NAME = "EVCACHE_EMBEDDED";
+
+    private final EmbeddedMemcachedServer[] serverGroup1 = new EmbeddedMemcachedServer[2];
+    private final EmbeddedMemcachedServer[] serverGroup2 = new EmbeddedMemcachedServer[2];
+    private EVCache evcache;
+
+    @BeforeClass
+    public void setup() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            serverGroup1[i] = new EmbeddedMemcachedServer().start();
+            serverGroup2[i] = new EmbeddedMemcachedServer().start();
+        }
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", serverGroup1) + ";"
+                + EmbeddedMemcachedServer.serverGroup("SG2", serverGroup2));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "1000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.bulkReadTimeout", "1000");
+
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setCachePrefix("embedded").setDefaultTTL(60).build();
+        EmbeddedMemcachedServer.awaitConnected(APP_NAME);
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            serverGroup1[i].close();
+            serverGroup2[i].close();
+        }
+    }
+
+    private int countInServerGroup(EmbeddedMemcachedServer[] servers, String key) {
+        int count = 0;
+        for (EmbeddedMemcachedServer server : servers) {
+            if (server.containsKey(key)) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testSetAndGet() throws Exception {
+        final Future<Boolean>[] futures = evcache.set("key1", "value1");
+        assertEquals(futures.length, 2);
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+        assertEquals(evcache.get("key1"), "value1");
+        assertEquals(countInServerGroup(serverGroup1, "embedded:key1"), 1);
+        assertEquals(countInServerGroup(serverGroup2, "embedded:key1"), 1);
+        assertNull(evcache.get("missing_key"));
+    }
+
+    @Test
+    public void testGetBulk() throws Exception {
+        final List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            keys.add("bulk_" + i);
+            final EVCacheLatch latch = evcache.set("bulk_" + i, "value_" + i, null, 60, Policy.ALL);
+            assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
+        }
+        keys.add("bulk_missing");
+        final Map<String, String> values = evcache.getBulk(keys);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(values.get("bulk_" + i), "value_" + i);
+        }
+        assertNull(values.get("bulk_missing"));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        assertTrue(evcache.set("delete_key", "value", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.get("delete_key"), "value");
+        final Future<Boolean>[] futures = evcache.delete("delete_key");
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+        assertNull(evcache.get("delete_key"));
+        assertEquals(countInServerGroup(serverGroup1, "embedded:delete_key") + countInServerGroup(serverGroup2, "embedded:delete_key"), 0);
+    }
+
+    @Test
+    public void testAddAndReplace() throws Exception {
+        assertTrue(evcache.replace("replace_key", "value1", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertNull(evcache.get("replace_key"));
+
+        final EVCacheLatch addLatch = evcache.add("replace_key", "value1", null, 60, Policy.ALL);
+        assertTrue(addLatch.await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(addLatch.getSuccessCount(), 2);
+        assertEquals(evcache.get("replace_key"), "value1");
+
+        final EVCacheLatch secondAdd = evcache.add("replace_key", "value2", null, 60, Policy.ALL);
+        assertTrue(secondAdd.await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(secondAdd.getSuccessCount(), 0);
+        assertEquals(evcache.get("replace_key"), "value1");
+
+        assertTrue(evcache.replace("replace_key", "value3", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.get("replace_key"), "value3");
+    }
+
+    @Test
+    public void testPooledWriteBuffers() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".write.buffer.pool.enabled", "true");
+        try {
+            final long hits = ByteBufferPool.WRITE_BUFFERS.hitCount();
+            for (int i = 0; i < 200; i++) {
+                final StringBuilder sb = new StringBuilder();
+                while (sb.length() < 50 * (i % 40)) sb.append(i).append(':');
+                assertTrue(evcache.set("pooled_" + i, sb.toString(), null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            }
+            // the buffers of the requests written are reused by the next ones
+            assertTrue(ByteBufferPool.WRITE_BUFFERS.hitCount() > hits);
+            for (int i = 0; i < 200; i++) {
+                final StringBuilder sb = new StringBuilder();
+                while (sb.length() < 50 * (i % 40)) sb.append(i).append(':');
+                assertEquals(evcache.<String> get("pooled_" + i), sb.toString());
+            }
+            assertTrue(evcache.replace("pooled_0", "replaced", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            assertEquals(evcache.<String> get("pooled_0"), "replaced");
+        } finally {
+            EmbeddedMemcachedServer.setProperty(APP_NAME + ".write.buffer.pool.enabled", "false");
+        }
+    }
+
+    @Test
+    public void testHashedKeys() throws Exception {
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".hash.key", "true");
+        try {
+            final StringBuilder sb = new StringBuilder();
+            while (sb.length() < 5000) sb.append("hashed:").append(sb.length());
+            assertTrue(evcache.set("hashed_key", "value", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            assertTrue(evcache.set("hashed_large_key", sb.toString(), null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+            assertEquals(evcache.<String> get("hashed_key"), "value");
+            assertEquals(evcache.<String> get("hashed_large_key"), sb.toString());
+            final Map<String, String> values = evcache.<String> getBulk("hashed_key", "hashed_large_key");
+            assertEquals(values.get("hashed_key"), "value");
+            assertEquals(values.get("hashed_large_key"), sb.toString());
+        } finally {
+            EmbeddedMemcachedServer.setProperty(APP_NAME + ".hash.key", "false");
+        }
+    }
+
+    @Test
+    public void testIncrAndDecr() throws Exception {
+        assertEquals(evcache.incr("counter", 1, 10, 60), 10);
+        assertEquals(evcache.incr("counter", 5, 10, 60), 15);
+        assertEquals(evcache.decr("counter", 20, 10, 60), 0);
+    }
+
+    @Test
+    public void testTouchAndGetAndTouch() throws Exception {
+        assertTrue(evcache.set("touch_key", "value", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        for (Future<Boolean> future : evcache.touch("touch_key", 120)) {
+            assertTrue(future.get());
+        }
+        assertEquals(evcache.getAndTouch("touch_key", 120), "value");
+        assertNull(evcache.getAndTouch("touch_missing_key", 120));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        assertTrue(evcache.set("expiring_key", "value", null, 1, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.get("expiring_key"), "value");
+        Thread.sleep(1100);
+        assertNull(evcache.get("expiring_key"));
+    }
+
+    @Test
+    public void testAppendOrAdd() throws Exception {
+        assertTrue(evcache.appendOrAdd("append_key", "abc", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertTrue(evcache.appendOrAdd("append_key", "def", null, 60, Policy.ALL).await(1000, TimeUnit.MILLISECONDS));
+        assertEquals(evcache.get("append_key"), "abcdef");
+    }
+
+    @Test(dependsOnMethods = { "testSetAndGet" })
+    public void testAllKeys() throws Exception {
+        final EVCacheClient client = EVCacheClientPoolManager.getInstance().getEVCacheClientPool(APP_NAME).getEVCacheClientForRead();
+        final List<String> keys = client.getAllKeys(1000);
+        assertTrue(keys.contains("embedded:key1"), "keys : " + keys);
+        assertFalse(keys.contains("embedded:missing_key"));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        final EVCacheClient client = EVCacheClientPoolManager.getInstance().getEVCacheClientPool(APP_NAME).getEVCacheClientForRead();
+        final Map<?, Map<String, String>> stats = client.getStats(null);
+        assertEquals(stats.size(), 2);
+        for (Map<String, String> nodeStats : stats.values()) {
+            assertTrue(nodeStats.containsKey("curr_items"));
+        }
+    }
+}
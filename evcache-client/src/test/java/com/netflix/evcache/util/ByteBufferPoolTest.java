@@ -0,0 +1,57 @@
+package com.netflix.evcache.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+/**
+ * Checks that {@link ByteBufferPool} reuses released buffers of the same
+ * size and keeps no more than its share of each size.
+ */
+public class ByteBufferPoolTest {
+
+    @Test
+    public void testReuse() {
+        final ByteBufferPool pool = new ByteBufferPool(64 * 1024, 1024 * 1024);
+        final ByteBuffer small = pool.acquire(100);
+        assertEquals(small.capacity(), 512);
+        final ByteBuffer buffer = pool.acquire(3000);
+        assertEquals(buffer.capacity(), 4096);
+        buffer.put(new byte[3000]).flip();
+        pool.release(buffer);
+
+        final ByteBuffer reused = pool.acquire(2049);
+        assertSame(reused, buffer);
+        assertEquals(reused.position(), 0);
+        assertEquals(reused.limit(), 4096);
+        assertNotSame(pool.acquire(4096), buffer);
+        assertEquals(pool.hitCount(), 1);
+        assertEquals(pool.missCount(), 3);
+    }
+
+    @Test
+    public void testLimits() {
+        final ByteBufferPool pool = new ByteBufferPool(64 * 1024, 8 * 64 * 1024);
+        // larger buffers are not pooled
+        final ByteBuffer large = pool.acquire(100 * 1024);
+        assertEquals(large.capacity(), 100 * 1024);
+        pool.release(large);
+        assertNotSame(pool.acquire(100 * 1024), large);
+
+        // nor buffers of other sizes
+        final ByteBuffer odd = ByteBuffer.allocate(1000);
+        pool.release(odd);
+        assertNotSame(pool.acquire(1000), odd);
+
+        // 8 sizes share 512 KB, so a single buffer of 64 KB is kept
+        final ByteBuffer first = pool.acquire(64 * 1024), second = pool.acquire(64 * 1024);
+        pool.release(first);
+        pool.release(second);
+        assertSame(pool.acquire(64 * 1024), first);
+        assertNotSame(pool.acquire(64 * 1024), second);
+    }
+}
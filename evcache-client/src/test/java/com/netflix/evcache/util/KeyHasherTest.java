@@ -0,0 +1,76 @@
+package com.netflix.evcache.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Checks that {@link KeyHasher} produces the same hashed keys as hashing with
+ * guava and encoding with {@link Base64}, so keys written by older clients
+ * are still found.
+ */
+public class KeyHasherTest {
+
+    private static final String[] ALGORITHMS = { "md5", "sha1", "sha256", "murmur3", "adler32", "crc32", "siphash24", "goodfasthash" };
+
+    private static HashFunction getHashFunction(String algorithm) {
+        switch (algorithm) {
+            case "murmur3" : return Hashing.murmur3_128();
+            case "adler32" : return Hashing.adler32();
+            case "crc32" : return Hashing.crc32();
+            case "sha1" : return Hashing.sha1();
+            case "sha256" : return Hashing.sha256();
+            case "siphash24" : return Hashing.sipHash24();
+            case "goodfasthash" : return Hashing.goodFastHash(128);
+            default : return Hashing.md5();
+        }
+    }
+
+    private static List<String> getKeys() {
+        final List<String> keys = new ArrayList<String>();
+        final Random random = new Random(7);
+        for (int length = 0; length < 80; length++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append((char) ('!' + random.nextInt(94)));
+            }
+            keys.add(sb.toString());
+        }
+        keys.add("cache:" + new String(new char[600]).replace('\0', 'k'));
+        keys.add("cache:\u00e9t\u00e9:\u4e2d\u6587");
+        keys.add("cache:\ud83d\ude00:emoji");
+        keys.add("cache:\ud83d:lone:\ude00");
+        return keys;
+    }
+
+    @Test
+    public void testMatchesGuava() {
+        final List<String> keys = getKeys();
+        for (String algorithm : ALGORITHMS) {
+            final KeyHasher hasher = KeyHasher.getKeyHasher(algorithm);
+            final HashFunction hf = getHashFunction(algorithm);
+            for (String key : keys) {
+                final String expected = Base64.getEncoder().withoutPadding().encodeToString(hf.hashString(key, Charsets.UTF_8).asBytes());
+                assertEquals(hasher.getHashedKey(key), expected, algorithm + " : " + key);
+                assertEquals(KeyHasher.getHashedKey(key, algorithm), expected, algorithm + " : " + key);
+            }
+        }
+    }
+
+    @Test
+    public void testGetKeyHasher() {
+        assertSame(KeyHasher.getKeyHasher("SipHash24"), KeyHasher.getKeyHasher("siphash24"));
+        assertEquals(KeyHasher.getKeyHasher("MD5").getAlgorithm(), "md5");
+        assertEquals(KeyHasher.getKeyHasher("unknown").getAlgorithm(), "md5");
+    }
+}
@@ -0,0 +1,125 @@
+package com.netflix.evcache.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * Checks that {@link OffHeapCache} returns the data that was put, recycles its
+ * oldest segment when full and never returns data of another key.
+ */
+public class OffHeapCacheTest {
+
+    private static CachedData data(int flags, int size, int seed) {
+        final byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) seed);
+        return new CachedData(flags, bytes, CachedData.MAX_SIZE);
+    }
+
+    @Test
+    public void testPutAndGet() {
+        final OffHeapCache cache = new OffHeapCache(1024 * 1024);
+        assertNull(cache.get("key", null));
+        assertTrue(cache.put("key", data(7, 100, 1)));
+        final CachedData cd = cache.get("key", null);
+        assertEquals(cd.getFlags(), 7);
+        assertEquals(cd.getData(), data(7, 100, 1).getData());
+
+        assertTrue(cache.put("key", data(3, 10, 2)));
+        assertEquals(cache.get("key", null).getData(), data(3, 10, 2).getData());
+        assertEquals(cache.size(), 1);
+        cache.invalidate("key");
+        assertNull(cache.get("key", null));
+        assertEquals(cache.hitCount(), 2);
+        assertEquals(cache.missCount(), 2);
+    }
+
+    @Test
+    public void testOldestSegmentIsRecycled() {
+        final OffHeapCache cache = new OffHeapCache(16 * 64 * 1024);
+        final int count = (int) (cache.capacity() / 1000) * 2;
+        for (int i = 0; i < count; i++) {
+            assertTrue(cache.put("key_" + i, data(0, 1000, i)));
+        }
+        assertTrue(cache.weightedSize() <= cache.capacity());
+        assertTrue(cache.evictionCount() > 0);
+        assertTrue(cache.size() < count);
+        assertNull(cache.get("key_0", null));
+        assertEquals(cache.get("key_" + (count - 1), null).getData(), data(0, 1000, count - 1).getData());
+    }
+
+    @Test
+    public void testOversizedDataIsNotKept() {
+        final OffHeapCache cache = new OffHeapCache(16 * 64 * 1024);
+        assertTrue(cache.put("key", data(0, 10, 1)));
+        assertFalse(cache.put("key", data(0, 128 * 1024, 1)));
+        assertNull(cache.get("key", null));
+    }
+
+    @Test
+    public void testExpiryAndRefresh() throws Exception {
+        final OffHeapCache cache = new OffHeapCache(1024 * 1024);
+        final AtomicInteger refreshes = new AtomicInteger();
+        cache.setRefreshAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        cache.put("key", data(0, 10, 1));
+        Thread.sleep(50);
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get("key", () -> refreshes.incrementAndGet()));
+        }
+        assertEquals(refreshes.get(), 1);
+
+        cache.setExpireAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        assertNull(cache.get("key", null));
+    }
+
+    @Test
+    public void testConcurrentReadsSeeTheirOwnKey() throws Exception {
+        final OffHeapCache cache = new OffHeapCache(16 * 64 * 1024);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    cache.put("key_" + (i % 2000), data(i % 2000, 500 + (i % 7), i % 2000));
+                }
+                return 0;
+            }));
+            for (int t = 0; t < 3; t++) {
+                futures.add(executor.submit(() -> {
+                    int found = 0;
+                    for (int i = 0; i < 20000; i++) {
+                        final int k = i % 2000;
+                        final CachedData cd = cache.get("key_" + k, null);
+                        if (cd == null) continue;
+                        found++;
+                        assertEquals(cd.getFlags(), k);
+                        for (byte b : cd.getData()) {
+                            assertEquals(b, (byte) k);
+                        }
+                    }
+                    return found;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
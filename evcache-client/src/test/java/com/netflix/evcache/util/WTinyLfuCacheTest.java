@@ -0,0 +1,126 @@
+package com.netflix.evcache.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+/**
+ * Checks the bounds, admission and expiry of {@link WTinyLfuCache}.
+ */
+public class WTinyLfuCacheTest {
+
+    private static WTinyLfuCache<String, String> newCache(long maximumWeight) {
+        return new WTinyLfuCache<String, String>(maximumWeight, (key, value) -> value.length(), null);
+    }
+
+    @Test
+    public void testWeightIsBounded() {
+        final WTinyLfuCache<String, String> cache = newCache(1000);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("key_" + i, "0123456789");
+            assertTrue(cache.weightedSize() <= 1000, "weight : " + cache.weightedSize());
+        }
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.evictionCount() >= 900);
+    }
+
+    @Test
+    public void testOversizedValueIsNotKept() {
+        final WTinyLfuCache<String, String> cache = newCache(10);
+        cache.put("small", "01234");
+        cache.put("big", "0123456789012345");
+        assertNull(cache.getIfPresent("big"));
+        assertEquals(cache.getIfPresent("small"), "01234");
+    }
+
+    @Test
+    public void testScanDoesNotEvictHotKeys() {
+        final WTinyLfuCache<String, String> cache = newCache(100);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.getIfPresent("hot_" + i) == null) cache.put("hot_" + i, "h");
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            cache.put("scan_" + i, "s");
+        }
+        int hot = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.getIfPresent("hot_" + i) != null) hot++;
+        }
+        assertTrue(hot >= 45, "hot keys left : " + hot);
+        assertTrue(cache.weightedSize() <= 100);
+    }
+
+    @Test
+    public void testResizeInPlace() {
+        final WTinyLfuCache<String, String> cache = newCache(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key_" + i, "v");
+        }
+        assertEquals(cache.size(), 100);
+        cache.setMaximumWeight(10);
+        assertTrue(cache.size() <= 10, "size : " + cache.size());
+        cache.setMaximumWeight(50);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key_" + i, "v");
+        }
+        assertTrue(cache.size() > 10 && cache.size() <= 50, "size : " + cache.size());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final WTinyLfuCache<String, String> cache = newCache(100);
+        cache.put("key", "value");
+        cache.setExpireAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(cache.getIfPresent("key"), "value");
+        Thread.sleep(100);
+        assertNull(cache.getIfPresent("key"));
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.weightedSize(), 0);
+
+        cache.setExpireAfterWriteNanos(0);
+        cache.setExpireAfterAccessNanos(TimeUnit.MILLISECONDS.toNanos(200));
+        cache.put("key", "value");
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(50);
+            assertEquals(cache.getIfPresent("key"), "value");
+        }
+        Thread.sleep(300);
+        assertNull(cache.getIfPresent("key"));
+    }
+
+    @Test
+    public void testRefreshIsTriggeredOnce() throws Exception {
+        final AtomicInteger refreshes = new AtomicInteger();
+        final WTinyLfuCache<String, String> cache = new WTinyLfuCache<String, String>(100, (key, value) -> 1,
+                (key, value) -> refreshes.incrementAndGet());
+        cache.setRefreshAfterWriteNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        cache.put("key", "value");
+        assertEquals(cache.getIfPresent("key"), "value");
+        assertEquals(refreshes.get(), 0);
+        Thread.sleep(50);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(cache.getIfPresent("key"), "value");
+        }
+        assertEquals(refreshes.get(), 1);
+    }
+
+    @Test
+    public void testInvalidate() {
+        final WTinyLfuCache<String, String> cache = newCache(100);
+        cache.put("a", "1");
+        cache.put("b", "22");
+        cache.invalidate("a");
+        assertNull(cache.getIfPresent("a"));
+        assertEquals(cache.weightedSize(), 2);
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.weightedSize(), 0);
+    }
+}
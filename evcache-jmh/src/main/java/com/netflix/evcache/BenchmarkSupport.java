@@ -0,0 +1,49 @@
+package com.netflix.evcache;
+
+import com.netflix.evcache.pool.EVCacheClient;
+import com.netflix.evcache.pool.EVCacheClientPool;
+import com.netflix.evcache.pool.EVCacheClientPoolManager;
+
+/**
+ * Common setup for the benchmarks. The app is wired to the simple node list
+ * provider so no discovery is needed. By default the nodes point to ports
+ * where nothing is expected to listen; the benchmarks only exercise the
+ * client side code paths. Pass -DEVCACHE_JMH-NODES=... (jvmArgsAppend) to
+ * point them to real memcached instances.
+ */
+public final class BenchmarkSupport {
+
+    public static final String APP_NAME = "EVCACHE_JMH";
+    private static final String DEFAULT_NODES = "SERVERGROUP1=localhost:21211,localhost:21212,localhost:21213,localhost:21214;"
+            + "SERVERGROUP2=localhost:21221,localhost:21222,localhost:21223,localhost:21224";
+
+    private BenchmarkSupport() {
+    }
+
+    public static synchronized EVCache getEVCache(String cachePrefix) {
+        if (System.getProperty(APP_NAME + "-NODES") == null) System.setProperty(APP_NAME + "-NODES", DEFAULT_NODES);
+        System.setProperty(APP_NAME + ".use.simple.node.list.provider", "true");
+        if (System.getProperty("net.spy.log.LoggerImpl") == null) System.setProperty("net.spy.log.LoggerImpl", "net.spy.memcached.compat.log.Log4JLogger");
+        return new EVCache.Builder().setAppName(APP_NAME).setCachePrefix(cachePrefix).build();
+    }
+
+    public static EVCacheClient getEVCacheClient() {
+        getEVCache(null);
+        final EVCacheClientPool pool = EVCacheClientPoolManager.getInstance().getEVCacheClientPool(APP_NAME);
+        final EVCacheClient[] clients = pool.getEVCacheClientForWrite();
+        if (clients == null || clients.length == 0) throw new IllegalStateException("No EVCacheClient available for " + APP_NAME);
+        return clients[0];
+    }
+
+    public static String[] keys(int count, int length) {
+        final String[] keys = new String[count];
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < count; i++) {
+            sb.setLength(0);
+            sb.append("key_").append(i).append('_');
+            while (sb.length() < length) sb.append((char) ('a' + (sb.length() % 26)));
+            keys[i] = sb.toString();
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,112 @@
+package com.netflix.evcache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.evcache.EVCacheLatch.Policy;
+import com.netflix.evcache.test.EmbeddedMemcachedServer;
+
+/**
+ * Full round trips through EVCacheImpl, the pool, spymemcached and the network
+ * stack against embedded memcached servers (two server groups of two nodes),
+ * so the I/O path can be measured on a single box. Sample time mode is used
+ * to get the latency percentiles along with the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class EVCacheEndToEndBenchmark {
+
+    private static final String APP_NAME = "EVCACHE_JMH_E2E";
+    private static final int NUM_KEYS = 4096;
+
+    @Param({ "100", "10000" })
+    public int valueSize;
+
+    private final EmbeddedMemcachedServer[] servers = new EmbeddedMemcachedServer[4];
+    private EVCache evcache;
+    private String[] keys;
+    private String value;
+
+    @Setup
+    public void setup() throws Exception {
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = new EmbeddedMemcachedServer().start();
+        }
+        EmbeddedMemcachedServer.configure(APP_NAME, EmbeddedMemcachedServer.serverGroup("SG1", servers[0], servers[1]) + ";"
+                + EmbeddedMemcachedServer.serverGroup("SG2", servers[2], servers[3]));
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.readTimeout", "1000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".EVCacheClientPool.bulkReadTimeout", "1000");
+        EmbeddedMemcachedServer.setProperty(APP_NAME + ".max.read.queue.length", "1000");
+        evcache = new EVCache.Builder().setAppName(APP_NAME).setDefaultTTL(3600).build();
+
+        final StringBuilder sb = new StringBuilder(valueSize);
+        while (sb.length() < valueSize) sb.append((char) ('a' + ThreadLocalRandom.current().nextInt(26)));
+        value = sb.toString();
+        keys = BenchmarkSupport.keys(NUM_KEYS, 32);
+
+        // connections are established asynchronously, retry till the data is in place
+        for (String key : keys) {
+            for (int i = 0; i < 100 && !evcache.set(key, value, null, 3600, Policy.ALL).await(100, TimeUnit.MILLISECONDS); i++) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (EmbeddedMemcachedServer server : servers) {
+            server.close();
+        }
+    }
+
+    private String randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(NUM_KEYS)];
+    }
+
+    @Benchmark
+    public String get() throws EVCacheException {
+        return evcache.get(randomKey());
+    }
+
+    @Benchmark
+    public String getMiss() throws EVCacheException {
+        return evcache.get("missing_" + ThreadLocalRandom.current().nextInt(NUM_KEYS));
+    }
+
+    @Benchmark
+    public boolean set() throws Exception {
+        return evcache.set(randomKey(), value, null, 3600, Policy.ALL_MINUS_1).await(1000, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public Map<String, String> getBulk() throws EVCacheException {
+        final List<String> bulkKeys = new ArrayList<String>(20);
+        for (int i = 0; i < 20; i++) {
+            bulkKeys.add(randomKey());
+        }
+        return evcache.getBulk(bulkKeys);
+    }
+}
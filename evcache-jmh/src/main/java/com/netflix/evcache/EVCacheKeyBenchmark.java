@@ -0,0 +1,50 @@
+package com.netflix.evcache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of building the {@link EVCacheKey} (canonicalization, validation and
+ * optional hashing) which is done on every call into {@link EVCacheImpl}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EVCacheKeyBenchmark {
+
+    @Param({ "16", "64", "200" })
+    public int keyLength;
+
+    @Param({ "false", "true" })
+    public boolean hashKey;
+
+    private EVCacheImpl evcache;
+    private String[] keys;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        System.setProperty(BenchmarkSupport.APP_NAME + ".hash.key", String.valueOf(hashKey));
+        evcache = (EVCacheImpl) BenchmarkSupport.getEVCache("jmh");
+        keys = BenchmarkSupport.keys(1024, keyLength);
+    }
+
+    @Benchmark
+    public EVCacheKey getEVCacheKey() {
+        return evcache.getEVCacheKey(keys[index++ & 1023]);
+    }
+}
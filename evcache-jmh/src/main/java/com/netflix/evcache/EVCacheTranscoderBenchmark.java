@@ -0,0 +1,107 @@
+package com.netflix.evcache;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.evcache.serialization.EVCacheSerializer;
+import com.netflix.evcache.serialization.RegisteredClassTranscoder;
+import com.netflix.evcache.serialization.SerializationInput;
+import com.netflix.evcache.serialization.SerializationOutput;
+
+import net.spy.memcached.CachedData;
+
+/**
+ * Encode and decode through the {@link EVCacheTranscoder} of an app using the
+ * given compression codec. Values above the compression threshold (120 bytes
+ * by default) are also compressed. The "registered" values are the maps of
+ * "object" written by a {@link RegisteredClassTranscoder} instead of Java
+ * serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EVCacheTranscoderBenchmark {
+
+    @Param({ "string", "bytes", "object", "registered" })
+    public String type;
+
+    @Param({ "64", "4096" })
+    public int size;
+
+    @Param({ "gzip", "deflate" })
+    public String codec;
+
+    private EVCacheTranscoder transcoder;
+    private Object value;
+    private CachedData encoded;
+
+    @Setup
+    public void setup() {
+        ConfigurationManager.getConfigInstance().setProperty("EVCACHE_BENCHMARK.compression.codec", codec);
+        transcoder = new EVCacheTranscoder("EVCACHE_BENCHMARK");
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder(size);
+        while (sb.length() < size) sb.append("field").append(random.nextInt(100)).append('=').append(random.nextLong()).append(';');
+        sb.setLength(size);
+
+        switch (type) {
+        case "bytes":
+            final byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            value = bytes;
+            break;
+        case "object":
+        case "registered":
+            final HashMap<String, String> map = new HashMap<>();
+            for (int i = 0; i < size; i += 32) {
+                map.put("field" + i, sb.substring(i, Math.min(size, i + 32)));
+            }
+            value = map;
+            if ("registered".equals(type)) transcoder = new RegisteredClassTranscoder("EVCACHE_BENCHMARK").register(16, HashMap.class, 1, new MapSerializer());
+            break;
+        default:
+            value = sb.toString();
+        }
+        encoded = transcoder.encode(value);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final class MapSerializer implements EVCacheSerializer<HashMap> {
+        @SuppressWarnings("unchecked")
+        public void write(SerializationOutput out, HashMap value) {
+            out.writeMap(value);
+        }
+
+        public HashMap read(SerializationInput in, int version) throws IOException {
+            return new HashMap<String, Object>(in.<Object> readMap());
+        }
+    }
+
+    @Benchmark
+    public CachedData encode() {
+        return transcoder.encode(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return transcoder.decode(encoded);
+    }
+}
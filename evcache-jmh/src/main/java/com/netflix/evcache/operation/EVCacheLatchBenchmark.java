@@ -0,0 +1,102 @@
+package com.netflix.evcache.operation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.evcache.BenchmarkSupport;
+import com.netflix.evcache.EVCacheLatch.Policy;
+
+import net.spy.memcached.internal.OperationFuture;
+import net.spy.memcached.ops.OperationStatus;
+import net.spy.memcached.ops.StatusCode;
+
+/**
+ * Life cycle of a write latch: one future per replica is registered, each
+ * future completes and notifies the latch, and the caller waits for the
+ * policy to be satisfied. This is the per-write overhead on top of the
+ * memcached operations themselves.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EVCacheLatchBenchmark {
+
+    @Param({ "3" })
+    public int replicas;
+
+    @Param({ "ONE", "ALL_MINUS_1", "ALL" })
+    public Policy policy;
+
+    private static final OperationStatus SUCCESS = new OperationStatus(true, "OK", StatusCode.SUCCESS);
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean completeLatch() throws Exception {
+        final EVCacheLatchImpl latch = new EVCacheLatchImpl(policy, replicas, BenchmarkSupport.APP_NAME);
+        final WriteFuture[] futures = new WriteFuture[replicas];
+        for (int i = 0; i < replicas; i++) {
+            futures[i] = new WriteFuture(executor);
+            latch.addFuture(futures[i]);
+        }
+        for (int i = 0; i < replicas; i++) {
+            futures[i].complete();
+            latch.onComplete(futures[i]);
+        }
+        return latch.await(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@link OperationFuture#isDone()} needs the memcached operation it is
+     * tracking, here the completion is driven by the benchmark instead.
+     */
+    private static class WriteFuture extends OperationFuture<Boolean> {
+        private final CountDownLatch done;
+
+        WriteFuture(ExecutorService executor) {
+            this(new CountDownLatch(1), executor);
+        }
+
+        private WriteFuture(CountDownLatch done, ExecutorService executor) {
+            super("key", done, 2500, executor);
+            this.done = done;
+        }
+
+        void complete() {
+            set(Boolean.TRUE, SUCCESS);
+            done.countDown();
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.netflix.evcache.pool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.evcache.BenchmarkSupport;
+import com.netflix.evcache.pool.EVCacheClient.ChunkInfo;
+
+import net.spy.memcached.CachedData;
+import net.spy.memcached.transcoders.Transcoder;
+
+/**
+ * Splitting a large value into chunks on write and putting it back together
+ * on read. No network calls are made; the chunks sliced during setup are fed
+ * back to the assembly path. Chunks are written as slices of the value, so
+ * creating them only works out their layout and checksum.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EVCacheChunkingBenchmark {
+
+    @Param({ "4096", "65536", "524288" })
+    public int valueSize;
+
+    private static final String KEY = "jmh:chunked_key";
+
+    private EVCacheClient client;
+    private CachedData value;
+    private ChunkInfo chunkInfo;
+    private List<String> chunkKeys;
+    private List<byte[]> chunks;
+    private Transcoder<CachedData> identity;
+
+    @Setup
+    public void setup() {
+        client = BenchmarkSupport.getEVCacheClient();
+        identity = client.getChunkingTranscoder();
+
+        final byte[] data = new byte[valueSize];
+        new Random(42).nextBytes(data);
+        value = new CachedData(0, data, Integer.MAX_VALUE);
+
+        final String firstKey = KEY + "_00";
+        chunkInfo = client.getChunkInfo(firstKey, (String) client.getDecodingTranscoder().decode(client.getChunkMetadata(client.createChunkInfo(value, KEY))));
+        chunkKeys = EVCacheClient.getChunkKeys(chunkInfo);
+        chunks = new ArrayList<>(chunkKeys.size());
+        for (int i = 0; i < chunkKeys.size(); i++) {
+            final int offset = i * chunkInfo.getChunkSize();
+            chunks.add(Arrays.copyOfRange(data, offset, Math.min(data.length, offset + chunkInfo.getChunkSize())));
+        }
+    }
+
+    @Benchmark
+    public ChunkInfo createChunks() {
+        return client.createChunkInfo(value, KEY);
+    }
+
+    @Benchmark
+    public CachedData assembleChunks() {
+        final ChunkAssembler assembler = new ChunkAssembler(chunkInfo, chunkKeys);
+        for (int i = 0; i < chunkKeys.size(); i++) {
+            assembler.receive(chunkKeys.get(i), 0, chunks.get(i));
+        }
+        return client.assembleChunks(assembler, false, 0, identity, false);
+    }
+}
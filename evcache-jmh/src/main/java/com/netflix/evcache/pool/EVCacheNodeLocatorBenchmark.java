@@ -0,0 +1,43 @@
+package com.netflix.evcache.pool;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.evcache.BenchmarkSupport;
+
+import net.spy.memcached.MemcachedNode;
+import net.spy.memcached.NodeLocator;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EVCacheNodeLocatorBenchmark {
+
+    private NodeLocator locator;
+    private String[] keys;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        locator = BenchmarkSupport.getEVCacheClient().getNodeLocator();
+        keys = BenchmarkSupport.keys(1024, 48);
+    }
+
+    @Benchmark
+    public MemcachedNode getPrimary() {
+        return locator.getPrimary(keys[index++ & 1023]);
+    }
+}
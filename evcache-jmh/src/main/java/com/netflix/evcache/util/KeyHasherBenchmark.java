@@ -0,0 +1,52 @@
+package com.netflix.evcache.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.evcache.BenchmarkSupport;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyHasherBenchmark {
+
+    @Param({ "md5", "siphash24", "murmur3", "sha1", "sha256" })
+    public String algo;
+
+    @Param({ "32", "200" })
+    public int keyLength;
+
+    private String[] keys;
+    private KeyHasher keyHasher;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        keys = BenchmarkSupport.keys(1024, keyLength);
+        keyHasher = KeyHasher.getKeyHasher(algo);
+    }
+
+    @Benchmark
+    public String getHashedKey() {
+        return KeyHasher.getHashedKey(keys[index++ & 1023], algo);
+    }
+
+    @Benchmark
+    public String getHashedKeyWithKeyHasher() {
+        return keyHasher.getHashedKey(keys[index++ & 1023]);
+    }
+}